@@ -1,7 +1,13 @@
 package simpledb;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
@@ -37,27 +43,110 @@ public class Aggregate extends Operator {
     Aggregator.Op aop;//聚合操作
     Aggregator agg;//聚合操作器
     private OpIterator it;
+    private long memoryBytes;//分组超过这个内存后写盘
+    private int parallelism = 1;
+    private boolean streaming = false;
+    private boolean compiled = false;
+    //流式聚合时当前组的状态
+    private boolean inGroup;
+    private Field curKey;
+    private long count, sum, min, max;
 
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, afield, gfield, aop, HashAggregation.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Constructor with an explicit memory budget for the groups; once it is
+     * exceeded the aggregator partitions the remaining groups to temp files.
+     *
+     * @param memoryBytes
+     *            approximately how much memory the groups may use
+     */
+    public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop,
+            long memoryBytes) {
         // some code goes here
 
         this.child=child;
         this.afield=afield;
         this.gfield=gfield;
         this.aop=aop;
+        this.memoryBytes=memoryBytes;
+        agg=newAggregator();
+        it=agg.iterator();// .iterator是new一个迭代器出来
+
+    }
+
+    /**
+     * Set the number of worker threads used when the input is a scan of a
+     * HeapFile (possibly filtered). The default of 1 disables parallel
+     * aggregation; the planner raises it for scans of large tables.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Switch to streaming (sort-based) aggregation. The child must return
+     * all tuples of a group next to each other, e.g. because it is ordered
+     * on the group-by field (see {@link #isOrderedOn}); otherwise a group
+     * is reported once per run of equal keys. Each group is emitted as soon
+     * as the key changes, using constant memory, and the first group is
+     * available without reading the whole child.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Ask for the input pipeline to be compiled by {@link QueryCompiler}
+     * into one loop over the table's pages. If it cannot be compiled the
+     * operator tree is run as usual.
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * @return true if op is known to return its tuples ordered on field:
+     *         an OrderBy whose first key is field, a BTreeScan keyed on
+     *         field, or a Filter or Limit over such an input
+     */
+    public static boolean isOrderedOn(OpIterator op, int field) {
+        while (op instanceof Filter || op instanceof Limit)
+            op = ((Operator) op).getChildren()[0];
+        if (op instanceof OrderBy)
+            return ((OrderBy) op).getOrderByFields()[0] == field;
+        if (op instanceof BTreeScan)
+            return ((BTreeScan) op).getKeyField() == field;
+        return false;
+    }
+
+    private Aggregator newAggregator() {
+        return newAggregator(memoryBytes);
+    }
+
+    private Aggregator newAggregator(long memoryBytes) {
         Type gtype;
         if(gfield==Aggregator.NO_GROUPING)// 2023.5.2
             gtype=null;
         else
             gtype=child.getTupleDesc().getFieldType(gfield);
-        if(child.getTupleDesc().getFieldType(afield)==Type.INT_TYPE){
-            agg=new IntegerAggregator(gfield,gtype,afield,aop);
-        }
-        else{
-            agg=new StringAggregator(gfield,gtype,afield,aop);
-        }
-        it=agg.iterator();// .iterator是new一个迭代器出来
-
+        if(child.getTupleDesc().getFieldType(afield)==Type.INT_TYPE)
+            return new IntegerAggregator(gfield,gtype,afield,aop,memoryBytes);
+        return new StringAggregator(gfield,gtype,afield,aop,memoryBytes);
     }
 
     /**
@@ -121,15 +210,138 @@ public class Aggregate extends Operator {
 
         super.open();
         child.open();
-        //把所有tuple读入并分组聚合
-        while(child.hasNext()){
-            Tuple temp=child.next();
-            agg.mergeTupleIntoGroup(temp);
+        if(streaming){
+            //流式聚合不预先读取，边读边输出
+            inGroup=false;
+            return;
+        }
+        QueryCompiler.Pipeline pipeline=compiled&&agg instanceof IntegerAggregator
+                ?QueryCompiler.compile(child,afield,gfield):null;
+        //输入是HeapFile的扫描（可带Filter）时，多个线程分别聚合不同的页，再合并
+        List<Predicate> preds=new ArrayList<Predicate>();
+        ParallelScan scan=parallelism>1?ParallelScan.of(child,preds):null;
+        if(pipeline!=null){
+            aggregateCompiled(pipeline);
+        }
+        else if(scan!=null&&scan.numMorsels()>1){
+            aggregateInParallel(scan,preds);
+        }
+        else{
+            //把所有tuple读入并分组聚合
+            while(child.hasNext()){
+                Tuple temp=child.next();
+                agg.mergeTupleIntoGroup(temp);
+            }
         }
         it.open();
 
     }
 
+    /**
+     * Two-phase aggregation: each worker claims morsels of pages from scan,
+     * applies the filter predicates and aggregates into its own partial
+     * aggregator; the partials are then merged into agg on this thread.
+     */
+    private void aggregateInParallel(final ParallelScan scan, final List<Predicate> preds)
+            throws DbException, TransactionAbortedException {
+        int workers=Math.min(parallelism,scan.numMorsels());
+        final long partialBytes=Math.max(1,memoryBytes/workers);
+        ExecutorService pool=Executors.newFixedThreadPool(workers);
+        List<Future<Aggregator>> partials=new ArrayList<Future<Aggregator>>();
+        try {
+            for(int i=0;i<workers;i++){
+                partials.add(pool.submit(new Callable<Aggregator>() {
+                    public Aggregator call() throws Exception {
+                        Aggregator partial=newAggregator(partialBytes);
+                        DbFileIterator morsel;
+                        while((morsel=scan.nextMorsel())!=null){
+                            morsel.open();
+                            while(morsel.hasNext()){
+                                Tuple t=morsel.next();
+                                if(matches(preds,t))
+                                    partial.mergeTupleIntoGroup(t);
+                            }
+                            morsel.close();
+                        }
+                        return partial;
+                    }
+                }));
+            }
+            for(Future<Aggregator> f:partials){
+                Aggregator partial=waitFor(f);
+                agg.merge(partial);
+                partial.close();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run a compiled pipeline over every page of its table, on several
+     * threads if parallelism allows, each filling its own partial aggregator.
+     */
+    private void aggregateCompiled(final QueryCompiler.Pipeline pipeline)
+            throws DbException, TransactionAbortedException {
+        final int numPages=pipeline.numPages();
+        final int morsel=ParallelScan.DEFAULT_MORSEL_PAGES;
+        int workers=Math.min(parallelism,(numPages+morsel-1)/morsel);
+        if(workers<=1){
+            pipeline.run(0,numPages,((IntegerAggregator) agg).groups);
+            return;
+        }
+        final long partialBytes=Math.max(1,memoryBytes/workers);
+        final AtomicInteger nextPage=new AtomicInteger(0);
+        ExecutorService pool=Executors.newFixedThreadPool(workers);
+        List<Future<Aggregator>> partials=new ArrayList<Future<Aggregator>>();
+        try {
+            for(int i=0;i<workers;i++){
+                partials.add(pool.submit(new Callable<Aggregator>() {
+                    public Aggregator call() throws Exception {
+                        IntegerAggregator partial=(IntegerAggregator) newAggregator(partialBytes);
+                        int start;
+                        while((start=nextPage.getAndAdd(morsel))<numPages)
+                            pipeline.run(start,Math.min(numPages,start+morsel),partial.groups);
+                        return partial;
+                    }
+                }));
+            }
+            for(Future<Aggregator> f:partials){
+                Aggregator partial=waitFor(f);
+                agg.merge(partial);
+                partial.close();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean matches(List<Predicate> preds, Tuple t) {
+        for(Predicate p:preds)
+            if(!p.compile().test(t))
+                return false;
+        return true;
+    }
+
+    private static Aggregator waitFor(Future<Aggregator> f)
+            throws DbException, TransactionAbortedException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted during parallel aggregation");
+        } catch (ExecutionException e) {
+            Throwable c=e.getCause();
+            if(c instanceof DbException)
+                throw (DbException) c;
+            if(c instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) c;
+            if(c instanceof RuntimeException)
+                throw (RuntimeException) c;
+            throw new DbException("parallel aggregation failed: "+c);
+        }
+    }
+
     /**
      * Returns the next tuple. If there is a group by field, then the first
      * field is the field by which we are grouping, and the second field is the
@@ -142,6 +354,8 @@ public class Aggregate extends Operator {
     //返回下一个分组聚合后的tuple
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
+        if(streaming)
+            return fetchNextStreaming();
         if(it.hasNext())
             return it.next();
         return null;
@@ -149,11 +363,71 @@ public class Aggregate extends Operator {
 
     }
 
+    //读到组键变化时输出上一组，输入读完时输出最后一组
+    private Tuple fetchNextStreaming() throws DbException, TransactionAbortedException {
+        while(child.hasNext()){
+            Tuple t=child.next();
+            Field k=gfield==Aggregator.NO_GROUPING?null:t.getField(gfield);
+            if(inGroup&&k!=null&&!k.equals(curKey)){
+                Tuple out=groupTuple();
+                startGroup(k,t);
+                return out;
+            }
+            if(!inGroup)
+                startGroup(k,t);
+            else
+                accumulate(t);
+        }
+        if(inGroup){
+            inGroup=false;
+            return groupTuple();
+        }
+        return null;
+    }
+
+    private void startGroup(Field k, Tuple t) {
+        inGroup=true;
+        curKey=k;
+        count=0;
+        sum=0;
+        min=Long.MAX_VALUE;
+        max=Long.MIN_VALUE;
+        accumulate(t);
+    }
+
+    private void accumulate(Tuple t) {
+        count++;
+        Field f=t.getField(afield);
+        if(f instanceof IntField){
+            long v=((IntField) f).getValue();
+            sum+=v;
+            if(v<min)
+                min=v;
+            if(v>max)
+                max=v;
+        }
+    }
+
+    private Tuple groupTuple() {
+        Tuple out=new Tuple(it.getTupleDesc());
+        IntField v=new IntField((int) AggregateHashTable.result(aop,count,sum,min,max));
+        if(gfield==Aggregator.NO_GROUPING)
+            out.setField(0,v);
+        else{
+            out.setField(0,curKey);
+            out.setField(1,v);
+        }
+        return out;
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
 
         child.rewind();
-        it.rewind();
+        if(streaming)
+            inGroup=false;
+        else
+            it.rewind();
     }
 
     /**
@@ -192,6 +466,8 @@ public class Aggregate extends Operator {
         super.close();
         child.close();
         it.close();
+        //释放分组和写盘的临时文件，再次open时重新聚合
+        agg.close();
 
     }
 
@@ -0,0 +1,289 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * AggregateHashTable maps group-by values to aggregate state for the
+ * aggregators. It is an open-addressing hash table over primitive arrays:
+ * <p>
+ * The probe array holds group ids (linear probing, power of two size). Each
+ * group id indexes one state slot spread over parallel long arrays holding
+ * the count, sum, min and max of the group, so updating a group never
+ * allocates or boxes. INT_TYPE keys are kept in an int[] and hashed directly;
+ * other key types are kept as Field objects. With no grouping there is a
+ * single group, id 0.
+ * <p>
+ * Group ids are dense and assigned in order of first appearance, so
+ * iterating ids 0..numGroups()-1 visits groups in that order.
+ */
+public class AggregateHashTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Type keyType;
+    private final boolean intKeys;
+
+    //探测数组，存 组号+1，0 表示空
+    private int[] slots;
+    private int mask;
+
+    private int[] intKeyArr;
+    private Field[] fieldKeyArr;
+    private int[] hashes;
+
+    private long[] counts;
+    private long[] sums;
+    private long[] mins;
+    private long[] maxs;
+    private int numGroups;
+
+    /**
+     * @param keyType
+     *            the type of the group-by field, or null if there is no
+     *            grouping
+     */
+    public AggregateHashTable(Type keyType) {
+        this.keyType = keyType;
+        this.intKeys = keyType == Type.INT_TYPE;
+        clear();
+    }
+
+    /** Remove all groups. */
+    public void clear() {
+        slots = new int[INITIAL_CAPACITY * 2];
+        mask = slots.length - 1;
+        if (intKeys)
+            intKeyArr = new int[INITIAL_CAPACITY];
+        else if (keyType != null) {
+            fieldKeyArr = new Field[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+        }
+        counts = new long[INITIAL_CAPACITY];
+        sums = new long[INITIAL_CAPACITY];
+        mins = new long[INITIAL_CAPACITY];
+        maxs = new long[INITIAL_CAPACITY];
+        numGroups = 0;
+    }
+
+    /** @return the number of distinct groups seen so far */
+    public int numGroups() {
+        return numGroups;
+    }
+
+    /** @return the type of the group keys, or null if there is no grouping */
+    public Type getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Rough heap footprint of one group: its state slot, its key and its
+     * share of the probe array. Used to turn a memory budget into a maximum
+     * number of groups.
+     */
+    static long bytesPerGroup(Type keyType) {
+        long bytes = 4 * 8 + 2 * 2 * 4;
+        if (keyType == Type.INT_TYPE)
+            bytes += 4;
+        else if (keyType != null)
+            bytes += 4 + 8 + 16 + keyType.getLen();
+        return bytes;
+    }
+
+    /**
+     * @return the id of the group for key, or -1 if there is no such group
+     */
+    public int find(Field key) {
+        if (keyType == null)
+            return numGroups == 0 ? -1 : 0;
+        if (intKeys)
+            return find(((IntField) key).getValue());
+        int h = mix(key.hashCode());
+        for (int pos = h & mask; slots[pos] != 0; pos = (pos + 1) & mask) {
+            int g = slots[pos] - 1;
+            if (hashes[g] == h && fieldKeyArr[g].equals(key))
+                return g;
+        }
+        return -1;
+    }
+
+    /** Specialised {@link #find(Field)} for INT_TYPE keys. */
+    public int find(int key) {
+        for (int pos = mix(key) & mask; slots[pos] != 0; pos = (pos + 1) & mask) {
+            if (intKeyArr[slots[pos] - 1] == key)
+                return slots[pos] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the group for a key, creating it if it does not exist yet.
+     *
+     * @param key
+     *            the group-by value; ignored if there is no grouping
+     * @return the id of the group
+     */
+    public int findOrInsert(Field key) {
+        if (keyType == null)
+            return numGroups == 0 ? newGroup() : 0;
+        if (intKeys)
+            return findOrInsert(((IntField) key).getValue());
+        int h = mix(key.hashCode());
+        int pos = h & mask;
+        while (true) {
+            int s = slots[pos];
+            if (s == 0) {
+                int g = newGroup();
+                //字符串键可能指向整个页面，复制一份再留下
+                fieldKeyArr[g] = StringField.detach(key);
+                hashes[g] = h;
+                slots[pos] = g + 1;
+                maybeGrow();
+                return g;
+            }
+            int g = s - 1;
+            if (hashes[g] == h && fieldKeyArr[g].equals(key))
+                return g;
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /** Specialised {@link #findOrInsert(Field)} for INT_TYPE keys. */
+    public int findOrInsert(int key) {
+        int pos = mix(key) & mask;
+        while (true) {
+            int s = slots[pos];
+            if (s == 0) {
+                int g = newGroup();
+                intKeyArr[g] = key;
+                slots[pos] = g + 1;
+                maybeGrow();
+                return g;
+            }
+            if (intKeyArr[s - 1] == key)
+                return s - 1;
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /** Add one value to the state of group g. */
+    public void add(int g, long v) {
+        counts[g]++;
+        sums[g] += v;
+        if (v < mins[g])
+            mins[g] = v;
+        if (v > maxs[g])
+            maxs[g] = v;
+    }
+
+    /**
+     * Combine a partial state (e.g. computed by another thread) into group g.
+     * Every supported aggregate, AVG included, merges exactly because the
+     * state keeps count and sum rather than the running average.
+     */
+    public void merge(int g, long count, long sum, long min, long max) {
+        counts[g] += count;
+        sums[g] += sum;
+        if (min < mins[g])
+            mins[g] = min;
+        if (max > maxs[g])
+            maxs[g] = max;
+    }
+
+    /** Count one row in group g without a value (e.g. COUNT of a string). */
+    public void addCount(int g) {
+        counts[g]++;
+    }
+
+    /** @return the group-by value of group g, or null if there is no grouping */
+    public Field key(int g) {
+        if (keyType == null)
+            return null;
+        if (intKeys)
+            return new IntField(intKeyArr[g]);
+        return fieldKeyArr[g];
+    }
+
+    public long count(int g) {
+        return counts[g];
+    }
+
+    public long sum(int g) {
+        return sums[g];
+    }
+
+    public long min(int g) {
+        return mins[g];
+    }
+
+    public long max(int g) {
+        return maxs[g];
+    }
+
+    /**
+     * @return the value of aggregate op for group g. AVG is computed from
+     *         the sum and count here, once, rather than on every row.
+     */
+    public long result(int g, Aggregator.Op op) {
+        return result(op, counts[g], sums[g], mins[g], maxs[g]);
+    }
+
+    /** @return the value of aggregate op for a group with the given state */
+    static long result(Aggregator.Op op, long count, long sum, long min, long max) {
+        switch (op) {
+        case MIN:
+            return min;
+        case MAX:
+            return max;
+        case SUM:
+            return sum;
+        case COUNT:
+            return count;
+        case AVG:
+            return count == 0 ? 0 : sum / count;
+        default:
+            throw new UnsupportedOperationException("unsupported aggregate " + op);
+        }
+    }
+
+    private int newGroup() {
+        if (numGroups == counts.length) {
+            int cap = counts.length * 2;
+            if (intKeys)
+                intKeyArr = Arrays.copyOf(intKeyArr, cap);
+            else if (keyType != null) {
+                fieldKeyArr = Arrays.copyOf(fieldKeyArr, cap);
+                hashes = Arrays.copyOf(hashes, cap);
+            }
+            counts = Arrays.copyOf(counts, cap);
+            sums = Arrays.copyOf(sums, cap);
+            mins = Arrays.copyOf(mins, cap);
+            maxs = Arrays.copyOf(maxs, cap);
+        }
+        int g = numGroups++;
+        counts[g] = 0;
+        sums[g] = 0;
+        mins[g] = Long.MAX_VALUE;
+        maxs[g] = Long.MIN_VALUE;
+        return g;
+    }
+
+    //装填因子超过 1/2 时探测数组扩大一倍，只需重新放置组号
+    private void maybeGrow() {
+        if (numGroups * 2 <= slots.length)
+            return;
+        slots = new int[slots.length * 2];
+        mask = slots.length - 1;
+        for (int g = 0; g < numGroups; g++) {
+            int h = intKeys ? mix(intKeyArr[g]) : hashes[g];
+            int pos = h & mask;
+            while (slots[pos] != 0)
+                pos = (pos + 1) & mask;
+            slots[pos] = g + 1;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -73,13 +73,31 @@ public interface Aggregator extends Serializable {
      * been encountered.
      *
      * @param tup the Tuple containing an aggregate field and a group-by field
+     * @throws DbException if groups had to be spilled to disk and that failed
      */
-    public void mergeTupleIntoGroup(Tuple tup);
+    public void mergeTupleIntoGroup(Tuple tup) throws DbException;
 
     /**
      * Create a OpIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
      */
     public OpIterator iterator();
-    
+
+    /**
+     * Merge the groups of other into this aggregator. other must compute the
+     * same aggregate (same kind of aggregator, fields and operator) over a
+     * disjoint part of the input; this is the final step of a two-phase
+     * parallel aggregation. other is left unchanged.
+     *
+     * @throws DbException if groups had to be spilled to disk and that failed
+     * @throws IllegalArgumentException if other is not compatible
+     */
+    public void merge(Aggregator other) throws DbException;
+
+    /**
+     * Release the groups held by this aggregator, including any temp files
+     * it spilled to. The aggregator is empty afterwards.
+     */
+    public void close();
+
 }
@@ -0,0 +1,241 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Builds a {@link BTreeFile} bottom-up from tuples that arrive in key order,
+ * writing packed pages straight to the file instead of inserting the tuples
+ * one at a time, which splits a page every time one fills up.
+ * <p>
+ * Pages are filled up to a fill factor, leaving room for later inserts. Like
+ * {@link BTreeFileEncoder}, each level of the tree holds back the contents of
+ * up to two pages, so that at the end what is left can be divided evenly
+ * between the last two pages of the level. Page numbers are handed out when a
+ * page is started rather than when it is written, so a leaf already knows its
+ * right sibling and every page its parent when it is written; only the
+ * children moved by the final division of a level are written twice.
+ * <p>
+ * The file must be empty and nothing else may use it until {@link #finish}
+ * returns. Pages are written directly, not through the buffer pool.
+ */
+public class BTreeBulkLoader {
+
+	/** The fill factor used when none is given. */
+	public static final double DEFAULT_FILL_FACTOR = 0.9;
+
+	private final BTreeFile file;
+	private final int tableid;
+	private final int keyField;
+	private final int numFields;
+	private final Type[] types;
+	private final int leafCapacity;
+	private final int internalCapacity;
+	private final ArrayList<Level> levels = new ArrayList<Level>();
+	private int nextPage = 1;
+	private BTreePageId lastLeaf = null;
+	private Field lastKey = null;
+	private boolean finished = false;
+
+	//一层中还没写出的页的内容；first、second是预先分配给前两页的页号，未分配时为0
+	private static class Level {
+		final int depth;
+		final ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+		final ArrayList<BTreePageId> children = new ArrayList<BTreePageId>();
+		final ArrayList<Field> lowKeys = new ArrayList<Field>();
+		int first = 0, second = 0;
+
+		Level(int depth) {
+			this.depth = depth;
+		}
+
+		int size() {
+			return depth == 0 ? tuples.size() : children.size();
+		}
+
+		Field lowKey(int i, int keyField) {
+			return depth == 0 ? tuples.get(i).getField(keyField) : lowKeys.get(i);
+		}
+	}
+
+	/**
+	 * @param file
+	 *            an empty BTreeFile registered in the catalog
+	 * @param fillFactor
+	 *            the fraction of each page to fill, in (0, 1]
+	 */
+	public BTreeBulkLoader(BTreeFile file, double fillFactor) throws IOException {
+		if (!(fillFactor > 0 && fillFactor <= 1))
+			throw new IllegalArgumentException("fill factor must be in (0, 1]: " + fillFactor);
+		this.file = file;
+		this.tableid = file.getId();
+		this.keyField = file.keyField();
+		TupleDesc td = file.getTupleDesc();
+		this.numFields = td.numFields();
+		this.types = new Type[numFields];
+		for (int i = 0; i < numFields; i++)
+			types[i] = td.getFieldType(i);
+		int maxTuples = new BTreeLeafPage(new BTreePageId(tableid, 1, BTreePageId.LEAF),
+				BTreePage.createEmptyPageData(), keyField).getMaxTuples();
+		int maxEntries = new BTreeInternalPage(new BTreePageId(tableid, 1, BTreePageId.INTERNAL),
+				BTreePage.createEmptyPageData(), keyField).getMaxEntries();
+		this.leafCapacity = Math.max(1, (int) (fillFactor * maxTuples));
+		//内部页的容量按孩子数算，至少3个，最后平分后每页仍有一个键
+		this.internalCapacity = Math.max(3, (int) (fillFactor * maxEntries) + 1);
+	}
+
+	public BTreeBulkLoader(BTreeFile file) throws IOException {
+		this(file, DEFAULT_FILL_FACTOR);
+	}
+
+	/**
+	 * Add the next tuple. Tuples must be added in ascending order of the key
+	 * field.
+	 *
+	 * @throws DbException
+	 *             if t's key is smaller than the previous tuple's
+	 */
+	public void add(Tuple t) throws DbException, IOException {
+		if (finished)
+			throw new IllegalStateException("finish() already called");
+		Field key = t.getField(keyField);
+		if (lastKey != null && key.compare(Predicate.Op.LESS_THAN, lastKey))
+			throw new DbException("tuples must be added in key order");
+		lastKey = key;
+		Level l = level(0);
+		l.tuples.add(t);
+		added(l);
+	}
+
+	/**
+	 * Write out the remaining pages and the root pointer. The tree is usable
+	 * once this returns.
+	 */
+	public void finish() throws DbException, IOException {
+		if (finished)
+			return;
+		finished = true;
+		if (levels.isEmpty()) {
+			//没有元组：只写一个空的根指针页
+			file.writePage(new BTreeRootPtrPage(BTreeRootPtrPage.getId(tableid),
+					BTreeRootPtrPage.createEmptyPageData()));
+			return;
+		}
+		for (int d = 0; d < levels.size(); d++) {
+			Level l = levels.get(d);
+			int n = l.size();
+			int cap = capacity(l);
+			if (d == levels.size() - 1 && n <= cap) {
+				BTreePageId root = writePage(l, 0, n, l.first, 0, true);
+				file.writePage(new BTreeRootPtrPage(BTreeRootPtrPage.getId(tableid),
+						BTreeFileEncoder.convertToRootPtrPage(root.getPageNumber(), root.pgcateg(), 0)));
+				return;
+			}
+			if (n <= cap) {
+				writePage(l, 0, n, l.first, 0, false);
+				continue;
+			}
+			//剩下的内容平分到最后两页；原本属于第一页、现在移到第二页的孩子要改父指针
+			int half = n / 2;
+			if (l.depth > 0) {
+				BTreePageId parent = new BTreePageId(tableid, l.second, BTreePageId.INTERNAL);
+				for (int i = half; i < cap; i++) {
+					BTreePage child = (BTreePage) file.readPage(l.children.get(i));
+					child.setParentId(parent);
+					file.writePage(child);
+				}
+			}
+			writePage(l, 0, half, l.first, l.second, false);
+			writePage(l, 0, n - half, l.second, 0, false);
+		}
+	}
+
+	private Level level(int depth) {
+		while (levels.size() <= depth)
+			levels.add(new Level(levels.size()));
+		return levels.get(depth);
+	}
+
+	private int capacity(Level l) {
+		return l.depth == 0 ? leafCapacity : internalCapacity;
+	}
+
+	private int allocate() {
+		return nextPage++;
+	}
+
+	/**
+	 * Called after an item is added to l: reserve page numbers as the first
+	 * two pages are started, and write out the first page once a third has
+	 * been started, since the first can then no longer be the last two.
+	 */
+	private void added(Level l) throws DbException, IOException {
+		int n = l.size();
+		int cap = capacity(l);
+		if (n == 1) {
+			l.first = allocate();
+		} else if (n == cap + 1) {
+			l.second = allocate();
+		} else if (n == 2 * cap + 1) {
+			writePage(l, 0, cap, l.first, l.second, false);
+			l.first = l.second;
+			l.second = allocate();
+		}
+	}
+
+	/**
+	 * Add a child page to the level above it.
+	 *
+	 * @return the page number of the page the child went into
+	 */
+	private int push(int depth, BTreePageId child, Field lowKey) throws DbException, IOException {
+		Level l = level(depth);
+		l.children.add(child);
+		l.lowKeys.add(lowKey);
+		added(l);
+		return l.size() <= capacity(l) ? l.first : l.second;
+	}
+
+	/**
+	 * Write items [from, to) of l as page pgNo, give it a parent (the root
+	 * pointer if root is set) and remove the items from l.
+	 *
+	 * @param right
+	 *            the page number of the right sibling of a leaf, or 0
+	 * @return the id of the page written
+	 */
+	private BTreePageId writePage(Level l, int from, int to, int pgNo, int right, boolean root)
+			throws DbException, IOException {
+		int category = l.depth == 0 ? BTreePageId.LEAF : BTreePageId.INTERNAL;
+		BTreePageId pid = new BTreePageId(tableid, pgNo, category);
+		BTreePageId parent = root ? BTreeRootPtrPage.getId(tableid)
+				: new BTreePageId(tableid, push(l.depth + 1, pid, l.lowKey(from, keyField)),
+						BTreePageId.INTERNAL);
+		BTreePage page;
+		if (l.depth == 0) {
+			ArrayList<Tuple> tuples = new ArrayList<Tuple>(l.tuples.subList(from, to));
+			BTreeLeafPage leaf = new BTreeLeafPage(pid, BTreeFileEncoder.convertToLeafPage(tuples,
+					BufferPool.getPageSize(), numFields, types, keyField), keyField);
+			leaf.setLeftSiblingId(lastLeaf);
+			leaf.setRightSiblingId(right == 0 ? null : new BTreePageId(tableid, right, BTreePageId.LEAF));
+			lastLeaf = pid;
+			page = leaf;
+		} else {
+			ArrayList<BTreeEntry> entries = new ArrayList<BTreeEntry>();
+			for (int i = from + 1; i < to; i++)
+				entries.add(new BTreeEntry(l.lowKeys.get(i), l.children.get(i - 1), l.children.get(i)));
+			int childCategory = l.depth == 1 ? BTreePageId.LEAF : BTreePageId.INTERNAL;
+			page = new BTreeInternalPage(pid, BTreeFileEncoder.convertToInternalPage(entries,
+					BufferPool.getPageSize(), types[keyField], childCategory), keyField);
+		}
+		page.setParentId(parent);
+		file.writePage(page);
+		if (l.depth == 0)
+			l.tuples.subList(from, to).clear();
+		else {
+			l.children.subList(from, to).clear();
+			l.lowKeys.subList(from, to).clear();
+		}
+		return pid;
+	}
+}
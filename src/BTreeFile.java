@@ -202,18 +202,8 @@ public class BTreeFile implements DbFile {
 			return (BTreeLeafPage)getPage(tid,dirtypages,pid,perm);
 		//为内部节点，先定位并上锁（只读）
 		BTreeInternalPage page=(BTreeInternalPage) getPage(tid,dirtypages,pid,Permissions.READ_ONLY);
-		//创建迭代器
-		Iterator<BTreeEntry> it= page.iterator();
-		BTreeEntry entry=null;
-		//迭代寻找
-		while(it.hasNext()){
-			entry=it.next();
-			//若f为空或者entry>=f时，查找最左节点
-			if(f==null||entry.getKey().compare(Op.GREATER_THAN_OR_EQ,f))
-				return findLeafPage(tid,dirtypages,entry.getLeftChild(),perm,f);
-		}
-		//若始终没有找到，返回最右节点
-        return findLeafPage(tid,dirtypages,entry.getRightChild(),perm,f);
+		//二分查找第一个>=f的entry，进入它的左孩子；没有则进入最右孩子
+		return findLeafPage(tid,dirtypages,page.findChild(f),perm,f);
 	}
 
 
@@ -228,18 +218,8 @@ public class BTreeFile implements DbFile {
 			return (BTreeLeafPage)getPage(tid,dirtypages,pid,perm);
 		//为内部节点，先定位并上锁（只读）
 		BTreeInternalPage page=(BTreeInternalPage) getPage(tid,dirtypages,pid,Permissions.READ_ONLY);
-		//创建迭代器
-		Iterator<BTreeEntry> it= page.iterator();
-		BTreeEntry entry=null;
-		//迭代寻找
-		while(it.hasNext()){
-			entry=it.next();
-			//若f为空或者entry<f时，查找最右节点
-			if(f==null||entry.getKey().compare(Op.LESS_THAN_OR_EQ,f))
-				return findLeafPage(tid,dirtypages,entry.getRightChild(),perm,f);
-		}
-		//若始终没有找到，返回最右节点
-		return findLeafPage(tid,dirtypages,entry.getLeftChild(),perm,f);
+		//二分查找最后一个<=f的entry，它的右孩子是可能含有<=f的键的最右子树；没有则进入最左孩子
+		return ReverseFindLeafPage(tid,dirtypages,page.findLastChild(f),perm,f);
 	}
 	
 	/**
@@ -1385,6 +1365,9 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
+		//还没插入过元组的空树
+		if (root == null)
+			return;
 		curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
 		it = curp.iterator();
 	}
@@ -1470,14 +1453,19 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
+		//还没插入过元组的空树
+		if (root == null)
+			return;
 		if(ipred.getOp() == Op.EQUALS || ipred.getOp() == Op.GREATER_THAN 
 				|| ipred.getOp() == Op.GREATER_THAN_OR_EQ) {
 			curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, ipred.getField());
+			//页内二分查找第一个可能满足条件的元组
+			it = curp.iterator(curp.findSlot(ipred.getField(), ipred.getOp() == Op.GREATER_THAN));
 		}
 		else {
 			curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
+			it = curp.iterator();
 		}
-		it = curp.iterator();
 	}
 
 	/**
@@ -1572,6 +1560,9 @@ class BTreeFileReverseIterator extends AbstractDbFileIterator {
 		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
+		//还没插入过元组的空树
+		if (root == null)
+			return;
 		curp = f.ReverseFindLeafPage(tid, root, Permissions.READ_ONLY, null);
 		it = curp.reverseIterator();//反向迭代器
 	}
@@ -1657,15 +1648,20 @@ class BTreeSearchReverseIterator extends AbstractDbFileIterator {
 		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
+		//还没插入过元组的空树
+		if (root == null)
+			return;
 		//比较方式改变
 		if(ipred.getOp() == Op.EQUALS || ipred.getOp() == Op.LESS_THAN
 				|| ipred.getOp() == Op.LESS_THAN_OR_EQ) {
 			curp = f.ReverseFindLeafPage(tid, root, Permissions.READ_ONLY, ipred.getField());
+			//页内二分查找最后一个可能满足条件的元组，从它开始反向迭代
+			it = curp.reverseIterator(curp.findLastSlot(ipred.getField(), ipred.getOp() == Op.LESS_THAN));
 		}
 		else {
 			curp = f.ReverseFindLeafPage(tid, root, Permissions.READ_ONLY, null);
+			it = curp.reverseIterator();//反向迭代器
 		}
-		it = curp.reverseIterator();//反向迭代器
 	}
 
 	/**
@@ -21,6 +21,9 @@ public class BTreeInternalPage extends BTreePage {
 	
 	private int childCategory; // either leaf or internal
 
+	//已用的槽按顺序排成的数组，二分查找用；槽的使用情况变了就作废重建
+	private volatile int[] usedSlots = null;
+
 	public void checkRep(Field lowerBound, Field upperBound, boolean checkOccupancy, int depth) {
 		Field prev = lowerBound;
 		assert(this.getId().pgcateg() == BTreePageId.INTERNAL);
@@ -595,12 +598,81 @@ public class BTreeInternalPage extends BTreePage {
 		int headerbyte = (i - headerbit) / 8;
 
 		Debug.log(1, "BTreeInternalPage.setSlot: setting slot %d to %b", i, value);
+		usedSlots = null;
 		if(value)
 			header[headerbyte] |= 1 << headerbit;
 		else
 			header[headerbyte] &= (0xFF ^ (1 << headerbit));
 	}
 
+	private int[] usedSlots() {
+		int[] used = usedSlots;
+		if (used == null) {
+			int n = 0;
+			for (int i = 0; i < numSlots; i++)
+				if (isSlotUsed(i))
+					n++;
+			used = new int[n];
+			n = 0;
+			for (int i = 0; i < numSlots; i++)
+				if (isSlotUsed(i))
+					used[n++] = i;
+			usedSlots = used;
+		}
+		return used;
+	}
+
+	/**
+	 * Binary search for the number of entries whose key is less than f, or
+	 * less than or equal to it if orEqual is set. used[0] is the slot of the
+	 * left-most child, so the entries are used[1..].
+	 */
+	private int countKeysBelow(int[] used, Field f, boolean orEqual) {
+		Op op = orEqual ? Op.LESS_THAN_OR_EQ : Op.LESS_THAN;
+		int lo = 1, hi = used.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[used[mid]].compare(op, f))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo - 1;
+	}
+
+	/**
+	 * Find the left-most child that may hold key f: the left child of the
+	 * first entry whose key is greater than or equal to f, or the right
+	 * child of the last entry if there is none. Binary search, without
+	 * building any entries.
+	 *
+	 * @param f - the key to look for, or null for the left-most child
+	 * @return the id of the child, or null if the page is empty
+	 */
+	public BTreePageId findChild(Field f) {
+		int[] used = usedSlots();
+		if (used.length == 0)
+			return null;
+		int i = f == null ? 0 : countKeysBelow(used, f, false);
+		return new BTreePageId(pid.getTableId(), children[used[i]], childCategory);
+	}
+
+	/**
+	 * Find the right-most child that may hold key f: the right child of the
+	 * last entry whose key is less than or equal to f, or the left child of
+	 * the first entry if there is none.
+	 *
+	 * @param f - the key to look for, or null for the right-most child
+	 * @return the id of the child, or null if the page is empty
+	 */
+	public BTreePageId findLastChild(Field f) {
+		int[] used = usedSlots();
+		if (used.length == 0)
+			return null;
+		int i = f == null ? used.length - 1 : countKeysBelow(used, f, true);
+		return new BTreePageId(pid.getTableId(), children[used[i]], childCategory);
+	}
+
 	/**
 	 * @return an iterator over all entries on this page (calling remove on this iterator throws an UnsupportedOperationException)
 	 * (note that this iterator shouldn't return entries in empty slots!)
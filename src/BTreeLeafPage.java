@@ -19,6 +19,9 @@ public class BTreeLeafPage extends BTreePage {
 	private int leftSibling; // leaf node or 0
 	private int rightSibling; // leaf node or 0
 
+	//已用的槽按顺序排成的数组，二分查找用；槽的使用情况变了就作废重建
+	private volatile int[] usedSlots = null;
+
 	public void checkRep(int fieldid, Field lowerBound, Field upperBound, boolean checkoccupancy, int depth) {
 		Field prev = lowerBound;
 		assert(this.getId().pgcateg() == BTreePageId.LEAF);
@@ -469,12 +472,66 @@ public class BTreeLeafPage extends BTreePage {
 		int headerbyte = (i - headerbit) / 8;
 
 		Debug.log(1, "BTreeLeafPage.setSlot: setting slot %d to %b", i, value);
+		usedSlots = null;
 		if(value)
 			header[headerbyte] |= 1 << headerbit;
 		else
 			header[headerbyte] &= (0xFF ^ (1 << headerbit));
 	}
 
+	private int[] usedSlots() {
+		int[] used = usedSlots;
+		if (used == null) {
+			int n = 0;
+			for (int i = 0; i < numSlots; i++)
+				if (isSlotUsed(i))
+					n++;
+			used = new int[n];
+			n = 0;
+			for (int i = 0; i < numSlots; i++)
+				if (isSlotUsed(i))
+					used[n++] = i;
+			usedSlots = used;
+		}
+		return used;
+	}
+
+	//二分查找键小于f（orEqual时为小于等于）的元组个数
+	private int countKeysBelow(int[] used, Field f, boolean orEqual) {
+		Predicate.Op op = orEqual ? Predicate.Op.LESS_THAN_OR_EQ : Predicate.Op.LESS_THAN;
+		int lo = 0, hi = used.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (tuples[used[mid]].getField(keyField).compare(op, f))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Binary search for the first tuple whose key is greater than or equal
+	 * to f, or strictly greater if strict is set.
+	 * @return its slot, or getMaxTuples() if there is no such tuple
+	 */
+	public int findSlot(Field f, boolean strict) {
+		int[] used = usedSlots();
+		int i = countKeysBelow(used, f, strict);
+		return i < used.length ? used[i] : numSlots;
+	}
+
+	/**
+	 * Binary search for the last tuple whose key is less than or equal to
+	 * f, or strictly less if strict is set.
+	 * @return its slot, or -1 if there is no such tuple
+	 */
+	public int findLastSlot(Field f, boolean strict) {
+		int[] used = usedSlots();
+		int i = countKeysBelow(used, f, !strict);
+		return i > 0 ? used[i - 1] : -1;
+	}
+
 	/**
 	 * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
 	 * (note that this iterator shouldn't return tuples in empty slots!)
@@ -483,6 +540,14 @@ public class BTreeLeafPage extends BTreePage {
 		return new BTreeLeafPageIterator(this);
 	}
 
+	/**
+	 * @return an iterator over the tuples in slot and the slots after it
+	 * @see #findSlot
+	 */
+	public Iterator<Tuple> iterator(int slot) {
+		return new BTreeLeafPageIterator(this, slot);
+	}
+
 	/**
 	 * @return a reverse iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
 	 * (note that this iterator shouldn't return tuples in empty slots!)
@@ -491,6 +556,14 @@ public class BTreeLeafPage extends BTreePage {
 		return new BTreeLeafPageReverseIterator(this);
 	}
 
+	/**
+	 * @return a reverse iterator over the tuples in slot and the slots before it
+	 * @see #findLastSlot
+	 */
+	public Iterator<Tuple> reverseIterator(int slot) {
+		return new BTreeLeafPageReverseIterator(this, slot);
+	}
+
 	/**
 	 * protected method used by the iterator to get the ith tuple out of this page
 	 * @param i - the index of the tuple
@@ -529,6 +602,11 @@ class BTreeLeafPageIterator implements Iterator<Tuple> {
 		this.p = p;
 	}
 
+	public BTreeLeafPageIterator(BTreeLeafPage p, int start) {
+		this.p = p;
+		this.curTuple = start;
+	}
+
 	public boolean hasNext() {
 		if (nextToReturn != null)
 			return true;
@@ -578,6 +656,11 @@ class BTreeLeafPageReverseIterator implements Iterator<Tuple> {
 		this.curTuple = p.getMaxTuples() - 1;
 	}
 
+	public BTreeLeafPageReverseIterator(BTreeLeafPage p, int start) {
+		this.p = p;
+		this.curTuple = start;
+	}
+
 	public boolean hasNext() {
 		if (nextToReturn != null)
 			return true;
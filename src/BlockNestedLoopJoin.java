@@ -0,0 +1,125 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * Block nested-loops join. Up to {@link #BLOCK_ROWS} tuples of child1 are
+ * buffered at a time and every tuple of child2 is tested against the whole
+ * block, so child2 is scanned once per block instead of once per child1
+ * tuple as in {@link Join}. Works with any join predicate; output tuples are
+ * child1's fields followed by child2's.
+ */
+public class BlockNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of child1 tuples buffered per scan of child2. */
+    public static final int BLOCK_ROWS = 20000;
+
+    private final JoinPredicate p;
+    private OpIterator child1, child2;
+    private TupleDesc td;
+    private transient CompiledPredicate.Join test;
+    private transient CompactTuple.Layout layout;
+    private transient ArrayList<Tuple> block;
+    private transient Tuple t2;
+    private transient int pos;//block中下一个要和t2比较的元组
+
+    /**
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(p.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(p.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    //读入child1的下一块；块中的元组要活过child2的整趟扫描，存压缩的副本
+    private boolean loadBlock() throws DbException, TransactionAbortedException {
+        block.clear();
+        if (layout == null || layout.getTupleDesc() != child1.getTupleDesc())
+            layout = new CompactTuple.Layout(child1.getTupleDesc());
+        while (block.size() < BLOCK_ROWS && child1.hasNext())
+            block.add(layout.pack(child1.next()));
+        t2 = null;
+        return !block.isEmpty();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        test = p.compile(child1.getTupleDesc().getFieldType(p.getField1()));
+        block = new ArrayList<Tuple>();
+        loadBlock();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child2.close();
+        child1.close();
+        block = null;
+        t2 = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        loadBlock();
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (!block.isEmpty()) {
+            if (t2 != null) {
+                while (pos < block.size()) {
+                    Tuple t1 = block.get(pos++);
+                    if (test.test(t1, t2))
+                        return new JoinedTuple(td, t1, t2);
+                }
+            }
+            if (child2.hasNext()) {
+                t2 = child2.next();
+                pos = 0;
+            } else if (loadBlock()) {
+                child2.rewind();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+}
@@ -0,0 +1,107 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * BloomFilter is a compact, probabilistic set of Field values. It never
+ * reports a false negative: if mightContain returns false the value was
+ * definitely not added. It is built by hash joins over the build-side keys
+ * and pushed down to the probe side, so probe tuples whose key cannot match
+ * are dropped before they reach the join.
+ *
+ * @see HashEquiJoin
+ * @see BloomFilterTarget
+ */
+public class BloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Bits reserved per expected key; with NUM_HASHES this gives about 1% false positives. */
+    static final int BITS_PER_KEY = 10;
+    static final int NUM_HASHES = 7;
+
+    private final long[] bits;
+    private final int numBits;
+
+    /**
+     * Create an empty filter sized for the given number of keys.
+     *
+     * @param expectedKeys
+     *            the number of distinct keys that will be added
+     */
+    public BloomFilter(int expectedKeys) {
+        //至少留64位，避免空表或极小表时位数组为0
+        long want = Math.max(64L, (long) expectedKeys * BITS_PER_KEY);
+        int words = (int) Math.min((want + 63) / 64, Integer.MAX_VALUE / 64);
+        bits = new long[words];
+        numBits = words * 64;
+    }
+
+    /**
+     * Add a value to the filter.
+     *
+     * @param f
+     *            the value to add; null values are ignored since they never
+     *            satisfy an equality predicate
+     */
+    public void add(Field f) {
+        if (f == null)
+            return;
+        int h1 = mix(f.hashCode());
+        int h2 = mix(h1 ^ 0x5bd1e995) | 1;//第二个哈希保证为奇数
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int idx = Math.floorMod(h1 + i * h2, numBits);
+            bits[idx >>> 6] |= 1L << idx;
+        }
+    }
+
+    /**
+     * @return false if f was definitely never added, true if it may have been.
+     */
+    public boolean mightContain(Field f) {
+        if (f == null)
+            return false;
+        int h1 = mix(f.hashCode());
+        int h2 = mix(h1 ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int idx = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[idx >>> 6] & (1L << idx)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** @return the number of bits in this filter */
+    public int numBits() {
+        return numBits;
+    }
+
+    //IntField的hashCode就是值本身，需要打散
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Push a filter on field down into a probe-side plan. Operators that can
+     * evaluate it (see {@link BloomFilterTarget}) take it over; otherwise
+     * nothing happens and the caller keeps probing as before.
+     *
+     * @param probe
+     *            the probe-side child of a hash join
+     * @param field
+     *            the index of the join field in probe's TupleDesc
+     * @param bf
+     *            the filter to push, or null to remove a previously pushed one
+     * @return true if some operator below accepted the filter
+     */
+    public static boolean pushDown(OpIterator probe, int field, BloomFilter bf) {
+        if (probe instanceof BloomFilterTarget)
+            return ((BloomFilterTarget) probe).setBloomFilter(field, bf);
+        return false;
+    }
+}
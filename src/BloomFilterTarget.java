@@ -0,0 +1,20 @@
+package simpledb;
+
+/**
+ * Implemented by operators that can drop tuples using a {@link BloomFilter}
+ * pushed down from a hash join above them.
+ */
+public interface BloomFilterTarget {
+
+    /**
+     * Install (or, if bf is null, remove) a runtime filter on the given field.
+     * Tuples whose value of field is not in bf should no longer be returned.
+     *
+     * @param field
+     *            the index of the filtered field in this operator's TupleDesc
+     * @param bf
+     *            the filter, or null to clear it
+     * @return true if the filter was accepted
+     */
+    public boolean setBloomFilter(int field, BloomFilter bf);
+}
@@ -85,6 +85,54 @@ public class BufferPool {
 
 
         //lab4
+        lockPage(tid,pid,perm);
+
+
+        //lab1~3
+        //并行扫描时多个线程会同时读页，pageOrder不是线程安全的
+        synchronized (this) {
+            if(!pageStore.containsKey(pid.hashCode())){
+                DbFile temp=Database.getCatalog().getDatabaseFile(pid.getTableId());
+                Page page=temp.readPage(pid);
+                pageStore.put(pid.hashCode(),page);
+                pageOrder.add(pid);
+            }
+            else{
+                pageOrder.remove(pid);
+                pageOrder.add(pid);
+            }
+            //只用参数pid即可
+            return pageStore.get(pid.hashCode());
+        }
+    }
+
+    /**
+     * Return the cached copy of a page, or read it from its file if it is
+     * not cached, without locking it or adding it to the pool. Other
+     * transactions may be changing the page meanwhile, so this is only for
+     * readers that tolerate dirty and half-changed pages, such as
+     * statistics.
+     *
+     * @param pid the ID of the page to read
+     */
+    Page readPageUnlocked(PageId pid) {
+        Page p = pageStore.get(pid.hashCode());
+        if (p != null)
+            return p;
+        return Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+    }
+
+    /**
+     * Acquire a lock on a page without reading it, waiting for it like
+     * {@link #getPage} does.
+     *
+     * @param tid the ID of the transaction requesting the lock
+     * @param pid the ID of the page to lock
+     * @param perm the requested permissions on the page
+     * @throws TransactionAbortedException if the lock is not granted in time
+     */
+    void lockPage(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
         //先判断需要获取的锁的类型
         int lockType=perm==Permissions.READ_ONLY?PageLock.SHARE:PageLock.EXCLUSIVE;
         // 计算超时时间（设置为 500 ms）
@@ -103,21 +151,6 @@ public class BufferPool {
 
         }
         //跳出循环表明可以加锁了，否则一直忙等待
-
-
-        //lab1~3
-        if(!pageStore.containsKey(pid.hashCode())){
-            DbFile temp=Database.getCatalog().getDatabaseFile(pid.getTableId());
-            Page page=temp.readPage(pid);
-            pageStore.put(pid.hashCode(),page);
-            pageOrder.add(pid);
-        }
-        else{
-            pageOrder.remove(pid);
-            pageOrder.add(pid);
-        }
-        //只用参数pid即可
-        return pageStore.get(pid.hashCode());
     }
 
     /**
@@ -135,6 +168,19 @@ public class BufferPool {
         lockManager.releaseLock(tid,pid);
     }
 
+    /**
+     * Releases the lock on a page only if it is a shared (read) lock. Used by
+     * scans that stop early (e.g. under a LIMIT) to give back the read locks
+     * they took; a page the transaction has written keeps its lock.
+     *
+     * @param tid the ID of the transaction requesting the unlock
+     * @param pid the ID of the page to unlock
+     * @return true if a shared lock was released
+     */
+    public boolean releaseSharedLock(TransactionId tid, PageId pid) {
+        return lockManager.releaseSharedLock(tid,pid);
+    }
+
     /**
      * Release all locks associated with a given transaction.
      *
@@ -177,6 +223,8 @@ public class BufferPool {
                 if (tid.equals(p.isDirty())) {
                     //获取磁盘中的原有状态
                     int tableId = p.getId().getTableId();
+                    for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId))
+                        index.abort(tid);//建索引期间为该事务记下的改动作废
                     DbFile table = Database.getCatalog().getDatabaseFile(tableId);
                     Page pageInDisk = table.readPage(p.getId());
                     //写回内存
@@ -228,6 +276,9 @@ public class BufferPool {
             pageOrder.add(p.getId());
 
         }
+        TableStats.noteInsert(tableId, t);// 更新该表的统计信息
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId))
+            index.insert(tid, t);// t已有记录id，加入各个二级索引
     }
 
     /**
@@ -249,7 +300,9 @@ public class BufferPool {
         // not necessary for lab1
 
         //确定heapFile
-        DbFile heapFile = (DbFile) Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
+        int tableId = t.getRecordId().getPageId().getTableId();
+        RecordId rid = t.getRecordId();
+        DbFile heapFile = (DbFile) Database.getCatalog().getDatabaseFile(tableId);
         //调用file.delete
         ArrayList<Page> page = heapFile.deleteTuple(tid, t);// 调用heapFile删除，返回修改过的page
 
@@ -260,6 +313,9 @@ public class BufferPool {
             pageOrder.remove(p.getId());
             pageOrder.add(p.getId());
         }
+        TableStats.noteDelete(tableId, t);// 删除后记录id可能已清空，表id先取出来
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId))
+            index.delete(tid, t.getField(index.getField()), rid);
 
     }
 
@@ -514,6 +570,16 @@ public class BufferPool {
             return true;
         }
 
+        //只释放共享锁，排他锁要保留到事务结束
+        public synchronized boolean releaseSharedLock(TransactionId tid, PageId pageId){
+            ConcurrentHashMap<TransactionId, PageLock> locks=lockMap.get(pageId);
+            if(locks==null||locks.get(tid)==null)
+                return false;
+            if(locks.get(tid).getType()!=PageLock.SHARE)
+                return false;
+            return releaseLock(tid,pageId);
+        }
+
         //释放事务在各页上的所有锁
         public synchronized void completeTranslation(TransactionId tid){
                 //遍历哈希表中所存在的所有页的Id
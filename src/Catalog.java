@@ -3,9 +3,12 @@ package simpledb;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The Catalog keeps track of all available tables in the database and their
@@ -26,6 +29,8 @@ public class Catalog {
     //HashMap存储各个table的信息
     private final ConcurrentHashMap<Integer,Table> hashTable;
     //(key,value)=(Int,Table)
+    //loadSchema读入的目录文件，二级索引记在里面；没有时索引只在内存中登记
+    private volatile File schemaFile;
 
     public Catalog() {
         // some code goes here
@@ -41,6 +46,8 @@ public class Catalog {
         //存储表的相关信息，含有ID等
         public String tableName;
         public final String pk;
+        //表上的二级索引
+        public final List<SecondaryIndex> indexes = new CopyOnWriteArrayList<SecondaryIndex>();
 
         public Table(DbFile file, String name, String pkeyField) {
             dbFile = file;
@@ -185,24 +192,150 @@ public class Catalog {
             return temp_table.tableName;
     }
 
+    /**
+     * Register a secondary index on one of the tables in the catalog. The
+     * index's BTreeFile is also added as a table, under the index's name,
+     * so that its pages can be read through the buffer pool. If the catalog
+     * was read with {@link #loadSchema} and the index is ready, it is also
+     * recorded in the schema file, so that loading the schema again
+     * reattaches it; an index still being built is recorded by
+     * {@link SecondaryIndex#create} once it is ready.
+     * @throws NoSuchElementException if the indexed table doesn't exist
+     * @throws IllegalArgumentException if the indexed table is not a HeapFile
+     */
+    public void addIndex(SecondaryIndex index) {
+        register(index);
+        if (index.isReady())
+            saveIndex(index);
+    }
+
+    private void register(SecondaryIndex index) {
+        Table table = hashTable.get(index.getTableId());
+        if (table == null)
+            throw new NoSuchElementException("Th table doesn't exist!");
+        if (!(table.dbFile instanceof HeapFile))
+            throw new IllegalArgumentException("only HeapFile tables can have secondary indexes");
+        addTable(index.getFile(), index.getName());
+        table.indexes.add(index);
+    }
+
+    /**
+     * @return the secondary indexes on the specified table; empty if it has
+     *     none or doesn't exist
+     */
+    public List<SecondaryIndex> getIndexes(int tableid) {
+        Table table = hashTable.get(tableid);
+        if (table == null)
+            return Collections.emptyList();
+        return table.indexes;
+    }
+
+    /**
+     * Unregister a secondary index, and remove it from the schema file if
+     * it is recorded there. Its BTreeFile stays in the catalog.
+     */
+    public void removeIndex(SecondaryIndex index) {
+        Table table = hashTable.get(index.getTableId());
+        if (table != null)
+            table.indexes.remove(index);
+        if (schemaFile != null && table != null)
+            rewriteSchema(null, indexEntry(index));
+    }
+
+    /**
+     * Record a ready index in the schema file the catalog was loaded from,
+     * if any, as a line <tt>index name on table (field) file</tt>. The
+     * index file is named relative to the schema file's directory when it
+     * is in it.
+     */
+    void saveIndex(SecondaryIndex index) {
+        if (schemaFile != null)
+            rewriteSchema(indexEntry(index), null);
+    }
+
+    private String indexEntry(SecondaryIndex index) {
+        File f = index.getFile().getFile().getAbsoluteFile();
+        String path = f.getParentFile().equals(schemaFile.getAbsoluteFile().getParentFile())
+                ? f.getName() : f.getPath();
+        return "index " + index.getName() + " on " + getTableName(index.getTableId()) + " ("
+                + getTupleDesc(index.getTableId()).getFieldName(index.getField()) + ") " + path;
+    }
+
+    //重写目录文件：加上add这一行（已有则不加），去掉remove这一行
+    private synchronized void rewriteSchema(String add, String remove) {
+        File f = schemaFile;
+        ArrayList<String> lines = new ArrayList<String>();
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(f));
+            try {
+                String line;
+                while ((line = br.readLine()) != null)
+                    if (!line.trim().isEmpty() && !line.equals(remove))
+                        lines.add(line);
+            } finally {
+                br.close();
+            }
+            if (add != null && !lines.contains(add))
+                lines.add(add);
+            File tmp = new File(f.getPath() + ".tmp");
+            PrintWriter out = new PrintWriter(new FileWriter(tmp));
+            for (String line : lines)
+                out.println(line);
+            out.close();
+            if (out.checkError())
+                throw new IOException("could not write " + tmp);
+            if (!tmp.renameTo(f)) {
+                f.delete();
+                if (!tmp.renameTo(f))
+                    throw new IOException("could not replace " + f);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return a secondary index on the given field of the specified table
+     *     that can be read, or null if there is none; an index that is still
+     *     being built is not returned
+     */
+    public SecondaryIndex getIndex(int tableid, int field) {
+        for (SecondaryIndex index : getIndexes(tableid))
+            if (index.getField() == field && index.isReady())
+                return index;
+        return null;
+    }
+
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
 
         hashTable.clear();//直接调用函数
+        schemaFile = null;
     }
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Lines of the form <tt>index name on table (field) file</tt> reattach the
+     * secondary indexes recorded by {@link #addIndex}; an index whose file is
+     * missing is skipped, and must be rebuilt.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
         String line = "";
         String baseFolder=new File(new File(catalogFile).getAbsolutePath()).getParent();
+        ArrayList<String> indexLines = new ArrayList<String>();
         try {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
 
             while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                //索引要等所有表都加进来以后再挂上
+                if (line.startsWith("index ")) {
+                    indexLines.add(line);
+                    continue;
+                }
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
@@ -238,13 +371,41 @@ public class Catalog {
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
+            br.close();
+            for (String l : indexLines) {
+                line = l;
+                loadIndex(line, baseFolder);
+            }
+            schemaFile = new File(catalogFile);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
+        } catch (NoSuchElementException e) {
+            System.out.println ("Invalid catalog entry : " + line);
+            System.exit(0);
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
         }
     }
-}
 
+    //index <名字> on <表> (<列>) <索引文件>
+    private void loadIndex(String line, String baseFolder) {
+        String[] head = line.substring(0, line.indexOf("(")).trim().split("\\s+");
+        String field = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+        String path = line.substring(line.indexOf(")") + 1).trim();
+        if (head.length != 4 || !head[2].equals("on") || path.isEmpty())
+            throw new IndexOutOfBoundsException(line);
+        int tableid = getTableId(head[3]);
+        int fieldNo = getTupleDesc(tableid).fieldNameToIndex(field);
+        File f = new File(path);
+        if (!f.isAbsolute())
+            f = new File(baseFolder, path);
+        if (!f.isFile()) {
+            System.out.println("Missing file " + f + " of index " + head[1] + ", not attached");
+            return;
+        }
+        register(new SecondaryIndex(head[1], tableid, fieldNo, f));
+        System.out.println("Added index : " + head[1] + " on " + head[3] + " (" + field + ")");
+    }
+}
@@ -0,0 +1,405 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * ColumnStats collects the statistics of one column of a table: the number
+ * of values, the smallest and largest value, the number of distinct values,
+ * the most common values with their frequencies, and an
+ * {@link EquiDepthHistogram}.
+ * <p>
+ * Values are fed in with {@link #add}. Besides the exact count, minimum and
+ * maximum, a uniform random sample of at most {@link #SAMPLE_SIZE} values is
+ * kept (reservoir sampling), so memory does not grow with the table. Several
+ * collectors that saw disjoint parts of a table, for example one per worker
+ * thread, are combined with {@link #merge}. The distinct count comes from a
+ * {@link HyperLogLog} sketch, which merges exactly. {@link #finish} then
+ * builds the histogram and the most-common-value list from the sample and
+ * drops it.
+ * <p>
+ * The values added may also be a random sample of a larger table, for
+ * example every row of some randomly chosen pages. {@link #finish(int, long)}
+ * then scales the counts up to the table and extrapolates the distinct
+ * count from how many values the sample saw only once, and
+ * {@link #selectivityBounds} gives a confidence interval that reflects the
+ * sample size.
+ * <p>
+ * Equality is estimated from the most common values if the constant is one
+ * of them, and otherwise by spreading the remaining rows evenly over the
+ * remaining distinct values; ranges are estimated from the histogram.
+ */
+public class ColumnStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Maximum number of values sampled per column. */
+    public static final int SAMPLE_SIZE = 16384;
+
+    /** Maximum number of most common values kept per column. */
+    public static final int MAX_MCV = 20;
+
+    private static final Comparator<Field> ORDER = new Comparator<Field>() {
+        public int compare(Field a, Field b) {
+            return EquiDepthHistogram.compare(a, b);
+        }
+    };
+
+    private final Type type;
+    private long count;
+    private Field min, max;
+    private transient Field[] sample;
+    private transient int sampled;
+    private transient Random random;
+    private final HyperLogLog sketch = new HyperLogLog();
+    private long distinct;
+    private long sampleRows;//finish时实际看到的行数，未抽样时等于count
+    private Field[] mcv = new Field[0];
+    private double[] mcvRows = new double[0];//估计的行数，随增删调整
+    private EquiDepthHistogram histogram;
+
+    /**
+     * @param type
+     *            the type of the column
+     * @param seed
+     *            seed of the random sample, so that statistics are
+     *            reproducible
+     */
+    public ColumnStats(Type type, long seed) {
+        this.type = type;
+        this.sample = new Field[64];
+        this.random = new Random(seed);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** @return the number of values added */
+    public long count() {
+        return count;
+    }
+
+    /** @return the smallest value added, or null if there were none */
+    public Field min() {
+        return min;
+    }
+
+    /** @return the largest value added, or null if there were none */
+    public Field max() {
+        return max;
+    }
+
+    /**
+     * @return the estimated number of distinct values; exact for small
+     *         columns
+     */
+    public long distinctCount() {
+        return distinct;
+    }
+
+    /**
+     * @return the number of rows the statistics were built from; less than
+     *         {@link #count} if they were extrapolated from a sample
+     */
+    public long sampleRows() {
+        return sampleRows;
+    }
+
+    /** @return the most common values, most common first */
+    public Field[] mostCommonValues() {
+        return mcv;
+    }
+
+    /**
+     * @return the fraction of the column taken by each of
+     *         {@link #mostCommonValues}
+     */
+    public double[] mostCommonFrequencies() {
+        double[] f = new double[mcv.length];
+        for (int i = 0; i < f.length; i++)
+            f[i] = count == 0 ? 0.0 : mcvRows[i] / count;
+        return f;
+    }
+
+    /** @return the histogram, or null before {@link #finish} */
+    public EquiDepthHistogram histogram() {
+        return histogram;
+    }
+
+    /** Add one value of the column. */
+    public void add(Field f) {
+        count++;
+        sketch.add(f);
+        if (min == null || EquiDepthHistogram.compare(f, min) < 0)
+            min = StringField.detach(f);
+        if (max == null || EquiDepthHistogram.compare(f, max) > 0)
+            max = StringField.detach(f);
+        if (sampled < SAMPLE_SIZE) {
+            if (sampled == sample.length)
+                sample = Arrays.copyOf(sample, Math.min(SAMPLE_SIZE, 2 * sample.length));
+            sample[sampled++] = StringField.detach(f);
+        } else {
+            //第count个值以SAMPLE_SIZE/count的概率替换样本中的一个
+            long j = (long) (random.nextDouble() * count);
+            if (j < SAMPLE_SIZE)
+                sample[(int) j] = StringField.detach(f);
+        }
+    }
+
+    /**
+     * Combine with the statistics of values other collectors saw. The
+     * merged sample takes values from each side in proportion to how many
+     * values that side saw.
+     */
+    public void merge(ColumnStats o) {
+        if (o.count == 0)
+            return;
+        sketch.merge(o.sketch);
+        if (min == null || EquiDepthHistogram.compare(o.min, min) < 0)
+            min = o.min;
+        if (max == null || EquiDepthHistogram.compare(o.max, max) > 0)
+            max = o.max;
+        int total = (int) Math.min(SAMPLE_SIZE, (long) sampled + o.sampled);
+        int fromThis = (int) Math.round(total * (double) count / (count + o.count));
+        fromThis = Math.max(total - o.sampled, Math.min(sampled, fromThis));
+        Field[] merged = new Field[Math.max(total, 1)];
+        pick(sample, sampled, merged, 0, fromThis);
+        pick(o.sample, o.sampled, merged, fromThis, total - fromThis);
+        sample = merged;
+        sampled = total;
+        count += o.count;
+    }
+
+    //从src的前n个中随机取k个放到dst[off...]，打乱的是src自己
+    private void pick(Field[] src, int n, Field[] dst, int off, int k) {
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(n - i);
+            Field t = src[i];
+            src[i] = src[j];
+            src[j] = t;
+            dst[off + i] = src[i];
+        }
+    }
+
+    /**
+     * Build the histogram from the sample and release the sample. No more
+     * values can be added afterwards.
+     */
+    public void finish(int buckets) {
+        finish(buckets, count);
+    }
+
+    /**
+     * Like {@link #finish(int)}, for values that were a random sample of a
+     * column of tableRows rows: the count becomes tableRows, and the row
+     * counts of the histogram and the most common values are scaled up to
+     * match.
+     */
+    public void finish(int buckets, long tableRows) {
+        sampleRows = count;
+        count = Math.max(count, tableRows);
+        Arrays.sort(sample, 0, sampled, ORDER);
+        histogram = new EquiDepthHistogram(type, sample, sampled, count, buckets, min, max);
+        findMostCommon();
+        sample = null;
+        sampled = 0;
+    }
+
+    /**
+     * Pick the most common values out of the sorted sample: values clearly
+     * more frequent than average, or every value if the sample is the whole
+     * column and it has at most {@link #MAX_MCV} of them.
+     */
+    private void findMostCommon() {
+        int runs = 0;
+        int[] runStart = new int[sampled + 1];
+        for (int i = 0; i < sampled; i++)
+            if (i == 0 || EquiDepthHistogram.compare(sample[i - 1], sample[i]) != 0)
+                runStart[runs++] = i;
+        runStart[runs] = sampled;
+        int singletons = 0;
+        for (int r = 0; r < runs; r++)
+            if (runStart[r + 1] - runStart[r] == 1)
+                singletons++;
+        //样本就是看到的全部行时，样本里的不同值个数是准确的
+        long seen = sampled == sampleRows ? runs
+                : Math.max(runs, Math.min(sampleRows, sketch.estimate()));
+        distinct = extrapolateDistinct(seen, runs == 0 ? 0 : singletons / (double) runs);
+        boolean keepAll = sampled == count && runs <= MAX_MCV;
+        double avg = sampled / (double) Math.max(1, Math.min(distinct, sampled));
+        Integer[] order = new Integer[runs];
+        for (int r = 0; r < runs; r++)
+            order[r] = r;
+        final int[] starts = runStart;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(starts[b + 1] - starts[b], starts[a + 1] - starts[a]);
+            }
+        });
+        int k = 0;
+        while (k < Math.min(runs, MAX_MCV)) {
+            int c = runStart[order[k] + 1] - runStart[order[k]];
+            if (!keepAll && (c < 2 || c <= 1.25 * avg))
+                break;
+            k++;
+        }
+        mcv = new Field[k];
+        mcvRows = new double[k];
+        for (int i = 0; i < k; i++) {
+            mcv[i] = sample[runStart[order[i]]];
+            mcvRows[i] = (runStart[order[i] + 1] - runStart[order[i]]) / (double) sampled * count;
+        }
+    }
+
+    /**
+     * The Duj1 estimator of Haas and Stokes, as used by PostgreSQL's
+     * ANALYZE: with n sampled rows of N, d distinct values among them and f1
+     * of those seen exactly once, D = n d / (n - f1 + f1 n / N).
+     *
+     * @param seen
+     *            the number of distinct values among the sampled rows
+     * @param once
+     *            the fraction of those values seen exactly once
+     */
+    private long extrapolateDistinct(long seen, double once) {
+        if (sampleRows >= count || sampleRows == 0)
+            return seen;
+        double n = sampleRows, f1 = once * seen;
+        double d = n * seen / (n - f1 + f1 * n / count);
+        return Math.max(seen, Math.min(count, Math.round(d)));
+    }
+
+    /**
+     * Account for a row with value f inserted after {@link #finish}. The
+     * count, range, distinct count, most common values and histogram are
+     * all adjusted.
+     */
+    public void insert(Field f) {
+        count++;
+        sketch.add(f);
+        if (min == null || EquiDepthHistogram.compare(f, min) < 0)
+            min = StringField.detach(f);
+        if (max == null || EquiDepthHistogram.compare(f, max) > 0)
+            max = StringField.detach(f);
+        distinct = Math.min(count, Math.max(distinct, sketch.estimate()));
+        for (int i = 0; i < mcv.length; i++)
+            if (EquiDepthHistogram.compare(mcv[i], f) == 0)
+                mcvRows[i]++;
+        if (histogram != null)
+            histogram.insert(StringField.detach(f));
+    }
+
+    /**
+     * Account for a row with value f deleted after {@link #finish}. The
+     * range and distinct count are left alone: they cannot be shrunk without
+     * looking at the other rows.
+     */
+    public void delete(Field f) {
+        if (count == 0)
+            return;
+        count--;
+        for (int i = 0; i < mcv.length; i++)
+            if (EquiDepthHistogram.compare(mcv[i], f) == 0 && mcvRows[i] >= 1)
+                mcvRows[i]--;
+        if (histogram != null)
+            histogram.delete(f);
+    }
+
+    /**
+     * @return the fraction of the column equal to v, from the most common
+     *         values if v is one of them
+     */
+    public double equalitySelectivity(Field v) {
+        if (count == 0)
+            return 0.0;
+        double common = 0;
+        for (int i = 0; i < mcv.length; i++) {
+            if (EquiDepthHistogram.compare(mcv[i], v) == 0)
+                return mcvRows[i] / count;
+            common += mcvRows[i] / count;
+        }
+        long others = distinct - mcv.length;
+        return others <= 0 ? 0.0 : Math.max(0.0, 1.0 - common) / others;
+    }
+    /**
+     * Estimate the fraction of values v for which <tt>v op constant</tt>.
+     */
+    public double estimateSelectivity(Predicate.Op op, Field constant) {
+        if (count == 0)
+            return 0.0;
+        //超出[min, max]的常量不用看直方图
+        int cmin = EquiDepthHistogram.compare(constant, min);
+        int cmax = EquiDepthHistogram.compare(constant, max);
+        if (cmin < 0 || cmax > 0) {
+            switch (op) {
+            case EQUALS:
+            case LIKE:
+                return op == Predicate.Op.LIKE && type == Type.STRING_TYPE
+                        ? EquiDepthHistogram.LIKE_SELECTIVITY : 0.0;
+            case NOT_EQUALS:
+                return 1.0;
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+                return cmax > 0 ? 1.0 : 0.0;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                return cmin < 0 ? 1.0 : 0.0;
+            }
+        }
+        switch (op) {
+        case EQUALS:
+            return equalitySelectivity(constant);
+        case NOT_EQUALS:
+            return 1.0 - equalitySelectivity(constant);
+        case LIKE:
+            if (type == Type.INT_TYPE)
+                return equalitySelectivity(constant);
+            break;
+        default:
+            break;
+        }
+        return histogram.estimateSelectivity(op, constant);
+    }
+
+    /**
+     * A confidence interval for {@link #estimateSelectivity}. Statistics
+     * built from every row get a zero-width interval; for sampled ones it is
+     * the Wilson score interval of a proportion measured on
+     * {@link #sampleRows} rows, narrowed by the finite population
+     * correction. Rows sampled by whole pages are correlated when the table
+     * is clustered on the column, so the interval is then too narrow.
+     *
+     * @param z
+     *            the number of standard deviations, e.g. 1.96 for 95%
+     * @return the lower and upper bound
+     */
+    public double[] selectivityBounds(Predicate.Op op, Field constant, double z) {
+        double p = estimateSelectivity(op, constant);
+        if (sampleRows >= count || sampleRows == 0)
+            return new double[] { p, p };
+        double fpc = count > 1 ? (double) (count - sampleRows) / (count - 1) : 0.0;
+        double n = sampleRows / Math.max(fpc, 1e-9);
+        double z2 = z * z;
+        double center = (p + z2 / (2 * n)) / (1 + z2 / n);
+        double half = z * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n)) / (1 + z2 / n);
+        return new double[] { Math.max(0.0, center - half), Math.min(1.0, center + half) };
+    }
+
+    /** @return the probability that two random values are equal */
+    public double avgSelectivity() {
+        if (count == 0 || histogram == null)
+            return 1.0;
+        double s = 0, common = 0;
+        for (double f : mostCommonFrequencies()) {
+            s += f * f;
+            common += f;
+        }
+        long others = distinct - mcv.length;
+        if (others > 0)
+            s += (1.0 - common) * (1.0 - common) / others;
+        return s;
+    }
+}
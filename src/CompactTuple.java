@@ -0,0 +1,163 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * CompactTuple keeps all of its fields packed in one byte[], for operators
+ * that hold many tuples in memory (the sort buffer of {@link OrderBy}, the
+ * hash table of {@link HashEquiJoin}). A plain Tuple costs a Field[] and one
+ * Field object per column, plus a String for every string column; a
+ * CompactTuple is one object and one byte array.
+ * <p>
+ * The layout is decided once per schema by a {@link Layout}: every INT
+ * field is 4 bytes at a fixed offset at the front, followed by the STRING
+ * fields in column order, each as a 2-byte length and one byte per
+ * character, as on a page. {@link #getField} makes a new Field on every
+ * call; STRING fields refer to the packed bytes rather than decoding them.
+ * {@link #getInt} reads an INT column without creating a Field at all.
+ * <p>
+ * Like {@link JoinedTuple}, setField copies all fields out first, so the
+ * packed bytes never change.
+ */
+public class CompactTuple extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Where each field of a schema lives in the packed bytes. Create one per
+     * operator and use it to pack all of its tuples.
+     */
+    public static class Layout implements java.io.Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TupleDesc td;
+        private final boolean[] isInt;
+        //INT列是绝对偏移，STRING列是它在字符串中的序号
+        private final int[] pos;
+        private final int fixedBytes;
+
+        public Layout(TupleDesc td) {
+            this.td = td;
+            int n = td.numFields();
+            isInt = new boolean[n];
+            pos = new int[n];
+            int ints = 0, strings = 0;
+            for (int i = 0; i < n; i++) {
+                isInt[i] = td.getFieldType(i) == Type.INT_TYPE;
+                pos[i] = isInt[i] ? 4 * ints++ : strings++;
+            }
+            fixedBytes = 4 * ints;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        /**
+         * @return a CompactTuple with the fields and RecordId of t, or t
+         *         itself materialized if some field is missing, does not
+         *         have the type of this layout's schema, or is a string
+         *         with characters that do not fit in a byte
+         */
+        public Tuple pack(Tuple t) {
+            int n = isInt.length;
+            int size = fixedBytes;
+            for (int i = 0; i < n; i++) {
+                Field f = t.getField(i);
+                if (isInt[i] ? !(f instanceof IntField) : !(f instanceof StringField))
+                    return t.materialize();
+                if (!isInt[i]) {
+                    if (!((StringField) f).isLatin1())
+                        return t.materialize();
+                    size += 2 + ((StringField) f).length();
+                }
+            }
+            byte[] data = new byte[size];
+            int o = fixedBytes;
+            for (int i = 0; i < n; i++) {
+                if (isInt[i]) {
+                    putInt(data, pos[i], ((IntField) t.getField(i)).getValue());
+                } else {
+                    StringField f = (StringField) t.getField(i);
+                    int len = f.length();
+                    data[o] = (byte) (len >>> 8);
+                    data[o + 1] = (byte) len;
+                    f.copyBytes(data, o + 2);
+                    o += 2 + len;
+                }
+            }
+            CompactTuple ct = new CompactTuple(this, data);
+            ct.setRecordId(t.getRecordId());
+            return ct;
+        }
+
+        //第k个字符串的起始位置：从定长部分之后逐个跳过前面的字符串
+        private int stringOffset(byte[] data, int k) {
+            int o = fixedBytes;
+            for (int j = 0; j < k; j++)
+                o += 2 + (((data[o] & 0xff) << 8) | (data[o + 1] & 0xff));
+            return o;
+        }
+    }
+
+    private final Layout layout;
+    private final byte[] data;
+    private Field[] copy;//setField之后才有，之后只读这里
+
+    private CompactTuple(Layout layout, byte[] data) {
+        super(layout.td, null);
+        this.layout = layout;
+        this.data = data;
+    }
+
+    /** @return true if field i is an INT that {@link #getInt} can read */
+    public boolean isInt(int i) {
+        return copy == null && layout.isInt[i];
+    }
+
+    /**
+     * @return the value of INT field i, read straight from the packed bytes
+     */
+    public int getInt(int i) {
+        if (copy != null)
+            return ((IntField) copy[i]).getValue();
+        return intAt(data, layout.pos[i]);
+    }
+
+    @Override
+    public Field getField(int i) {
+        if (copy != null)
+            return copy[i];
+        if (layout.isInt[i])
+            return new IntField(intAt(data, layout.pos[i]));
+        int o = layout.stringOffset(data, layout.pos[i]);
+        int len = ((data[o] & 0xff) << 8) | (data[o + 1] & 0xff);
+        return new StringField(data, o + 2, len, Type.STRING_LEN);
+    }
+
+    @Override
+    public void setField(int i, Field f) {
+        if (i < 0 || i >= getTupleDesc().numFields())
+            throw new NoSuchElementException("invalid position!");
+        if (copy == null)
+            copy = toArray();
+        copy[i] = f;
+    }
+
+    /** @return the number of bytes the fields take up when packed */
+    public int packedSize() {
+        return data.length;
+    }
+
+    private static int intAt(byte[] d, int o) {
+        return (d[o] << 24) | ((d[o + 1] & 0xff) << 16) | ((d[o + 2] & 0xff) << 8) | (d[o + 3] & 0xff);
+    }
+
+    private static void putInt(byte[] d, int o, int v) {
+        d[o] = (byte) (v >>> 24);
+        d[o + 1] = (byte) (v >>> 16);
+        d[o + 2] = (byte) (v >>> 8);
+        d[o + 3] = (byte) v;
+    }
+}
@@ -0,0 +1,304 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A {@link Predicate} specialised for the type and operator it compares, so
+ * evaluating it is one small final method with no switch on
+ * {@link Predicate.Op} and no {@link Field#compare} interface call. The JIT
+ * can inline it into the loop that calls it.
+ * <p>
+ * {@link CompiledPredicate.Join} does the same for {@link JoinPredicate}.
+ */
+public abstract class CompiledPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** @return true if t satisfies the predicate */
+    public abstract boolean test(Tuple t);
+
+    /** Compile p into the evaluator for its operand type and operator. */
+    public static CompiledPredicate compile(Predicate p) {
+        int f = p.getField();
+        Field operand = p.getOperand();
+        if (operand instanceof IntField) {
+            int v = ((IntField) operand).getValue();
+            switch (p.getOp()) {
+            case EQUALS:
+            case LIKE:
+                return new IntEquals(f, v);
+            case NOT_EQUALS:
+                return new IntNotEquals(f, v);
+            case LESS_THAN:
+                return new IntLessThan(f, v);
+            case LESS_THAN_OR_EQ:
+                return new IntLessOrEq(f, v);
+            case GREATER_THAN:
+                return new IntGreaterThan(f, v);
+            case GREATER_THAN_OR_EQ:
+                return new IntGreaterOrEq(f, v);
+            }
+        } else if (operand instanceof StringField) {
+            StringField v = (StringField) operand;
+            if (p.getOp() == Predicate.Op.LIKE)
+                return new StringLike(f, v);
+            return new StringCompare(f, p.getOp(), v);
+        }
+        return new Generic(p);
+    }
+
+    //compareTo的结果(<0, 0, >0)分别对应掩码的第0、1、2位
+    static int acceptMask(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+            return 2;
+        case NOT_EQUALS:
+            return 5;
+        case LESS_THAN:
+            return 1;
+        case LESS_THAN_OR_EQ:
+            return 3;
+        case GREATER_THAN:
+            return 4;
+        case GREATER_THAN_OR_EQ:
+            return 6;
+        default:
+            throw new IllegalArgumentException("no ordering for " + op);
+        }
+    }
+
+    static boolean accepts(int mask, int cmp) {
+        return (mask >> (Integer.signum(cmp) + 1) & 1) != 0;
+    }
+
+    private static int intAt(Tuple t, int f) {
+        return ((IntField) t.getField(f)).getValue();
+    }
+
+    //字符串按字节比较，不解码成String
+    private static StringField stringAt(Tuple t, int f) {
+        return (StringField) t.getField(f);
+    }
+
+    static final class IntEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, v;
+
+        IntEquals(int f, int v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return intAt(t, f) == v;
+        }
+    }
+
+    static final class IntNotEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, v;
+
+        IntNotEquals(int f, int v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return intAt(t, f) != v;
+        }
+    }
+
+    static final class IntLessThan extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, v;
+
+        IntLessThan(int f, int v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return intAt(t, f) < v;
+        }
+    }
+
+    static final class IntLessOrEq extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, v;
+
+        IntLessOrEq(int f, int v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return intAt(t, f) <= v;
+        }
+    }
+
+    static final class IntGreaterThan extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, v;
+
+        IntGreaterThan(int f, int v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return intAt(t, f) > v;
+        }
+    }
+
+    static final class IntGreaterOrEq extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, v;
+
+        IntGreaterOrEq(int f, int v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return intAt(t, f) >= v;
+        }
+    }
+
+    static final class StringCompare extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f, mask;
+        private final StringField v;
+
+        StringCompare(int f, Predicate.Op op, StringField v) {
+            this.f = f;
+            this.mask = acceptMask(op);
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return accepts(mask, stringAt(t, f).compareTo(v));
+        }
+    }
+
+    static final class StringLike extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f;
+        private final StringField v;
+
+        StringLike(int f, StringField v) {
+            this.f = f;
+            this.v = v;
+        }
+
+        public boolean test(Tuple t) {
+            return stringAt(t, f).contains(v);
+        }
+    }
+
+    //其他类型的字段，按原来的方式比较
+    static final class Generic extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int f;
+        private final Predicate.Op op;
+        private final Field v;
+
+        Generic(Predicate p) {
+            this.f = p.getField();
+            this.op = p.getOp();
+            this.v = p.getOperand();
+        }
+
+        public boolean test(Tuple t) {
+            return t.getField(f).compare(op, v);
+        }
+    }
+
+    /**
+     * A {@link JoinPredicate} compiled for the type of the fields it
+     * compares.
+     */
+    public static abstract class Join implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** @return true if t1 and t2 satisfy the join predicate */
+        public abstract boolean test(Tuple t1, Tuple t2);
+    }
+
+    /**
+     * Compile p for fields of the given type.
+     */
+    public static Join compile(JoinPredicate p, Type type) {
+        int f1 = p.getField1();
+        int f2 = p.getField2();
+        Predicate.Op op = p.getOperator();
+        if (type == Type.INT_TYPE) {
+            if (op == Predicate.Op.EQUALS || op == Predicate.Op.LIKE)
+                return new IntJoinEquals(f1, f2);
+            return new IntJoinCompare(f1, op, f2);
+        }
+        if (type == Type.STRING_TYPE && op != Predicate.Op.LIKE)
+            return new StringJoinCompare(f1, op, f2);
+        return new GenericJoin(f1, op, f2);
+    }
+
+    static final class IntJoinEquals extends Join {
+        private static final long serialVersionUID = 1L;
+        private final int f1, f2;
+
+        IntJoinEquals(int f1, int f2) {
+            this.f1 = f1;
+            this.f2 = f2;
+        }
+
+        public boolean test(Tuple t1, Tuple t2) {
+            return intAt(t1, f1) == intAt(t2, f2);
+        }
+    }
+
+    static final class IntJoinCompare extends Join {
+        private static final long serialVersionUID = 1L;
+        private final int f1, f2, mask;
+
+        IntJoinCompare(int f1, Predicate.Op op, int f2) {
+            this.f1 = f1;
+            this.f2 = f2;
+            this.mask = acceptMask(op);
+        }
+
+        public boolean test(Tuple t1, Tuple t2) {
+            return accepts(mask, Integer.compare(intAt(t1, f1), intAt(t2, f2)));
+        }
+    }
+
+    static final class StringJoinCompare extends Join {
+        private static final long serialVersionUID = 1L;
+        private final int f1, f2, mask;
+
+        StringJoinCompare(int f1, Predicate.Op op, int f2) {
+            this.f1 = f1;
+            this.f2 = f2;
+            this.mask = acceptMask(op);
+        }
+
+        public boolean test(Tuple t1, Tuple t2) {
+            return accepts(mask, stringAt(t1, f1).compareTo(stringAt(t2, f2)));
+        }
+    }
+
+    static final class GenericJoin extends Join {
+        private static final long serialVersionUID = 1L;
+        private final int f1, f2;
+        private final Predicate.Op op;
+
+        GenericJoin(int f1, Predicate.Op op, int f2) {
+            this.f1 = f1;
+            this.f2 = f2;
+            this.op = op;
+        }
+
+        public boolean test(Tuple t1, Tuple t2) {
+            return t1.getField(f1).compare(op, t2.getField(f2));
+        }
+    }
+}
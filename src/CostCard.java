@@ -11,4 +11,10 @@ public class CostCard {
     public int card;
     /** The optimal subplan */
     public Vector<LogicalJoinNode> plan;
+    /** The last join of the subplan, with inner and outer as it should run */
+    public LogicalJoinNode join;
+    /** The operator chosen for the last join, or null to use the default */
+    public JoinOptimizer.Algorithm algorithm;
+    /** Whether a primary key is joined somewhere in the subplan */
+    public boolean pkey;
 }
@@ -0,0 +1,221 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * An equi-depth histogram over one INT or STRING column. Bucket boundaries
+ * are chosen so that every bucket holds about the same number of rows, so
+ * skewed data gets narrow buckets where the rows are and wide ones where they
+ * are not, unlike the fixed-width {@link IntHistogram}.
+ * <p>
+ * The histogram is built from a sorted sample of the column. Each bucket
+ * records its smallest and largest value, the estimated number of rows it
+ * holds and the number of distinct values in it. {@link #insert} and
+ * {@link #delete} adjust the row counts afterwards, so the histogram follows
+ * changes to the table until it is rebuilt. Within a bucket values are assumed
+ * to be spread evenly: by integer value for INTs, and for STRINGs by the
+ * characters that follow the prefix the bucket's bounds share, so strings
+ * are told apart well beyond their first few characters.
+ */
+public class EquiDepthHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Selectivity assumed for LIKE on strings, which a histogram cannot estimate. */
+    static final double LIKE_SELECTIVITY = 0.1;
+
+    private final Type type;
+    private final Field[] lo;
+    private final Field[] hi;
+    private final double[] rows;
+    private final int[] distinct;
+    private double total;
+
+    /**
+     * @param type
+     *            the type of the column
+     * @param sorted
+     *            a sample of the column in ascending order; the first n
+     *            entries are used
+     * @param n
+     *            the number of values in the sample
+     * @param columnRows
+     *            the number of rows in the whole column
+     * @param buckets
+     *            the maximum number of buckets
+     * @param min
+     *            the smallest value in the whole column, or null to use the
+     *            sample's
+     * @param max
+     *            the largest value in the whole column, or null to use the
+     *            sample's
+     */
+    public EquiDepthHistogram(Type type, Field[] sorted, int n, long columnRows, int buckets,
+            Field min, Field max) {
+        this.type = type;
+        int b = Math.max(0, Math.min(buckets, n));
+        lo = new Field[b];
+        hi = new Field[b];
+        rows = new double[b];
+        total = b == 0 ? 0 : columnRows;
+        distinct = new int[b];
+        for (int i = 0; i < b; i++) {
+            int start = (int) ((long) i * n / b);
+            int end = (int) ((long) (i + 1) * n / b);
+            lo[i] = sorted[start];
+            hi[i] = sorted[end - 1];
+            rows[i] = (double) (end - start) / n * columnRows;
+            int d = 1;
+            for (int j = start + 1; j < end; j++)
+                if (compare(sorted[j - 1], sorted[j]) != 0)
+                    d++;
+            distinct[i] = d;
+        }
+        //样本未必含有真正的最小、最大值，把两端的桶放宽到整列的范围
+        if (b > 0 && min != null && compare(min, lo[0]) < 0)
+            lo[0] = min;
+        if (b > 0 && max != null && compare(max, hi[b - 1]) > 0)
+            hi[b - 1] = max;
+    }
+
+    /** @return the number of buckets */
+    public int numBuckets() {
+        return lo.length;
+    }
+
+    //v所在的桶；落在两个桶之间时取后一个，超出两端时取两端的桶
+    private int bucketOf(Field v) {
+        for (int i = 0; i < lo.length; i++)
+            if (compare(v, hi[i]) <= 0)
+                return i;
+        return lo.length - 1;
+    }
+
+    /**
+     * Account for one more row with value v, widening the first or last
+     * bucket if v lies outside the histogram. Does nothing if the histogram
+     * has no buckets.
+     */
+    public void insert(Field v) {
+        if (lo.length == 0)
+            return;
+        int b = bucketOf(v);
+        if (compare(v, lo[b]) < 0)
+            lo[b] = v;
+        if (compare(v, hi[b]) > 0)
+            hi[b] = v;
+        rows[b]++;
+        total++;
+    }
+
+    /** Account for one row with value v having been removed. */
+    public void delete(Field v) {
+        if (lo.length == 0)
+            return;
+        int b = bucketOf(v);
+        if (rows[b] >= 1) {
+            rows[b]--;
+            total--;
+        }
+    }
+
+    static int compare(Field a, Field b) {
+        if (a instanceof IntField)
+            return Integer.compare(((IntField) a).getValue(), ((IntField) b).getValue());
+        return ((StringField) a).compareTo((StringField) b);
+    }
+
+    /**
+     * Fraction of the values in [lo, hi] that are less than v, for
+     * lo <= v <= hi, assuming they are spread evenly.
+     */
+    static double position(Field lo, Field hi, Field v) {
+        if (lo instanceof IntField) {
+            long l = ((IntField) lo).getValue();
+            long h = ((IntField) hi).getValue();
+            return (((IntField) v).getValue() - l) / (double) (h - l + 1);
+        }
+        String a = ((StringField) lo).getValue();
+        String b = ((StringField) hi).getValue();
+        String c = ((StringField) v).getValue();
+        //lo和hi共同的前缀v也有，只用后面的字符插值
+        int p = 0;
+        while (p < a.length() && p < b.length() && a.charAt(p) == b.charAt(p))
+            p++;
+        double ka = key(a, p), kb = key(b, p), kc = key(c, p);
+        if (kb <= ka)
+            return 0.0;
+        return Math.max(0.0, Math.min(1.0, (kc - ka) / (kb - ka)));
+    }
+
+    //从第p个字符起的6个字符，当作[0,1)中的256进制小数
+    private static double key(String s, int p) {
+        double k = 0, scale = 1.0 / 256;
+        for (int i = p; i < p + 6; i++) {
+            int c = i < s.length() ? Math.min(255, s.charAt(i)) : 0;
+            k += c * scale;
+            scale /= 256;
+        }
+        return k;
+    }
+
+    /**
+     * Estimate the fraction of rows for which <tt>column op v</tt> holds.
+     */
+    public double estimateSelectivity(Predicate.Op op, Field v) {
+        if (op == Predicate.Op.LIKE && type == Type.STRING_TYPE)
+            return LIKE_SELECTIVITY;
+        if (total <= 0)
+            return 0.0;
+        double lt = 0, eq = 0;
+        for (int i = 0; i < lo.length; i++) {
+            double frac = rows[i] / total;
+            if (compare(hi[i], v) < 0) {
+                lt += frac;
+            } else if (compare(lo[i], v) <= 0) {
+                eq += frac / distinct[i];
+                lt += frac * position(lo[i], hi[i], v);
+            } else
+                break;
+        }
+        lt = Math.min(1.0, lt);
+        eq = Math.min(1.0 - lt, eq);
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return eq;
+        case NOT_EQUALS:
+            return 1.0 - eq;
+        case LESS_THAN:
+            return lt;
+        case LESS_THAN_OR_EQ:
+            return lt + eq;
+        case GREATER_THAN:
+            return Math.max(0.0, 1.0 - lt - eq);
+        case GREATER_THAN_OR_EQ:
+            return Math.max(0.0, 1.0 - lt);
+        }
+        throw new IllegalArgumentException("unknown operator " + op);
+    }
+
+    /**
+     * @return the probability that two random rows have equal values in
+     *         this column
+     */
+    public double avgSelectivity() {
+        if (total <= 0)
+            return 1.0;
+        double s = 0;
+        for (int i = 0; i < lo.length; i++)
+            s += (rows[i] / total) * (rows[i] / total) / distinct[i];
+        return s;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EquiDepthHistogram");
+        for (int i = 0; i < lo.length; i++)
+            sb.append(i == 0 ? " " : ", ").append('[').append(lo[i]).append(", ")
+                    .append(hi[i]).append("] ").append(String.format("%.1f", rows[i]));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,282 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Exchange runs a plan fragment on several worker threads and hands the
+ * tuples they produce to the single thread that pulls from it, so the rest
+ * of the plan stays an ordinary pull-based (Volcano) iterator tree.
+ * <p>
+ * The fragment must be a chain of {@link Filter}s and {@link Project}s over
+ * a {@link SeqScan} of a {@link HeapFile}. Each worker gets its own copy of
+ * the chain whose leaf is a {@link MorselScan}; the workers share one
+ * {@link ParallelScan}, so together they read every page exactly once. The
+ * tuples flow back through a bounded queue, which stalls the workers when
+ * the consumer falls behind. Output order is not preserved.
+ * <p>
+ * If the fragment has any other shape, or parallelism is 1, Exchange simply
+ * passes the tuples of the fragment through.
+ */
+public class Exchange extends Operator implements BloomFilterTarget {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Tables with fewer pages than this are not worth scanning in parallel. */
+    public static final int MIN_PARALLEL_PAGES = 64;
+
+    /** Capacity of the queue between the workers and the consumer. */
+    static final int QUEUE_CAPACITY = 1024;
+
+    //工作线程结束时放入队列的标记
+    private static final Tuple END = new Tuple(new TupleDesc(new Type[] { Type.INT_TYPE }));
+
+    private OpIterator child;
+    private final int parallelism;
+
+    private int bloomField = -1;
+    private BloomFilter bloomFilter = null;
+
+    private transient boolean serial;
+    private transient SeqScan leaf;
+    private transient ParallelScan scan;
+    private transient boolean started;
+    private transient BlockingQueue<Tuple> queue;
+    private transient ExecutorService pool;
+    private transient volatile boolean stopped;
+    private transient int running;
+    private transient AtomicReference<Throwable> failure;
+
+    /**
+     * @param child
+     *            the fragment to run in parallel
+     * @param parallelism
+     *            the number of worker threads
+     */
+    public Exchange(OpIterator child, int parallelism) {
+        this.child = child;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** @return true if child has a shape Exchange can run in parallel */
+    public static boolean canParallelize(OpIterator child) {
+        return leafScan(child) != null;
+    }
+
+    //沿着Filter/Project链找到最底下的SeqScan，且必须是HeapFile
+    private static SeqScan leafScan(OpIterator op) {
+        while (op instanceof Filter || op instanceof Project)
+            op = ((Operator) op).getChildren()[0];
+        if (!(op instanceof SeqScan))
+            return null;
+        SeqScan ss = (SeqScan) op;
+        if (!(Database.getCatalog().getDatabaseFile(ss.getTableId()) instanceof HeapFile))
+            return null;
+        return ss;
+    }
+
+    /** Copy the Filter/Project chain above the scan onto a new leaf. */
+    private static OpIterator copyFragment(OpIterator op, OpIterator leaf) {
+        if (op instanceof Filter) {
+            Filter f = (Filter) op;
+            return new Filter(f.getPredicates(), copyFragment(f.getChildren()[0], leaf));
+        }
+        if (op instanceof Project) {
+            Project p = (Project) op;
+            TupleDesc td = p.getTupleDesc();
+            Type[] types = new Type[td.numFields()];
+            for (int i = 0; i < types.length; i++)
+                types[i] = td.getFieldType(i);
+            return new Project(p.getOutFieldIds(), types,
+                    copyFragment(p.getChildren()[0], leaf));
+        }
+        return leaf;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        leaf = leafScan(child);
+        serial = parallelism == 1 || leaf == null;
+        if (serial)
+            child.open();
+        //工作线程在第一次取tuple时才启动，只打开不读的父节点（如并行聚合）不浪费IO
+        started = false;
+        super.open();
+    }
+
+    private void startWorkers() {
+        HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(leaf.getTableId());
+        scan = new ParallelScan(leaf.getTransactionId(), file);
+        int workers = Math.max(1, Math.min(parallelism, scan.numMorsels()));
+        queue = new ArrayBlockingQueue<Tuple>(QUEUE_CAPACITY);
+        failure = new AtomicReference<Throwable>();
+        stopped = false;
+        running = workers;
+        pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "exchange-worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (int i = 0; i < workers; i++) {
+            final OpIterator pipeline = copyFragment(child,
+                    new MorselScan(scan, leaf.getTupleDesc()));
+            pool.submit(new Runnable() {
+                public void run() {
+                    try {
+                        pipeline.open();
+                        while (!stopped && pipeline.hasNext())
+                            put(pipeline.next());
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        pipeline.close();
+                        put(END);
+                    }
+                }
+            });
+        }
+    }
+
+    //队列满时等待，但消费者关闭后立即放弃
+    private void put(Tuple t) {
+        try {
+            while (!stopped) {
+                if (queue.offer(t, 10, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopWorkers() {
+        stopped = true;
+        if (pool != null) {
+            pool.shutdownNow();
+            queue.clear();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool = null;
+        queue = null;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (serial) {
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                if (passesBloomFilter(t))
+                    return t;
+            }
+            return null;
+        }
+        if (!started) {
+            startWorkers();
+            started = true;
+        }
+        while (running > 0) {
+            Tuple t;
+            try {
+                t = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException("interrupted while waiting for exchange workers");
+            }
+            if (t == END) {
+                running--;
+                rethrowFailure();
+                continue;
+            }
+            if (passesBloomFilter(t))
+                return t;
+        }
+        return null;
+    }
+
+    private void rethrowFailure() throws DbException, TransactionAbortedException {
+        Throwable e = failure.get();
+        if (e == null)
+            return;
+        stopWorkers();
+        running = 0;
+        if (e instanceof DbException)
+            throw (DbException) e;
+        if (e instanceof TransactionAbortedException)
+            throw (TransactionAbortedException) e;
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        throw new DbException("exchange worker failed: " + e);
+    }
+
+    /**
+     * Drop tuples whose value of field cannot be in bf. The filter is
+     * checked as tuples leave the exchange.
+     */
+    public boolean setBloomFilter(int field, BloomFilter bf) {
+        this.bloomField = field;
+        this.bloomFilter = bf;
+        return true;
+    }
+
+    private boolean passesBloomFilter(Tuple t) {
+        return bloomFilter == null || bloomFilter.mightContain(t.getField(bloomField));
+    }
+
+    /**
+     * Stop the workers and give back the read locks the scan has taken so
+     * far, for {@link Limit}. The exchange returns no more tuples until it
+     * is rewound.
+     */
+    public void releaseReadLocks() {
+        if (serial) {
+            Limit.releaseReadLocks(child);
+            return;
+        }
+        stopWorkers();
+        running = 0;
+        if (scan != null)
+            scan.releaseReadLocks();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (serial) {
+            child.rewind();
+            return;
+        }
+        stopWorkers();
+        started = false;
+    }
+
+    public void close() {
+        super.close();
+        if (serial)
+            child.close();
+        else
+            stopWorkers();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
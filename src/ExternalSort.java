@@ -0,0 +1,277 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ExternalSort sorts a stream of tuples using a bounded amount of memory.
+ * <p>
+ * Tuples are collected with {@link #add} until the memory budget is used up;
+ * the buffer is then sorted and written to a {@link SpillFile} as one sorted
+ * run. After {@link #sort} the runs are combined with a k-way merge driven by
+ * a loser tree. If there are more than {@link #MAX_FAN_IN} runs they are
+ * first merged in several passes. When all input fits in memory nothing is
+ * written to disk and the result is simply the sorted buffer.
+ * <p>
+ * The sort is stable: tuples that compare equal come out in input order.
+ */
+public class ExternalSort {
+
+    /** Default memory budget, in bytes, for the in-memory buffer. */
+    public static final long DEFAULT_MEMORY_BYTES = 16L << 20;
+
+    /** Maximum number of runs merged at once. */
+    static final int MAX_FAN_IN = 64;
+
+    private final TupleDesc td;
+    private final Comparator<Tuple> cmp;
+    private final CompactTuple.Layout layout;
+    private final long maxBufferedTuples;
+
+    private ArrayList<Tuple> buffer = new ArrayList<Tuple>();
+    private ArrayList<SpillFile> runs = new ArrayList<SpillFile>();
+    private boolean sorted = false;
+
+    /**
+     * @param td
+     *            the schema of the tuples being sorted
+     * @param cmp
+     *            the sort order
+     * @param memoryBytes
+     *            approximately how much memory the in-memory buffer may use
+     */
+    public ExternalSort(TupleDesc td, Comparator<Tuple> cmp, long memoryBytes) {
+        this.td = td;
+        this.cmp = cmp;
+        this.layout = new CompactTuple.Layout(td);
+        this.maxBufferedTuples = Math.max(2, memoryBytes / estimateTupleBytes(td));
+    }
+
+    public ExternalSort(TupleDesc td, Comparator<Tuple> cmp) {
+        this(td, cmp, DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Rough heap footprint of one buffered tuple of schema td: the buffer
+     * keeps {@link CompactTuple}s, so one object and one byte array on top of
+     * the packed data, which is never larger than the on-disk size.
+     */
+    static long estimateTupleBytes(TupleDesc td) {
+        return 48 + td.getSize();
+    }
+
+    /**
+     * Add a tuple to the input; spills a sorted run if the buffer is full.
+     * The tuple is copied into a {@link CompactTuple}, so t may be a view or
+     * be reused by the caller afterwards.
+     */
+    public void add(Tuple t) throws DbException {
+        if (sorted)
+            throw new IllegalStateException("sort() already called");
+        buffer.add(layout.pack(t));
+        if (buffer.size() >= maxBufferedTuples)
+            spillBuffer();
+    }
+
+    /** Signal the end of input and prepare the runs for merging. */
+    public void sort() throws DbException {
+        if (sorted)
+            return;
+        Collections.sort(buffer, cmp);
+        //内存中剩余的一段作为最后一个run，不写盘
+        while (runs.size() + (buffer.isEmpty() ? 0 : 1) > MAX_FAN_IN)
+            mergePass();
+        sorted = true;
+    }
+
+    /** @return true if some of the input had to be written to disk */
+    public boolean isSpilled() {
+        return !runs.isEmpty();
+    }
+
+    /** @return the number of sorted runs currently on disk */
+    public int numRuns() {
+        return runs.size();
+    }
+
+    /**
+     * @return a new iterator over the sorted tuples. May be called more than
+     *         once (e.g. to implement rewind); each call starts from the
+     *         smallest tuple.
+     */
+    public SortedIterator iterator() throws DbException {
+        if (!sorted)
+            sort();
+        ArrayList<Source> sources = new ArrayList<Source>();
+        for (SpillFile run : runs)
+            sources.add(new RunSource(run.openReader()));
+        if (!buffer.isEmpty())
+            sources.add(new ListSource(buffer));
+        if (sources.size() == 1)
+            return new SortedIterator(sources.get(0));
+        return new SortedIterator(new LoserTree(sources, cmp));
+    }
+
+    /** Release the buffer and delete all runs from disk. */
+    public void close() {
+        for (SpillFile run : runs)
+            run.delete();
+        runs.clear();
+        buffer = new ArrayList<Tuple>();
+        sorted = false;
+    }
+
+    private void spillBuffer() throws DbException {
+        Collections.sort(buffer, cmp);
+        SpillFile run = new SpillFile(td);
+        for (Tuple t : buffer)
+            run.append(t);
+        run.finishWriting();
+        runs.add(run);
+        buffer = new ArrayList<Tuple>();
+    }
+
+    //把最早的MAX_FAN_IN个run合并成一个，保持run的先后顺序以保证稳定
+    private void mergePass() throws DbException {
+        int n = Math.min(MAX_FAN_IN, runs.size());
+        ArrayList<Source> sources = new ArrayList<Source>();
+        for (int i = 0; i < n; i++)
+            sources.add(new RunSource(runs.get(i).openReader()));
+        LoserTree lt = new LoserTree(sources, cmp);
+        SpillFile merged = new SpillFile(td);
+        Tuple t;
+        while ((t = lt.next()) != null)
+            merged.append(t);
+        lt.close();
+        merged.finishWriting();
+        for (int i = 0; i < n; i++)
+            runs.get(i).delete();
+        runs.subList(0, n).clear();
+        runs.add(0, merged);
+    }
+
+    /** Iterator over the output of the sort. */
+    public static class SortedIterator {
+        private final Source src;
+
+        private SortedIterator(Source src) {
+            this.src = src;
+        }
+
+        /** @return the next tuple in sorted order, or null when done */
+        public Tuple next() throws DbException {
+            return src.next();
+        }
+
+        public void close() {
+            src.close();
+        }
+    }
+
+    private interface Source {
+        Tuple next() throws DbException;
+
+        void close();
+    }
+
+    private static class ListSource implements Source {
+        private final Iterator<Tuple> it;
+
+        ListSource(List<Tuple> l) {
+            it = l.iterator();
+        }
+
+        public Tuple next() {
+            return it.hasNext() ? it.next() : null;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static class RunSource implements Source {
+        private final SpillFile.Reader reader;
+
+        RunSource(SpillFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        public Tuple next() throws DbException {
+            return reader.next();
+        }
+
+        public void close() {
+            reader.close();
+        }
+    }
+
+    /**
+     * Tournament tree of losers over k sorted sources. tree[0] holds the index
+     * of the current winner (smallest head); every other node holds the loser
+     * of the match played there, so replacing the winner only replays the
+     * log2(k) matches on its path to the root.
+     */
+    private static class LoserTree implements Source {
+        private final Source[] sources;
+        private final Tuple[] heads;
+        private final int[] tree;
+        private final int k;
+        private final Comparator<Tuple> cmp;
+
+        LoserTree(List<Source> srcs, Comparator<Tuple> cmp) throws DbException {
+            this.k = srcs.size();
+            this.cmp = cmp;
+            this.sources = srcs.toArray(new Source[k]);
+            this.heads = new Tuple[k];
+            this.tree = new int[Math.max(k, 1)];
+            for (int i = 0; i < k; i++)
+                heads[i] = sources[i].next();
+            //初始时所有结点都放哨兵k，哨兵比任何元素都小
+            Arrays.fill(tree, k);
+            for (int i = k - 1; i >= 0; i--)
+                adjust(i);
+        }
+
+        //a是否输给b：a更大，或者相等但来自更靠后的source（保证稳定）
+        private boolean loses(int a, int b) {
+            if (a == k)
+                return false;
+            if (b == k)
+                return true;
+            Tuple ta = heads[a], tb = heads[b];
+            if (ta == null)
+                return tb != null || a > b;
+            if (tb == null)
+                return false;
+            int c = cmp.compare(ta, tb);
+            return c > 0 || (c == 0 && a > b);
+        }
+
+        private void adjust(int s) {
+            for (int t = (s + k) / 2; t > 0; t /= 2) {
+                if (loses(s, tree[t])) {
+                    int tmp = s;
+                    s = tree[t];
+                    tree[t] = tmp;
+                }
+            }
+            tree[0] = s;
+        }
+
+        public Tuple next() throws DbException {
+            if (k == 0)
+                return null;
+            int w = tree[0];
+            Tuple result = heads[w];
+            if (result == null)
+                return null;
+            heads[w] = sources[w].next();
+            adjust(w);
+            return result;
+        }
+
+        public void close() {
+            for (Source s : sources)
+                s.close();
+        }
+    }
+}
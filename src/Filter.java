@@ -7,13 +7,34 @@ import java.util.*;
 /**
  * Filter is an operator that implements a relational select.
  * 用Predicate类比较单个field，然后过滤tuple
+ * <p>
+ * A Filter may hold a conjunction of predicates, evaluated in one pass with
+ * short-circuiting. While it runs it samples every
+ * {@link #SAMPLE_INTERVAL}th tuple against all predicates to measure each
+ * one's selectivity and cost, and periodically reorders them so that the
+ * predicate with the lowest cost / (1 - selectivity) runs first.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BloomFilterTarget {
 
     private static final long serialVersionUID = 1L;
 
+    /** One tuple in this many is evaluated against every predicate and timed. */
+    static final int SAMPLE_INTERVAL = 64;
+
+    /** Predicates are reordered after this many input tuples. */
+    static final int REORDER_INTERVAL = 4096;
+
     Predicate p;//用于对指定field判断，从而过滤tuple
+    private final Predicate[] preds;//合取的所有谓词，按给定的顺序
     OpIterator child;//迭代器，用于read需要过滤的tuples
+    //自适应排序：order是当前的求值顺序，统计量按preds的下标记录
+    private transient CompiledPredicate[] tests;
+    private transient int[] order;
+    private transient long[] sampled, passed, nanos;
+    private transient long seen;
+    //hash join下推的运行时过滤器，子节点无法接收时由本节点判断
+    private int bloomField = -1;
+    private BloomFilter bloomFilter = null;
 
     /**
      * Constructor accepts a predicate to apply and a child operator to read
@@ -28,14 +49,45 @@ public class Filter extends Operator {
         // some code goes here
 
         this.p=p;
+        this.preds=new Predicate[]{p};
         this.child=child;
     }
 
+    /**
+     * Constructor for a conjunction: a tuple passes if it satisfies every
+     * predicate.
+     *
+     * @param preds
+     *            The predicates, at least one
+     * @param child
+     *            The child operator
+     */
+    public Filter(List<Predicate> preds, OpIterator child) {
+        if(preds.isEmpty())
+            throw new IllegalArgumentException("a Filter needs at least one predicate");
+        this.p=preds.get(0);
+        this.preds=preds.toArray(new Predicate[preds.size()]);
+        this.child=child;
+    }
+
+    /**
+     * @return the first predicate; see {@link #getPredicates} for all of them
+     */
     public Predicate getPredicate() {
         // some code goes here
         return p;
     }
 
+    /** @return all the predicates of the conjunction, in the given order */
+    public List<Predicate> getPredicates() {
+        return Arrays.asList(preds);
+    }
+
+    /** @return the indexes into {@link #getPredicates} in evaluation order */
+    int[] getEvaluationOrder() {
+        return order.clone();
+    }
+
     public TupleDesc getTupleDesc() {
         // some code goes here
         return child.getTupleDesc();
@@ -48,6 +100,16 @@ public class Filter extends Operator {
         //先执行父类open，在继承的hasNext中会调用判断
         super.open();
         child.open();
+        tests=new CompiledPredicate[preds.length];
+        order=new int[preds.length];
+        for(int i=0;i<preds.length;i++){
+            tests[i]=preds[i].compile();
+            order[i]=i;
+        }
+        sampled=new long[preds.length];
+        passed=new long[preds.length];
+        nanos=new long[preds.length];
+        seen=0;
     }
 
     public void close() {
@@ -84,7 +146,13 @@ public class Filter extends Operator {
         while(child.hasNext()) {
             Tuple temp=child.next();
             //执行.next时迭代器自动往后跳一位
-            if(p.filter(temp))
+            if(bloomFilter!=null&&!bloomFilter.mightContain(temp.getField(bloomField)))
+                continue;
+            if(preds.length==1){
+                if(tests[0].test(temp))
+                    return temp;
+            }
+            else if(passes(temp))
                 return temp;
             if(child==null)
                 return null;
@@ -92,6 +160,68 @@ public class Filter extends Operator {
         return null;
     }
 
+    private boolean passes(Tuple t) {
+        seen++;
+        if(seen%REORDER_INTERVAL==0)
+            reorder();
+        if(seen%SAMPLE_INTERVAL==0)
+            return sample(t);
+        for(int i:order)
+            if(!tests[i].test(t))
+                return false;
+        return true;
+    }
+
+    //抽样的tuple对每个谓词都求值（不短路），这样每个谓词的选择率互不影响
+    private boolean sample(Tuple t) {
+        boolean all=true;
+        for(int i=0;i<tests.length;i++){
+            long start=System.nanoTime();
+            boolean ok=tests[i].test(t);
+            nanos[i]+=System.nanoTime()-start;
+            sampled[i]++;
+            if(ok)
+                passed[i]++;
+            else
+                all=false;
+        }
+        return all;
+    }
+
+    //按 代价/(1-选择率) 从小到大排序：便宜且能过滤掉更多tuple的谓词先执行
+    private void reorder() {
+        final double[] rank=new double[tests.length];
+        for(int i=0;i<tests.length;i++){
+            double sel=(passed[i]+1.0)/(sampled[i]+2.0);
+            double cost=(nanos[i]+1.0)/(sampled[i]+1.0);
+            rank[i]=cost/(1-sel);
+        }
+        Integer[] idx=new Integer[tests.length];
+        for(int i=0;i<idx.length;i++)
+            idx[i]=order[i];
+        Arrays.sort(idx,new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(rank[a],rank[b]);
+            }
+        });
+        for(int i=0;i<idx.length;i++)
+            order[i]=idx[i];
+    }
+
+    /**
+     * Filter keeps its child's TupleDesc, so a pushed-down filter is handed on
+     * to the child when it can take it and evaluated here otherwise.
+     */
+    public boolean setBloomFilter(int field, BloomFilter bf) {
+        if(BloomFilter.pushDown(child,field,bf)){
+            this.bloomFilter=null;
+            return true;
+        }
+        this.bloomField=field;
+        this.bloomFilter=bf;
+        return true;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
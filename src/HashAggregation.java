@@ -0,0 +1,279 @@
+package simpledb;
+
+/**
+ * HashAggregation groups (key, value) pairs in an {@link AggregateHashTable}
+ * under a memory budget.
+ * <p>
+ * While the number of groups fits the budget everything stays in memory.
+ * After that, values for groups already in the table keep being aggregated
+ * in place, but new groups are hash-partitioned into
+ * {@link #NUM_PARTITIONS} {@link SpillFile}s as partial states (count, sum,
+ * min, max), so that rows and partial aggregates spill the same way. When the result is read the
+ * in-memory groups come first; then each partition is aggregated on its own,
+ * again under the same budget, and streamed out before the next one is
+ * loaded. A partition that is still too large is partitioned again with a
+ * different hash, so memory stays bounded however many groups there are.
+ * <p>
+ * Rows must not be added once a {@link Cursor} has been opened on a spilled
+ * aggregation.
+ */
+public class HashAggregation {
+
+    /** Default memory budget, in bytes, for the in-memory groups. */
+    public static final long DEFAULT_MEMORY_BYTES = 16L << 20;
+
+    /** Number of files rows are split into once memory runs out. */
+    static final int NUM_PARTITIONS = 16;
+
+    //分区层数的上限，超过后不再分区，只能留在内存里
+    private static final int MAX_LEVEL = 6;
+
+    private final Type keyType;
+    private final long memoryBytes;
+    private final int level;
+    private final int maxGroups;
+    private final TupleDesc spillTd;
+    private AggregateHashTable table;
+    private SpillFile[] partitions;
+
+    /**
+     * @param keyType
+     *            the type of the group-by value, or null for no grouping
+     * @param memoryBytes
+     *            approximately how much memory the in-memory groups may use
+     */
+    public HashAggregation(Type keyType, long memoryBytes) {
+        this(keyType, memoryBytes, 0);
+    }
+
+    private HashAggregation(Type keyType, long memoryBytes, int level) {
+        this.keyType = keyType;
+        this.memoryBytes = memoryBytes;
+        this.level = level;
+        this.maxGroups = (int) Math.max(16, Math.min(Integer.MAX_VALUE / 2,
+                memoryBytes / AggregateHashTable.bytesPerGroup(keyType)));
+        //写盘的是每组的部分状态：key, count, sum高32位, sum低32位, min, max
+        this.spillTd = keyType == null ? null
+                : new TupleDesc(new Type[] { keyType, Type.INT_TYPE,
+                        Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE,
+                        Type.INT_TYPE });
+        this.table = new AggregateHashTable(keyType);
+    }
+
+    /** @return true if some rows had to be written to disk */
+    public boolean isSpilled() {
+        return partitions != null;
+    }
+
+    /** @return the number of groups held in memory at this level */
+    public int numInMemoryGroups() {
+        return table.numGroups();
+    }
+
+    /**
+     * Add one value to the group of key.
+     *
+     * @param key
+     *            the group-by value, or null for no grouping
+     */
+    public void add(Field key, int value) throws DbException {
+        if (keyType == Type.INT_TYPE) {
+            add(((IntField) key).getValue(), value);
+            return;
+        }
+        int g = table.find(key);
+        if (g < 0) {
+            if (mustSpill()) {
+                spill(key, key.hashCode(), 1, value, value, value);
+                return;
+            }
+            g = table.findOrInsert(key);
+        }
+        table.add(g, value);
+    }
+
+    /**
+     * Combine the partial state of a group (e.g. from another
+     * HashAggregation) into the group of key.
+     */
+    public void addState(Field key, long count, long sum, long min, long max)
+            throws DbException {
+        int g = table.find(key);
+        if (g < 0) {
+            if (mustSpill()) {
+                spill(key, key.hashCode(), count, sum, min, max);
+                return;
+            }
+            g = table.findOrInsert(key);
+        }
+        table.merge(g, count, sum, min, max);
+    }
+
+    /**
+     * Merge every group of other into this aggregation. Used to combine
+     * partial aggregates computed in parallel over disjoint inputs.
+     */
+    public void merge(HashAggregation other) throws DbException {
+        Cursor c = other.cursor();
+        try {
+            while (c.next())
+                addState(c.key(), c.count(), c.sum(), c.min(), c.max());
+        } finally {
+            c.close();
+        }
+    }
+
+    /** Specialised {@link #add(Field, int)} for INT_TYPE keys. */
+    public void add(int key, int value) throws DbException {
+        int g = table.find(key);
+        if (g < 0) {
+            if (mustSpill()) {
+                spill(new IntField(key), key, 1, value, value, value);
+                return;
+            }
+            g = table.findOrInsert(key);
+        }
+        table.add(g, value);
+    }
+
+    //只有出现新的组并且内存已满时才写盘；没有分组时只有一个组，永远不用写盘
+    private boolean mustSpill() {
+        return keyType != null && level < MAX_LEVEL
+                && table.numGroups() >= maxGroups;
+    }
+
+    private void spill(Field key, int hash, long count, long sum, long min,
+            long max) throws DbException {
+        if (partitions == null)
+            partitions = new SpillFile[NUM_PARTITIONS];
+        int p = partitionOf(hash, level);
+        if (partitions[p] == null)
+            partitions[p] = new SpillFile(spillTd);
+        Tuple t = new Tuple(spillTd);
+        t.setField(0, key);
+        t.setField(1, new IntField((int) count));
+        t.setField(2, new IntField((int) (sum >>> 32)));
+        t.setField(3, new IntField((int) sum));
+        //聚合的值都是int，非空组的min/max一定在int范围内
+        t.setField(4, new IntField((int) min));
+        t.setField(5, new IntField((int) max));
+        partitions[p].append(t);
+    }
+
+    //每一层用不同的种子，这样下一层能把同一个分区继续拆开
+    static int partitionOf(int hash, int level) {
+        int h = hash * 0x9E3779B9 + level * 0x7F4A7C15;
+        h ^= h >>> 15;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return (h >>> 16) % NUM_PARTITIONS;
+    }
+
+    /** @return a new cursor over all groups, starting at the first */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Release the in-memory groups and delete all partitions from disk. */
+    public void close() {
+        table = new AggregateHashTable(keyType);
+        if (partitions != null)
+            for (SpillFile f : partitions)
+                if (f != null)
+                    f.delete();
+        partitions = null;
+    }
+
+    private HashAggregation loadPartition(SpillFile f) throws DbException {
+        HashAggregation sub = new HashAggregation(keyType, memoryBytes, level + 1);
+        SpillFile.Reader r = f.openReader();
+        try {
+            Tuple t;
+            while ((t = r.next()) != null) {
+                long sum = ((long) intAt(t, 2) << 32) | (intAt(t, 3) & 0xFFFFFFFFL);
+                sub.addState(t.getField(0), intAt(t, 1), sum, intAt(t, 4),
+                        intAt(t, 5));
+            }
+        } finally {
+            r.close();
+        }
+        return sub;
+    }
+
+    private static int intAt(Tuple t, int i) {
+        return ((IntField) t.getField(i)).getValue();
+    }
+
+    /**
+     * Cursor over the final groups: first the groups held in memory, then
+     * those of each partition in turn.
+     */
+    public class Cursor {
+        private int g = -1;
+        private int part = -1;
+        private HashAggregation sub;
+        private Cursor subCursor;
+
+        private Cursor() {
+        }
+
+        /** Move to the next group; @return false when there are no more */
+        public boolean next() throws DbException {
+            if (part < 0) {
+                if (++g < table.numGroups())
+                    return true;
+                part = 0;
+            }
+            while (partitions != null && part < partitions.length) {
+                if (subCursor == null) {
+                    if (partitions[part] == null) {
+                        part++;
+                        continue;
+                    }
+                    sub = loadPartition(partitions[part]);
+                    subCursor = sub.cursor();
+                }
+                if (subCursor.next())
+                    return true;
+                sub.close();
+                sub = null;
+                subCursor = null;
+                part++;
+            }
+            return false;
+        }
+
+        /** @return the group-by value of the current group */
+        public Field key() {
+            return subCursor != null ? subCursor.key() : table.key(g);
+        }
+
+        /** @return the value of aggregate op for the current group */
+        public long result(Aggregator.Op op) {
+            return subCursor != null ? subCursor.result(op) : table.result(g, op);
+        }
+
+        public long count() {
+            return subCursor != null ? subCursor.count() : table.count(g);
+        }
+
+        public long sum() {
+            return subCursor != null ? subCursor.sum() : table.sum(g);
+        }
+
+        public long min() {
+            return subCursor != null ? subCursor.min() : table.min(g);
+        }
+
+        public long max() {
+            return subCursor != null ? subCursor.max() : table.max(g);
+        }
+
+        public void close() {
+            if (sub != null)
+                sub.close();
+            sub = null;
+            subCursor = null;
+        }
+    }
+}
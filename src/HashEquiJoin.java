@@ -52,25 +52,47 @@ public class HashEquiJoin extends Operator {
     
     HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
     public final static int MAP_SIZE = 20000;
+    transient private CompactTuple.Layout layout;
 
     private boolean loadMap() throws DbException, TransactionAbortedException {
         int cnt = 0;
         map.clear();
+        if (layout == null || layout.getTupleDesc() != child1.getTupleDesc())
+            layout = new CompactTuple.Layout(child1.getTupleDesc());
         while (child1.hasNext()) {
-            t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
+            // the table outlives child1's tuples, so keep packed copies
+            Tuple t = child1.next();
+            Field key = t.getField(pred.getField1());
+            t1 = layout.pack(t);
+            ArrayList<Tuple> list = map.get(key);
             if (list == null) {
                 list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
+                //字符串键可能指向整个页面，复制一份再放进表里
+                map.put(StringField.detach(key), list);
             }
             list.add(t1);
-            if (cnt++ == MAP_SIZE)
+            if (cnt++ == MAP_SIZE) {
+                pushBloomFilter();
                 return true;
+            }
         }
+        pushBloomFilter();
         return cnt > 0;
 
     }
 
+    /**
+     * Build a Bloom filter over the keys currently in the hash table and push
+     * it to the probe side, so child2 drops tuples that cannot find a match.
+     * Called after every loadMap, since each batch of child1 has its own keys.
+     */
+    private void pushBloomFilter() {
+        BloomFilter bf = new BloomFilter(map.size());
+        for (Object key : map.keySet())
+            bf.add((Field) key);
+        BloomFilter.pushDown(child2, pred.getField2(), bf);
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
@@ -81,6 +103,7 @@ public class HashEquiJoin extends Operator {
 
     public void close() {
         super.close();
+        BloomFilter.pushDown(child2, pred.getField2(), null);
         child2.close();
         child1.close();
         this.t1=null;
@@ -117,16 +140,8 @@ public class HashEquiJoin extends Operator {
     private Tuple processList() throws TransactionAbortedException, DbException {
         t1 = listIt.next();
 
-        int td1n = t1.getTupleDesc().numFields();
-        int td2n = t2.getTupleDesc().numFields();
-
-        // set fields in combined tuple
-        Tuple t = new Tuple(comboTD);
-        for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
-        for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
-        return t;
+        // a view over both tuples; no fields are copied
+        return new JoinedTuple(comboTD, t1, t2);
 
     }
 
@@ -168,6 +183,7 @@ public class HashEquiJoin extends Operator {
     public void setChildren(OpIterator[] children) {
         this.child1 = children[0];
         this.child2 = children[1];
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
     
 }
@@ -213,27 +213,56 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator1(this, tid);//内部类
     }
 
-    private static final class HeapFileIterator1 implements DbFileIterator {
+    /**
+     * Returns an iterator over the tuples of pages [startPage, endPage) only.
+     * Used by parallel scans to give each worker its own range of pages.
+     * With a null tid the pages are read without locks, through
+     * {@link BufferPool#readPageUnlocked}, and may be seen mid-change.
+     */
+    public DbFileIterator iterator(TransactionId tid, int startPage, int endPage) {
+        return new HeapFileIterator1(this, tid, startPage, endPage);
+    }
+
+    static final class HeapFileIterator1 implements DbFileIterator {
         private final HeapFile heapFile;
         TransactionId tid;//请求的事务id
         Permissions permissions;
         BufferPool bufferPool = Database.getBufferPool();
         Iterator<Tuple> iterator;
         int num = 0;//当前读取的页数
+        //只扫描 [firstPage, endPage) 这些页，endPage<0 表示到文件末尾
+        private final int firstPage;
+        private final int endPage;
+        //由本迭代器新加上读锁的页，提前结束扫描时可以释放
+        private final ArrayList<PageId> lockedPages = new ArrayList<PageId>();
 
         public HeapFileIterator1(HeapFile hf, TransactionId tid) {
+            this(hf, tid, 0, -1);
+        }
+
+        HeapFileIterator1(HeapFile hf, TransactionId tid, int firstPage, int endPage) {
             super();
             this.tid = tid;
             heapFile = hf;
+            this.firstPage = firstPage;
+            this.endPage = endPage;
+        }
+
+        private int lastPage() {
+            return endPage < 0 ? heapFile.numPages() : Math.min(endPage, heapFile.numPages());
         }
 
         //open后迭代器默认先读取第0页
         public void open() throws DbException, TransactionAbortedException {
             // 获取第一页的全部元组
-            num = 0;
+            num = firstPage;
+            if (endPage >= 0 && num >= lastPage()) {
+                iterator = null;
+                return;
+            }
             //iterator = getPageTuple(num);
             HeapPageId temp=new HeapPageId(heapFile.getId(),num);//tableId有，pageNo有
-            iterator=((HeapPage)Database.getBufferPool().getPage(tid, temp, Permissions.READ_ONLY)).iterator();
+            iterator=fetchPage(temp).iterator();
 
         }
 
@@ -262,14 +291,14 @@ public class HeapFile implements DbFile {
             else {
                 if (!iterator.hasNext()){
                     //页的元组迭代器表示无下一行时
-                    if(num <(heapFile.numPages()-1)){
+                    if(num <(lastPage()-1)){
 //                        //若当前页不是最后一页，指向下一页的元组迭代器
 //                        num++;
 //                        iterator= getPageTuple(num);
 //                        return true;
                         num++;
                         HeapPageId temp=new HeapPageId(heapFile.getId(),num);
-                        iterator=((HeapPage)Database.getBufferPool().getPage(tid, temp, Permissions.READ_ONLY)).iterator();
+                        iterator=fetchPage(temp).iterator();
                         return iterator.hasNext();// deleteTest的时候报错，NoSuchElement 找到这来，确实需要再判断新开的一页是否还有next
 
 
@@ -295,15 +324,34 @@ public class HeapFile implements DbFile {
 //            close();
 //            // 重新开始
 //            open();
-            num=0;
-            HeapPageId temp=new HeapPageId(heapFile.getId(),num);
-            iterator=((HeapPage)Database.getBufferPool().getPage(tid, temp, Permissions.READ_ONLY)).iterator();
+            open();
 
         }
         public void close() {
             iterator = null;
             num=0;
         }
+
+        private HeapPage fetchPage(HeapPageId pid) throws DbException, TransactionAbortedException {
+            if (tid == null)
+                return (HeapPage) Database.getBufferPool().readPageUnlocked(pid);
+            boolean held = Database.getBufferPool().holdsLock(tid, pid);
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            if (!held)
+                lockedPages.add(pid);
+            return page;
+        }
+
+        /**
+         * Release the read locks this iterator acquired. Pages that were
+         * already locked by the transaction before the scan, or that have
+         * since been locked exclusively, are left alone.
+         */
+        void releaseReadLocks() {
+            for (PageId pid : lockedPages)
+                Database.getBufferPool().releaseSharedLock(tid, pid);
+            lockedPages.clear();
+        }
     }
 
 }
@@ -21,6 +21,8 @@ public class HeapPage implements Page {
 
     byte[] oldData;
     private final Byte oldDataLock=new Byte((byte)0);
+    //页面当前内容的字节，页面改动或脏标记变化时作废，由getRawData重建
+    private volatile byte[] rawData;
 
     boolean isDirty;//标记该页是否dirty
     TransactionId tId;//使得该页dirty的事务请求
@@ -57,17 +59,20 @@ public class HeapPage implements Page {
         for (int i=0; i<header.length; i++)
             header[i] = dis.readByte();
 
+        dis.close();
+
         tuples = new Tuple[numSlots];
         try{
-            // allocate and read the actual records of this page
+            // allocate and read the actual records of this page; string
+            // fields refer to data instead of copying it
             for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
+                tuples[i] = readNextTuple(data,i);
         }catch(NoSuchElementException e){
             e.printStackTrace();
         }
-        dis.close();
 
         setBeforeImage();
+        rawData = data;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -97,6 +102,23 @@ public class HeapPage implements Page {
 
     }
 
+    /**
+     * @return the current contents of the page in its on-disk format. A
+     *         clean page serializes itself once and keeps the bytes until it
+     *         changes; a page read from disk uses the bytes it was read from.
+     *         Callers must not modify the result.
+     */
+    byte[] getRawData() {
+        if (isDirty)
+            return getPageData();
+        byte[] d = rawData;
+        if (d == null) {
+            d = getPageData();
+            rawData = d;
+        }
+        return d;
+    }
+
     /** Return a view of this page before it was modified
      -- used by recovery */
     public HeapPage getBeforeImage(){
@@ -134,32 +156,22 @@ public class HeapPage implements Page {
     /**
      * Suck up tuples from the source file.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
+    private Tuple readNextTuple(byte[] data, int slotId) throws NoSuchElementException {
+        // if associated bit is not set, there is no tuple in this slot
+        if (!isSlotUsed(slotId))
             return null;
-        }
 
         // read fields in the tuple
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
+        int offset = header.length + slotId * td.getSize();
+        if (offset + td.getSize() > data.length)
             throw new NoSuchElementException("parsing error!");
+        for (int j=0; j<td.numFields(); j++) {
+            Type type = td.getFieldType(j);
+            t.setField(j, type.parse(data, offset));
+            offset += type.getLen();
         }
 
         return t;
@@ -319,6 +331,7 @@ public class HeapPage implements Page {
 
         isDirty=dirty;
         this.tId=tid;
+        rawData=null;
     }
 
     /**
@@ -361,6 +374,13 @@ public class HeapPage implements Page {
         return 1==((header[index]>>pos)&0x1);//返回字节位
     }
 
+    /**
+     * @return the tuple in slot i, or null if the slot is empty
+     */
+    public Tuple getTuple(int i) {
+        return isSlotUsed(i) ? tuples[i] : null;
+    }
+
     /**
      * Abstraction to fill or clear a slot on this page.
      */
@@ -368,6 +388,7 @@ public class HeapPage implements Page {
         // some code goes here
         // not necessary for lab1
 
+        rawData=null;
         int index=i/8;
         int pos=i%8;
         if(value) {// 为真，已使用，置1
@@ -0,0 +1,83 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog estimates the number of distinct values in a stream using a
+ * fixed, small amount of memory: 2^{@link #PRECISION} one-byte registers,
+ * with a relative error of about 1.04 / sqrt(2^PRECISION), i.e. under 2%.
+ * <p>
+ * Each value is hashed to 64 bits. The top PRECISION bits pick a register,
+ * which keeps the largest number of leading zeros (plus one) seen in the
+ * remaining bits. Sketches of disjoint parts of a column are combined with
+ * {@link #merge}, which takes the register-wise maximum; the result is the
+ * same as if one sketch had seen all the values.
+ */
+public class HyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** log2 of the number of registers. */
+    public static final int PRECISION = 12;
+
+    private static final int M = 1 << PRECISION;
+
+    private final byte[] registers = new byte[M];
+
+    /** Add one value. */
+    public void add(Field f) {
+        addHash(hash(f));
+    }
+
+    void addHash(long h) {
+        int idx = (int) (h >>> (64 - PRECISION));
+        //剩余位的前导零个数+1；最低位补1保证不超过64-PRECISION+1
+        int rank = Long.numberOfLeadingZeros((h << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[idx])
+            registers[idx] = (byte) rank;
+    }
+
+    /** Add the values seen by another sketch. */
+    public void merge(HyperLogLog o) {
+        for (int i = 0; i < M; i++)
+            if (o.registers[i] > registers[i])
+                registers[i] = o.registers[i];
+    }
+
+    /** @return the estimated number of distinct values added */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / M);
+        double e = alpha * M * M / sum;
+        //基数小时用线性计数更准
+        if (e <= 2.5 * M && zeros > 0)
+            e = M * Math.log((double) M / zeros);
+        return Math.round(e);
+    }
+
+    /**
+     * A 64-bit hash of a field; equal fields hash equally whether or not a
+     * string field has been decoded.
+     */
+    static long hash(Field f) {
+        if (f instanceof IntField)
+            return mix(((IntField) f).getValue() * 0x9E3779B97F4A7C15L);
+        return mix(((StringField) f).hash64());
+    }
+
+    //MurmurHash3的64位收尾混合
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
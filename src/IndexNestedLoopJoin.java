@@ -0,0 +1,175 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Index nested-loops join. For every tuple of child1, the matching tuples of
+ * the inner table are looked up through an index instead of scanning the
+ * whole table. The inner side must be a {@link SeqScan}, possibly under
+ * {@link Filter}s, of either a {@link BTreeFile} joined on its
+ * {@link BTreeFile#keyField} or a {@link HeapFile} joined on a column with a
+ * {@link SecondaryIndex}, with =, &lt;, &lt;=, &gt; or &gt;=; the filters'
+ * predicates are applied to the tuples the index returns. Output tuples are
+ * child1's fields followed by the inner table's.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+    private OpIterator child1, inner;
+    private TupleDesc td;
+    private transient SeqScan scan;
+    private transient List<Predicate> filters;
+    private transient Predicate.Op indexOp;
+    private transient Tuple t1;
+    private transient DbFileIterator matches;
+
+    /**
+     * @param p
+     *            The predicate to join on
+     * @param child1
+     *            Iterator for the outer relation
+     * @param inner
+     *            the inner relation, which must satisfy {@link #canUse}
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator inner) {
+        if (!canUse(p, inner))
+            throw new IllegalArgumentException("inner side cannot be read through an index");
+        this.p = p;
+        this.child1 = child1;
+        this.inner = inner;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), inner.getTupleDesc());
+    }
+
+    /**
+     * @return true if tuples of inner matching p can be found through a B+
+     *         tree or a secondary index
+     */
+    public static boolean canUse(JoinPredicate p, OpIterator inner) {
+        if (indexOp(p.getOperator()) == null)
+            return false;
+        SeqScan ss = baseScan(inner, null);
+        if (ss == null)
+            return false;
+        DbFile f = Database.getCatalog().getDatabaseFile(ss.getTableId());
+        if (f instanceof HeapFile)
+            return Database.getCatalog().getIndex(ss.getTableId(), p.getField2()) != null;
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == p.getField2();
+    }
+
+    //outer op inner 等价于 inner flip(op) outer；不能用索引的为null
+    private static Predicate.Op indexOp(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+            return Predicate.Op.EQUALS;
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return null;
+        }
+    }
+
+    //剥掉Filter找到底下的SeqScan，谓词加到preds里
+    private static SeqScan baseScan(OpIterator op, List<Predicate> preds) {
+        while (op instanceof Filter) {
+            if (preds != null)
+                preds.addAll(((Filter) op).getPredicates());
+            op = ((Filter) op).getChildren()[0];
+        }
+        return op instanceof SeqScan ? (SeqScan) op : null;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(p.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return inner.getTupleDesc().getFieldName(p.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        filters = new ArrayList<Predicate>();
+        scan = baseScan(inner, filters);
+        indexOp = indexOp(p.getOperator());
+        child1.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        if (matches != null)
+            matches.close();
+        matches = null;
+        t1 = null;
+        child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (matches != null)
+            matches.close();
+        matches = null;
+        child1.rewind();
+    }
+
+    private boolean passes(Tuple t) {
+        for (Predicate pred : filters)
+            if (!pred.filter(t))
+                return false;
+        return true;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (matches != null) {
+                while (matches.hasNext()) {
+                    Tuple t2 = matches.next();
+                    if (passes(t2))
+                        return new JoinedTuple(td, t1, t2);
+                }
+                matches.close();
+                matches = null;
+            }
+            if (!child1.hasNext())
+                return null;
+            t1 = child1.next();
+            IndexPredicate ipred = new IndexPredicate(indexOp, t1.getField(p.getField1()));
+            DbFile f = Database.getCatalog().getDatabaseFile(scan.getTableId());
+            if (f instanceof BTreeFile)
+                matches = ((BTreeFile) f).indexIterator(scan.getTransactionId(), ipred);
+            else
+                matches = Database.getCatalog().getIndex(scan.getTableId(), p.getField2())
+                        .lookup(scan.getTransactionId(), ipred);
+            matches.open();
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, inner };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child1 = children[0];
+        inner = children[1];
+        td = TupleDesc.merge(child1.getTupleDesc(), inner.getTupleDesc());
+    }
+}
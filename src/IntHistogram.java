@@ -4,24 +4,47 @@ package simpledb;
  */
 public class IntHistogram {
 
+    private final int min;
+    private final int max;
+    private final int[] counts;
+    private final double width;//每个桶覆盖的整数个数，可以不是整数
+    private long total;
+
     /**
      * Create a new IntHistogram.
-     * 
+     *
      * This IntHistogram should maintain a histogram of integer values that it receives.
      * It should split the histogram into "buckets" buckets.
-     * 
+     *
      * The values that are being histogrammed will be provided one-at-a-time through the "addValue()" function.
-     * 
+     *
      * Your implementation should use space and have execution time that are both
-     * constant with respect to the number of values being histogrammed.  For example, you shouldn't 
+     * constant with respect to the number of values being histogrammed.  For example, you shouldn't
      * simply store every value that you see in a sorted list.
-     * 
+     *
      * @param buckets The number of buckets to split the input value into.
      * @param min The minimum integer value that will ever be passed to this class for histogramming
      * @param max The maximum integer value that will ever be passed to this class for histogramming
      */
     public IntHistogram(int buckets, int min, int max) {
     	// some code goes here
+        this.min = min;
+        this.max = max;
+        long range = (long) max - min + 1;
+        //桶数不超过值的个数，保证每个桶至少覆盖一个整数
+        int n = (int) Math.max(1, Math.min(buckets, range));
+        this.counts = new int[n];
+        this.width = (double) range / n;
+    }
+
+    private int bucketOf(int v) {
+        int b = (int) ((v - (long) min) / width);
+        return Math.min(counts.length - 1, Math.max(0, b));
+    }
+
+    //第b个桶覆盖[left, right)，right是不含的上界
+    private double right(int b) {
+        return min + (b + 1) * width;
     }
 
     /**
@@ -30,14 +53,18 @@ public class IntHistogram {
      */
     public void addValue(int v) {
     	// some code goes here
+        if (v < min || v > max)
+            return;
+        counts[bucketOf(v)]++;
+        total++;
     }
 
     /**
      * Estimate the selectivity of a particular predicate and operand on this table.
-     * 
-     * For example, if "op" is "GREATER_THAN" and "v" is 5, 
+     *
+     * For example, if "op" is "GREATER_THAN" and "v" is 5,
      * return your estimate of the fraction of elements that are greater than 5.
-     * 
+     *
      * @param op Operator
      * @param v Value
      * @return Predicted selectivity of this particular operator and value
@@ -45,13 +72,47 @@ public class IntHistogram {
     public double estimateSelectivity(Predicate.Op op, int v) {
 
     	// some code goes here
-        return -1.0;
+        if (total == 0)
+            return 0.0;
+        double eq, gt;
+        if (v < min) {
+            eq = 0;
+            gt = 1;
+        } else if (v > max) {
+            eq = 0;
+            gt = 0;
+        } else {
+            int b = bucketOf(v);
+            double h = (double) counts[b] / total;
+            //桶内的值假设均匀分布
+            eq = h / Math.max(1.0, width);
+            gt = h * Math.max(0.0, right(b) - v - 1) / Math.max(1.0, width);
+            for (int i = b + 1; i < counts.length; i++)
+                gt += (double) counts[i] / total;
+        }
+        double lt = Math.max(0.0, 1.0 - gt - eq);
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return eq;
+        case NOT_EQUALS:
+            return 1.0 - eq;
+        case GREATER_THAN:
+            return gt;
+        case GREATER_THAN_OR_EQ:
+            return Math.min(1.0, gt + eq);
+        case LESS_THAN:
+            return lt;
+        case LESS_THAN_OR_EQ:
+            return Math.min(1.0, lt + eq);
+        }
+        throw new IllegalArgumentException("unknown operator " + op);
     }
-    
+
     /**
      * @return
      *     the average selectivity of this histogram.
-     *     
+     *
      *     This is not an indispensable method to implement the basic
      *     join optimization. It may be needed if you want to
      *     implement a more efficient optimization
@@ -59,14 +120,26 @@ public class IntHistogram {
     public double avgSelectivity()
     {
         // some code goes here
-        return 1.0;
+        if (total == 0)
+            return 1.0;
+        //随机取两行相等的概率
+        double s = 0;
+        for (int c : counts) {
+            double h = (double) c / total;
+            s += h * h / Math.max(1.0, width);
+        }
+        return s;
     }
-    
+
     /**
      * @return A string describing this histogram, for debugging purposes
      */
     public String toString() {
         // some code goes here
-        return null;
+        StringBuilder sb = new StringBuilder();
+        sb.append("IntHistogram[").append(min).append(", ").append(max).append("]");
+        for (int i = 0; i < counts.length; i++)
+            sb.append(i == 0 ? " " : ",").append(counts[i]);
+        return sb.toString();
     }
 }
@@ -4,11 +4,22 @@ import java.util.*;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * Groups are kept in a {@link HashAggregation}: one probe per tuple and no
+ * per-tuple allocation while the groups fit in memory, hash-partitioned
+ * temp files once they do not.
  */
 public class IntegerAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
+    int gbfield;//分组字段的序号
+    Type gbfieldtype;//分组字段的类型
+    int afield;//聚合操作的字段序号，字段类型为int型
+    Op what;//聚合方式
+    long memoryBytes;//分组在内存里可用的字节数
+    transient HashAggregation groups;//每组一个状态槽：count/sum/min/max
+
     /**
      * Aggregate constructor
      *
@@ -23,29 +34,39 @@ public class IntegerAggregator implements Aggregator {
      * @param what
      *            the aggregation operator
      */
+    public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
+        this(gbfield, gbfieldtype, afield, what, HashAggregation.DEFAULT_MEMORY_BYTES);
+    }
 
-    int gbfield;//分组字段的序号
-    Type gbfieldtype;//分组字段的类型
-    int afield;//聚合操作的字段序号，字段类型为int型
-    Op what;//聚合方式
-    HashMap<Field,Integer> map;//key为字段，value为聚合结果
-    HashMap<Field,Integer> tally;//key为字段，value为对应组的个数
-    HashMap<Field,Integer>Sum;//key为字段，value为对应组的求和
-
-
-
-
-    public IntegerAggregator(int gbfizeld, Type gbfieldtype, int afield, Op what) {
+    /**
+     * @param memoryBytes
+     *            approximately how much memory the groups may use before
+     *            they are spilled to disk
+     */
+    public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what,
+            long memoryBytes) {
         // some code goes here
 
-        this.gbfield=gbfield ;
+        this.gbfield=gbfield;
         this.gbfieldtype=gbfieldtype;
         this.afield=afield;
         this.what=what;
-        map=new HashMap<>();
-        tally=new HashMap<>();
-        Sum=new HashMap<>();
-        Iterator<Map.Entry<Field, Integer>>mapIt = map.entrySet().iterator();
+        this.memoryBytes=memoryBytes;
+        groups=newGroups();
+    }
+
+    private HashAggregation newGroups() {
+        return new HashAggregation(gbfield==NO_GROUPING?null:gbfieldtype,memoryBytes);
+    }
+
+    /**
+     * The groups hold temp files and are not serialized; a deserialized
+     * aggregator starts with no groups.
+     */
+    private void readObject(java.io.ObjectInputStream in)
+            throws java.io.IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        groups=newGroups();
     }
 
     /**
@@ -55,87 +76,36 @@ public class IntegerAggregator implements Aggregator {
      * @param tup
      *            the Tuple containing an aggregate field and a group-by field
      */
-
-    public void mergeTupleIntoGroup(Tuple tup) {
+    public void mergeTupleIntoGroup(Tuple tup) throws DbException {
         // some code goes here
 
-        //将tup的gpfield加入分组
-        Field f;
+        int aValue=((IntField) tup.getField(afield)).getValue();
         //若无分组
-        if(gbfield==NO_GROUPING) {
-            f=null;
-        }
-        //有分组
-        else{
-            f=tup.getField(gbfield);
-        }
-        //判断f是否有value值
+        if(gbfield==NO_GROUPING)
+            groups.add(null,aValue);
+        //int型分组键直接按int查找，不创建Field
+        else if(gbfieldtype==Type.INT_TYPE)
+            groups.add(((IntField) tup.getField(gbfield)).getValue(),aValue);
+        else
+            groups.add(tup.getField(gbfield),aValue);
+    }
 
-        //找到当前需要加入的afield
-        IntField aField= (IntField) tup.getField(afield);
-        int aValue=aField.getValue();
+    /** @return true if some groups had to be written to disk */
+    public boolean isSpilled() {
+        return groups.isSpilled();
+    }
 
-        //更新聚合操作结果
-        //判断聚合操作
-        switch (what){
-            case MIN:
-                if(!map.containsKey(f)){
-                    map.put(f,aValue);
-                    tally.put(f,1);
-                }
-                else{
-                    map.put(f,Math.min(map.get(f),aValue));
-                    tally.put(f,tally.get(f)+1);
-                }
-                break;
-            case MAX:
-                if(!map.containsKey(f)){
-                    map.put(f,aValue);
-                    tally.put(f,1);
-                }
-                else{
-                    map.put(f,Math.max(map.get(f),aValue));
-                    tally.put(f,tally.get(f)+1);
-                }
-                break;
-            case SUM:
-                if(!map.containsKey(f)){
-                    map.put(f,aValue);
-                    tally.put(f,1);
-                }
-                else{
-                    map.put(f,map.get(f)+aValue);
-                    tally.put(f,tally.get(f)+1);
-                }
-                break;
-            case COUNT:
-                if(!map.containsKey(f)){
-                    map.put(f,1);
-                    tally.put(f,1);
-                }
-                else{
-                    map.put(f,map.get(f)+1);
-                    tally.put(f,tally.get(f)+1);
-                }
-                break;
-            case AVG:
-                if(!map.containsKey(f)){
-                    map.put(f,aValue);
-                    tally.put(f,1);
-                    Sum.put(f,aValue);
-                    //System.out.print("1");
-                }
-                else{
-                    tally.put(f,tally.get(f)+1);
-                    Sum.put(f,Sum.get(f)+aValue);
-                    int count=tally.get(f);
-                    int sum=Sum.get(f);
-                    map.put(f,sum/count);//迭代返回均值会增大误差
-                    //System.out.print("2");
-                }
-                break;
-        }
+    public void merge(Aggregator other) throws DbException {
+        if(!(other instanceof IntegerAggregator))
+            throw new IllegalArgumentException("cannot merge "+other.getClass().getSimpleName());
+        IntegerAggregator o=(IntegerAggregator) other;
+        if(o.gbfield!=gbfield||o.afield!=afield||o.what!=what)
+            throw new IllegalArgumentException("cannot merge a different aggregate");
+        groups.merge(o.groups);
+    }
 
+    public void close() {
+        groups.close();
     }
 
     /**
@@ -148,134 +118,74 @@ public class IntegerAggregator implements Aggregator {
      */
     public OpIterator iterator() {
         // some code goes here
-
-//        ///创建表头
-//        String[] tdstr=new String[2];
-//        Type[] tdtp=new Type[2];
-//        //不空时
-//        if(gbfield!=NO_GROUPING){
-//            tdstr[0]="gp";
-//            tdstr[1]="agg";
-//            tdtp[0]=gbfieldtype;
-//            tdtp[1]=Type.INT_TYPE;
-//        }
-//        //空时
-//        else{
-//            tdstr[0]="agg";
-//            tdtp[0]=Type.INT_TYPE;
-//        }
-//        //表头确定
-//        TupleDesc td = new TupleDesc(tdtp, tdstr);
-//
-//        //创建数组及其迭代器
-//        ArrayList<Tuple> res=new ArrayList<Tuple>();
-//        //遍历哈希表，加入tuple（gp,agg）
-//        Iterator<Map.Entry<Field, Integer>>mapIt = map.entrySet().iterator();
-//        while (mapIt.hasNext()) {
-//            Map.Entry<Field, Integer> entry =mapIt.next();
-//            Field gpf= entry.getKey();
-//            IntField agg=new IntField(entry.getValue());
-//            Tuple tp=new Tuple(td);
-//            if(gbfield!=NO_GROUPING){
-//                tp.setField(0,gpf);
-//                tp.setField(1,agg);
-//            }
-//            else{
-//                tp.setField(0,agg);
-//            }
-//            res.add(tp);
-//        }
-//
-//        TupleIterator resIt=new TupleIterator(td,res);
-//        return resIt;
-
-
         return new IntegerIterator();
     }
 
-    //创建内部类
+    //创建内部类，先输出内存中的组，再逐个分区输出
     private final class IntegerIterator implements OpIterator{
 
-        Iterator<Tuple> it;
+        private final TupleDesc td;
+        private HashAggregation.Cursor cursor;
+        private boolean ready;//cursor是否已经停在下一个要输出的组上
 
         public IntegerIterator(){
-            it=null;
-        }
-
-
-        @Override
-        public void open() throws DbException, TransactionAbortedException {
-            //所有结果元组全部装入it中
-
-            //创建数组
-            ArrayList<Tuple> res=new ArrayList<Tuple>();
-            //遍历哈希表，加入tuple（gp,agg）
-            Iterator<Map.Entry<Field, Integer>>mapIt = map.entrySet().iterator();
-
-            while (mapIt.hasNext()) {
-                Map.Entry<Field, Integer> entry =mapIt.next();
-                Field gpf= entry.getKey();
-                IntField agg=new IntField(entry.getValue());
-                Tuple tp=new Tuple(getTupleDesc());
-                if(gbfield!=NO_GROUPING){
-                    tp.setField(0,gpf);
-                    tp.setField(1,agg);
-                }
-                else{
-                    tp.setField(0,agg);
-                }
-                res.add(tp);
-            }
-            it= res.iterator();
-        }
-
-        @Override
-        public TupleDesc getTupleDesc() {
-
             String[] tdstr;
             Type[] tdtp;
             //不空时
             if(gbfield!=NO_GROUPING){
-                tdstr=new String[2];
-                tdtp=new Type[2];
-                tdstr[0]="gp";
-                tdstr[1]="agg";
-                tdtp[0]=gbfieldtype;
-                tdtp[1]=Type.INT_TYPE;
+                tdstr=new String[]{"gp","agg"};
+                tdtp=new Type[]{gbfieldtype,Type.INT_TYPE};
             }
             //空时
             else{
-                tdstr=new String[1];
-                tdtp=new Type[1];
-                tdstr[0]="agg";
-                tdtp[0]=Type.INT_TYPE;
+                tdstr=new String[]{"agg"};
+                tdtp=new Type[]{Type.INT_TYPE};
             }
-            //表头确定
-            TupleDesc td = new TupleDesc(tdtp, tdstr);
+            td=new TupleDesc(tdtp, tdstr);
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            cursor=groups.cursor();
+            ready=false;
+        }
+
+        @Override
+        public TupleDesc getTupleDesc() {
             return td;
         }
 
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
-            if(it==null)
-                return false;
-
-            if(!it.hasNext())
+            if(cursor==null)
                 return false;
-
-            return true;
+            if(!ready)
+                ready=cursor.next();
+            return ready;
         }
 
         @Override
         public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-            //if(it==null||!hasNext())666666666666
-            //return null;
-            return it.next();
+            if(!hasNext())
+                throw new NoSuchElementException();
+            ready=false;
+            Tuple tp=new Tuple(td);
+            IntField agg=new IntField((int) cursor.result(what));
+            if(gbfield!=NO_GROUPING){
+                tp.setField(0,cursor.key());
+                tp.setField(1,agg);
+            }
+            else{
+                tp.setField(0,agg);
+            }
+            return tp;
         }
 
         @Override
         public void close() {
-            it=null;
+            if(cursor!=null)
+                cursor.close();
+            cursor=null;
         }
 
         @Override
@@ -286,6 +196,3 @@ public class IntegerAggregator implements Aggregator {
     }
 
 }
-
-
-
@@ -13,6 +13,8 @@ public class Join extends Operator {
     JoinPredicate p;
     OpIterator child1;//指向元组1
     OpIterator child2;//指向元组2
+    private transient CompiledPredicate.Join test;//open时按连接字段的类型生成
+    private TupleDesc td;//输出的TupleDesc，只合并一次
 
     /**
      * Constructor. Accepts two children to join and the predicate to join them
@@ -32,6 +34,7 @@ public class Join extends Operator {
         this.child1=child1;
         this.child2=child2;
         this.t1=null;
+        this.td=TupleDesc.merge(child1.getTupleDesc(),child2.getTupleDesc());
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -72,11 +75,8 @@ public class Join extends Operator {
     public TupleDesc getTupleDesc() {
         // some code goes here
 
-        TupleDesc td1=child1.getTupleDesc();
-        TupleDesc td2=child2.getTupleDesc();
-        //连接到td3
-        TupleDesc td3=TupleDesc.merge(td1,td2);
-        return td3;
+        //构造时已经合并好
+        return td;
     }
 
     public void open() throws DbException, NoSuchElementException,
@@ -86,6 +86,7 @@ public class Join extends Operator {
         super.open();
         child1.open();
         child2.open();
+        test = p.compile(child1.getTupleDesc().getFieldType(p.getField1()));
     }
 
     public void close() {
@@ -101,6 +102,7 @@ public class Join extends Operator {
 
         child1.rewind();
         child2.rewind();
+        t1=null;//否则重置前的t1会和child2再连接一遍
     }
 
     /**
@@ -143,10 +145,9 @@ public class Join extends Operator {
             //在当前的t2往下找(t1为Null时child2已重置，不为Null时child2在下一个)
             while (child2 != null && child2.hasNext()) {
                 Tuple t2 = child2.next();
-                if (p.filter(t1, t2)) {
-                    Tuple t3 = t1.create_link(t2);
-                    System.out.println(t3.toString());
-                    return t3;
+                if (test.test(t1, t2)) {
+                    //不拷贝字段，只引用t1和t2
+                    return t1.create_link(t2, td);
                 }
             }
             //没有合适的t2,找下一个t1
@@ -178,6 +179,7 @@ public class Join extends Operator {
 
         child1=children[0];
         child2=children[1];
+        td=TupleDesc.merge(child1.getTupleDesc(),child2.getTupleDesc());
     }
 
 }
@@ -14,6 +14,20 @@ public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
 
+    /** The physical join operators the optimizer chooses between. */
+    public enum Algorithm {
+        /** {@link Join}: child2 is scanned once per child1 tuple. */
+        NESTED_LOOP,
+        /** {@link BlockNestedLoopJoin}: child2 is scanned once per block of child1. */
+        BLOCK_NESTED_LOOP,
+        /** {@link HashEquiJoin}: builds on child1, probes with child2. */
+        HASH,
+        /** {@link SortMergeJoin}: sorts both sides and merges them. */
+        SORT_MERGE,
+        /** {@link IndexNestedLoopJoin}: looks child2 up in its B+ tree. */
+        INDEX_NESTED_LOOP
+    }
+
     /**
      * Constructor
      * 
@@ -34,6 +48,12 @@ public class JoinOptimizer {
      * inner/outer here -- because OpIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * The operator is the one {@link #orderJoins} found cheapest for lj, kept
+     * in {@link LogicalJoinNode#algorithm}; plan1 is always the outer or build
+     * side. Joins the optimizer has not seen use a hash join for equality and
+     * a block nested-loops join otherwise, as does an index join whose inner
+     * side turns out not to be an indexed base table.
      * 
      * @param lj
      *            The join being considered
@@ -68,7 +88,28 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        boolean equi = lj.p == Predicate.Op.EQUALS;
+        Algorithm a = lj.algorithm;
+        if (a == Algorithm.INDEX_NESTED_LOOP && !IndexNestedLoopJoin.canUse(p, plan2))
+            a = null;
+        if (a == null || (!equi && (a == Algorithm.HASH || a == Algorithm.SORT_MERGE)))
+            a = equi ? Algorithm.HASH : Algorithm.BLOCK_NESTED_LOOP;
+        switch (a) {
+        case NESTED_LOOP:
+            j = new Join(p, plan1, plan2);
+            break;
+        case HASH:
+            j = new HashEquiJoin(p, plan1, plan2);
+            break;
+        case SORT_MERGE:
+            j = new SortMergeJoin(p, plan1, plan2);
+            break;
+        case INDEX_NESTED_LOOP:
+            j = new IndexNestedLoopJoin(p, plan1, plan2);
+            break;
+        default:
+            j = new BlockNestedLoopJoin(p, plan1, plan2);
+        }
 
         return j;
 
@@ -111,8 +152,99 @@ public class JoinOptimizer {
             // HINT: You may need to use the variable "j" if you implemented
             // a join algorithm that's more complicated than a basic
             // nested-loops join.
-            return -1.0;
+            //不知道内表是不是带索引的基表，不考虑索引连接
+            Algorithm a = cheapestAlgorithm(j.p, card1, card2, cost1, cost2, Double.NaN);
+            return joinCost(a, j.p, card1, card2, cost1, cost2, Double.NaN);
+        }
+    }
+
+    /**
+     * @return the predicate of a join operator built by
+     *         {@link #instantiateJoin}, or null if o is not a join
+     */
+    static JoinPredicate joinPredicate(OpIterator o) {
+        if (o instanceof Join)
+            return ((Join) o).getJoinPredicate();
+        if (o instanceof HashEquiJoin)
+            return ((HashEquiJoin) o).getJoinPredicate();
+        if (o instanceof BlockNestedLoopJoin)
+            return ((BlockNestedLoopJoin) o).getJoinPredicate();
+        if (o instanceof SortMergeJoin)
+            return ((SortMergeJoin) o).getJoinPredicate();
+        if (o instanceof IndexNestedLoopJoin)
+            return ((IndexNestedLoopJoin) o).getJoinPredicate();
+        return null;
+    }
+
+    /**
+     * Estimate the cost of joining with a particular operator, with side 1
+     * as child1 (the outer or build side). Each tuple compared, hashed or
+     * probed costs 1.
+     * <ul>
+     * <li>nested loops: cost1 + card1 * cost2 + card1 * card2</li>
+     * <li>block nested loops: cost1 + blocks * cost2 + card1 * card2</li>
+     * <li>hash: cost1 + chunks * (cost2 + card2) + 2 * card1, where each
+     * chunk of {@link HashEquiJoin#MAP_SIZE} build tuples rescans side 2 and
+     * inserting a tuple costs twice as much as probing, so the smaller side
+     * is built on</li>
+     * <li>sort-merge: both scans, n log2 n per side to sort, and one merge
+     * pass</li>
+     * <li>index nested loops: cost1 + card1 * probe2</li>
+     * </ul>
+     *
+     * @param probe2
+     *            the cost of one index lookup into side 2 with its matches,
+     *            or NaN if side 2 is not an indexed base table
+     * @return the cost, or positive infinity if the operator cannot run the
+     *         join
+     */
+    static double joinCost(Algorithm a, Predicate.Op op, int card1, int card2,
+            double cost1, double cost2, double probe2) {
+        boolean equi = op == Predicate.Op.EQUALS;
+        double cmp = (double) card1 * card2;
+        switch (a) {
+        case NESTED_LOOP:
+            return cost1 + card1 * cost2 + cmp;
+        case BLOCK_NESTED_LOOP:
+            return cost1 + passes(card1, BlockNestedLoopJoin.BLOCK_ROWS) * cost2 + cmp;
+        case HASH:
+            if (!equi)
+                return Double.POSITIVE_INFINITY;
+            return cost1 + passes(card1, HashEquiJoin.MAP_SIZE) * (cost2 + card2) + 2.0 * card1;
+        case SORT_MERGE:
+            if (!equi)
+                return Double.POSITIVE_INFINITY;
+            return cost1 + cost2 + sortCost(card1) + sortCost(card2) + card1 + card2;
+        case INDEX_NESTED_LOOP:
+            if (Double.isNaN(probe2))
+                return Double.POSITIVE_INFINITY;
+            return cost1 + card1 * probe2;
+        }
+        throw new IllegalArgumentException("unknown join algorithm " + a);
+    }
+
+    //一次读入rows个外表元组时，内表要扫描的趟数
+    private static int passes(int card, int rows) {
+        return Math.max(1, (card + rows - 1) / rows);
+    }
+
+    private static double sortCost(int card) {
+        return card <= 1 ? 0 : card * (Math.log(card) / Math.log(2));
+    }
+
+    /** @return the operator with the lowest {@link #joinCost} */
+    static Algorithm cheapestAlgorithm(Predicate.Op op, int card1, int card2,
+            double cost1, double cost2, double probe2) {
+        Algorithm best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (Algorithm a : Algorithm.values()) {
+            double c = joinCost(a, op, card1, card2, cost1, cost2, probe2);
+            if (best == null || c < bestCost) {
+                best = a;
+                bestCost = c;
+            }
         }
+        return best;
     }
 
     /**
@@ -147,8 +279,18 @@ public class JoinOptimizer {
         }
     }
 
+    /** Fraction of the cross product assumed to pass a range join predicate. */
+    static final double RANGE_JOIN_SELECTIVITY = 0.3;
+
     /**
      * Estimate the join cardinality of two tables.
+     * <p>
+     * A join on a primary key produces at most one row per row of the
+     * other side. Otherwise an equi-join is estimated from the column
+     * statistics of both join fields: values in both most-common-value lists
+     * are matched by their frequencies, and the remaining rows are assumed to
+     * match uniformly over the distinct values of the other side, which
+     * gives |R||S|/max(ndv) when neither column is skewed.
      * */
     public static int estimateTableJoinCardinality(Predicate.Op joinOp,
             String table1Alias, String table2Alias, String field1PureName,
@@ -157,45 +299,138 @@ public class JoinOptimizer {
             Map<String, Integer> tableAliasToId) {
         int card = 1;
         // some code goes here
+        double cross = (double) card1 * card2;
+        ColumnStats c1 = columnStats(table1Alias, field1PureName, stats, tableAliasToId);
+        ColumnStats c2 = columnStats(table2Alias, field2PureName, stats, tableAliasToId);
+        switch (joinOp) {
+        case EQUALS:
+        case LIKE:
+            if (t1pkey && t2pkey)
+                card = Math.min(card1, card2);
+            else if (t1pkey)
+                card = card2;
+            else if (t2pkey)
+                card = card1;
+            else if (c1 != null && c2 != null)
+                card = (int) Math.min(Integer.MAX_VALUE, Math.round(cross * equiJoinSelectivity(c1, c2)));
+            else
+                card = Math.max(card1, card2);
+            break;
+        case NOT_EQUALS:
+            double eq = c1 != null && c2 != null ? equiJoinSelectivity(c1, c2) : 0.0;
+            card = (int) Math.min(Integer.MAX_VALUE, Math.round(cross * (1.0 - eq)));
+            break;
+        default:
+            card = (int) Math.min(Integer.MAX_VALUE, Math.round(cross * RANGE_JOIN_SELECTIVITY));
+        }
         return card <= 0 ? 1 : card;
     }
 
+    //别名对应的表的某一列的统计信息，没有则为null
+    private static ColumnStats columnStats(String alias, String field,
+            Map<String, TableStats> stats, Map<String, Integer> tableAliasToId) {
+        if (alias == null || stats == null || tableAliasToId == null)
+            return null;
+        Integer tableId = tableAliasToId.get(alias);
+        if (tableId == null)
+            return null;
+        TableStats ts = stats.get(Database.getCatalog().getTableName(tableId));
+        if (ts == null)
+            return null;
+        try {
+            int i = Database.getCatalog().getTupleDesc(tableId).fieldNameToIndex(field);
+            return ts.getColumnStats(i);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
     /**
-     * Helper method to enumerate all of the subsets of a given size of a
-     * specified vector.
-     * 
-     * @param v
-     *            The vector whose subsets are desired
-     * @param size
-     *            The size of the subsets of interest
-     * @return a set of all subsets of the specified size
+     * Fraction of the cross product of two columns that has equal values.
+     * Values in both most-common-value lists contribute the product of their
+     * frequencies; the other rows of each side are spread evenly over the
+     * distinct values of the other side that are not already accounted for.
+     * Of the two symmetric estimates the smaller is used.
      */
-    @SuppressWarnings("unchecked")
-    public <T> Set<Set<T>> enumerateSubsets(Vector<T> v, int size) {
-        Set<Set<T>> els = new HashSet<Set<T>>();
-        els.add(new HashSet<T>());
-        // Iterator<Set> it;
-        // long start = System.currentTimeMillis();
-
-        for (int i = 0; i < size; i++) {
-            Set<Set<T>> newels = new HashSet<Set<T>>();
-            for (Set<T> s : els) {
-                for (T t : v) {
-                    Set<T> news = (Set<T>) (((HashSet<T>) s).clone());
-                    if (news.add(t))
-                        newels.add(news);
+    static double equiJoinSelectivity(ColumnStats c1, ColumnStats c2) {
+        if (c1.count() == 0 || c2.count() == 0)
+            return 0.0;
+        Field[] v1 = c1.mostCommonValues(), v2 = c2.mostCommonValues();
+        double[] f1 = c1.mostCommonFrequencies(), f2 = c2.mostCommonFrequencies();
+        boolean[] hit2 = new boolean[v2.length];
+        double matchProd = 0, match1 = 0, match2 = 0, common1 = 0, common2 = 0;
+        int matches = 0;
+        for (int i = 0; i < v1.length; i++) {
+            common1 += f1[i];
+            for (int k = 0; k < v2.length; k++) {
+                if (!hit2[k] && EquiDepthHistogram.compare(v1[i], v2[k]) == 0) {
+                    hit2[k] = true;
+                    matchProd += f1[i] * f2[k];
+                    match1 += f1[i];
+                    match2 += f2[k];
+                    matches++;
+                    break;
                 }
             }
-            els = newels;
         }
+        for (double f : f2)
+            common2 += f;
+        double unmatch1 = common1 - match1, unmatch2 = common2 - match2;
+        double other1 = Math.max(0.0, 1.0 - common1), other2 = Math.max(0.0, 1.0 - common2);
+        long nd1 = Math.max(1, c1.distinctCount()), nd2 = Math.max(1, c2.distinctCount());
+
+        double sel1 = matchProd;
+        if (nd2 > v2.length)
+            sel1 += unmatch1 * other2 / (nd2 - v2.length);
+        if (nd2 > matches)
+            sel1 += other1 * (other2 + unmatch2) / (nd2 - matches);
+        double sel2 = matchProd;
+        if (nd1 > v1.length)
+            sel2 += unmatch2 * other1 / (nd1 - v1.length);
+        if (nd1 > matches)
+            sel2 += other2 * (other1 + unmatch1) / (nd1 - matches);
+        return Math.max(0.0, Math.min(1.0, Math.min(sel1, sel2)));
+    }
+
+    /**
+     * Plans joining at most this many tables are ordered by exhaustive
+     * dynamic programming, larger ones greedily.
+     */
+    public static final int DEFAULT_DP_TABLE_LIMIT = 12;
+
+    /**
+     * Dynamic programming keeps a plan for every subset of the tables, so it
+     * is never tried for more tables than this, whatever the limit is set to.
+     */
+    static final int MAX_DP_TABLES = 20;
+
+    private static volatile int dpTableLimit = DEFAULT_DP_TABLE_LIMIT;
 
-        return els;
+    /**
+     * Set the largest number of tables for which {@link #orderJoins}
+     * searches all left-deep plans; above it joins are ordered greedily.
+     */
+    public static void setDpTableLimit(int tables) {
+        dpTableLimit = tables;
+    }
 
+    public static int getDpTableLimit() {
+        return dpTableLimit;
     }
 
     /**
      * Compute a logical, reasonably efficient join on the specified tables. See
      * PS4 for hints on how this should be implemented.
+     * <p>
+     * Up to {@link #getDpTableLimit} tables, this is Selinger's dynamic
+     * programming over left-deep plans: subsets of the tables are bitmasks,
+     * enumerated in increasing numeric order so that every subset comes after
+     * the subsets it is built from, and the best plan joining each subset is
+     * kept in a {@link PlanCache}. A table is only added to a subplan by a
+     * join with one of the subplan's tables, so cross products are never
+     * considered.
+     * Larger plans start from the cheapest single join and repeatedly add
+     * the join that keeps the plan cheapest.
      * 
      * @param stats
      *            Statistics for each table involved in the join, referenced by
@@ -220,174 +455,375 @@ public class JoinOptimizer {
         //Not necessary for labs 1--3
 
         // some code goes here
-        //Replace the following
-        return joins;
+        return orderJoins(stats, filterSelectivities, new PlanCache(), explain);
+    }
+
+    /**
+     * As {@link #orderJoins(HashMap, HashMap, boolean)}, keeping the plans it
+     * costs in pc, where the cost of the order returned can be looked up by
+     * its set of joins.
+     */
+    Vector<LogicalJoinNode> orderJoins(HashMap<String, TableStats> stats,
+            HashMap<String, Double> filterSelectivities, PlanCache pc, boolean explain)
+            throws ParsingException {
+        if (joins.isEmpty())
+            return joins;
+        HashMap<String, Integer> tableBits = new HashMap<String, Integer>();
+        JoinInput[] in = new JoinInput[joins.size()];
+        for (int i = 0; i < in.length; i++)
+            in[i] = new JoinInput(joins.get(i), stats, filterSelectivities, tableBits);
+
+        Vector<LogicalJoinNode> order = null;
+        if (tableBits.size() <= Math.min(dpTableLimit, MAX_DP_TABLES))
+            order = orderByDynamicProgramming(in, tableBits.size(), stats, pc);
+        //连接图不连通时动态规划得不到完整的计划，交给贪心算法
+        if (order == null)
+            order = orderGreedily(in, stats, pc);
+        if (explain)
+            printJoins(order, pc, stats, filterSelectivities);
+        return order;
     }
 
     // ===================== Private Methods =================================
 
+    /** A join with the scan cost and cardinality of its base tables. */
+    private class JoinInput {
+        final LogicalJoinNode join;
+        final double cost1, cost2;
+        final int card1, card2;
+        final boolean pkey1, pkey2;
+        final double probe1, probe2;//经索引查一次该表的代价，没有索引为NaN
+        final int table1, table2;//两边的表在位图中的位；子查询为0
+
+        JoinInput(LogicalJoinNode j, HashMap<String, TableStats> stats,
+                HashMap<String, Double> filterSelectivities,
+                HashMap<String, Integer> tableBits) throws ParsingException {
+            join = j;
+            TableStats s1 = baseStats(j.t1Alias, stats, filterSelectivities);
+            cost1 = s1.estimateScanCost();
+            card1 = s1.estimateTableCardinality(filterSelectivities.get(j.t1Alias));
+            pkey1 = isPkey(j.t1Alias, j.f1PureName);
+            table1 = tableBit(j.t1Alias, tableBits);
+            if (j.t2Alias == null) {
+                cost2 = 0;
+                card2 = 0;
+                pkey2 = false;
+                probe1 = probe2 = Double.NaN;
+                table2 = 0;
+            } else {
+                TableStats s2 = baseStats(j.t2Alias, stats, filterSelectivities);
+                cost2 = s2.estimateScanCost();
+                card2 = s2.estimateTableCardinality(filterSelectivities.get(j.t2Alias));
+                pkey2 = isPkey(j.t2Alias, j.f2PureName);
+                table2 = tableBit(j.t2Alias, tableBits);
+                probe1 = probeCost(j.t1Alias, j.f1PureName, j.p, s1);
+                probe2 = probeCost(j.t2Alias, j.f2PureName, j.p, s2);
+            }
+        }
+    }
+
     /**
-     * This is a helper method that computes the cost and cardinality of joining
-     * joinToRemove to joinSet (joinSet should contain joinToRemove), given that
-     * all of the subsets of size joinSet.size() - 1 have already been computed
-     * and stored in PlanCache pc.
-     * 
-     * @param stats
-     *            table stats for all of the tables, referenced by table names
-     *            rather than alias (see {@link #orderJoins})
-     * @param filterSelectivities
-     *            the selectivities of the filters over each of the tables
-     *            (where tables are indentified by their alias or name if no
-     *            alias is given)
-     * @param joinToRemove
-     *            the join to remove from joinSet
-     * @param joinSet
-     *            the set of joins being considered
-     * @param bestCostSoFar
-     *            the best way to join joinSet so far (minimum of previous
-     *            invocations of computeCostAndCardOfSubplan for this joinSet,
-     *            from returned CostCard)
-     * @param pc
-     *            the PlanCache for this join; should have subplans for all
-     *            plans of size joinSet.size()-1
-     * @return A {@link CostCard} objects desribing the cost, cardinality,
-     *         optimal subplan
-     * @throws ParsingException
-     *             when stats, filterSelectivities, or pc object is missing
-     *             tables involved in join
+     * The cost of looking up the tuples of a base table that match one
+     * value of the other side through the table's B+ tree or a secondary
+     * index on field, as estimated by {@link TableStats#estimateIndexScanCost}
+     * or {@link TableStats#estimateIndexLookupCost}, plus 1 per matching tuple.
+     *
+     * @return the cost, or NaN if the table has no index on field or op
+     *         cannot be answered from one
      */
-    @SuppressWarnings("unchecked")
-    private CostCard computeCostAndCardOfSubplan(
-            HashMap<String, TableStats> stats,
-            HashMap<String, Double> filterSelectivities,
-            LogicalJoinNode joinToRemove, Set<LogicalJoinNode> joinSet,
-            double bestCostSoFar, PlanCache pc) throws ParsingException {
+    private double probeCost(String alias, String field, Predicate.Op op, TableStats s) {
+        if (op == Predicate.Op.NOT_EQUALS || op == Predicate.Op.LIKE)
+            return Double.NaN;
+        int tableId = this.p.getTableId(alias);
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(f instanceof BTreeFile) && !(f instanceof HeapFile))
+            return Double.NaN;
+        int idx;
+        try {
+            idx = f.getTupleDesc().fieldNameToIndex(field);
+        } catch (NoSuchElementException e) {
+            return Double.NaN;
+        }
+        SecondaryIndex index = null;
+        if (f instanceof HeapFile) {
+            index = Database.getCatalog().getIndex(tableId, idx);
+            if (index == null)
+                return Double.NaN;
+        } else if (((BTreeFile) f).keyField() != idx)
+            return Double.NaN;
+        ColumnStats cs = s.getColumnStats(idx);
+        double sel = op != Predicate.Op.EQUALS ? RANGE_JOIN_SELECTIVITY
+                : cs == null ? TableStats.DEFAULT_EQ_SELECTIVITY
+                : 1.0 / Math.max(1, cs.distinctCount());
+        double lookup = index == null ? s.estimateIndexScanCost(sel)
+                : s.estimateIndexLookupCost(index, sel);
+        return lookup + sel * s.totalTuples();
+    }
 
-        LogicalJoinNode j = joinToRemove;
+    private TableStats baseStats(String alias, HashMap<String, TableStats> stats,
+            HashMap<String, Double> filterSelectivities) throws ParsingException {
+        Integer tableId = this.p.getTableId(alias);
+        if (tableId == null)
+            throw new ParsingException("Unknown table " + alias);
+        TableStats s = stats.get(Database.getCatalog().getTableName(tableId));
+        if (s == null)
+            throw new ParsingException("No statistics for table " + alias);
+        if (filterSelectivities.get(alias) == null)
+            throw new ParsingException("No filter selectivity for table " + alias);
+        return s;
+    }
 
-        Vector<LogicalJoinNode> prevBest;
+    //第一次见到的表分配下一位，超过31张表的位没有用处，只给0
+    private static int tableBit(String alias, HashMap<String, Integer> tableBits) {
+        Integer b = tableBits.get(alias);
+        if (b == null) {
+            b = tableBits.size() < 31 ? 1 << tableBits.size() : 0;
+            tableBits.put(alias, b);
+        }
+        return b;
+    }
 
-        if (this.p.getTableId(j.t1Alias) == null)
-            throw new ParsingException("Unknown table " + j.t1Alias);
-        if (this.p.getTableId(j.t2Alias) == null)
-            throw new ParsingException("Unknown table " + j.t2Alias);
+    /**
+     * Selinger's dynamic programming over the subsets of the tables. The plan
+     * kept for a subset performs every join among its tables: it either
+     * starts from a join of base tables, or adds one table to the plan of
+     * the others through a join with them. Either way the joins the new
+     * table closes with tables already joined follow straight after.
+     *
+     * @return the best left-deep order, or null if the joins do not connect
+     *         all their tables
+     */
+    private Vector<LogicalJoinNode> orderByDynamicProgramming(JoinInput[] in, int numTables,
+            HashMap<String, TableStats> stats, PlanCache pc) {
+        int full = (1 << numTables) - 1;
+        pc.initMasks(numTables);
+        for (int mask = 1; mask <= full; mask++) {
+            double best = Double.MAX_VALUE;
+            //从一个基表间的连接开始
+            for (int j = 0; j < in.length; j++) {
+                if ((in[j].table1 | in[j].table2) != mask)
+                    continue;
+                CostCard cc = computeCostAndCardOfSubplan(in[j], true, true, in[j].cost1,
+                        in[j].card1, in[j].pkey1, best, stats);
+                CostCard[] steps = closeJoins(in, j, cc, 0, mask, best, stats);
+                if (steps != null) {
+                    pc.addPlan(mask, 0, steps);
+                    best = pc.getCost(mask);
+                }
+            }
+            //在其他表的计划上经一个连接加入一张表
+            for (int t = 0; t < numTables; t++) {
+                int bit = 1 << t;
+                int prev = mask & ~bit;
+                if ((mask & bit) == 0 || prev == 0 || !pc.hasPlan(prev))
+                    continue;
+                for (int j = 0; j < in.length; j++) {
+                    boolean has1 = (prev & in[j].table1) != 0;
+                    boolean has2 = (prev & in[j].table2) != 0;
+                    if (!(has1 && in[j].table2 == bit) && !(has2 && in[j].table1 == bit))
+                        continue;
+                    CostCard cc = computeCostAndCardOfSubplan(in[j], false, has1,
+                            pc.getCost(prev), pc.getCard(prev), pc.hasPkey(prev), best, stats);
+                    CostCard[] steps = closeJoins(in, j, cc, prev, mask, best, stats);
+                    if (steps != null) {
+                        pc.addPlan(mask, prev, steps);
+                        best = pc.getCost(mask);
+                    }
+                }
+            }
+        }
+        if (!pc.hasPlan(full))
+            return null;
+        //每个前缀按连接集合也记一份，printJoins用
+        Vector<LogicalJoinNode> order = new Vector<LogicalJoinNode>();
+        HashSet<LogicalJoinNode> prefix = new HashSet<LogicalJoinNode>();
+        for (CostCard cc : pc.getSteps(full)) {
+            cc.join.algorithm = cc.algorithm;
+            order.add(cc.join);
+            prefix.add(cc.join);
+            pc.addPlan(new HashSet<LogicalJoinNode>(prefix), cc.cost, cc.card,
+                    new Vector<LogicalJoinNode>(order));
+        }
+        return order;
+    }
 
-        String table1Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t1Alias));
-        String table2Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t2Alias));
-        String table1Alias = j.t1Alias;
-        String table2Alias = j.t2Alias;
+    /**
+     * Follow join first, costed as cc, with every other join among the
+     * tables of mask that is not already among those of prev, in their
+     * original order.
+     *
+     * @return the steps, or null if cc is null or they cost at least
+     *         bestCostSoFar
+     */
+    private CostCard[] closeJoins(JoinInput[] in, int first, CostCard cc, int prev, int mask,
+            double bestCostSoFar, HashMap<String, TableStats> stats) {
+        if (cc == null)
+            return null;
+        Vector<CostCard> steps = new Vector<CostCard>();
+        steps.add(cc);
+        for (int k = 0; k < in.length; k++) {
+            int tables = in[k].table1 | in[k].table2;
+            if (k == first || (tables & ~mask) != 0 || (tables & ~prev) == 0)
+                continue;
+            cc = computeCostAndCardOfSubplan(in[k], false, true, cc.cost, cc.card, cc.pkey,
+                    bestCostSoFar, stats);
+            if (cc == null)
+                return null;
+            steps.add(cc);
+        }
+        return steps.toArray(new CostCard[steps.size()]);
+    }
 
-        Set<LogicalJoinNode> news = (Set<LogicalJoinNode>) ((HashSet<LogicalJoinNode>) joinSet)
-                .clone();
-        news.remove(j);
+    /**
+     * Start with the cheapest single join and repeatedly add the join, among
+     * those touching a table already joined, that gives the cheapest plan.
+     * Joins that connect to nothing already joined are appended in their
+     * original order.
+     */
+    private Vector<LogicalJoinNode> orderGreedily(JoinInput[] in,
+            HashMap<String, TableStats> stats, PlanCache pc) {
+        Vector<LogicalJoinNode> order = new Vector<LogicalJoinNode>();
+        boolean[] used = new boolean[in.length];
+        HashSet<String> joined = new HashSet<String>();
+        HashSet<LogicalJoinNode> prefix = new HashSet<LogicalJoinNode>();
+        double cost = 0;
+        int card = 0;
+        boolean pkey = false;
+        while (order.size() < in.length) {
+            CostCard best = null;
+            int bestJoin = -1;
+            for (int j = 0; j < in.length; j++) {
+                if (used[j])
+                    continue;
+                LogicalJoinNode lj = in[j].join;
+                double bound = best == null ? Double.MAX_VALUE : best.cost;
+                CostCard cc;
+                if (order.isEmpty()) {
+                    cc = computeCostAndCardOfSubplan(in[j], true, true, in[j].cost1, in[j].card1,
+                            in[j].pkey1, bound, stats);
+                } else {
+                    boolean has1 = joined.contains(lj.t1Alias);
+                    boolean has2 = lj.t2Alias != null && joined.contains(lj.t2Alias);
+                    if (!has1 && !has2)
+                        continue;
+                    cc = computeCostAndCardOfSubplan(in[j], false, has1, cost, card, pkey, bound,
+                            stats);
+                }
+                if (cc != null) {
+                    best = cc;
+                    bestJoin = j;
+                }
+            }
+            if (best == null) {
+                for (int j = 0; j < in.length; j++)
+                    if (!used[j])
+                        order.add(in[j].join);
+                break;
+            }
+            used[bestJoin] = true;
+            best.join.algorithm = best.algorithm;
+            order.add(best.join);
+            joined.add(best.join.t1Alias);
+            if (best.join.t2Alias != null)
+                joined.add(best.join.t2Alias);
+            cost = best.cost;
+            card = best.card;
+            pkey = best.pkey;
+            prefix.add(best.join);
+            pc.addPlan(new HashSet<LogicalJoinNode>(prefix), cost, card,
+                    new Vector<LogicalJoinNode>(order));
+        }
+        return order;
+    }
 
+    /**
+     * This is a helper method that computes the cost and cardinality of
+     * adding join in to a left-deep subplan that already joins one of its
+     * tables, or of performing it on its base tables if the subplan is
+     * empty. Both ways round of the new join are costed, each with its
+     * cheapest operator, and the cheaper kept; an index join is only
+     * considered when the inner side is a base table.
+     * 
+     * @param in
+     *            the join to add
+     * @param base
+     *            true if the subplan is empty and both sides are base tables
+     * @param t1Joined
+     *            true if the join's first table is in the subplan, false if
+     *            its second table is
+     * @param cost
+     *            the cost of the subplan, or the scan cost of the first table
+     *            if it is empty
+     * @param card
+     *            the cardinality of the subplan, or of the first table
+     * @param pkey
+     *            whether the subplan joins a primary key, or whether the first
+     *            field is one
+     * @param bestCostSoFar
+     *            the cost of the best plan for the same joins found so far
+     * @param stats
+     *            table stats for all of the tables, referenced by table names
+     *            rather than alias (see {@link #orderJoins})
+     * @return A {@link CostCard} objects desribing the cost, cardinality and
+     *         last join of the new plan, or null if it is no cheaper than
+     *         bestCostSoFar
+     */
+    private CostCard computeCostAndCardOfSubplan(JoinInput in, boolean base, boolean t1Joined,
+            double cost, int card, boolean pkey, double bestCostSoFar,
+            HashMap<String, TableStats> stats) {
+        LogicalJoinNode j = in.join;
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
-
-        if (news.isEmpty()) { // base case -- both are base relations
-            prevBest = new Vector<LogicalJoinNode>();
-            t1cost = stats.get(table1Name).estimateScanCost();
-            t1card = stats.get(table1Name).estimateTableCardinality(
-                    filterSelectivities.get(j.t1Alias));
-            leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            t2cost = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateScanCost();
-            t2card = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateTableCardinality(
-                            filterSelectivities.get(j.t2Alias));
-            rightPkey = table2Alias == null ? false : isPkey(table2Alias,
-                    j.f2PureName);
+        if (t1Joined) {
+            t1cost = cost;
+            t1card = card;
+            leftPkey = pkey;
+            t2cost = in.cost2;
+            t2card = in.card2;
+            rightPkey = in.pkey2;
         } else {
-            // news is not empty -- figure best way to join j to news
-            prevBest = pc.getOrder(news);
-
-            // possible that we have not cached an answer, if subset
-            // includes a cross product
-            if (prevBest == null) {
-                return null;
-            }
-
-            double prevBestCost = pc.getCost(news);
-            int bestCard = pc.getCard(news);
-
-            // estimate cost of right subtree
-            if (doesJoin(prevBest, table1Alias)) { // j.t1 is in prevBest
-                t1cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t1card = bestCard;
-                leftPkey = hasPkey(prevBest);
-
-                t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateScanCost();
-                t2card = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateTableCardinality(
-                                filterSelectivities.get(j.t2Alias));
-                rightPkey = j.t2Alias == null ? false : isPkey(j.t2Alias,
-                        j.f2PureName);
-            } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
-                                                        // (both
-                // shouldn't be)
-                t2cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t2card = bestCard;
-                rightPkey = hasPkey(prevBest);
-                t1cost = stats.get(table1Name).estimateScanCost();
-                t1card = stats.get(table1Name).estimateTableCardinality(
-                        filterSelectivities.get(j.t1Alias));
-                leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            } else {
-                // don't consider this plan if one of j.t1 or j.t2
-                // isn't a table joined in prevBest (cross product)
-                return null;
-            }
+            t1cost = in.cost1;
+            t1card = in.card1;
+            leftPkey = in.pkey1;
+            t2cost = cost;
+            t2card = card;
+            rightPkey = pkey;
         }
 
-        // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
-
-        LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
-        if (cost2 < cost1) {
-            boolean tmp;
-            j = j2;
-            cost1 = cost2;
-            tmp = rightPkey;
-            rightPkey = leftPkey;
-            leftPkey = tmp;
+        LogicalJoinNode chosen = j;
+        Algorithm a;
+        double cost1;
+        if (j instanceof LogicalSubplanJoinNode) {
+            a = null;
+            cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        } else {
+            //只有基表才能经索引查找
+            double probe2 = base || t1Joined ? in.probe2 : Double.NaN;
+            double probe1 = base || !t1Joined ? in.probe1 : Double.NaN;
+            a = cheapestAlgorithm(j.p, t1card, t2card, t1cost, t2cost, probe2);
+            cost1 = joinCost(a, j.p, t1card, t2card, t1cost, t2cost, probe2);
+            LogicalJoinNode j2 = j.swapInnerOuter();
+            Algorithm a2 = cheapestAlgorithm(j2.p, t2card, t1card, t2cost, t1cost, probe1);
+            double cost2 = joinCost(a2, j2.p, t2card, t1card, t2cost, t1cost, probe1);
+            if (cost2 < cost1) {
+                chosen = j2;
+                a = a2;
+                cost1 = cost2;
+            }
         }
         if (cost1 >= bestCostSoFar)
             return null;
 
         CostCard cc = new CostCard();
-
-        cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
-                rightPkey, stats);
+        cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey, rightPkey, stats);
         cc.cost = cost1;
-        cc.plan = (Vector<LogicalJoinNode>) prevBest.clone();
-        cc.plan.addElement(j); // prevbest is left -- add new join to end
+        cc.join = chosen;
+        cc.algorithm = a;
+        cc.pkey = pkey || in.pkey1 || in.pkey2;
         return cc;
     }
 
-    /**
-     * Return true if the specified table is in the list of joins, false
-     * otherwise
-     */
-    private boolean doesJoin(Vector<LogicalJoinNode> joinlist, String table) {
-        for (LogicalJoinNode j : joinlist) {
-            if (j.t1Alias.equals(table)
-                    || (j.t2Alias != null && j.t2Alias.equals(table)))
-                return true;
-        }
-        return false;
-    }
-
     /**
      * Return true if field is a primary key of the specified table, false
      * otherwise
@@ -404,20 +840,6 @@ public class JoinOptimizer {
         return pkey1.equals(field);
     }
 
-    /**
-     * Return true if a primary key field is joined by one of the joins in
-     * joinlist
-     */
-    private boolean hasPkey(Vector<LogicalJoinNode> joinlist) {
-        for (LogicalJoinNode j : joinlist) {
-            if (isPkey(j.t1Alias, j.f1PureName)
-                    || (j.t2Alias != null && isPkey(j.t2Alias, j.f2PureName)))
-                return true;
-        }
-        return false;
-
-    }
-
     /**
      * Helper function to display a Swing window with a tree representation of
      * the specified list of joins. See {@link #orderJoins}, which may want to
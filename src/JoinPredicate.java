@@ -13,6 +13,8 @@ public class JoinPredicate implements Serializable {
     int field1;
     int field2;
     Predicate.Op op;
+    private transient CompiledPredicate.Join compiled;
+    private transient Type compiledType;
 
     /**
      * Constructor -- create a new predicate over two fields of two tuples.
@@ -49,11 +51,22 @@ public class JoinPredicate implements Serializable {
             else
                 return false;
         } else {
-            boolean res = t1.getField(field1).compare(op, t2.getField(field2));
-            return res;
+            //字段类型要看到tuple才知道
+            return compile(t1.getField(field1).getType()).test(t1, t2);
         }
     }
 
+    /**
+     * @return this predicate specialised for fields of the given type
+     */
+    public CompiledPredicate.Join compile(Type type) {
+        if (compiled == null || compiledType != type) {
+            compiled = CompiledPredicate.compile(this, type);
+            compiledType = type;
+        }
+        return compiled;
+    }
+
     public int getField1() {
         // some code goes here
         return field1;
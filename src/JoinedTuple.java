@@ -0,0 +1,59 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * JoinedTuple is the output of a join: a view over a left and a right tuple
+ * under the join's merged TupleDesc. Creating one copies no fields; reading
+ * field i reads the left tuple's field i, or the right tuple's field
+ * i - (width of left).
+ * <p>
+ * The view is copy-on-write: setField first copies all fields into the
+ * JoinedTuple, so the underlying tuples are never changed. Operators that
+ * keep tuples for long call {@link #materialize} to get a flat copy.
+ */
+public class JoinedTuple extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Tuple left;
+    private final Tuple right;
+    private final int leftWidth;
+    private Field[] copy;//setField之后才有，之后只读这里
+
+    /**
+     * @param td
+     *            the merged TupleDesc of left and right
+     */
+    public JoinedTuple(TupleDesc td, Tuple left, Tuple right) {
+        super(td, null);
+        this.left = left;
+        this.right = right;
+        this.leftWidth = left.getTupleDesc().numFields();
+    }
+
+    @Override
+    public Field getField(int i) {
+        if (copy != null)
+            return copy[i];
+        return i < leftWidth ? left.getField(i) : right.getField(i - leftWidth);
+    }
+
+    @Override
+    public void setField(int i, Field f) {
+        if (i < 0 || i >= getTupleDesc().numFields())
+            throw new NoSuchElementException("invalid position!");
+        if (copy == null)
+            copy = toArray();
+        copy[i] = f;
+    }
+
+    @Override
+    public Tuple materialize() {
+        Tuple t = new Tuple(getTupleDesc());
+        for (int i = 0; i < getTupleDesc().numFields(); i++)
+            t.setField(i, getField(i));
+        t.setRecordId(getRecordId());
+        return t;
+    }
+}
@@ -0,0 +1,137 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Limit implements LIMIT count OFFSET offset: it skips the first offset
+ * tuples of its child and then returns at most count tuples.
+ * <p>
+ * Once count tuples have been returned the child is not read any more: the
+ * scans below it give back the read locks they took and the child is closed,
+ * so a small LIMIT over a large table does not hold locks on pages it never
+ * needed.
+ */
+public class Limit extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator child;
+    private final int limit;
+    private final int offset;
+    private int produced;
+    private boolean skipped;
+    private boolean childOpen;
+
+    /**
+     * @param limit
+     *            the maximum number of tuples to return
+     * @param offset
+     *            the number of leading tuples to skip
+     * @param child
+     *            the source of tuples
+     */
+    public Limit(int limit, int offset, OpIterator child) {
+        if (limit < 0 || offset < 0)
+            throw new IllegalArgumentException("negative limit or offset");
+        this.limit = limit;
+        this.offset = offset;
+        this.child = child;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        childOpen = true;
+        produced = 0;
+        skipped = false;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        if (childOpen)
+            child.close();
+        childOpen = false;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        //子节点可能已经提前关闭了，重新打开
+        if (childOpen)
+            child.rewind();
+        else {
+            child.open();
+            childOpen = true;
+        }
+        produced = 0;
+        skipped = false;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (!childOpen)
+            return null;
+        if (!skipped) {
+            for (int i = 0; i < offset && child.hasNext(); i++)
+                child.next();
+            skipped = true;
+        }
+        if (produced >= limit || !child.hasNext()) {
+            finish();
+            return null;
+        }
+        Tuple t = child.next();
+        produced++;
+        if (produced >= limit)
+            finish();
+        return t;
+    }
+
+    //已经取够了：释放扫描的读锁并关闭子节点
+    private void finish() {
+        releaseReadLocks(child);
+        child.close();
+        childOpen = false;
+    }
+
+    /**
+     * Ask every scan in the plan rooted at op to give back its read locks.
+     */
+    static void releaseReadLocks(OpIterator op) {
+        if (op == null)
+            return;
+        if (op instanceof SeqScan) {
+            ((SeqScan) op).releaseReadLocks();
+        } else if (op instanceof Exchange) {
+            //扫描在工作线程里，由Exchange停下它们再释放
+            ((Exchange) op).releaseReadLocks();
+        } else if (op instanceof MorselScan) {
+            ((MorselScan) op).releaseReadLocks();
+        } else if (op instanceof Operator) {
+            OpIterator[] children = ((Operator) op).getChildren();
+            if (children != null)
+                for (OpIterator c : children)
+                    releaseReadLocks(c);
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
@@ -23,6 +23,10 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The join operator chosen by {@link JoinOptimizer#orderJoins}, or null
+     * to let {@link JoinOptimizer#instantiateJoin} pick one from the predicate */
+    public JoinOptimizer.Algorithm algorithm;
+
     public LogicalJoinNode() {
     }
 
@@ -33,8 +33,11 @@ public class LogicalPlan {
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private boolean hasOrderBy = false;
+    private Vector<String> oByFields = new Vector<String>();
+    private Vector<Boolean> oByAscs = new Vector<Boolean>();
+    private int limit = -1;
+    private int offset = 0;
     private String query;
 //    private Query owner;
 
@@ -203,19 +206,42 @@ public class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  Calling this
+        more than once sorts on several fields; the field added first is the most significant.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
+        oByFields.addElement(field);
+        oByAscs.addElement(asc);
         hasOrderBy = true;
     }
 
+    /** Limit the result of the query to count rows, after skipping the first offset rows.
+        Combined with an ORDER BY this turns the sort into a top-N sort.
+        @param count the maximum number of rows to return
+        @param offset the number of leading rows to skip
+        @throws ParsingException if count or offset is negative
+    */
+    public void setLimit(int count, int offset) throws ParsingException {
+        if (count < 0 || offset < 0)
+            throw new ParsingException("LIMIT and OFFSET must not be negative");
+        this.limit = count;
+        this.offset = offset;
+    }
+
+    /** @return the LIMIT of the query, or -1 if it has none */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** @return the OFFSET of the query, 0 if it has none */
+    public int getOffset() {
+        return offset;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -334,7 +360,14 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            // all the conjuncts on one table go into a single Filter
+            if (subplan instanceof Filter) {
+                Filter prev = (Filter) subplan;
+                ArrayList<Predicate> preds = new ArrayList<Predicate>(prev.getPredicates());
+                preds.add(p);
+                subplanMap.put(lf.tableAlias, new Filter(preds, prev.getChildren()[0]));
+            } else
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -343,7 +376,26 @@ public class LogicalPlan {
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
-        
+
+        // a single table ordered on its B+ tree key is read in that order
+        // instead of being sorted
+        boolean indexOrdered = false;
+        if (hasOrderBy && oByFields.size() == 1 && !hasAgg && joins.isEmpty() && tables.size() == 1) {
+            LogicalScanNode table = tables.get(0);
+            DbFile f = Database.getCatalog().getDatabaseFile(table.t);
+            try {
+                int field = subplanMap.get(table.alias).getTupleDesc().fieldNameToIndex(oByFields.elementAt(0));
+                indexOrdered = f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+            } catch (NoSuchElementException e) {
+                // reported below, when the OrderBy is built
+            }
+        }
+        for (LogicalScanNode table : tables) {
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            subplanMap.put(table.alias, accessPath(t, table, subplanMap.get(table.alias), s,
+                    indexOrdered, indexOrdered && !oByAscs.elementAt(0)));
+        }
+
         if (!joins.isEmpty()) {
             JoinOptimizer jo = new JoinOptimizer(this,joins);
 
@@ -409,6 +461,19 @@ public class LogicalPlan {
         
         OpIterator node =  (OpIterator)(subplanMap.entrySet().iterator().next().getValue());
 
+        // a single large table: scan and filter it on several threads. Plans
+        // with joins stay serial, since the inner side of a join is rewound
+        // once per outer tuple
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean largeScan = false;
+        if (joins.isEmpty() && tables.size() == 1 && parallelism > 1
+                && Exchange.canParallelize(node)) {
+            DbFile f = Database.getCatalog().getDatabaseFile(tables.get(0).t);
+            largeScan = ((HeapFile) f).numPages() >= Exchange.MIN_PARALLEL_PAGES;
+            if (largeScan)
+                node = new Exchange(node, parallelism);
+        }
+
         //walk the select list, to determine order in which to project output fields
         ArrayList<Integer> outFields = new ArrayList<Integer>();
         ArrayList<Type> outTypes = new ArrayList<Type>();
@@ -463,10 +528,22 @@ public class LogicalPlan {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
+                int gField = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
                 aggNode = new Aggregate(node,
                                         td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
+                                        gField,
                                 getAggOp(aggOp));
+                // the same large scan can be aggregated on several threads too
+                if (largeScan)
+                    aggNode.setParallelism(parallelism);
+                // input already ordered on the group key: aggregate by streaming
+                // instead of hashing every group
+                if (gField != Aggregator.NO_GROUPING && Aggregate.isOrderedOn(node, gField))
+                    aggNode.setStreaming(true);
+                // a long scan: compile scan, filters and aggregation into one loop
+                else if (QueryCompiler.worthCompiling(node, td.fieldNameToIndex(aggField),
+                        gField, statsMap))
+                    aggNode.setCompiled(true);
             } catch (NoSuchElementException e) {
                 throw new simpledb.ParsingException(e);
             } catch (IllegalArgumentException e) {
@@ -476,12 +553,118 @@ public class LogicalPlan {
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+            int[] oByIdx = new int[oByFields.size()];
+            boolean[] ascs = new boolean[oByFields.size()];
+            for (int i = 0; i < oByIdx.length; i++) {
+                try {
+                    oByIdx[i] = node.getTupleDesc().fieldNameToIndex(oByFields.elementAt(i));
+                } catch (NoSuchElementException e) {
+                    throw new ParsingException("Unknown field " + oByFields.elementAt(i) + " in ORDER BY");
+                }
+                ascs[i] = oByAscs.elementAt(i);
+            }
+            if (indexOrdered) {
+                //已按索引的顺序读出
+            } else if (limit >= 0) {
+                //只需要前 limit+offset 个，用有界堆代替全排序
+                long topN = Math.min((long) limit + offset, Integer.MAX_VALUE);
+                node = new OrderBy(oByIdx, ascs, (int) topN, node);
+            } else
+                node = new OrderBy(oByIdx, ascs, node);
         }
 
+        if (limit >= 0)
+            node = new Limit(limit, offset, node);
+
         return new Project(outFields, outTypes, node);
     }
 
+    /**
+     * Choose how to read one table. A table stored in a {@link BTreeFile}
+     * with a filter on its key field that an {@link IndexPredicate} can
+     * express is read with a {@link BTreeScan} of the most selective such
+     * filter when the stats say that is cheaper than a full scan; the other
+     * filters are applied to what the index returns.
+     *
+     * @param subplan
+     *            the table's scan, possibly under a Filter
+     * @param ordered
+     *            true if the table must be read in key order, which an index
+     *            scan gives even without a filter
+     * @param reverse
+     *            true to read it in descending key order with a
+     *            {@link BTreeReverseScan}
+     * @return the plan for the table
+     */
+    private static OpIterator accessPath(TransactionId t, LogicalScanNode table,
+            OpIterator subplan, TableStats s, boolean ordered, boolean reverse) {
+        DbFile f = Database.getCatalog().getDatabaseFile(table.t);
+        if (f instanceof HeapFile)
+            return secondaryIndexPath(t, table, subplan, s);
+        if (!(f instanceof BTreeFile))
+            return subplan;
+        int key = ((BTreeFile) f).keyField();
+        ArrayList<Predicate> preds = new ArrayList<Predicate>();
+        if (subplan instanceof Filter)
+            preds.addAll(((Filter) subplan).getPredicates());
+        Predicate best = null;
+        double bestSel = 1.0;
+        for (Predicate p : preds) {
+            if (p.getField() != key || p.getOp() == Predicate.Op.NOT_EQUALS
+                    || p.getOp() == Predicate.Op.LIKE)
+                continue;
+            double sel = s.estimateSelectivity(key, p.getOp(), p.getOperand());
+            if (best == null || sel < bestSel) {
+                best = p;
+                bestSel = sel;
+            }
+        }
+        if (!ordered && (best == null || s.estimateIndexScanCost(bestSel) >= s.estimateScanCost()))
+            return subplan;
+
+        IndexPredicate ipred = best == null ? null : new IndexPredicate(best.getOp(), best.getOperand());
+        OpIterator scan = reverse ? new BTreeReverseScan(t, table.t, table.alias, ipred)
+                : new BTreeScan(t, table.t, table.alias, ipred);
+        preds.remove(best);
+        return preds.isEmpty() ? scan : new Filter(preds, scan);
+    }
+
+    /**
+     * Read a HeapFile table through one of its secondary indexes if some
+     * filter on an indexed column is cheaper to answer that way than by a
+     * sequential scan.
+     */
+    private static OpIterator secondaryIndexPath(TransactionId t, LogicalScanNode table,
+            OpIterator subplan, TableStats s) {
+        if (!(subplan instanceof Filter))
+            return subplan;
+        ArrayList<Predicate> preds = new ArrayList<Predicate>(((Filter) subplan).getPredicates());
+        Predicate best = null;
+        SecondaryIndex bestIndex = null;
+        double bestCost = s.estimateScanCost();
+        for (Predicate p : preds) {
+            if (p.getOp() == Predicate.Op.NOT_EQUALS || p.getOp() == Predicate.Op.LIKE)
+                continue;
+            SecondaryIndex index = Database.getCatalog().getIndex(table.t, p.getField());
+            if (index == null)
+                continue;
+            double sel = s.estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+            double cost = s.estimateIndexLookupCost(index, sel);
+            if (cost < bestCost) {
+                best = p;
+                bestIndex = index;
+                bestCost = cost;
+            }
+        }
+        if (best == null)
+            return subplan;
+
+        OpIterator scan = new SecondaryIndexScan(t, bestIndex, table.alias,
+                new IndexPredicate(best.getOp(), best.getOperand()));
+        preds.remove(best);
+        return preds.isEmpty() ? scan : new Filter(preds, scan);
+    }
+
     public static void main(String argv[]) {
         // construct a 3-column table schema
         Type types[] = new Type[]{ Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
@@ -0,0 +1,93 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * MorselScan is the per-worker leaf of a parallel scan: it reads the morsels
+ * (page ranges) it claims from a shared {@link ParallelScan} until none are
+ * left. Several MorselScans over the same ParallelScan together return every
+ * tuple of the file exactly once, in no particular order.
+ */
+public class MorselScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient ParallelScan scan;
+    private final TupleDesc td;
+    private transient DbFileIterator morsel;
+    private boolean open;
+
+    /**
+     * @param scan
+     *            the shared source of morsels
+     * @param td
+     *            the TupleDesc to report, normally that of the SeqScan this
+     *            scan replaces
+     */
+    public MorselScan(ParallelScan scan, TupleDesc td) {
+        this.scan = scan;
+        this.td = td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        open = true;
+        morsel = null;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (!open)
+            return false;
+        //当前morsel读完了就去领下一个
+        while (morsel == null || !morsel.hasNext()) {
+            if (morsel != null)
+                morsel.close();
+            morsel = scan.nextMorsel();
+            if (morsel == null) {
+                open = false;
+                return false;
+            }
+            morsel.open();
+        }
+        return true;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return morsel.next();
+    }
+
+    /**
+     * Start again from the first morsel. The morsels are shared, so this
+     * restarts the {@link ParallelScan} for every MorselScan reading from
+     * it; when there are several, they must all be restarted together (see
+     * {@link Exchange#rewind}, which starts new ones instead).
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (morsel != null)
+            morsel.close();
+        morsel = null;
+        scan.reset();
+        open = true;
+    }
+
+    /**
+     * Give back the read locks taken by every MorselScan sharing this one's
+     * {@link ParallelScan}; see {@link ParallelScan#releaseReadLocks}.
+     */
+    public void releaseReadLocks() {
+        scan.releaseReadLocks();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        if (morsel != null)
+            morsel.close();
+        morsel = null;
+        open = false;
+    }
+}
@@ -10,11 +10,17 @@ public class OrderBy extends Operator {
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private TupleDesc td;
-    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
+    private int[] orderByFields;
+    private boolean[] ascs;
     private int orderByField;
     private String orderByFieldName;
-    private Iterator<Tuple> it;
     private boolean asc;
+    private long memoryBytes;
+    private int limit = -1;
+    transient private ExternalSort sorter;
+    transient private ExternalSort.SortedIterator it;
+    transient private ArrayList<Tuple> topTups;
+    transient private Iterator<Tuple> topIt;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -27,11 +33,59 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several keys: by
+     * orderbyFields[0] first, ties broken by orderbyFields[1], and so on.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param ascs
+     *            ascs[i] is true if orderbyFields[i] is sorted ascending.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] ascs, OpIterator child) {
+        this(orderbyFields, ascs, child, ExternalSort.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Same as {@link #OrderBy(int[], boolean[], OpIterator)}, but sorts with
+     * at most about memoryBytes of tuples in memory; the rest is spilled to
+     * sorted runs on disk and merged.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] ascs, OpIterator child,
+            long memoryBytes) {
+        if (orderbyFields.length == 0 || orderbyFields.length != ascs.length)
+            throw new IllegalArgumentException("need one sort direction per ORDER BY field");
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields;
+        this.ascs = ascs;
+        this.orderByField = orderbyFields[0];
+        this.orderByFieldName = td.getFieldName(orderbyFields[0]);
+        this.asc = ascs[0];
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * Creates a top-N sort: only the first limit tuples of the ordering are
+     * returned. Instead of sorting the whole input it keeps the best limit
+     * tuples seen so far in a bounded heap, so it needs O(limit) memory.
+     * Used for ORDER BY ... LIMIT.
+     *
+     * @param limit
+     *            the number of tuples to return; must be non-negative
+     */
+    public OrderBy(int[] orderbyFields, boolean[] ascs, int limit,
+            OpIterator child) {
+        this(orderbyFields, ascs, child);
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.limit = limit;
     }
     
     public boolean isASC()
@@ -49,6 +103,24 @@ public class OrderBy extends Operator {
 	return this.orderByFieldName;
     }
     
+    /** @return all ORDER BY fields, most significant first */
+    public int[] getOrderByFields()
+    {
+        return this.orderByFields;
+    }
+
+    /** @return the sort direction of each field in {@link #getOrderByFields} */
+    public boolean[] getAscs()
+    {
+        return this.ascs;
+    }
+
+    /** @return the top-N limit of this sort, or -1 if all tuples are returned */
+    public int getLimit()
+    {
+        return this.limit;
+    }
+
     public TupleDesc getTupleDesc() {
         return td;
     }
@@ -56,21 +128,86 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        TupleComparator cmp = new TupleComparator(orderByFields, ascs);
+        if (limit >= 0) {
+            topTups = topN(cmp);
+            topIt = topTups.iterator();
+        } else {
+            // feed all the tuples to the sorter, which spills sorted runs to
+            // disk once its memory budget is used up
+            sorter = new ExternalSort(td, cmp, memoryBytes);
+            while (child.hasNext())
+                sorter.add(child.next());
+            sorter.sort();
+            it = sorter.iterator();
+        }
         super.open();
     }
 
+    /**
+     * Read the whole child and keep only the limit smallest tuples. The heap
+     * is ordered worst-first so the root is the one to evict; ties are
+     * broken by arrival order so the result matches a stable full sort.
+     */
+    private ArrayList<Tuple> topN(final TupleComparator cmp)
+            throws DbException, TransactionAbortedException {
+        PriorityQueue<Ranked> heap = new PriorityQueue<Ranked>(
+                Math.max(1, Math.min(limit, 1024)), new Comparator<Ranked>() {
+                    public int compare(Ranked a, Ranked b) {
+                        int c = cmp.compare(b.t, a.t);
+                        return c != 0 ? c : Long.compare(b.seq, a.seq);
+                    }
+                });
+        CompactTuple.Layout layout = new CompactTuple.Layout(td);
+        long seq = 0;
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (limit == 0)
+                continue;
+            if (heap.size() < limit) {
+                heap.add(new Ranked(layout.pack(t), seq++));
+            } else if (cmp.compare(t, heap.peek().t) < 0) {
+                //比堆中最差的还小才替换，相等时先到的优先
+                heap.poll();
+                heap.add(new Ranked(layout.pack(t), seq++));
+            }
+        }
+        Tuple[] out = new Tuple[heap.size()];
+        for (int i = out.length - 1; i >= 0; i--)
+            out[i] = heap.poll().t;
+        return new ArrayList<Tuple>(Arrays.asList(out));
+    }
+
+    private static class Ranked {
+        final Tuple t;
+        final long seq;
+
+        Ranked(Tuple t, long seq) {
+            this.t = t;
+            this.seq = seq;
+        }
+    }
+
     public void close() {
         super.close();
+        if (it != null)
+            it.close();
         it = null;
+        if (sorter != null)
+            sorter.close();
+        sorter = null;
+        topTups = null;
+        topIt = null;
+        child.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        if (topTups != null) {
+            topIt = topTups.iterator();
+            return;
+        }
+        it.close();
+        it = sorter.iterator();
     }
 
     /**
@@ -82,7 +219,9 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        if (it != null && it.hasNext()) {
+        if (topIt != null) {
+            return topIt.hasNext() ? topIt.next() : null;
+        } else if (it != null) {
             return it.next();
         } else
             return null;
@@ -99,25 +238,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-    
-}
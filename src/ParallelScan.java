@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelScan hands out the pages of a HeapFile to worker threads in
+ * morsels: ranges of a few consecutive pages. Each worker repeatedly calls
+ * {@link #nextMorsel} and scans the range it gets, so fast workers simply
+ * take more morsels and no worker is left with a long tail.
+ * <p>
+ * All workers read on behalf of the same transaction, or without locks if
+ * it is null (see {@link HeapFile#iterator(TransactionId, int, int)}).
+ * <p>
+ * A scan made by {@link #sample} covers only a random subset of the pages,
+ * handed out one page per morsel in file order.
+ */
+public class ParallelScan {
+
+    /** Default number of pages in one morsel. */
+    public static final int DEFAULT_MORSEL_PAGES = 8;
+
+    private final TransactionId tid;
+    private final HeapFile file;
+    private final int morselPages;
+    private final int numPages;
+    private final int[] pages;//抽样扫描的页号，扫描全部页时为null
+    private final AtomicInteger nextPage = new AtomicInteger(0);
+    //已经发出去的morsel，提前结束扫描时用来释放它们加的读锁
+    private final ArrayList<DbFileIterator> morsels = new ArrayList<DbFileIterator>();
+
+    public ParallelScan(TransactionId tid, HeapFile file, int morselPages) {
+        if (morselPages <= 0)
+            throw new IllegalArgumentException("morsel size must be positive");
+        this.tid = tid;
+        this.file = file;
+        this.morselPages = morselPages;
+        this.numPages = file.numPages();
+        this.pages = null;
+    }
+
+    private ParallelScan(TransactionId tid, HeapFile file, int[] pages) {
+        this.tid = tid;
+        this.file = file;
+        this.morselPages = 1;
+        this.numPages = pages.length;
+        this.pages = pages;
+    }
+
+    /**
+     * A scan of k pages of file chosen uniformly at random without
+     * replacement, or of the whole file if it has at most k pages.
+     */
+    public static ParallelScan sample(TransactionId tid, HeapFile file, int k, Random random) {
+        int n = file.numPages();
+        if (k >= n)
+            return new ParallelScan(tid, file);
+        return sample(tid, file, n, k, random);
+    }
+
+    /**
+     * A scan of k pages chosen uniformly at random without replacement from
+     * the first n pages of file, or of all n if k is at least n.
+     */
+    static ParallelScan sample(TransactionId tid, HeapFile file, int n, int k, Random random) {
+        if (k >= n) {
+            int[] all = new int[n];
+            for (int p = 0; p < n; p++)
+                all[p] = p;
+            return new ParallelScan(tid, file, all);
+        }
+        //Floyd抽样：k个不重复的页号，再按文件顺序排好
+        HashSet<Integer> chosen = new HashSet<Integer>();
+        for (int j = n - k; j < n; j++) {
+            int r = random.nextInt(j + 1);
+            chosen.add(chosen.contains(r) ? j : r);
+        }
+        int[] pages = new int[k];
+        int i = 0;
+        for (int p : chosen)
+            pages[i++] = p;
+        Arrays.sort(pages);
+        return new ParallelScan(tid, file, pages);
+    }
+
+    /** @return true if this scan covers only some of the file's pages */
+    public boolean isSample() {
+        return pages != null;
+    }
+
+    public ParallelScan(TransactionId tid, HeapFile file) {
+        this(tid, file, DEFAULT_MORSEL_PAGES);
+    }
+
+    /** @return the number of pages being scanned, which for a sample is its size */
+    public int numPages() {
+        return numPages;
+    }
+
+    /** @return the number of morsels the file is split into */
+    public int numMorsels() {
+        return (numPages + morselPages - 1) / morselPages;
+    }
+
+    /**
+     * Claim the next unscanned range of pages. Safe to call from several
+     * threads at once.
+     *
+     * @return an unopened iterator over the claimed pages, or null once every
+     *         page has been handed out
+     */
+    public DbFileIterator nextMorsel() {
+        DbFileIterator it;
+        if (pages != null) {
+            int i = nextPage.getAndIncrement();
+            if (i >= pages.length)
+                return null;
+            it = file.iterator(tid, pages[i], pages[i] + 1);
+        } else {
+            int start = nextPage.getAndAdd(morselPages);
+            if (start >= numPages)
+                return null;
+            it = file.iterator(tid, start, Math.min(numPages, start + morselPages));
+        }
+        synchronized (morsels) {
+            morsels.add(it);
+        }
+        return it;
+    }
+
+    /**
+     * Give back the read locks taken by the morsels handed out so far, as
+     * {@link SeqScan#releaseReadLocks} does. The workers must have stopped
+     * reading first.
+     */
+    public void releaseReadLocks() {
+        synchronized (morsels) {
+            for (DbFileIterator it : morsels)
+                if (it instanceof HeapFile.HeapFileIterator1)
+                    ((HeapFile.HeapFileIterator1) it).releaseReadLocks();
+            morsels.clear();
+        }
+    }
+
+    /** Start handing out pages from the beginning again. */
+    public void reset() {
+        nextPage.set(0);
+    }
+
+    /**
+     * If op is a SeqScan of a HeapFile, possibly under a chain of Filters
+     * and Exchanges, return a ParallelScan of that file for the scan's
+     * transaction and add the filters' predicates to preds, top-down.
+     * Otherwise return null.
+     */
+    static ParallelScan of(OpIterator op, List<Predicate> preds) {
+        //Exchange下面的扫描直接交给调用者自己的工作线程
+        while (op instanceof Exchange)
+            op = ((Exchange) op).getChildren()[0];
+        while (op instanceof Filter) {
+            preds.addAll(((Filter) op).getPredicates());
+            op = ((Filter) op).getChildren()[0];
+        }
+        if (!(op instanceof SeqScan))
+            return null;
+        SeqScan ss = (SeqScan) op;
+        DbFile f = Database.getCatalog().getDatabaseFile(ss.getTableId());
+        if (!(f instanceof HeapFile))
+            return null;
+        return new ParallelScan(ss.getTransactionId(), (HeapFile) f);
+    }
+}
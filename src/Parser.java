@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -253,18 +255,15 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -273,12 +272,54 @@ public class Parser {
     private Transaction curtrans = null;
     private boolean inUserTrans = false;
 
+    // Zql不支持LIMIT：先把语句末尾的 LIMIT n [OFFSET m] 或 LIMIT m, n 去掉，
+    // 记下来，生成逻辑计划后再加到最外层查询上
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "\\s+LIMIT\\s+(\\d+)(?:\\s*,\\s*(\\d+)|\\s+OFFSET\\s+(\\d+))?\\s*(;?)\\s*$",
+            Pattern.CASE_INSENSITIVE);
+    private int stmtLimit = -1;
+    private int stmtOffset = 0;
+
+    /**
+     * Remove a trailing LIMIT clause from a statement and remember it in
+     * stmtLimit/stmtOffset; Zql cannot parse LIMIT itself.
+     *
+     * @return the statement without its LIMIT clause
+     */
+    String stripLimit(String sql) throws simpledb.ParsingException {
+        stmtLimit = -1;
+        stmtOffset = 0;
+        Matcher m = LIMIT_CLAUSE.matcher(sql);
+        if (!m.find())
+            return sql;
+        try {
+            if (m.group(2) != null) {
+                // MySQL形式 LIMIT offset, count
+                stmtOffset = Integer.parseInt(m.group(1));
+                stmtLimit = Integer.parseInt(m.group(2));
+            } else {
+                stmtLimit = Integer.parseInt(m.group(1));
+                if (m.group(3) != null)
+                    stmtOffset = Integer.parseInt(m.group(3));
+            }
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT value out of range");
+        }
+        return sql.substring(0, m.start()) + m.group(4);
+    }
+
+    private void applyLimit(LogicalPlan lp) throws simpledb.ParsingException {
+        if (stmtLimit >= 0)
+            lp.setLimit(stmtLimit, stmtOffset);
+    }
+
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        applyLimit(lp);
         OpIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -465,12 +506,13 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        ByteArrayInputStream bis = new ByteArrayInputStream(stripLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                applyLimit(lp);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -503,8 +545,16 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = is.read(chunk)) > 0)
+                buf.write(chunk, 0, n);
+            String sql = stripLimit(buf.toString("UTF-8"));
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(sql.getBytes("UTF-8")));
             ZStatement s = p.readStatement();
+            if (stmtLimit >= 0 && !(s instanceof ZQuery))
+                throw new simpledb.ParsingException("LIMIT is only supported on SELECT");
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -581,7 +631,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit", "offset" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -0,0 +1,20 @@
+package simpledb;
+
+/**
+ * The entry point of a class generated by {@link QueryCompiler}: the whole
+ * scan, filter, project and aggregate pipeline over one HeapPage, as a
+ * single loop over the page's bytes.
+ */
+public interface PipelineKernel {
+
+    /**
+     * Aggregate the qualifying tuples of one page.
+     *
+     * @param page
+     *            the page in the on-disk HeapPage format
+     * @param groups
+     *            where the (group, value) pairs of the qualifying tuples are
+     *            added
+     */
+    public void run(byte[] page, HashAggregation groups) throws DbException;
+}
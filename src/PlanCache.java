@@ -1,14 +1,27 @@
 package simpledb;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.Vector;
 
 /** A PlanCache is a helper class that can be used to store the best
- * way to order a given set of joins */
+ * way to order a given set of joins.
+ * <p>
+ * Besides the plans keyed by sets of joins, it holds the memo of
+ * {@link JoinOptimizer#orderJoins}'s dynamic programming, keyed by bitmasks
+ * of tables: bit i stands for the i-th table the joins name. For each subset
+ * only the joins its best left-deep plan adds to a plan of fewer tables are
+ * kept; the whole order is rebuilt by following those plans back with
+ * {@link #getSteps(int)}.
+ */
 public class PlanCache {
     HashMap<Set<LogicalJoinNode>,Vector<LogicalJoinNode>> bestOrders= new HashMap<Set<LogicalJoinNode>,Vector<LogicalJoinNode>>();
     HashMap<Set<LogicalJoinNode>,Double> bestCosts= new HashMap<Set<LogicalJoinNode>,Double>();
     HashMap<Set<LogicalJoinNode>,Integer> bestCardinalities = new HashMap<Set<LogicalJoinNode>,Integer>();
+
+    //位图备忘录，下标为表集合的位图；maskSteps为null表示还没有计划
+    private int[] prevTables;
+    private CostCard[][] maskSteps;
     
     /** Add a new cost, cardinality and ordering for a particular join set.  Does not verify that the
         new cost is less than any previously added cost -- simply adds or replaces an existing plan for the
@@ -47,4 +60,57 @@ public class PlanCache {
     int getCard(Set<LogicalJoinNode> s) {
         return bestCardinalities.get(s);
     }
+
+    /** Make room in the bitmask memo for every subset of n tables, n < 31. */
+    void initMasks(int n) {
+        prevTables = new int[1 << n];
+        maskSteps = new CostCard[1 << n][];
+    }
+
+    /** @return true if a plan for the tables in mask has been added */
+    boolean hasPlan(int mask) {
+        return maskSteps[mask] != null;
+    }
+
+    /** Add or replace the plan for the tables in mask.
+        @param mask the tables the plan joins
+        @param prev the tables of the plan it extends, or 0 if it starts
+               from base tables
+        @param steps the joins it adds to that plan, in order, each with
+               its operator and the cost and cardinality of the plan so far
+    */
+    void addPlan(int mask, int prev, CostCard[] steps) {
+        prevTables[mask] = prev;
+        maskSteps[mask] = steps;
+    }
+
+    double getCost(int mask) {
+        CostCard[] steps = maskSteps[mask];
+        return steps[steps.length - 1].cost;
+    }
+
+    int getCard(int mask) {
+        CostCard[] steps = maskSteps[mask];
+        return steps[steps.length - 1].card;
+    }
+
+    /** @return whether the plan for mask joins a primary key */
+    boolean hasPkey(int mask) {
+        CostCard[] steps = maskSteps[mask];
+        return steps[steps.length - 1].pkey;
+    }
+
+    /** @return every join of the best plan for mask, first join first, as
+        the steps added with {@link #addPlan(int, int, CostCard[])} */
+    Vector<CostCard> getSteps(int mask) {
+        Vector<CostCard> order = new Vector<CostCard>();
+        while (mask != 0) {
+            CostCard[] steps = maskSteps[mask];
+            for (int i = steps.length - 1; i >= 0; i--)
+                order.add(steps[i]);
+            mask = prevTables[mask];
+        }
+        Collections.reverse(order);
+        return order;
+    }
 }
@@ -59,7 +59,7 @@ public class Predicate implements Serializable {
     int field;//需要比较的指定字段编号
     Op op;
     Field operand;//给定的比较字段
-
+    private transient CompiledPredicate compiled;//第一次使用时生成
 
 
     public Predicate(int field, Op op, Field operand) {
@@ -112,8 +112,20 @@ public class Predicate implements Serializable {
 
         //两个比较对象operand和t.field+比较方法op，用compare实现
         //boolean res= operand.compare(op,t.getField(field));
-        return t.getField(field).compare(op,operand);//反过来不行
+        return compile().test(t);
+
+    }
 
+    /**
+     * @return this predicate specialised for its operand type and operator.
+     *         Operators that evaluate it in a loop should fetch it once, when
+     *         they are opened.
+     */
+    public CompiledPredicate compile() {
+        //多个线程同时生成也没关系，结果相同
+        if (compiled == null)
+            compiled = CompiledPredicate.compile(this);
+        return compiled;
     }
 
     /**
@@ -45,6 +45,11 @@ public class Project extends Operator {
         return td;
     }
 
+    /** @return the ids of the child's fields this projection outputs */
+    public ArrayList<Integer> getOutFieldIds() {
+        return outFieldIds;
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
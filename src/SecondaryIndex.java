@@ -0,0 +1,414 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A secondary index on one column of a {@link HeapFile} table. It is a
+ * {@link BTreeFile} of entries (key, page number, slot), one per tuple of the
+ * table, keyed on the indexed column; the page number and slot make up the
+ * tuple's {@link RecordId}, which stays valid because a HeapFile never moves
+ * a tuple once it is written.
+ * <p>
+ * Indexes are registered with {@link Catalog#addIndex} and kept up to date
+ * by {@link BufferPool#insertTuple} and {@link BufferPool#deleteTuple}. A
+ * catalog read with {@link Catalog#loadSchema} also records them in its
+ * schema file, so they are reattached when the schema is loaded again. The
+ * planner reads them with a {@link SecondaryIndexScan}: the entries matching
+ * an {@link IndexPredicate} are looked up in the tree and each tuple is then
+ * fetched from its heap page.
+ * <p>
+ * {@link #create} builds an index while the table stays in use. The table is
+ * read one page at a time, each page locked only while it is read; the
+ * entries are sorted with an {@link ExternalSort} and the tree is written
+ * bottom-up by a {@link BTreeBulkLoader}. Changes made meanwhile to pages
+ * already read are recorded rather than applied to the tree; at the end the
+ * build waits for the transactions writing the table to finish, applies the
+ * recorded changes of those that committed, and the index becomes ready.
+ */
+public class SecondaryIndex {
+
+    /** How many times the end of a build is retried after a lock timeout. */
+    static final int CATCH_UP_ATTEMPTS = 10;
+
+    //索引项按(键, 页号, 槽号)排序
+    private static final Comparator<Tuple> ENTRY_ORDER = new Comparator<Tuple>() {
+        public int compare(Tuple a, Tuple b) {
+            for (int i = 0; i < 3; i++) {
+                Field x = a.getField(i), y = b.getField(i);
+                if (x.compare(Predicate.Op.LESS_THAN, y))
+                    return -1;
+                if (x.compare(Predicate.Op.GREATER_THAN, y))
+                    return 1;
+            }
+            return 0;
+        }
+    };
+
+    //建索引的进度：页号小于scanned的页已经读过，这些页上的改动记在changes里
+    private static class Build {
+        int scanned = 0;
+        final ArrayList<Change> changes = new ArrayList<Change>();
+    }
+
+    //建索引期间记下的一次插入或删除
+    private static class Change {
+        final TransactionId tid;
+        final Tuple entry;
+        final boolean insert;
+
+        Change(TransactionId tid, Tuple entry, boolean insert) {
+            this.tid = tid;
+            this.entry = entry;
+            this.insert = insert;
+        }
+    }
+
+    private final String name;
+    private final int tableId;
+    private final int field;
+    private final BTreeFile file;
+    private Build build = null;//建好后为null
+
+    /**
+     * Open the index stored in f, which is created empty if it does not
+     * exist. The index is not registered in the catalog.
+     *
+     * @param name
+     *            the name of the index, under which the catalog lists its
+     *            BTreeFile
+     * @param tableId
+     *            the id of the indexed HeapFile
+     * @param field
+     *            the index of the indexed column
+     * @param f
+     *            the file holding the B+ tree
+     */
+    public SecondaryIndex(String name, int tableId, int field, File f) {
+        this.name = name;
+        this.tableId = tableId;
+        this.field = field;
+        Type keyType = Database.getCatalog().getTupleDesc(tableId).getFieldType(field);
+        this.file = new BTreeFile(f, 0, entryDesc(keyType));
+    }
+
+    /**
+     * Build an index on a column of a table in f, with leaf and internal
+     * pages filled to fillFactor, and register it in the catalog. The table
+     * can be read and written while the index is built; the index is used
+     * for lookups once this returns. The build runs in transactions of its
+     * own.
+     *
+     * @throws NoSuchElementException
+     *             if the table does not exist
+     * @throws IllegalArgumentException
+     *             if the table is not a HeapFile, or fillFactor is not in
+     *             (0, 1]
+     * @throws DbException
+     *             if f is not empty
+     * @throws TransactionAbortedException
+     *             if the build could not lock the table to finish; the index
+     *             is then not registered
+     */
+    public static SecondaryIndex create(String name, int tableId, int field, File f,
+            double fillFactor) throws DbException, IOException, TransactionAbortedException {
+        if (f.length() > 0)
+            throw new DbException("index file " + f + " is not empty");
+        SecondaryIndex index = new SecondaryIndex(name, tableId, field, f);
+        index.build = new Build();
+        Database.getCatalog().addIndex(index);
+        boolean done = false;
+        try {
+            ExternalSort sorted = new ExternalSort(index.file.getTupleDesc(), ENTRY_ORDER);
+            try {
+                index.scan(sorted);
+                BTreeBulkLoader loader = new BTreeBulkLoader(index.file, fillFactor);
+                ExternalSort.SortedIterator it = sorted.iterator();
+                Tuple e;
+                while ((e = it.next()) != null)
+                    loader.add(e);
+                it.close();
+                loader.finish();
+            } finally {
+                sorted.close();
+            }
+            index.catchUp();
+            done = true;
+            Database.getCatalog().saveIndex(index);
+        } finally {
+            if (!done)
+                Database.getCatalog().removeIndex(index);
+        }
+        return index;
+    }
+
+    /**
+     * Build an index with pages filled to
+     * {@link BTreeBulkLoader#DEFAULT_FILL_FACTOR}.
+     *
+     * @see #create(String, int, int, File, double)
+     */
+    public static SecondaryIndex create(String name, int tableId, int field, File f)
+            throws DbException, IOException, TransactionAbortedException {
+        return create(name, tableId, field, f, BTreeBulkLoader.DEFAULT_FILL_FACTOR);
+    }
+
+    //一页一页读表，每页只在读的时候加锁；读过的页上后来的改动由record记下
+    private void scan(ExternalSort sorted) throws DbException, IOException {
+        HeapFile table = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+        TransactionId tid = new TransactionId();
+        try {
+            for (int p = 0;; p++) {
+                synchronized (this) {
+                    if (p >= table.numPages()) {
+                        build.scanned = Integer.MAX_VALUE;
+                        break;
+                    }
+                }
+                HeapPageId pid = new HeapPageId(tableId, p);
+                HeapPage page;
+                try {
+                    page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                } catch (TransactionAbortedException e) {
+                    p--;//有事务正在写这一页，等它结束再读
+                    continue;
+                }
+                Iterator<Tuple> it = page.iterator();
+                while (it.hasNext())
+                    sorted.add(entry(it.next()));
+                synchronized (this) {
+                    build.scanned = p + 1;
+                }
+                Database.getBufferPool().releasePage(tid, pid);
+            }
+        } finally {
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /**
+     * Finish a build: read-lock every page of the table, which waits for the
+     * transactions writing it to finish and holds off new ones, apply the
+     * changes recorded for the transactions that committed and mark the
+     * index ready. Retried if a lock times out.
+     */
+    private void catchUp() throws DbException, IOException, TransactionAbortedException {
+        HeapFile table = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+        for (int attempt = 1;; attempt++) {
+            TransactionId tid = new TransactionId();
+            ArrayList<Change> applied = new ArrayList<Change>();
+            try {
+                int locked = 0;
+                while (true) {
+                    for (; locked < table.numPages(); locked++)
+                        Database.getBufferPool().lockPage(tid, new HeapPageId(tableId, locked),
+                                Permissions.READ_ONLY);
+                    ArrayList<Change> todo = new ArrayList<Change>();
+                    synchronized (this) {
+                        //已加锁的页上的改动都来自已结束的事务，回滚的已由abort去掉
+                        Iterator<Change> it = build.changes.iterator();
+                        while (it.hasNext()) {
+                            Change c = it.next();
+                            if (pageOf(c.entry) < locked) {
+                                todo.add(c);
+                                it.remove();
+                            }
+                        }
+                        //表没有变长，也没有要补的改动了：之后的改动直接改树
+                        if (todo.isEmpty() && table.numPages() == locked) {
+                            build = null;
+                            break;
+                        }
+                    }
+                    applied.addAll(todo);
+                    for (Change c : todo) {
+                        if (c.insert)
+                            Database.getBufferPool().insertTuple(tid, file.getId(), c.entry);
+                        else
+                            remove(tid, c.entry);
+                    }
+                }
+                Database.getBufferPool().transactionComplete(tid);
+                return;
+            } catch (TransactionAbortedException e) {
+                Database.getBufferPool().transactionComplete(tid, false);
+                synchronized (this) {
+                    build.changes.addAll(0, applied);
+                }
+                if (attempt >= CATCH_UP_ATTEMPTS)
+                    throw e;
+            }
+        }
+    }
+
+    /** @return true once the index has been built and can be read */
+    public synchronized boolean isReady() {
+        return build == null;
+    }
+
+    /** @return the layout of the entries of an index on a column of type keyType */
+    static TupleDesc entryDesc(Type keyType) {
+        return new TupleDesc(new Type[] { keyType, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { "key", "page", "slot" });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** @return the id of the indexed table */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the index of the indexed column */
+    public int getField() {
+        return field;
+    }
+
+    /** @return the B+ tree holding the entries */
+    public BTreeFile getFile() {
+        return file;
+    }
+
+    //t的索引项，t必须已有记录id
+    private Tuple entry(Tuple t) {
+        return entry(t.getField(field), t.getRecordId());
+    }
+
+    private Tuple entry(Field key, RecordId rid) {
+        Tuple e = new Tuple(file.getTupleDesc());
+        e.setField(0, key);
+        e.setField(1, new IntField(rid.getPageId().getPageNumber()));
+        e.setField(2, new IntField(rid.getTupleNumber()));
+        return e;
+    }
+
+    private static int pageOf(Tuple entry) {
+        return ((IntField) entry.getField(1)).getValue();
+    }
+
+    /** @return the id of the table tuple an entry points to */
+    RecordId recordId(Tuple entry) {
+        return new RecordId(new HeapPageId(tableId, ((IntField) entry.getField(1)).getValue()),
+                ((IntField) entry.getField(2)).getValue());
+    }
+
+    /** Add the entry for t, which has just been inserted into the table. */
+    void insert(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Tuple e = entry(t);
+        if (!record(tid, e, true))
+            Database.getBufferPool().insertTuple(tid, file.getId(), e);
+    }
+
+    /**
+     * Remove the entry for the tuple with value key at rid, which has just
+     * been deleted from the table. Does nothing if there is no such entry.
+     */
+    void delete(TransactionId tid, Field key, RecordId rid)
+            throws DbException, IOException, TransactionAbortedException {
+        Tuple e = entry(key, rid);
+        if (!record(tid, e, false))
+            remove(tid, e);
+    }
+
+    private void remove(TransactionId tid, Tuple entry)
+            throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = recordId(entry);
+        DbFileIterator it = file.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.EQUALS, entry.getField(0)));
+        it.open();
+        Tuple found = null;
+        while (found == null && it.hasNext()) {
+            Tuple e = it.next();
+            if (recordId(e).equals(rid))
+                found = e;
+        }
+        it.close();
+        if (found != null)
+            Database.getBufferPool().deleteTuple(tid, found);
+    }
+
+    /**
+     * While the index is being built, record a change to a page the build
+     * has already read, to be applied at the end; changes to pages not read
+     * yet are left for the build to see.
+     *
+     * @return false if the index is ready and the change must be applied
+     */
+    private synchronized boolean record(TransactionId tid, Tuple entry, boolean insert) {
+        if (build == null)
+            return false;
+        if (pageOf(entry) < build.scanned)
+            build.changes.add(new Change(tid, entry, insert));
+        return true;
+    }
+
+    /**
+     * Forget the changes recorded during a build for a transaction that is
+     * aborting. Called by {@link BufferPool#transactionComplete}.
+     */
+    synchronized void abort(TransactionId tid) {
+        if (build == null)
+            return;
+        Iterator<Change> it = build.changes.iterator();
+        while (it.hasNext())
+            if (it.next().tid.equals(tid))
+                it.remove();
+    }
+
+    /**
+     * @return an iterator over the tuples of the table whose indexed column
+     *         satisfies ipred, in ascending order of that column
+     */
+    public DbFileIterator lookup(TransactionId tid, IndexPredicate ipred) {
+        return new LookupIterator(tid, file.indexIterator(tid, ipred));
+    }
+
+    //按索引项的记录id到堆页面上取元组
+    private class LookupIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final DbFileIterator entries;
+
+        LookupIterator(TransactionId tid, DbFileIterator entries) {
+            this.tid = tid;
+            this.entries = entries;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            entries.open();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (entries.hasNext()) {
+                RecordId rid = recordId(entries.next());
+                HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(),
+                        Permissions.READ_ONLY);
+                Tuple t = p.getTuple(rid.getTupleNumber());
+                if (t != null)
+                    return t;
+            }
+            return null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            entries.close();
+        }
+    }
+
+    public String toString() {
+        return name + " ON " + Database.getCatalog().getTableName(tableId) + "("
+                + Database.getCatalog().getTupleDesc(tableId).getFieldName(field) + ")";
+    }
+}
@@ -7,14 +7,19 @@ import java.util.*;
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
  */
-public class SeqScan implements OpIterator {
+public class SeqScan implements OpIterator, BloomFilterTarget {
 
     private static final long serialVersionUID = 1L;
 
     private final TransactionId tid;
     private int tableId;
     private String tableAlias;
+    private TupleDesc td;//字段名带上别名前缀，建一次
     private DbFileIterator it;
+    //hash join下推的运行时过滤器，为null时不过滤
+    private int bloomField = -1;
+    private BloomFilter bloomFilter = null;
+    private Tuple pending = null;
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -35,8 +40,7 @@ public class SeqScan implements OpIterator {
         // some code goes here
 
         this.tid=tid;
-        this.tableId=tableid;
-        this.tableAlias=tableAlias;
+        reset(tableid, tableAlias);
     }
 
     /**
@@ -58,6 +62,16 @@ public class SeqScan implements OpIterator {
         return tableAlias;
     }
 
+    /** @return the id of the table this operator scans */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the transaction this scan reads for */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
@@ -74,6 +88,14 @@ public class SeqScan implements OpIterator {
         // some code goes here
         this.tableId=tableid;
         this.tableAlias=tableAlias;
+        TupleDesc base = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[base.numFields()];
+        String[] names = new String[base.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = base.getFieldType(i);
+            names[i] = tableAlias + "." + base.getFieldName(i);
+        }
+        this.td = new TupleDesc(types, names);
     }
 
     public SeqScan(TransactionId tid, int tableId) {
@@ -99,14 +121,22 @@ public class SeqScan implements OpIterator {
      */
     public TupleDesc getTupleDesc() {
         // some code goes here
-        return Database.getCatalog().getTupleDesc(tableId);
+        return td;
     }
 
     public boolean hasNext() throws TransactionAbortedException, DbException {
         // some code goes here
         if(it==null)
             throw new IllegalStateException("帆子");
-        return it.hasNext();
+        if(bloomFilter==null)
+            return pending!=null||it.hasNext();
+        //跳过连接键不可能匹配的tuple
+        while(pending==null&&it.hasNext()){
+            Tuple t=it.next();
+            if(bloomFilter.mightContain(t.getField(bloomField)))
+                pending=t;
+        }
+        return pending!=null;
     }
 
     public Tuple next() throws NoSuchElementException,
@@ -116,14 +146,39 @@ public class SeqScan implements OpIterator {
             throw new IllegalStateException("...");
         if(!hasNext())
             throw new NoSuchElementException("...");
-
+        if(pending!=null){
+            Tuple t=pending;
+            pending=null;
+            return t;
+        }
         return it.next();
     }
 
+    /**
+     * Drop tuples whose value of field cannot be in bf. Used by hash joins
+     * to push their build-side keys down to the probe-side scan.
+     */
+    public boolean setBloomFilter(int field, BloomFilter bf) {
+        this.bloomField=field;
+        this.bloomFilter=bf;
+        return true;
+    }
+
+    /**
+     * Give back the read locks this scan has taken so far. Called by operators
+     * such as {@link Limit} that stop reading before the end of the table;
+     * pages the transaction locked before the scan, or wrote, keep their locks.
+     */
+    public void releaseReadLocks() {
+        if(it instanceof HeapFile.HeapFileIterator1)
+            ((HeapFile.HeapFileIterator1) it).releaseReadLocks();
+    }
+
     public void close() {
         // some code goes here
         //it.close(); //2023.5.2修改 JoinTest报错
         it=null;
+        pending=null;
     }
 
     public void rewind() throws DbException, NoSuchElementException,
@@ -131,6 +186,7 @@ public class SeqScan implements OpIterator {
         // some code goes here
         if(it==null)
             throw new IllegalStateException("hhh");
+        pending=null;
         it.rewind();
     }
 }
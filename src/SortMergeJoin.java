@@ -0,0 +1,142 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * Sort-merge equi-join. Both children are sorted on their join field by an
+ * {@link OrderBy}, which spills to disk through {@link ExternalSort} when
+ * they do not fit in memory, and then merged in one pass. Each run of
+ * child2 tuples with the same key is kept in memory so it can be paired
+ * with every child1 tuple of that key. Output tuples are child1's fields
+ * followed by child2's, in ascending order of the join key.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+    private OpIterator child1, child2;
+    private TupleDesc td;
+    private transient OrderBy sorted1, sorted2;
+    private transient CompactTuple.Layout layout;
+    private transient ArrayList<Tuple> run;//child2中键等于runKey的元组
+    private transient Field runKey;
+    private transient Tuple t1;
+    private transient int pos;
+    private transient Tuple next2;//child2中还没放进run的下一个元组
+
+    /**
+     * @param p
+     *            The predicate to join on; must be an equality
+     * @param child1
+     *            Iterator for the left relation to join
+     * @param child2
+     *            Iterator for the right relation to join
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("sort-merge join needs an equality predicate");
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(p.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(p.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    private static int compare(Field a, Field b) {
+        if (a.compare(Predicate.Op.EQUALS, b))
+            return 0;
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+
+    private void start() throws DbException, TransactionAbortedException {
+        run = new ArrayList<Tuple>();
+        runKey = null;
+        t1 = null;
+        pos = 0;
+        next2 = sorted2.hasNext() ? sorted2.next() : null;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        sorted1 = new OrderBy(p.getField1(), true, child1);
+        sorted2 = new OrderBy(p.getField2(), true, child2);
+        sorted1.open();
+        sorted2.open();
+        if (layout == null || layout.getTupleDesc() != child2.getTupleDesc())
+            layout = new CompactTuple.Layout(child2.getTupleDesc());
+        start();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        if (sorted1 != null) {
+            sorted1.close();
+            sorted2.close();
+        }
+        sorted1 = sorted2 = null;
+        run = null;
+        t1 = next2 = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        sorted1.rewind();
+        sorted2.rewind();
+        start();
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t1 != null && pos < run.size())
+                return new JoinedTuple(td, t1, run.get(pos++));
+            if (!sorted1.hasNext())
+                return null;
+            t1 = sorted1.next();
+            pos = 0;
+            Field k = t1.getField(p.getField1());
+            //键与上一个child1元组相同，重用同一段run
+            if (runKey != null && compare(k, runKey) == 0)
+                continue;
+            run.clear();
+            runKey = null;
+            while (next2 != null && compare(next2.getField(p.getField2()), k) < 0)
+                next2 = sorted2.hasNext() ? sorted2.next() : null;
+            if (next2 == null || compare(next2.getField(p.getField2()), k) != 0)
+                continue;
+            runKey = k;
+            while (next2 != null && compare(next2.getField(p.getField2()), k) == 0) {
+                run.add(layout.pack(next2));
+                next2 = sorted2.hasNext() ? sorted2.next() : null;
+            }
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+}
@@ -0,0 +1,166 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * SpillFile is a temporary file of tuples used by operators that run out of
+ * memory (e.g. {@link ExternalSort}). Rows are written in a compact binary
+ * format rather than the fixed-width page format: an INT_TYPE field takes 4
+ * bytes and a STRING_TYPE field takes a 2 byte length followed by only the
+ * bytes actually used, instead of always STRING_LEN + 4.
+ * <p>
+ * A SpillFile is written once with {@link #append} and {@link #finishWriting}
+ * and can then be read any number of times with {@link #openReader}. Call
+ * {@link #delete} when it is no longer needed.
+ */
+public class SpillFile {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final TupleDesc td;
+    private final Type[] types;
+    private final File file;
+    private DataOutputStream out;
+    private long numTuples = 0;
+
+    /**
+     * Create a new, empty spill file for tuples with schema td.
+     *
+     * @throws DbException if the temp file cannot be created
+     */
+    public SpillFile(TupleDesc td) throws DbException {
+        this.td = td;
+        this.types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++)
+            types[i] = td.getFieldType(i);
+        try {
+            file = File.createTempFile("simpledb_spill", ".tmp");
+            file.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new DbException("could not create spill file: " + e.getMessage());
+        }
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of tuples appended so far */
+    public long numTuples() {
+        return numTuples;
+    }
+
+    /** @return the number of bytes written to disk so far */
+    public long sizeOnDisk() {
+        return out == null ? file.length() : out.size();
+    }
+
+    /** Append a tuple to the end of the file. */
+    public void append(Tuple t) throws DbException {
+        if (out == null)
+            throw new IllegalStateException("spill file already finished");
+        try {
+            writeTuple(out, types, t);
+        } catch (IOException e) {
+            throw new DbException("could not write spill file: " + e.getMessage());
+        }
+        numTuples++;
+    }
+
+    /** Flush and close the writer; no more tuples may be appended. */
+    public void finishWriting() throws DbException {
+        if (out == null)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new DbException("could not write spill file: " + e.getMessage());
+        }
+        out = null;
+    }
+
+    /** @return a new reader positioned at the first tuple of the file */
+    public Reader openReader() throws DbException {
+        finishWriting();
+        try {
+            return new Reader(new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), BUFFER_SIZE)));
+        } catch (IOException e) {
+            throw new DbException("could not read spill file: " + e.getMessage());
+        }
+    }
+
+    /** Close the file and remove it from disk. */
+    public void delete() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore, the file is going away anyway
+            }
+            out = null;
+        }
+        file.delete();
+    }
+
+    /** Sequential reader over the tuples of a SpillFile. */
+    public class Reader {
+        private final DataInputStream in;
+        private long remaining;
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+            this.remaining = numTuples;
+        }
+
+        /** @return the next tuple, or null at the end of the file */
+        public Tuple next() throws DbException {
+            if (remaining == 0)
+                return null;
+            remaining--;
+            try {
+                return readTuple(in, td, types);
+            } catch (IOException e) {
+                throw new DbException("could not read spill file: " + e.getMessage());
+            }
+        }
+
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing useful to do
+            }
+        }
+    }
+
+    static void writeTuple(DataOutputStream dos, Type[] types, Tuple t) throws IOException {
+        for (int i = 0; i < types.length; i++) {
+            Field f = t.getField(i);
+            if (types[i] == Type.INT_TYPE) {
+                dos.writeInt(((IntField) f).getValue());
+            } else {
+                String s = ((StringField) f).getValue();
+                dos.writeShort(s.length());
+                dos.writeBytes(s);
+            }
+        }
+    }
+
+    static Tuple readTuple(DataInputStream dis, TupleDesc td, Type[] types) throws IOException {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == Type.INT_TYPE) {
+                t.setField(i, new IntField(dis.readInt()));
+            } else {
+                int len = dis.readUnsignedShort();
+                byte[] bs = new byte[len];
+                dis.readFully(bs);
+                t.setField(i, new StringField(bs, 0, len, Type.STRING_LEN));
+            }
+        }
+        return t;
+    }
+}
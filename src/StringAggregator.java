@@ -4,11 +4,21 @@ import java.util.*;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
+ * <p>
+ * Like {@link IntegerAggregator} the groups live in a {@link HashAggregation}
+ * and are spilled to disk once they no longer fit in memory.
  */
 public class StringAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
+    int gbfield;//分组字段的序号
+    Type gbfieldtype;//分组字段的类型
+    int afield;//聚合操作的字段序号，字段类型为String型
+    Op what;//聚合方式
+    long memoryBytes;//分组在内存里可用的字节数
+    transient HashAggregation groups;//每组的个数
+
     /**
      * Aggregate constructor
      * @param gbfield the 0-based index of the group-by field in the tuple, or NO_GROUPING if there is no grouping
@@ -17,58 +27,75 @@ public class StringAggregator implements Aggregator {
      * @param what aggregation operator to use -- only supports COUNT
      * @throws IllegalArgumentException if what != COUNT
      */
-
-    int gbfield;//分组字段的序号
-    Type gbfieldtype;//分组字段的类型
-    int afield;//聚合操作的字段序号，字段类型为String型
-    Op what;//聚合方式
-    HashMap<Field,Integer> tally;//key为字段，value为对应组的个数
-
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
+        this(gbfield, gbfieldtype, afield, what, HashAggregation.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * @param memoryBytes
+     *            approximately how much memory the groups may use before
+     *            they are spilled to disk
+     */
+    public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what,
+            long memoryBytes) {
         // some code goes here
 
+        if(what!=Op.COUNT)
+            throw new IllegalArgumentException("StringAggregator only supports COUNT");
         this.gbfield=gbfield ;
         this.gbfieldtype=gbfieldtype;
         this.afield=afield;
         this.what=what;
-        tally=new HashMap<>();
+        this.memoryBytes=memoryBytes;
+        groups=newGroups();
+    }
+
+    private HashAggregation newGroups() {
+        return new HashAggregation(gbfield==NO_GROUPING?null:gbfieldtype,memoryBytes);
+    }
+
+    /**
+     * The groups hold temp files and are not serialized; a deserialized
+     * aggregator starts with no groups.
+     */
+    private void readObject(java.io.ObjectInputStream in)
+            throws java.io.IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        groups=newGroups();
     }
 
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the constructor
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
-    public void mergeTupleIntoGroup(Tuple tup) {
+    public void mergeTupleIntoGroup(Tuple tup) throws DbException {
         // some code goes here
 
-        //将tup的gpfiled加入分组
-        Field f;
-        //若无分组
-        if(gbfield==NO_GROUPING) {
-            f=null;
-        }
-        //有分组
-        else{
-            f=tup.getField(gbfield);
-        }
-        //判断f是否有value值
-
-        //找到当前需要加入的afield
-        StringField aField= (StringField) tup.getField(afield);
-        String aValue=aField.getValue();
-
-        //更新聚合操作结果
-        //判断聚合操作
-        switch (what){
-            case COUNT:
-                if(!tally.containsKey(f)){
-                    tally.put(f,1);
-                }
-                else{
-                    tally.put(f,tally.get(f)+1);
-                }
-                break;
-        }
+        //只统计个数，值本身用不到
+        if(gbfield==NO_GROUPING)
+            groups.add(null,0);
+        else if(gbfieldtype==Type.INT_TYPE)
+            groups.add(((IntField) tup.getField(gbfield)).getValue(),0);
+        else
+            groups.add(tup.getField(gbfield),0);
+    }
+
+    /** @return true if some groups had to be written to disk */
+    public boolean isSpilled() {
+        return groups.isSpilled();
+    }
+
+    public void merge(Aggregator other) throws DbException {
+        if(!(other instanceof StringAggregator))
+            throw new IllegalArgumentException("cannot merge "+other.getClass().getSimpleName());
+        StringAggregator o=(StringAggregator) other;
+        if(o.gbfield!=gbfield||o.afield!=afield||o.what!=what)
+            throw new IllegalArgumentException("cannot merge a different aggregate");
+        groups.merge(o.groups);
+    }
+
+    public void close() {
+        groups.close();
     }
 
     /**
@@ -81,133 +108,74 @@ public class StringAggregator implements Aggregator {
      */
     public OpIterator iterator() {
         // some code goes here
-/*
-        //创建表头
-        String[] tdstr=new String[2];
-        Type[] tdtp=new Type[2];
-
-        //不空时
-        if(gbfield!=NO_GROUPING){
-            tdstr[0]="gp";
-            tdstr[1]="agg";
-            tdtp[0]=gbfieldtype;
-            tdtp[1]=Type.INT_TYPE;
-        }
-        //空时
-        else{
-            tdstr[0]="agg";
-            tdtp[0]=Type.INT_TYPE;
-        }
-        //表头确定
-        TupleDesc td = new TupleDesc(tdtp, tdstr);
-
-
-        //创建数组及其迭代器
-        ArrayList<Tuple> res=new ArrayList<Tuple>();
-        //遍历哈希表，加入tuple（gp,agg）
-        Iterator<Map.Entry<Field, Integer>> mapIt = tally.entrySet().iterator();
-        while (mapIt.hasNext()) {
-            Map.Entry<Field, Integer> entry =mapIt.next();
-            Field gpf= entry.getKey();
-            IntField agg=new IntField(entry.getValue());
-            Tuple tp=new Tuple(td);
-            if(gbfield!=NO_GROUPING){
-                tp.setField(0,gpf);
-                tp.setField(1,agg);
-            }
-            else{
-                tp.setField(0,agg);
-            }
-            res.add(tp);
-        }
-
-        TupleIterator resIt=new TupleIterator(td,res);
-        return resIt;*/
         return new StringIterator();
     }
+
     //内部类
     private final class StringIterator implements OpIterator{
 
-        Iterator<Tuple> it;
+        private final TupleDesc td;
+        private HashAggregation.Cursor cursor;
+        private boolean ready;//cursor是否已经停在下一个要输出的组上
 
         public StringIterator(){
-            it=null;
-        }
-
-
-        @Override
-        public void open() throws DbException, TransactionAbortedException {
-            //所有结果元组全部装入it中
-
-            //创建数组
-            ArrayList<Tuple> res=new ArrayList<Tuple>();
-            //遍历哈希表，加入tuple（gp,agg）
-            Iterator<Map.Entry<Field, Integer>>mapIt = tally.entrySet().iterator();
-
-            while (mapIt.hasNext()) {
-                Map.Entry<Field, Integer> entry =mapIt.next();
-                Field gpf= entry.getKey();
-                IntField agg=new IntField(entry.getValue());
-                Tuple tp=new Tuple(getTupleDesc());
-                if(gbfield!=NO_GROUPING){
-                    tp.setField(0,gpf);
-                    tp.setField(1,agg);
-                }
-                else{
-                    tp.setField(0,agg);
-                }
-                res.add(tp);
-            }
-            it= res.iterator();
-        }
-
-        @Override
-        public TupleDesc getTupleDesc() {
-
             String[] tdstr;
             Type[] tdtp;
             //不空时
             if(gbfield!=NO_GROUPING){
-                tdstr=new String[2];
-                tdtp=new Type[2];
-                tdstr[0]="gp";
-                tdstr[1]="agg";
-                tdtp[0]=gbfieldtype;
-                tdtp[1]=Type.INT_TYPE;
+                tdstr=new String[]{"gp","agg"};
+                tdtp=new Type[]{gbfieldtype,Type.INT_TYPE};
             }
             //空时
             else{
-                tdstr=new String[1];
-                tdtp=new Type[1];
-                tdstr[0]="agg";
-                tdtp[0]=Type.INT_TYPE;
+                tdstr=new String[]{"agg"};
+                tdtp=new Type[]{Type.INT_TYPE};
             }
-            //表头确定
-            TupleDesc td = new TupleDesc(tdtp, tdstr);
+            td=new TupleDesc(tdtp, tdstr);
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            cursor=groups.cursor();
+            ready=false;
+        }
+
+        @Override
+        public TupleDesc getTupleDesc() {
             return td;
         }
 
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
-            if(it==null)
-                return false;
-
-            if(!it.hasNext())
+            if(cursor==null)
                 return false;
-
-            return true;
+            if(!ready)
+                ready=cursor.next();
+            return ready;
         }
 
         @Override
         public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-            //if(it==null||!hasNext())666666666666
-            //return null;
-            return it.next();
+            if(!hasNext())
+                throw new NoSuchElementException();
+            ready=false;
+            Tuple tp=new Tuple(td);
+            IntField agg=new IntField((int) cursor.result(what));
+            if(gbfield!=NO_GROUPING){
+                tp.setField(0,cursor.key());
+                tp.setField(1,agg);
+            }
+            else{
+                tp.setField(0,agg);
+            }
+            return tp;
         }
 
         @Override
         public void close() {
-            it=null;
+            if(cursor!=null)
+                cursor.close();
+            cursor=null;
         }
 
         @Override
@@ -218,4 +186,3 @@ public class StringAggregator implements Aggregator {
     }
 
 }
-
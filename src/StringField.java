@@ -1,24 +1,36 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
+ * <p>
+ * A StringField read from a page does not copy or decode its text: it
+ * refers to the bytes of the page (one byte per character, as written by
+ * {@link #serialize}). Comparisons, hashing and LIKE work on those bytes,
+ * and a java.lang.String is only made when {@link #getValue} or
+ * {@link #toString} is called.
  */
 public class StringField implements Field {
 
 	private static final long serialVersionUID = 1L;
 
-	private final String value;
+	private String value;//按需解码，读自页面的字段一开始为null
+	private final transient byte[] bytes;
+	private final transient int offset;
+	private final int length;
 	private final int maxSize;
 
 	public String getValue() {
+		if (value == null)
+			value = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
 		return value;
 	}
 
 	/**
 	 * Constructor.
-	 * 
+	 *
 	 * @param s
 	 *            The value of this field.
 	 * @param maxSize
@@ -31,45 +43,170 @@ public class StringField implements Field {
 			value = s.substring(0, maxSize);
 		else
 			value = s;
+		this.bytes = null;
+		this.offset = 0;
+		this.length = value.length();
+	}
+
+	/**
+	 * A field whose value is the len bytes of buf starting at offset, one
+	 * character per byte. buf is not copied, so it must not change
+	 * afterwards.
+	 */
+	StringField(byte[] buf, int offset, int len, int maxSize) {
+		this.maxSize = maxSize;
+		this.bytes = buf;
+		this.offset = offset;
+		this.length = Math.max(0, Math.min(len, maxSize));
+	}
+
+	//只有页面字节、还没解码时为true
+	private boolean isRaw() {
+		return value == null;
+	}
+
+	/** @return true if this field refers to the bytes it was read from */
+	boolean isPageBacked() {
+		return bytes != null;
+	}
+
+	private char charAt(int i) {
+		return value != null ? value.charAt(i) : (char) (bytes[offset + i] & 0xff);
+	}
+
+	/**
+	 * @return f itself, or if f is a StringField that refers to the bytes
+	 *         of a page, a copy that does not. Fields that are kept after
+	 *         their tuple, such as hash table keys, should be detached so
+	 *         they do not keep a whole page buffer alive.
+	 */
+	static Field detach(Field f) {
+		if (f instanceof StringField && ((StringField) f).isPageBacked()) {
+			StringField s = (StringField) f;
+			return new StringField(s.getValue(), s.maxSize);
+		}
+		return f;
+	}
+
+	/** @return the number of characters */
+	int length() {
+		return length;
+	}
+
+	/** @return true if every character fits in one byte */
+	boolean isLatin1() {
+		for (int i = 0; !isRaw() && i < length; i++)
+			if (value.charAt(i) > 0xff)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Write the characters to dst as one byte each; only valid if
+	 * {@link #isLatin1} is true.
+	 */
+	void copyBytes(byte[] dst, int off) {
+		if (isRaw())
+			System.arraycopy(bytes, offset, dst, off, length);
+		else
+			for (int i = 0; i < length; i++)
+				dst[off + i] = (byte) value.charAt(i);
+	}
+
+	/**
+	 * Compare with another StringField like String.compareTo, without
+	 * decoding either side.
+	 */
+	int compareTo(StringField o) {
+		int n = Math.min(length, o.length);
+		if (isRaw() && o.isRaw()) {
+			for (int i = 0; i < n; i++) {
+				int c = (bytes[offset + i] & 0xff) - (o.bytes[o.offset + i] & 0xff);
+				if (c != 0)
+					return c;
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				int c = charAt(i) - o.charAt(i);
+				if (c != 0)
+					return c;
+			}
+		}
+		return length - o.length;
+	}
+
+	/**
+	 * @return true if o occurs in this string, like String.indexOf(o) >= 0
+	 */
+	boolean contains(StringField o) {
+		int n = o.length;
+		outer: for (int i = 0; i + n <= length; i++) {
+			for (int j = 0; j < n; j++)
+				if (charAt(i + j) != o.charAt(j))
+					continue outer;
+			return true;
+		}
+		return false;
 	}
 
 	public String toString() {
-		return value;
+		return getValue();
 	}
 
+	//与String.hashCode相同，解码前后一致
 	public int hashCode() {
-		return value.hashCode();
+		if (!isRaw())
+			return value.hashCode();
+		int h = 0;
+		for (int i = offset; i < offset + length; i++)
+			h = 31 * h + (bytes[i] & 0xff);
+		return h;
+	}
+
+	/** A 64-bit FNV-1a hash of the characters, for sketches. */
+	long hash64() {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; i++) {
+			h ^= charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
 	}
 
 	public boolean equals(Object field) {
-		return ((StringField) field).value.equals(value);
+		StringField o = (StringField) field;
+		return length == o.length && compareTo(o) == 0;
 	}
 
 	/**
 	 * Write this string to dos. Always writes maxSize + 4 bytes to the passed
 	 * in dos. First four bytes are string length, next bytes are string, with
 	 * remainder padded with 0 to maxSize.
-	 * 
+	 *
 	 * @param dos
 	 *            Where the string is written
 	 */
 	public void serialize(DataOutputStream dos) throws IOException {
-		String s = value;
-		int overflow = maxSize - s.length();
-		if (overflow < 0) {
-			String news = s.substring(0, maxSize);
-			s = news;
-		}
-		dos.writeInt(s.length());
-		dos.writeBytes(s);
+		int overflow = maxSize - length;
+		dos.writeInt(length);
+		if (isRaw())
+			dos.write(bytes, offset, length);
+		else
+			dos.writeBytes(value);
 		while (overflow-- > 0)
 			dos.write((byte) 0);
 	}
 
+	//序列化时不带整个页面，只带解码后的字符串
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getValue();
+		out.defaultWriteObject();
+	}
+
 	/**
 	 * Compare the specified field to the value of this Field. Return semantics
 	 * are as specified by Field.compare
-	 * 
+	 *
 	 * @throws IllegalCastException
 	 *             if val is not a StringField
 	 * @see Field#compare
@@ -77,29 +214,28 @@ public class StringField implements Field {
 	public boolean compare(Predicate.Op op, Field val) {
 
 		StringField iVal = (StringField) val;
-		int cmpVal = value.compareTo(iVal.value);
 
 		switch (op) {
 		case EQUALS:
-			return cmpVal == 0;
+			return equals(iVal);
 
 		case NOT_EQUALS:
-			return cmpVal != 0;
+			return !equals(iVal);
 
 		case GREATER_THAN:
-			return cmpVal > 0;
+			return compareTo(iVal) > 0;
 
 		case GREATER_THAN_OR_EQ:
-			return cmpVal >= 0;
+			return compareTo(iVal) >= 0;
 
 		case LESS_THAN:
-			return cmpVal < 0;
+			return compareTo(iVal) < 0;
 
 		case LESS_THAN_OR_EQ:
-			return cmpVal <= 0;
+			return compareTo(iVal) <= 0;
 
 		case LIKE:
-			return value.indexOf(iVal.value) >= 0;
+			return contains(iVal);
 		}
 
 		return false;
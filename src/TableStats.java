@@ -1,15 +1,62 @@
 package simpledb;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * TableStats represents statistics (e.g., histograms) about base tables in a
  * query. 
  * 
  * This class is not needed in implementing lab1 and lab2.
+ * <p>
+ * The statistics of a table are its page count, tuple count and one
+ * {@link ColumnStats} per column, with an {@link EquiDepthHistogram} for
+ * both INT and STRING columns. They are gathered in a single pass over the
+ * table; the pages of a HeapFile are split into morsels scanned by several
+ * threads, each collecting its own partial statistics, which are merged at
+ * the end.
+ * <p>
+ * {@link #computeStatistics} does not scan anything: the statistics of a
+ * table are loaded the first time they are asked for, from a sidecar file
+ * next to the table (<tt>&lt;table file&gt;.stats</tt>) if there is one and
+ * the table file has not changed since it was written, and otherwise
+ * computed and saved there. Tuples inserted or deleted through the
+ * {@link BufferPool} update the loaded statistics in place. Once the number
+ * of such modifications passes {@link #DRIFT_FRACTION} of the table (and at
+ * least {@link #MIN_DRIFT_ROWS}), the table is rescanned in the background
+ * and the sidecar rewritten.
+ * <p>
+ * The pages of a HeapFile are read without locks, so computing statistics
+ * neither waits for nor blocks the transactions writing the table, including
+ * the one being planned; the statistics may include their uncommitted
+ * changes. Other files are read in a transaction of their own. If the
+ * statistics cannot be computed, defaults are used until the next refresh.
+ * <p>
+ * Very large HeapFiles need not be read whole: with a {@link SampleSize}
+ * other than {@link SampleSize#FULL}, only randomly chosen pages are
+ * scanned, and the counts, histograms and distinct counts are extrapolated
+ * from their rows. {@link #estimateSelectivityBounds} tells how far such
+ * estimates can be trusted.
  */
 public class TableStats {
 
@@ -53,12 +100,42 @@ public class TableStats {
         System.out.println("Computing table stats.");
         while (tableIt.hasNext()) {
             int tableid = tableIt.next();
-            TableStats s = new TableStats(tableid, IOCOSTPERPAGE);
+            TableStats s = lazy(tableid, IOCOSTPERPAGE);
             setTableStats(Database.getCatalog().getTableName(tableid), s);
         }
         System.out.println("Done.");
     }
 
+    /**
+     * Called by the BufferPool after t was inserted into table tableId, so
+     * that the table's statistics, if any are registered, follow the change.
+     */
+    static void noteInsert(int tableId, Tuple t) {
+        TableStats s = statsFor(tableId);
+        if (s != null)
+            s.tupleInserted(t);
+    }
+
+    /** Called by the BufferPool after t was deleted from table tableId. */
+    static void noteDelete(int tableId, Tuple t) {
+        TableStats s = statsFor(tableId);
+        if (s != null)
+            s.tupleDeleted(t);
+    }
+
+    private static TableStats statsFor(int tableId) {
+        if (statsMap.isEmpty())
+            return null;
+        TableStats s;
+        try {
+            s = statsMap.get(Database.getCatalog().getTableName(tableId));
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+        //同名的统计信息可能属于另一个同名的表
+        return s != null && s.tableid == tableId ? s : null;
+    }
+
     /**
      * Number of bins for the histogram. Feel free to increase this value over
      * 100, though our tests assume that you have at least 100 bins in your
@@ -66,6 +143,121 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    /** Selectivity assumed for a range predicate against an unknown value. */
+    static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+    /** Selectivity assumed for equality on a column without statistics. */
+    static final double DEFAULT_EQ_SELECTIVITY = 0.1;
+
+    /**
+     * Fraction of the table that may be inserted or deleted before its
+     * statistics are recomputed.
+     */
+    static final double DRIFT_FRACTION = 0.2;
+
+    /** Modifications always tolerated before recomputing, for small tables. */
+    static final long MIN_DRIFT_ROWS = 1000;
+
+    /** Suffix of the sidecar file the statistics of a table are saved in. */
+    static final String STATS_SUFFIX = ".stats";
+
+    private static final int FORMAT_VERSION = 3;
+
+    /** Standard deviations of the confidence bounds: 95%. */
+    static final double CONFIDENCE_Z = 1.96;
+
+    /**
+     * How much of a HeapFile to read when computing its statistics: all of
+     * it, or whole pages chosen at random until about a number of rows or a
+     * percentage of the pages is covered. At least {@link #MIN_PAGES} pages
+     * are read either way.
+     */
+    public static final class SampleSize {
+
+        /** Pages always read by a sample, so small tables are read whole. */
+        public static final int MIN_PAGES = 16;
+
+        /** Read every page. */
+        public static final SampleSize FULL = new SampleSize(0, 100.0);
+
+        private final long rows;
+        private final double percent;
+
+        private SampleSize(long rows, double percent) {
+            this.rows = rows;
+            this.percent = percent;
+        }
+
+        /** Read enough random pages to hold about rows rows. */
+        public static SampleSize rows(long rows) {
+            if (rows <= 0)
+                throw new IllegalArgumentException("sample must have at least one row");
+            return new SampleSize(rows, 0);
+        }
+
+        /** Read about percent percent of the pages, chosen at random. */
+        public static SampleSize percent(double percent) {
+            if (percent <= 0 || percent > 100)
+                throw new IllegalArgumentException("sample percentage must be in (0, 100]");
+            return new SampleSize(0, percent);
+        }
+
+        /**
+         * @return the number of pages to read out of numPages, when a page
+         *         holds up to tuplesPerPage rows
+         */
+        int pages(int numPages, int tuplesPerPage) {
+            long k = rows > 0 ? (rows + tuplesPerPage - 1) / Math.max(1, tuplesPerPage)
+                    : (long) Math.ceil(numPages * percent / 100);
+            return (int) Math.min(numPages, Math.max(MIN_PAGES, k));
+        }
+
+        public String toString() {
+            return rows > 0 ? rows + " rows" : percent + "%";
+        }
+    }
+
+    private static volatile SampleSize defaultSampleSize = SampleSize.FULL;
+
+    /**
+     * Set how much of each table {@link #computeStatistics} and
+     * {@link #lazy(int, int)} read from now on.
+     */
+    public static void setDefaultSampleSize(SampleSize size) {
+        defaultSampleSize = size;
+    }
+
+    public static SampleSize getDefaultSampleSize() {
+        return defaultSampleSize;
+    }
+
+    //后台重算统计信息的线程，全局只有一个，用到时才创建
+    private static ExecutorService refresher;
+
+    private static synchronized ExecutorService refresher() {
+        if (refresher == null)
+            refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "table-stats-refresh");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        return refresher;
+    }
+
+    private final int tableid;
+    private final int ioCostPerPage;
+    private final SampleSize sampleSize;
+    private int numPages;
+    private long numTuples;
+    private boolean sampled;//是否由抽样推算
+    private ColumnStats[] columns;//还没加载时为null，用默认值时各项为null
+    private boolean defaults;//统计信息没能算出来，用的是默认值
+    private long modifications;//上次计算以来的插入和删除数
+    private long dataLength, dataModified;//扫描前数据文件的长度和修改时间，存进旁路文件
+    private boolean refreshing;
+
     /**
      * Create a new TableStats object, that keeps track of statistics on each
      * column of a table
@@ -85,6 +277,460 @@ public class TableStats {
         // necessarily have to (for example) do everything
         // in a single scan of the table.
         // some code goes here
+        this(tableid, ioCostPerPage, defaultSampleSize);
+    }
+
+    /**
+     * Compute the statistics of a table from a sample of its pages.
+     *
+     * @param sampleSize
+     *            how much of the table to read
+     */
+    public TableStats(int tableid, int ioCostPerPage, SampleSize sampleSize) {
+        this.tableid = tableid;
+        this.ioCostPerPage = ioCostPerPage;
+        this.sampleSize = sampleSize;
+        try {
+            install(scan(tableid, sampleSize));
+        } catch (RuntimeException e) {
+            installDefaults();
+        }
+    }
+
+    private TableStats(int tableid, int ioCostPerPage, SampleSize sampleSize, boolean unused) {
+        this.tableid = tableid;
+        this.ioCostPerPage = ioCostPerPage;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Statistics of table tableid that are loaded, or computed, only when
+     * first used.
+     */
+    public static TableStats lazy(int tableid, int ioCostPerPage) {
+        return lazy(tableid, ioCostPerPage, defaultSampleSize);
+    }
+
+    /**
+     * Like {@link #lazy(int, int)}, computing the statistics from a sample
+     * of the given size when they are not on disk.
+     */
+    public static TableStats lazy(int tableid, int ioCostPerPage, SampleSize sampleSize) {
+        return new TableStats(tableid, ioCostPerPage, sampleSize, true);
+    }
+
+    //第一次用到时从旁路文件读，读不到就扫描一遍并存下来；和maybeRefresh一样，扫描时不持有锁
+    private void ensureLoaded() {
+        synchronized (this) {
+            if (columns != null)
+                return;
+            if (load()) {
+                maybeRefresh();
+                return;
+            }
+        }
+        Collector c;
+        try {
+            c = scan(tableid, sampleSize);
+        } catch (RuntimeException e) {
+            //规划查询时不能因为统计信息失败，先用默认值，下次刷新时再算
+            c = null;
+        }
+        synchronized (this) {
+            //别的线程可能已经装好了
+            if (columns != null)
+                return;
+            if (c == null)
+                installDefaults();
+            else
+                install(c);
+            maybeRefresh();
+        }
+        if (c != null)
+            save();
+    }
+
+    private void install(Collector c) {
+        numPages = c.pages;
+        numTuples = c.tuples;
+        sampled = c.sampledPages < c.pages;
+        columns = c.columns;
+        modifications = 0;
+        defaults = false;
+        dataLength = c.dataLength;
+        dataModified = c.dataModified;
+    }
+
+    //只知道页数：假设每页都满，各列没有统计信息
+    private void installDefaults() {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        TupleDesc td = file.getTupleDesc();
+        numPages = numPages(file);
+        numTuples = (long) numPages * (BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1));
+        sampled = false;
+        columns = new ColumnStats[td.numFields()];
+        modifications = 0;
+        defaults = true;
+    }
+
+    /**
+     * Scan table tableid, or the given sample of it, and return its finished
+     * statistics, extrapolated to the whole table.
+     */
+    private static Collector scan(int tableid, SampleSize sampleSize) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        //HeapFile不加锁读，其他文件用自己的事务
+        TransactionId tid = file instanceof HeapFile ? null : new TransactionId();
+        //先记下文件的样子：扫描时文件若被改动，旁路文件下次就不会被采用
+        File data = dataFile(file);
+        long length = data == null ? 0 : data.length();
+        long modified = data == null ? 0 : data.lastModified();
+        Collector c;
+        try {
+            c = collect(tid, file, sampleSize);
+        } catch (DbException e) {
+            throw new RuntimeException("could not compute statistics of table " + tableid, e);
+        } catch (TransactionAbortedException e) {
+            throw new RuntimeException("could not compute statistics of table " + tableid, e);
+        } finally {
+            try {
+                if (tid != null)
+                    Database.getBufferPool().transactionComplete(tid);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        c.dataLength = length;
+        c.dataModified = modified;
+        c.pages = Math.max(c.sampledPages, numPages(file));
+        //按页抽样：最后一页的行数是读出来的，其余每页取抽到的页的平均
+        if (c.sampledPages < c.pages && c.lastTuples >= 0 && c.sampledPages > 1)
+            c.tuples = c.lastTuples + Math.round((double) (c.tuples - c.lastTuples)
+                    * (c.pages - 1) / (c.sampledPages - 1));
+        else if (c.sampledPages < c.pages && c.sampledPages > 0)
+            c.tuples = Math.round((double) c.tuples * c.pages / c.sampledPages);
+        for (ColumnStats cs : c.columns)
+            cs.finish(NUM_HIST_BINS, c.tuples);
+        return c;
+    }
+
+    /**
+     * Account for tuple t having been inserted into the table. Does nothing
+     * but count the modification if the statistics are not loaded yet.
+     */
+    public synchronized void tupleInserted(Tuple t) {
+        modifications++;
+        if (columns != null) {
+            numTuples++;
+            for (int i = 0; i < columns.length; i++)
+                if (columns[i] != null)
+                    columns[i].insert(t.getField(i));
+            //插入可能让文件多出一页
+            numPages = Math.max(numPages,
+                    numPages(Database.getCatalog().getDatabaseFile(tableid)));
+        }
+        maybeRefresh();
+    }
+
+    /** Account for tuple t having been deleted from the table. */
+    public synchronized void tupleDeleted(Tuple t) {
+        modifications++;
+        if (columns != null && numTuples > 0) {
+            numTuples--;
+            for (int i = 0; i < columns.length; i++)
+                if (columns[i] != null)
+                    columns[i].delete(t.getField(i));
+        }
+        maybeRefresh();
+    }
+
+    /** @return the number of insertions and deletions since the last scan */
+    public synchronized long modifications() {
+        return modifications;
+    }
+
+    //改动超过阈值时在后台重新扫描，同一时间只有一个
+    private void maybeRefresh() {
+        if (refreshing || columns == null
+                || modifications <= Math.max(MIN_DRIFT_ROWS, DRIFT_FRACTION * numTuples))
+            return;
+        refreshing = true;
+        refresher().submit(new Runnable() {
+            public void run() {
+                try {
+                    Collector c = scan(tableid, sampleSize);
+                    synchronized (TableStats.this) {
+                        install(c);
+                    }
+                    save();
+                } catch (RuntimeException e) {
+                    //表已被删除或扫描被中止，下次改动时再试
+                } finally {
+                    synchronized (TableStats.this) {
+                        refreshing = false;
+                    }
+                }
+            }
+        });
+    }
+
+    //HeapFile和BTreeFile的统计信息存在数据文件旁边
+    private File statsFile() {
+        File f = dataFile(Database.getCatalog().getDatabaseFile(tableid));
+        return f == null ? null : new File(f.getPath() + STATS_SUFFIX);
+    }
+
+    private static File dataFile(DbFile file) {
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).getFile();
+        if (file instanceof BTreeFile)
+            return ((BTreeFile) file).getFile();
+        return null;
+    }
+
+    /**
+     * Write the statistics to the table's sidecar file, replacing it
+     * atomically. Errors are reported and otherwise ignored: the statistics
+     * are simply recomputed next time.
+     */
+    public synchronized void save() {
+        File f = statsFile();
+        if (f == null || columns == null || defaults)
+            return;
+        File tmp = new File(f.getPath() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(columns.length);
+            out.writeInt(numPages);
+            out.writeLong(numTuples);
+            out.writeBoolean(sampled);
+            out.writeLong(modifications);
+            out.writeLong(dataLength);
+            out.writeLong(dataModified);
+            out.writeObject(columns);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(f)) {
+                f.delete();
+                if (!tmp.renameTo(f))
+                    throw new IOException("could not replace " + f);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Read the statistics from the sidecar file. They are only used if the
+     * data file has the length and modification time it had when they were
+     * computed: changes written since, whether by this database before a
+     * restart or by anything else, are not reflected in them.
+     *
+     * @return false if there is no usable sidecar file
+     */
+    private boolean load() {
+        File f = statsFile();
+        if (f == null || !f.isFile())
+            return false;
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)));
+            if (in.readInt() != FORMAT_VERSION
+                    || in.readInt() != file.getTupleDesc().numFields())
+                return false;
+            int pages = in.readInt();
+            long tuples = in.readLong();
+            boolean fromSample = in.readBoolean();
+            long mods = in.readLong();
+            long length = in.readLong();
+            long modified = in.readLong();
+            File data = dataFile(file);
+            if (data.length() != length || data.lastModified() != modified)
+                return false;
+            ColumnStats[] cols = (ColumnStats[]) in.readObject();
+            numPages = pages;
+            numTuples = tuples;
+            sampled = fromSample;
+            columns = cols;
+            modifications += mods;
+            dataLength = length;
+            dataModified = modified;
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (ClassCastException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    static int numPages(DbFile file) {
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).numPages();
+        if (file instanceof BTreeFile)
+            return ((BTreeFile) file).numPages();
+        return 0;
+    }
+
+    /** Partial statistics of the tuples one thread has seen. */
+    private static class Collector {
+        int pages;
+        int sampledPages;//实际读过的页数
+        long tuples;
+        long lastTuples = -1;//单独读的最后一页的行数，没单独读时为-1
+        long dataLength, dataModified;
+        final ColumnStats[] columns;
+
+        Collector(TupleDesc td, long seed) {
+            columns = new ColumnStats[td.numFields()];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = new ColumnStats(td.getFieldType(i), seed * 31 + i);
+        }
+
+        void add(Tuple t) {
+            tuples++;
+            for (int i = 0; i < columns.length; i++)
+                columns[i].add(t.getField(i));
+        }
+
+        void merge(Collector o) {
+            tuples += o.tuples;
+            for (int i = 0; i < columns.length; i++)
+                columns[i].merge(o.columns[i]);
+        }
+
+        void addAll(DbFileIterator it) throws DbException, TransactionAbortedException {
+            it.open();
+            while (it.hasNext()) {
+                //不加锁读到正在删除的tuple时可能为null
+                Tuple t = it.next();
+                if (t != null)
+                    add(t);
+            }
+            it.close();
+        }
+    }
+
+    /**
+     * Scan the file, or the pages of a HeapFile sampleSize picks, once. A
+     * HeapFile is scanned by up to one thread per processor, each claiming
+     * morsels of pages; other files are scanned whole on this thread. The
+     * result's sampledPages is the number of pages read. A sample always
+     * reads the last page, which is usually only partly full, and records
+     * its row count in lastTuples so it is not extrapolated from.
+     */
+    private static Collector collect(TransactionId tid, DbFile file, SampleSize sampleSize)
+            throws DbException, TransactionAbortedException {
+        TupleDesc td = file.getTupleDesc();
+        if (!(file instanceof HeapFile)) {
+            Collector c = new Collector(td, 0);
+            c.addAll(file.iterator(tid));
+            c.sampledPages = numPages(file);
+            return c;
+        }
+        HeapFile hf = (HeapFile) file;
+        int perPage = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        int n = hf.numPages();
+        int k = sampleSize.pages(n, perPage);
+        Collector last = null;
+        final ParallelScan scan;
+        if (k < n) {
+            //最后一页单独读，其余k-1页从前n-1页里抽
+            last = new Collector(td, -1);
+            last.addAll(hf.iterator(tid, n - 1, n));
+            scan = ParallelScan.sample(tid, hf, n - 1, k - 1, new Random(31L * hf.getId() + n));
+        } else {
+            scan = new ParallelScan(tid, hf);
+        }
+        Collector result = scanAll(td, scan);
+        if (last != null) {
+            result.merge(last);
+            result.lastTuples = last.tuples;
+            result.sampledPages++;
+        }
+        return result;
+    }
+
+    /** Collect the tuples of every morsel of scan, in parallel if it has several. */
+    private static Collector scanAll(TupleDesc td, final ParallelScan scan)
+            throws DbException, TransactionAbortedException {
+        int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                scan.numMorsels()));
+        if (workers == 1) {
+            Collector c = new Collector(td, 0);
+            DbFileIterator morsel;
+            while ((morsel = scan.nextMorsel()) != null)
+                c.addAll(morsel);
+            c.sampledPages = scan.numPages();
+            return c;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Collector>> partials = new ArrayList<Future<Collector>>();
+        try {
+            for (int i = 0; i < workers; i++) {
+                final Collector c = new Collector(td, i);
+                partials.add(pool.submit(new Callable<Collector>() {
+                    public Collector call() throws Exception {
+                        DbFileIterator morsel;
+                        while ((morsel = scan.nextMorsel()) != null)
+                            c.addAll(morsel);
+                        return c;
+                    }
+                }));
+            }
+            Collector result = null;
+            for (Future<Collector> f : partials) {
+                Collector c = waitFor(f);
+                if (result == null)
+                    result = c;
+                else
+                    result.merge(c);
+            }
+            result.sampledPages = scan.numPages();
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Collector waitFor(Future<Collector> f)
+            throws DbException, TransactionAbortedException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted while computing statistics");
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof DbException)
+                throw (DbException) c;
+            if (c instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) c;
+            if (c instanceof RuntimeException)
+                throw (RuntimeException) c;
+            throw new DbException("computing statistics failed: " + c);
+        }
     }
 
     /**
@@ -100,8 +746,69 @@ public class TableStats {
      * @return The estimated cost of scanning the table.
      */
     public double estimateScanCost() {
-        // some code goes here
-        return 0;
+        ensureLoaded();
+        synchronized (this) {
+            // some code goes here
+            return (double) numPages * ioCostPerPage;
+        }
+    }
+
+    /**
+     * Estimates the cost of reading the tuples that satisfy a predicate on
+     * the key field of a {@link BTreeFile} through its index: the root
+     * pointer page and one internal page per level of the tree, then the
+     * leaf pages holding the matching tuples, which are stored in key order
+     * and so take up about selectivity of the table's pages.
+     *
+     * @param selectivity
+     *            the fraction of the table the predicate selects
+     * @return the estimated cost, or positive infinity if the table is not a
+     *         BTreeFile
+     */
+    public double estimateIndexScanCost(double selectivity) {
+        ensureLoaded();
+        synchronized (this) {
+            DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+            if (!(f instanceof BTreeFile))
+                return Double.POSITIVE_INFINITY;
+            int pages = Math.max(1, numPages);
+            //内部节点的一项是键加页号
+            int keyLen = f.getTupleDesc().getFieldType(((BTreeFile) f).keyField()).getLen();
+            double fanout = Math.max(2, BufferPool.getPageSize() / (keyLen + 4));
+            double height = Math.ceil(Math.log(pages) / Math.log(fanout));
+            double leaves = Math.max(1, Math.ceil(selectivity * pages));
+            return (1 + height + leaves) * ioCostPerPage;
+        }
+    }
+
+    /**
+     * Estimates the cost of reading the tuples that satisfy a predicate on an
+     * indexed column through a {@link SecondaryIndex}: the index's root
+     * pointer page, internal pages and the leaves holding the matching
+     * entries, then the distinct heap pages the matching tuples are on. The
+     * tuples are assumed to be spread over the table at random, so m of them
+     * fall on about numPages * (1 - (1 - 1/numPages)^m) pages.
+     *
+     * @param index
+     *            an index on this table
+     * @param selectivity
+     *            the fraction of the table the predicate selects
+     * @return the estimated cost
+     */
+    public double estimateIndexLookupCost(SecondaryIndex index, double selectivity) {
+        ensureLoaded();
+        synchronized (this) {
+            BTreeFile f = index.getFile();
+            int indexPages = Math.max(1, f.numPages());
+            int keyLen = f.getTupleDesc().getFieldType(0).getLen();
+            double fanout = Math.max(2, BufferPool.getPageSize() / (keyLen + 4));
+            double height = Math.ceil(Math.log(indexPages) / Math.log(fanout));
+            double leaves = Math.max(1, Math.ceil(selectivity * indexPages));
+            double matches = selectivity * numTuples;
+            int pages = Math.max(1, numPages);
+            double heapPages = pages * (1 - Math.pow(1 - 1.0 / pages, matches));
+            return (1 + height + leaves + heapPages) * ioCostPerPage;
+        }
     }
 
     /**
@@ -114,8 +821,11 @@ public class TableStats {
      *         selectivityFactor
      */
     public int estimateTableCardinality(double selectivityFactor) {
-        // some code goes here
-        return 0;
+        ensureLoaded();
+        synchronized (this) {
+            // some code goes here
+            return (int) Math.round(numTuples * selectivityFactor);
+        }
     }
 
     /**
@@ -129,8 +839,23 @@ public class TableStats {
      * expected selectivity. You may estimate this value from the histograms.
      * */
     public double avgSelectivity(int field, Predicate.Op op) {
-        // some code goes here
-        return 1.0;
+        ensureLoaded();
+        synchronized (this) {
+            // some code goes here
+            if (columns[field] == null)
+                return defaultSelectivity(op);
+            switch (op) {
+            case EQUALS:
+                return columns[field].avgSelectivity();
+            case NOT_EQUALS:
+                return 1.0 - columns[field].avgSelectivity();
+            case LIKE:
+                return columns[field].getType() == Type.STRING_TYPE
+                        ? EquiDepthHistogram.LIKE_SELECTIVITY : columns[field].avgSelectivity();
+            default:
+                return RANGE_SELECTIVITY;
+            }
+        }
     }
 
     /**
@@ -147,16 +872,78 @@ public class TableStats {
      *         predicate
      */
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
-        // some code goes here
-        return 1.0;
+        ensureLoaded();
+        synchronized (this) {
+            // some code goes here
+            if (columns[field] == null)
+                return defaultSelectivity(op);
+            return columns[field].estimateSelectivity(op, constant);
+        }
+    }
+
+    private static double defaultSelectivity(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return DEFAULT_EQ_SELECTIVITY;
+        case NOT_EQUALS:
+            return 1.0 - DEFAULT_EQ_SELECTIVITY;
+        default:
+            return RANGE_SELECTIVITY;
+        }
+    }
+
+    /**
+     * A 95% confidence interval for {@link #estimateSelectivity}; it has zero
+     * width unless the statistics were computed from a sample.
+     *
+     * @return the lower and upper bound of the selectivity
+     */
+    public double[] estimateSelectivityBounds(int field, Predicate.Op op, Field constant) {
+        ensureLoaded();
+        synchronized (this) {
+            if (columns[field] == null)
+                return new double[] { 0.0, 1.0 };
+            return columns[field].selectivityBounds(op, constant, CONFIDENCE_Z);
+        }
+    }
+
+    /** @return true if the statistics were extrapolated from some of the pages */
+    public boolean isSampled() {
+        ensureLoaded();
+        synchronized (this) {
+            return sampled;
+        }
     }
 
     /**
      * return the total number of tuples in this table
      * */
     public int totalTuples() {
-        // some code goes here
-        return 0;
+        ensureLoaded();
+        synchronized (this) {
+            // some code goes here
+            return (int) Math.min(Integer.MAX_VALUE, numTuples);
+        }
+    }
+
+    /** @return the number of pages of this table */
+    public int numPages() {
+        ensureLoaded();
+        synchronized (this) {
+            return numPages;
+        }
+    }
+
+    /**
+     * @return the statistics of column field, or null if they could not be
+     *         computed
+     */
+    public ColumnStats getColumnStats(int field) {
+        ensureLoaded();
+        synchronized (this) {
+            return columns[field];
+        }
     }
 
 }
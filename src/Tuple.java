@@ -35,6 +35,15 @@ public class Tuple implements Serializable {
         recordId=null;//初始化为null
     }
 
+    /**
+     * For subclasses that keep their fields elsewhere, such as
+     * {@link JoinedTuple}; they must override getField and setField.
+     */
+    Tuple(TupleDesc td, Field[] fields) {
+        this.tupleDesc=td;
+        this.fields=fields;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -105,9 +114,9 @@ public class Tuple implements Serializable {
         // some code goes here
         StringBuilder str=new StringBuilder();
         for(int i=0;i<tupleDesc.numFields()-1;i++) {
-            str.append((fields[i]).toString()+"\t");
+            str.append(getField(i).toString()+"\t");
         }
-        str.append((fields[tupleDesc.numFields()-1]).toString());
+        str.append(getField(tupleDesc.numFields()-1).toString());
         return str.toString();
         //throw new UnsupportedOperationException("Implement this");
     }
@@ -119,7 +128,27 @@ public class Tuple implements Serializable {
     public Iterator<Field> fields()
     {
         // some code goes here
-        return Arrays.asList(fields).iterator();
+        return Arrays.asList(toArray()).iterator();
+    }
+
+    //所有字段的数组，子类的字段不在fields里
+    Field[] toArray() {
+        if(fields!=null)
+            return fields;
+        Field[] out=new Field[tupleDesc.numFields()];
+        for(int i=0;i<out.length;i++)
+            out[i]=getField(i);
+        return out;
+    }
+
+    /**
+     * @return a tuple with the same contents that does not refer to any
+     *         other tuple: this tuple itself unless it is a view such as a
+     *         {@link JoinedTuple}. Operators that keep tuples should keep
+     *         the materialized form.
+     */
+    public Tuple materialize() {
+        return this;
     }
 
     @Override
@@ -128,17 +157,17 @@ public class Tuple implements Serializable {
             return true;
         if (obj == null)
             return false;
-        if (getClass() != obj.getClass())
+        if (!(obj instanceof Tuple))
             return false;
         Tuple other = (Tuple) obj;
-        return Arrays.equals(fields, other.fields) && Objects.equals(recordId, other.recordId)
+        return Arrays.equals(toArray(), other.toArray()) && Objects.equals(recordId, other.recordId)
                 && Objects.equals(tupleDesc, other.tupleDesc);
     }
 
     @Override
     public int hashCode() {
         int result = Objects.hash(tupleDesc, recordId);
-        result = 31 * result + Arrays.hashCode(fields);
+        result = 31 * result + Arrays.hashCode(toArray());
         return result;
     }
 
@@ -154,15 +183,15 @@ public class Tuple implements Serializable {
 
     //this与t连接，返回t3
     public Tuple create_link(Tuple t){
-        TupleDesc newtd=TupleDesc.merge(tupleDesc,t.tupleDesc);//注意先后顺序
-        Tuple t3=new Tuple(newtd);
-        int len1=tupleDesc.numFields();
-        int len2=t.tupleDesc.numFields();
-        for(int i=0;i<len1;i++)
-            t3.fields[i]=fields[i];
-        for(int i=0;i<len2;i++)
-            t3.fields[len1+i]=t.fields[i];
+        return create_link(t,TupleDesc.merge(tupleDesc,t.tupleDesc));//注意先后顺序
+    }
+
+    /**
+     * Join this tuple with t under a merged TupleDesc computed once by the
+     * caller. The result is a view over both tuples; no fields are copied.
+     */
+    public Tuple create_link(Tuple t, TupleDesc merged){
         //recordID默认为null
-        return t3;
+        return new JoinedTuple(merged,this,t);
     }
 }
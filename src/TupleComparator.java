@@ -0,0 +1,49 @@
+package simpledb;
+
+import java.util.Comparator;
+
+/**
+ * Orders tuples on one or more fields, each ascending or descending. Used by
+ * {@link OrderBy} and {@link ExternalSort}.
+ */
+class TupleComparator implements Comparator<Tuple> {
+    int[] fields;
+    boolean[] asc;
+
+    public TupleComparator(int field, boolean asc) {
+        this(new int[] { field }, new boolean[] { asc });
+    }
+
+    public TupleComparator(int[] fields, boolean[] asc) {
+        this.fields = fields;
+        this.asc = asc;
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        for (int i = 0; i < fields.length; i++) {
+            int f = fields[i];
+            int c;
+            //两边都是打包的INT列时直接比较，不创建Field
+            if (o1 instanceof CompactTuple && o2 instanceof CompactTuple
+                    && ((CompactTuple) o1).isInt(f) && ((CompactTuple) o2).isInt(f))
+                c = Integer.compare(((CompactTuple) o1).getInt(f), ((CompactTuple) o2).getInt(f));
+            else
+                c = compareFields(o1.getField(f), o2.getField(f));
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
+    }
+
+    static int compareFields(Field t1, Field t2) {
+        if (t1 instanceof IntField && t2 instanceof IntField)
+            return Integer.compare(((IntField) t1).getValue(), ((IntField) t2).getValue());
+        if (t1.compare(Predicate.Op.EQUALS, t2))
+            return 0;
+        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
+            return 1;
+        else
+            return -1;
+    }
+    
+}
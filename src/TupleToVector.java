@@ -0,0 +1,57 @@
+package simpledb;
+
+/**
+ * Adapts an {@link OpIterator} to a {@link VectorIterator} by collecting its
+ * tuples into batches.
+ */
+public class TupleToVector implements VectorIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final OpIterator child;
+    private final int capacity;
+    private transient VectorBatch batch;
+
+    public TupleToVector(OpIterator child) {
+        this(child, VectorBatch.DEFAULT_CAPACITY);
+    }
+
+    public TupleToVector(OpIterator child, int capacity) {
+        this.child = child;
+        this.capacity = capacity;
+    }
+
+    public OpIterator getChild() {
+        return child;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = new VectorBatch(child.getTupleDesc(), capacity);
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        batch.clear();
+        while (!batch.isFull() && child.hasNext())
+            batch.append(child.next());
+        return batch.size() > 0 ? batch : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+        batch = null;
+    }
+
+    /** The tuple input is returned by {@link #getChild} instead. */
+    public VectorIterator[] getChildren() {
+        return new VectorIterator[0];
+    }
+}
@@ -15,6 +15,12 @@ public enum Type implements Serializable {
             return 4;
         }
 
+        @Override
+        Field parse(byte[] data, int offset) {
+            return new IntField((data[offset] << 24) | ((data[offset + 1] & 0xff) << 16)
+                    | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff));
+        }
+
         @Override
         public Field parse(DataInputStream dis) throws ParseException {
             try {
@@ -30,6 +36,13 @@ public enum Type implements Serializable {
             return STRING_LEN+4;
         }
 
+        @Override
+        Field parse(byte[] data, int offset) {
+            int strLen = (data[offset] << 24) | ((data[offset + 1] & 0xff) << 16)
+                    | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+            return new StringField(data, offset + 4, strLen, STRING_LEN);
+        }
+
         @Override
         public Field parse(DataInputStream dis) throws ParseException {
             try {
@@ -37,7 +50,7 @@ public enum Type implements Serializable {
                 byte bs[] = new byte[strLen];
                 dis.read(bs);
                 dis.skipBytes(STRING_LEN-strLen);
-                return new StringField(new String(bs), STRING_LEN);
+                return new StringField(bs, 0, strLen, STRING_LEN);
             } catch (IOException e) {
                 throw new ParseException("couldn't parse", 0);
             }
@@ -60,4 +73,11 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field read from data at offset, in the format written by
+   *   Field.serialize. Does not copy: a STRING field refers to data, which
+   *   must not change afterwards.
+   */
+    abstract Field parse(byte[] data, int offset);
+
 }
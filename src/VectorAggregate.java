@@ -0,0 +1,128 @@
+package simpledb;
+
+/**
+ * Vectorized grouped aggregation. Each child batch is folded into a
+ * {@link HashAggregation} with one loop over its columns; INT group keys and
+ * values are never boxed. The output has the same shape as
+ * {@link Aggregate}'s: (group, aggregate) or just (aggregate).
+ */
+public class VectorAggregate implements VectorIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final VectorIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final long memoryBytes;
+    private final TupleDesc td;
+    private transient HashAggregation groups;
+    private transient HashAggregation.Cursor cursor;
+    private transient VectorBatch out;
+
+    public VectorAggregate(VectorIterator child, int afield, int gfield,
+            Aggregator.Op aop) {
+        this(child, afield, gfield, aop, HashAggregation.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * @param memoryBytes
+     *            approximately how much memory the groups may use before
+     *            they are spilled to disk
+     */
+    public VectorAggregate(VectorIterator child, int afield, int gfield,
+            Aggregator.Op aop, long memoryBytes) {
+        TupleDesc ctd = child.getTupleDesc();
+        if (ctd.getFieldType(afield) != Type.INT_TYPE && aop != Aggregator.Op.COUNT)
+            throw new IllegalArgumentException("only COUNT is supported on non-INT fields");
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        this.memoryBytes = memoryBytes;
+        String aname = ctd.getFieldName(afield) + '(' + aop.toString() + ')';
+        if (gfield == Aggregator.NO_GROUPING)
+            td = new TupleDesc(new Type[] { Type.INT_TYPE }, new String[] { aname });
+        else
+            td = new TupleDesc(new Type[] { ctd.getFieldType(gfield), Type.INT_TYPE },
+                    new String[] { ctd.getFieldName(gfield), aname });
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        aggregate();
+        out = new VectorBatch(td);
+    }
+
+    private void aggregate() throws DbException, TransactionAbortedException {
+        boolean grouped = gfield != Aggregator.NO_GROUPING;
+        groups = new HashAggregation(grouped ? child.getTupleDesc().getFieldType(gfield) : null,
+                memoryBytes);
+        boolean intValues = child.getTupleDesc().getFieldType(afield) == Type.INT_TYPE;
+        VectorBatch b;
+        while ((b = child.nextBatch()) != null) {
+            int n = b.numRows();
+            int[] vals = intValues ? b.intColumn(afield) : null;
+            if (grouped && b.isIntColumn(gfield)) {
+                int[] keys = b.intColumn(gfield);
+                for (int i = 0; i < n; i++) {
+                    int r = b.row(i);
+                    groups.add(keys[r], vals == null ? 0 : vals[r]);
+                }
+            } else if (grouped) {
+                Field[] keys = b.fieldColumn(gfield);
+                for (int i = 0; i < n; i++) {
+                    int r = b.row(i);
+                    groups.add(keys[r], vals == null ? 0 : vals[r]);
+                }
+            } else {
+                for (int i = 0; i < n; i++)
+                    groups.add(null, vals == null ? 0 : vals[b.row(i)]);
+            }
+        }
+        cursor = groups.cursor();
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        out.clear();
+        boolean grouped = gfield != Aggregator.NO_GROUPING;
+        int aggCol = grouped ? 1 : 0;
+        int n = 0;
+        while (n < out.capacity() && cursor.next()) {
+            if (grouped) {
+                if (out.isIntColumn(0))
+                    out.intColumn(0)[n] = ((IntField) cursor.key()).getValue();
+                else
+                    out.fieldColumn(0)[n] = cursor.key();
+            }
+            out.intColumn(aggCol)[n] = (int) cursor.result(aop);
+            n++;
+        }
+        out.setSize(n);
+        return n > 0 ? out : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        cursor.close();
+        cursor = groups.cursor();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child.close();
+        if (cursor != null)
+            cursor.close();
+        if (groups != null)
+            groups.close();
+        cursor = null;
+        groups = null;
+        out = null;
+    }
+
+    public VectorIterator[] getChildren() {
+        return new VectorIterator[] { child };
+    }
+}
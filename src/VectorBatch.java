@@ -0,0 +1,195 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * VectorBatch holds up to {@link #capacity()} rows column by column, the unit
+ * of work of a {@link VectorIterator}. INT columns are plain {@code int[]}s;
+ * columns of other types hold their {@link Field}s.
+ * <p>
+ * A batch may carry a selection vector listing which of its physical rows
+ * are live, in order. Operators such as {@link VectorFilter} narrow the
+ * selection instead of copying the rows that pass, and {@link #project}
+ * shares the column arrays, so most operators never move any data. Consumers
+ * should visit rows as {@code row(0) .. row(numRows() - 1)}.
+ * <p>
+ * Batches are reused: the contents are only valid until the next call to
+ * nextBatch on the iterator that returned them.
+ */
+public class VectorBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default number of rows per batch. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    private final int[][] ints;//INT列，其他类型的列为null
+    private final Field[][] fields;//非INT列，INT列为null
+    private int size;//已填充的物理行数
+    private int[] sel;//选择向量，null表示所有行都有效
+    private int selSize;
+
+    public VectorBatch(TupleDesc td) {
+        this(td, DEFAULT_CAPACITY);
+    }
+
+    public VectorBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        int n = td.numFields();
+        this.ints = new int[n][];
+        this.fields = new Field[n][];
+        for (int i = 0; i < n; i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                ints[i] = new int[capacity];
+            else
+                fields[i] = new Field[capacity];
+        }
+    }
+
+    //project用，列数组与原batch共享
+    private VectorBatch(TupleDesc td, int capacity, int[][] ints, Field[][] fields) {
+        this.td = td;
+        this.capacity = capacity;
+        this.ints = ints;
+        this.fields = fields;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** @return the number of physical rows filled, selected or not */
+    public int size() {
+        return size;
+    }
+
+    /** @return the number of live rows */
+    public int numRows() {
+        return sel == null ? size : selSize;
+    }
+
+    /** @return the physical index of the i-th live row */
+    public int row(int i) {
+        return sel == null ? i : sel[i];
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /** Empty the batch and drop its selection vector. */
+    public void clear() {
+        size = 0;
+        sel = null;
+        selSize = 0;
+    }
+
+    /**
+     * Set the number of filled physical rows; used by code that writes the
+     * column arrays directly.
+     */
+    public void setSize(int n) {
+        if (n < 0 || n > capacity)
+            throw new IllegalArgumentException("size " + n + " out of range");
+        size = n;
+    }
+
+    /**
+     * Keep only the rows listed in sel[0..n-1], which must be increasing
+     * physical row indexes. The array is owned by the batch afterwards.
+     */
+    public void setSelection(int[] sel, int n) {
+        this.sel = sel;
+        this.selSize = n;
+    }
+
+    /** @return the selection vector, or null if every row is live */
+    public int[] selection() {
+        return sel;
+    }
+
+    /** @return the values of INT column col, indexed by physical row */
+    public int[] intColumn(int col) {
+        if (ints[col] == null)
+            throw new IllegalArgumentException("column " + col + " is not an INT column");
+        return ints[col];
+    }
+
+    /** @return the values of non-INT column col, indexed by physical row */
+    public Field[] fieldColumn(int col) {
+        if (fields[col] == null)
+            throw new IllegalArgumentException("column " + col + " is an INT column");
+        return fields[col];
+    }
+
+    public boolean isIntColumn(int col) {
+        return ints[col] != null;
+    }
+
+    public int getInt(int col, int row) {
+        return ints[col][row];
+    }
+
+    /** @return the value at physical row of col, boxed if it is an INT */
+    public Field getField(int col, int row) {
+        return ints[col] != null ? new IntField(ints[col][row]) : fields[col][row];
+    }
+
+    /** Append t as a new physical row; the batch must not be full. */
+    public void append(Tuple t) {
+        int r = size++;
+        for (int c = 0; c < ints.length; c++) {
+            if (ints[c] != null)
+                ints[c][r] = ((IntField) t.getField(c)).getValue();
+            else
+                fields[c][r] = t.getField(c);
+        }
+    }
+
+    /**
+     * Copy physical row `row` of src into physical row dstRow of this batch,
+     * starting at column offset. Used to build joined rows; the caller sets
+     * the size once the row is complete.
+     */
+    void copyRow(VectorBatch src, int row, int offset, int dstRow) {
+        for (int c = 0; c < src.ints.length; c++) {
+            if (src.ints[c] != null)
+                ints[offset + c][dstRow] = src.ints[c][row];
+            else
+                fields[offset + c][dstRow] = src.fields[c][row];
+        }
+    }
+
+    /** @return physical row as a new Tuple */
+    public Tuple toTuple(int row) {
+        Tuple t = new Tuple(td);
+        for (int c = 0; c < ints.length; c++)
+            t.setField(c, getField(c, row));
+        return t;
+    }
+
+    /**
+     * A view of the columns cols of this batch, in that order, sharing the
+     * column arrays and the selection vector.
+     */
+    public VectorBatch project(int[] cols, TupleDesc outTd) {
+        int[][] pi = new int[cols.length][];
+        Field[][] pf = new Field[cols.length][];
+        for (int i = 0; i < cols.length; i++) {
+            pi[i] = ints[cols[i]];
+            pf[i] = fields[cols[i]];
+        }
+        VectorBatch b = new VectorBatch(outTd, capacity, pi, pf);
+        b.size = size;
+        b.sel = sel;
+        b.selSize = selSize;
+        return b;
+    }
+}
@@ -0,0 +1,131 @@
+package simpledb;
+
+/**
+ * Vectorized filter: narrows the selection vector of each child batch to the
+ * rows that satisfy a {@link Predicate}. Comparisons of an INT column with
+ * an INT constant run as one tight loop per operator over the int[] column;
+ * other columns fall back to {@link Field#compare}.
+ */
+public class VectorFilter implements VectorIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate p;
+    private final VectorIterator child;
+    private transient int[] sel;
+
+    public VectorFilter(Predicate p, VectorIterator child) {
+        this.p = p;
+        this.child = child;
+    }
+
+    public Predicate getPredicate() {
+        return p;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        VectorBatch b;
+        while ((b = child.nextBatch()) != null) {
+            //上一批已经用完，选择向量可以复用；写入位置不会超过读取位置，原地改写也安全
+            if (sel == null || sel.length < b.capacity())
+                sel = new int[b.capacity()];
+            int n = select(b, sel);
+            if (n > 0) {
+                b.setSelection(sel, n);
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /** Write the physical rows of b that pass into out; return how many. */
+    private int select(VectorBatch b, int[] out) {
+        int field = p.getField();
+        int rows = b.numRows();
+        int[] in = b.selection();
+        if (!b.isIntColumn(field) || !(p.getOperand() instanceof IntField))
+            return selectFields(b, out);
+        int[] col = b.intColumn(field);
+        int v = ((IntField) p.getOperand()).getValue();
+        int n = 0;
+        //每种比较一个循环，循环体里没有分支以外的调用
+        switch (p.getOp()) {
+        case EQUALS:
+        case LIKE:
+            for (int i = 0; i < rows; i++) {
+                int r = in == null ? i : in[i];
+                if (col[r] == v)
+                    out[n++] = r;
+            }
+            break;
+        case NOT_EQUALS:
+            for (int i = 0; i < rows; i++) {
+                int r = in == null ? i : in[i];
+                if (col[r] != v)
+                    out[n++] = r;
+            }
+            break;
+        case GREATER_THAN:
+            for (int i = 0; i < rows; i++) {
+                int r = in == null ? i : in[i];
+                if (col[r] > v)
+                    out[n++] = r;
+            }
+            break;
+        case GREATER_THAN_OR_EQ:
+            for (int i = 0; i < rows; i++) {
+                int r = in == null ? i : in[i];
+                if (col[r] >= v)
+                    out[n++] = r;
+            }
+            break;
+        case LESS_THAN:
+            for (int i = 0; i < rows; i++) {
+                int r = in == null ? i : in[i];
+                if (col[r] < v)
+                    out[n++] = r;
+            }
+            break;
+        case LESS_THAN_OR_EQ:
+            for (int i = 0; i < rows; i++) {
+                int r = in == null ? i : in[i];
+                if (col[r] <= v)
+                    out[n++] = r;
+            }
+            break;
+        }
+        return n;
+    }
+
+    private int selectFields(VectorBatch b, int[] out) {
+        int field = p.getField();
+        int n = 0;
+        for (int i = 0; i < b.numRows(); i++) {
+            int r = b.row(i);
+            if (b.getField(field, r).compare(p.getOp(), p.getOperand()))
+                out[n++] = r;
+        }
+        return n;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+        sel = null;
+    }
+
+    public VectorIterator[] getChildren() {
+        return new VectorIterator[] { child };
+    }
+}
@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Vectorized hash equi-join. Like {@link HashEquiJoin} it builds a hash table
+ * over up to {@link #BUILD_ROWS} rows of child1 at a time and probes it with
+ * every row of child2, rewinding child2 once per chunk; output rows are
+ * child1's fields followed by child2's.
+ * <p>
+ * The build rows are copied into compact batches and indexed by a chained
+ * hash table kept in int arrays, so probing an INT key touches no objects.
+ */
+public class VectorHashJoin implements VectorIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Rows of child1 hashed at a time. */
+    public static final int BUILD_ROWS = 20000;
+
+    private final JoinPredicate pred;
+    private final VectorIterator child1, child2;
+    private final TupleDesc td;
+    private final int width1;
+    private final boolean intKey;
+
+    //建表：child1的行按batch保存，条目e指向第chunkOf[e]个batch的第rowOf[e]行
+    private transient ArrayList<VectorBatch> chunks;
+    private transient int[] heads;//桶 -> 第一个条目，-1为空
+    private transient int[] next;//条目链
+    private transient int[] chunkOf;
+    private transient int[] rowOf;
+    private transient int[] ikeys;
+    private transient Field[] fkeys;
+    private transient int entries;
+
+    //探测的进度
+    private transient VectorBatch probe;
+    private transient int probePos;
+    private transient int entry;//当前行还要检查的条目，-1表示链已走完
+    private transient boolean looked;//当前行是否已经查过表
+
+    private transient VectorBatch out;
+
+    /**
+     * @param p
+     *            the join predicate, which must be an equality
+     * @param child1
+     *            the build side
+     * @param child2
+     *            the probe side
+     */
+    public VectorHashJoin(JoinPredicate p, VectorIterator child1, VectorIterator child2) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("VectorHashJoin only supports equality");
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        this.width1 = child1.getTupleDesc().numFields();
+        this.intKey = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        out = new VectorBatch(td);
+        loadBuild();
+    }
+
+    private static int hash(int k) {
+        int h = k * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Hash the next chunk of child1; returns false when child1 is done. */
+    private boolean loadBuild() throws DbException, TransactionAbortedException {
+        chunks = new ArrayList<VectorBatch>();
+        int rows = 0;
+        VectorBatch b;
+        while (rows < BUILD_ROWS && (b = child1.nextBatch()) != null) {
+            //child1的batch会被复用，只拷贝有效行
+            VectorBatch copy = new VectorBatch(b.getTupleDesc(), b.capacity());
+            int n = b.numRows();
+            for (int i = 0; i < n; i++)
+                copy.copyRow(b, b.row(i), 0, i);
+            copy.setSize(n);
+            //留下的字符串可能指向整个页面，复制一份
+            for (int c = 0; c < copy.getTupleDesc().numFields(); c++) {
+                if (copy.isIntColumn(c))
+                    continue;
+                Field[] col = copy.fieldColumn(c);
+                for (int i = 0; i < n; i++)
+                    col[i] = StringField.detach(col[i]);
+            }
+            chunks.add(copy);
+            rows += n;
+        }
+        int buckets = Integer.highestOneBit(Math.max(16, rows * 2 - 1)) << 1;
+        heads = new int[buckets];
+        Arrays.fill(heads, -1);
+        next = new int[rows];
+        chunkOf = new int[rows];
+        rowOf = new int[rows];
+        ikeys = intKey ? new int[rows] : null;
+        fkeys = intKey ? null : new Field[rows];
+        entries = 0;
+        int f1 = pred.getField1();
+        for (int c = 0; c < chunks.size(); c++) {
+            VectorBatch chunk = chunks.get(c);
+            for (int r = 0; r < chunk.size(); r++) {
+                int e = entries++;
+                int h;
+                if (intKey) {
+                    ikeys[e] = chunk.getInt(f1, r);
+                    h = hash(ikeys[e]);
+                } else {
+                    fkeys[e] = chunk.getField(f1, r);
+                    h = hash(fkeys[e].hashCode());
+                }
+                chunkOf[e] = c;
+                rowOf[e] = r;
+                int slot = h & (buckets - 1);
+                next[e] = heads[slot];
+                heads[slot] = e;
+            }
+        }
+        probe = null;
+        return rows > 0;
+    }
+
+    //从链上第一个可能匹配的条目开始
+    private int lookup(VectorBatch b, int r) {
+        int f2 = pred.getField2();
+        int h = intKey ? hash(b.getInt(f2, r)) : hash(b.getField(f2, r).hashCode());
+        return heads[h & (heads.length - 1)];
+    }
+
+    private boolean matches(int e, VectorBatch b, int r) {
+        int f2 = pred.getField2();
+        if (intKey)
+            return ikeys[e] == b.getInt(f2, r);
+        return fkeys[e].equals(b.getField(f2, r));
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (chunks.isEmpty())
+            return null;
+        out.clear();
+        int n = 0;
+        int cap = out.capacity();
+        while (n < cap) {
+            if (probe == null || probePos == probe.numRows()) {
+                probe = child2.nextBatch();
+                probePos = 0;
+                looked = false;
+                if (probe == null) {
+                    //child2读完了：换下一段child1，重新扫描child2
+                    if (!loadBuild())
+                        break;
+                    child2.rewind();
+                    continue;
+                }
+            }
+            int r = probe.row(probePos);
+            if (!looked) {
+                entry = lookup(probe, r);
+                looked = true;
+            }
+            while (entry >= 0 && n < cap) {
+                if (matches(entry, probe, r)) {
+                    out.copyRow(chunks.get(chunkOf[entry]), rowOf[entry], 0, n);
+                    out.copyRow(probe, r, width1, n);
+                    n++;
+                }
+                entry = next[entry];
+            }
+            if (entry < 0) {
+                probePos++;
+                looked = false;
+            }
+        }
+        out.setSize(n);
+        return n > 0 ? out : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        loadBuild();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child1.close();
+        child2.close();
+        chunks = null;
+        heads = next = chunkOf = rowOf = ikeys = null;
+        fkeys = null;
+        probe = null;
+        out = null;
+    }
+
+    public VectorIterator[] getChildren() {
+        return new VectorIterator[] { child1, child2 };
+    }
+}
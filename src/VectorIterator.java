@@ -0,0 +1,52 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * VectorIterator is the batch-at-a-time counterpart of {@link OpIterator}:
+ * each call returns a {@link VectorBatch} of up to a thousand or so rows
+ * instead of one Tuple, so the per-row cost of virtual calls and boxed
+ * fields is paid once per batch.
+ * <p>
+ * {@link TupleToVector} and {@link VectorToTuple} convert between the two
+ * interfaces, so vectorized and tuple-at-a-time operators can be mixed in
+ * one plan.
+ */
+public interface VectorIterator extends Serializable {
+
+    /**
+     * Opens the iterator. This must be called before any of the other
+     * methods.
+     *
+     * @throws DbException
+     *             when there are problems opening/accessing the database.
+     */
+    public void open() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch, which has at least one live row, or null once
+     * the input is exhausted. The batch may be reused by the following call.
+     */
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     */
+    public void rewind() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the TupleDesc of the batches this iterator returns.
+     */
+    public TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator.
+     */
+    public void close();
+
+    /**
+     * Returns the vectorized inputs of this iterator, for code that walks
+     * the plan; empty if it has none.
+     */
+    public VectorIterator[] getChildren();
+}
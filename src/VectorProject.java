@@ -0,0 +1,58 @@
+package simpledb;
+
+/**
+ * Vectorized projection. The output batches are views that share the
+ * child's column arrays, so projecting costs nothing per row.
+ */
+public class VectorProject implements VectorIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int[] fields;
+    private final VectorIterator child;
+    private final TupleDesc td;
+
+    /**
+     * @param fields
+     *            the child's fields to output, in order
+     * @param child
+     *            the child
+     */
+    public VectorProject(int[] fields, VectorIterator child) {
+        this.fields = fields;
+        this.child = child;
+        TupleDesc ctd = child.getTupleDesc();
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = ctd.getFieldType(fields[i]);
+            names[i] = ctd.getFieldName(fields[i]);
+        }
+        this.td = new TupleDesc(types, names);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        VectorBatch b = child.nextBatch();
+        return b == null ? null : b.project(fields, td);
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child.close();
+    }
+
+    public VectorIterator[] getChildren() {
+        return new VectorIterator[] { child };
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb;
+
+/**
+ * Vectorized sequential scan: reads a table through a {@link SeqScan} and
+ * returns its tuples as column batches. The SeqScan is exposed by
+ * {@link #getScan} so that plan walkers such as
+ * {@link Limit#releaseReadLocks} can reach it.
+ */
+public class VectorScan implements VectorIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int tableId;
+    private final int capacity;
+    private final SeqScan scan;
+    private transient VectorBatch batch;
+
+    public VectorScan(TransactionId tid, int tableId) {
+        this(tid, tableId, VectorBatch.DEFAULT_CAPACITY);
+    }
+
+    public VectorScan(TransactionId tid, int tableId, int capacity) {
+        this.tableId = tableId;
+        this.capacity = capacity;
+        this.scan = new SeqScan(tid, tableId);
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the tuple scan this reads from */
+    public SeqScan getScan() {
+        return scan;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        scan.open();
+        batch = new VectorBatch(getTupleDesc(), capacity);
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        batch.clear();
+        while (!batch.isFull() && scan.hasNext())
+            batch.append(scan.next());
+        return batch.size() > 0 ? batch : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        scan.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return Database.getCatalog().getTupleDesc(tableId);
+    }
+
+    public void close() {
+        scan.close();
+        batch = null;
+    }
+
+    public VectorIterator[] getChildren() {
+        return new VectorIterator[0];
+    }
+}
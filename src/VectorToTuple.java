@@ -0,0 +1,81 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts a {@link VectorIterator} to an {@link OpIterator}, returning the
+ * live rows of each batch as tuples.
+ */
+public class VectorToTuple extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final VectorIterator child;
+    private transient VectorBatch batch;
+    private transient int pos;
+
+    public VectorToTuple(VectorIterator child) {
+        this.child = child;
+    }
+
+    public VectorIterator getVectorChild() {
+        return child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = null;
+        super.open();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (batch == null || pos == batch.numRows()) {
+            batch = child.nextBatch();
+            pos = 0;
+            if (batch == null)
+                return null;
+        }
+        return batch.toTuple(batch.row(pos++));
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    /**
+     * The tuple operators under the vectorized child: the SeqScans of its
+     * {@link VectorScan}s and the inputs of its {@link TupleToVector}s.
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        ArrayList<OpIterator> leaves = new ArrayList<OpIterator>();
+        tupleLeaves(child, leaves);
+        return leaves.toArray(new OpIterator[leaves.size()]);
+    }
+
+    private static void tupleLeaves(VectorIterator v, List<OpIterator> out) {
+        if (v instanceof VectorScan)
+            out.add(((VectorScan) v).getScan());
+        else if (v instanceof TupleToVector)
+            out.add(((TupleToVector) v).getChild());
+        for (VectorIterator c : v.getChildren())
+            tupleLeaves(c, out);
+    }
+
+    /** The vectorized child cannot be replaced through its tuple leaves. */
+    @Override
+    public void setChildren(OpIterator[] children) {
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class AggregateHashTableTest extends SimpleDbTestBase {
+
+  /**
+   * Many INT_TYPE groups, forcing several resizes; every state must match a
+   * straightforward HashMap computation.
+   */
+  @Test public void intKeys() {
+    AggregateHashTable t = new AggregateHashTable(Type.INT_TYPE);
+    HashMap<Integer, long[]> ref = new HashMap<Integer, long[]>();
+    Random r = new Random(11);
+    for (int i = 0; i < 200000; i++) {
+      int k = r.nextInt(20000) - 10000;
+      int v = r.nextInt(1000) - 500;
+      t.add(t.findOrInsert(k), v);
+      long[] s = ref.get(k);
+      if (s == null) {
+        s = new long[] { 0, 0, Long.MAX_VALUE, Long.MIN_VALUE };
+        ref.put(k, s);
+      }
+      s[0]++;
+      s[1] += v;
+      s[2] = Math.min(s[2], v);
+      s[3] = Math.max(s[3], v);
+    }
+    assertEquals(ref.size(), t.numGroups());
+    for (int g = 0; g < t.numGroups(); g++) {
+      long[] s = ref.get(((IntField) t.key(g)).getValue());
+      assertEquals(s[0], t.result(g, Aggregator.Op.COUNT));
+      assertEquals(s[1], t.result(g, Aggregator.Op.SUM));
+      assertEquals(s[2], t.result(g, Aggregator.Op.MIN));
+      assertEquals(s[3], t.result(g, Aggregator.Op.MAX));
+      assertEquals(s[1] / s[0], t.result(g, Aggregator.Op.AVG));
+    }
+  }
+
+  /**
+   * String keys go through the generic path; ids follow first appearance.
+   */
+  @Test public void fieldKeysInOrder() {
+    AggregateHashTable t = new AggregateHashTable(Type.STRING_TYPE);
+    String[] keys = new String[] { "b", "a", "b", "c", "a", "b" };
+    for (String k : keys)
+      t.addCount(t.findOrInsert(new StringField(k, Type.STRING_LEN)));
+    assertEquals(3, t.numGroups());
+    assertEquals(new StringField("b", Type.STRING_LEN), t.key(0));
+    assertEquals(new StringField("a", Type.STRING_LEN), t.key(1));
+    assertEquals(new StringField("c", Type.STRING_LEN), t.key(2));
+    assertEquals(3, t.count(0));
+    assertEquals(2, t.count(1));
+    assertEquals(1, t.count(2));
+  }
+
+  /**
+   * Without grouping everything lands in group 0.
+   */
+  @Test public void noGrouping() {
+    AggregateHashTable t = new AggregateHashTable(null);
+    assertEquals(0, t.numGroups());
+    for (int i = 1; i <= 4; i++)
+      t.add(t.findOrInsert((Field) null), i);
+    assertEquals(1, t.numGroups());
+    assertEquals(10, t.sum(0));
+    assertEquals(2, t.result(0, Aggregator.Op.AVG));
+    t.clear();
+    assertEquals(0, t.numGroups());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(AggregateHashTableTest.class);
+  }
+}
@@ -0,0 +1,130 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeBulkLoaderTest extends SimpleDbTestBase {
+
+  private static BTreeFile emptyFile() throws Exception {
+    File f = File.createTempFile("bulk", ".dat");
+    f.deleteOnExit();
+    f.delete();
+    return BTreeUtility.openBTreeFile(2, f, 0);
+  }
+
+  //key = i / 3，每个键重复3次
+  private static BTreeFile load(int rows, double fillFactor) throws Exception {
+    BTreeFile bf = emptyFile();
+    BTreeBulkLoader loader = new BTreeBulkLoader(bf, fillFactor);
+    for (int i = 0; i < rows; i++)
+      loader.add(BTreeUtility.getBTreeTuple(new int[] { i / 3, i }));
+    loader.finish();
+    return bf;
+  }
+
+  private static void check(BTreeFile bf, int rows) throws Exception {
+    TransactionId tid = new TransactionId();
+    BTreeChecker.checkRep(bf, tid, new HashMap<PageId, Page>(), false);
+    DbFileIterator it = bf.iterator(tid);
+    it.open();
+    int n = 0;
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      assertEquals(n / 3, ((IntField) t.getField(0)).getValue());
+      assertEquals(n, ((IntField) t.getField(1)).getValue());
+      n++;
+    }
+    it.close();
+    assertEquals(rows, n);
+    if (rows >= 6) {
+      int key = rows / 6;
+      it = bf.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(key)));
+      it.open();
+      n = 0;
+      while (it.hasNext()) {
+        assertEquals(key, ((IntField) it.next().getField(0)).getValue());
+        n++;
+      }
+      it.close();
+      assertEquals(3, n);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Trees of every height come out valid and hold the tuples in order.
+   */
+  @Test public void load() throws Exception {
+    for (int rows : new int[] { 0, 1, 100, 5000, 150000 }) {
+      check(load(rows, 1.0), rows);
+      check(load(rows, 0.5), rows);
+    }
+  }
+
+  /**
+   * A lower fill factor leaves room in the pages, so the tree takes more of
+   * them.
+   */
+  @Test public void fillFactor() throws Exception {
+    BTreeFile full = load(20000, 1.0);
+    BTreeFile half = load(20000, 0.5);
+    assertEquals(2.0, (double) half.numPages() / full.numPages(), 0.1);
+  }
+
+  /**
+   * The tree can be changed through the buffer pool after it is loaded.
+   */
+  @Test public void insertAfterLoad() throws Exception {
+    BTreeFile bf = load(20000, 0.9);
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 500; i++)
+      Database.getBufferPool().insertTuple(tid, bf.getId(),
+          BTreeUtility.getBTreeTuple(new int[] { (i * 7919) % 6667, -1 }));
+    Database.getBufferPool().transactionComplete(tid);
+    tid = new TransactionId();
+    BTreeChecker.checkRep(bf, tid, new HashMap<PageId, Page>(), false);
+    DbFileIterator it = bf.iterator(tid);
+    it.open();
+    int n = 0, prev = Integer.MIN_VALUE;
+    while (it.hasNext()) {
+      int key = ((IntField) it.next().getField(0)).getValue();
+      assertTrue(key >= prev);
+      prev = key;
+      n++;
+    }
+    it.close();
+    assertEquals(20500, n);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Tuples must arrive in key order.
+   */
+  @Test public void outOfOrder() throws Exception {
+    BTreeBulkLoader loader = new BTreeBulkLoader(emptyFile());
+    loader.add(BTreeUtility.getBTreeTuple(new int[] { 5, 0 }));
+    try {
+      loader.add(BTreeUtility.getBTreeTuple(new int[] { 4, 0 }));
+      fail("expected DbException");
+    } catch (DbException e) {
+      // expected
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BTreeBulkLoaderTest.class);
+  }
+}
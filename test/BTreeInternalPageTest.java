@@ -313,6 +313,60 @@ public class BTreeInternalPageTest extends SimpleDbTestBase {
 		}
 	}
 
+	//线性扫描得到的、可能含有key的最左/最右孩子，用来核对二分查找
+	private static BTreePageId linearFindChild(BTreeInternalPage page, Field key, boolean last) {
+		Iterator<BTreeEntry> it = page.iterator();
+		BTreePageId child = null;
+		while (it.hasNext()) {
+			BTreeEntry e = it.next();
+			if (child == null)
+				child = e.getLeftChild();
+			if (e.getKey().compare(last ? Predicate.Op.GREATER_THAN : Predicate.Op.GREATER_THAN_OR_EQ, key))
+				return e.getLeftChild();
+			child = e.getRightChild();
+		}
+		return child;
+	}
+
+	/**
+	 * Unit test for BTreeInternalPage.findChild() and findLastChild(), on a
+	 * full page and on one with gaps left by deleted entries
+	 */
+	@Test public void findChild() throws Exception {
+		BTreeInternalPage page = new BTreeInternalPage(pid, BTreeInternalPage.createEmptyPageData(), 0);
+		for (int[] entry : EXAMPLE_VALUES) {
+			BTreePageId leftChild = new BTreePageId(pid.getTableId(), entry[0], BTreePageId.LEAF);
+			BTreePageId rightChild = new BTreePageId(pid.getTableId(), entry[2], BTreePageId.LEAF);
+			page.insertEntry(new BTreeEntry(new IntField(entry[1]), leftChild, rightChild));
+		}
+		for (int round = 0; round < 2; round++) {
+			for (int k = -1; k <= 0xFFFF + 1; k += 97) {
+				IntField key = new IntField(k);
+				assertEquals(linearFindChild(page, key, false), page.findChild(key));
+				assertEquals(linearFindChild(page, key, true), page.findLastChild(key));
+			}
+			Iterator<BTreeEntry> it = page.iterator();
+			BTreeEntry first = it.next(), e = first;
+			assertEquals(first.getLeftChild(), page.findChild(null));
+			assertEquals(first.getLeftChild(), page.findChild(first.getKey()));
+			while (it.hasNext())
+				e = it.next();
+			assertEquals(e.getRightChild(), page.findLastChild(null));
+			assertEquals(e.getRightChild(), page.findLastChild(e.getKey()));
+
+			// delete every third entry and check again
+			it = page.iterator();
+			LinkedList<BTreeEntry> doomed = new LinkedList<BTreeEntry>();
+			for (int i = 0; it.hasNext(); i++) {
+				e = it.next();
+				if (i % 3 == 1)
+					doomed.add(e);
+			}
+			for (BTreeEntry d : doomed)
+				page.deleteKeyAndRightChild(d);
+		}
+	}
+
 	/**
 	 * JUnit suite target
 	 */
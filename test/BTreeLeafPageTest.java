@@ -336,6 +336,68 @@ public class BTreeLeafPageTest extends SimpleDbTestBase {
 		}
 	}
 
+	//线性扫描得到的第一个键>=key（strict时>key）的元组
+	private static Tuple linearFirst(BTreeLeafPage page, Field key, boolean strict) {
+		Iterator<Tuple> it = page.iterator();
+		while (it.hasNext()) {
+			Tuple t = it.next();
+			if (t.getField(0).compare(strict ? Predicate.Op.GREATER_THAN : Predicate.Op.GREATER_THAN_OR_EQ, key))
+				return t;
+		}
+		return null;
+	}
+
+	//线性扫描得到的最后一个键<=key（strict时<key）的元组
+	private static Tuple linearLast(BTreeLeafPage page, Field key, boolean strict) {
+		Iterator<Tuple> it = page.reverseIterator();
+		while (it.hasNext()) {
+			Tuple t = it.next();
+			if (t.getField(0).compare(strict ? Predicate.Op.LESS_THAN : Predicate.Op.LESS_THAN_OR_EQ, key))
+				return t;
+		}
+		return null;
+	}
+
+	private static Tuple firstFrom(Iterator<Tuple> it) {
+		return it.hasNext() ? it.next() : null;
+	}
+
+	/**
+	 * Unit test for BTreeLeafPage.findSlot() and findLastSlot(), on a full
+	 * page and on one with gaps left by deleted tuples
+	 */
+	@Test public void findSlot() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, BTreeLeafPage.createEmptyPageData(), 0);
+		for (int[] tuple : EXAMPLE_VALUES)
+			page.insertTuple(BTreeUtility.getBTreeTuple(tuple));
+		for (int round = 0; round < 2; round++) {
+			for (int k = -1; k <= 0xFFFF + 1; k += 97) {
+				IntField key = new IntField(k);
+				for (int strict = 0; strict < 2; strict++) {
+					assertEquals(linearFirst(page, key, strict == 1),
+							firstFrom(page.iterator(page.findSlot(key, strict == 1))));
+					assertEquals(linearLast(page, key, strict == 1),
+							firstFrom(page.reverseIterator(page.findLastSlot(key, strict == 1))));
+				}
+			}
+			Iterator<Tuple> it = page.iterator();
+			Tuple first = it.next();
+			assertEquals(first, firstFrom(page.iterator(page.findSlot(first.getField(0), false))));
+			assertEquals(-1, page.findLastSlot(first.getField(0), true));
+
+			// delete every third tuple and check again
+			it = page.iterator();
+			LinkedList<Tuple> doomed = new LinkedList<Tuple>();
+			for (int i = 0; it.hasNext(); i++) {
+				Tuple t = it.next();
+				if (i % 3 == 1)
+					doomed.add(t);
+			}
+			for (Tuple t : doomed)
+				page.deleteTuple(t);
+		}
+	}
+
 	/**
 	 * JUnit suite target
 	 */
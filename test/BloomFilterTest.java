@@ -0,0 +1,122 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BloomFilterTest extends SimpleDbTestBase {
+
+  /**
+   * Every value that was added must be reported as possibly present.
+   */
+  @Test public void noFalseNegatives() {
+    BloomFilter bf = new BloomFilter(1000);
+    for (int i = 0; i < 1000; i++)
+      bf.add(new IntField(i * 7));
+    for (int i = 0; i < 1000; i++)
+      assertTrue(bf.mightContain(new IntField(i * 7)));
+    bf.add(new StringField("hello", Type.STRING_LEN));
+    assertTrue(bf.mightContain(new StringField("hello", Type.STRING_LEN)));
+  }
+
+  /**
+   * The false positive rate should stay near the sizing target.
+   */
+  @Test public void falsePositiveRate() {
+    BloomFilter bf = new BloomFilter(10000);
+    for (int i = 0; i < 10000; i++)
+      bf.add(new IntField(i));
+    int fp = 0;
+    for (int i = 10000; i < 110000; i++)
+      if (bf.mightContain(new IntField(i)))
+        fp++;
+    assertTrue("false positive rate " + fp / 100000.0, fp < 5000);
+  }
+
+  /**
+   * An empty filter rejects everything.
+   */
+  @Test public void emptyFilter() {
+    BloomFilter bf = new BloomFilter(0);
+    assertFalse(bf.mightContain(new IntField(1)));
+    assertFalse(bf.mightContain(null));
+  }
+
+  /** A SeqScan that remembers whether it was given a filter and counts what it returns. */
+  private static class CountingScan extends SeqScan {
+    private static final long serialVersionUID = 1L;
+    boolean filtered = false;
+    int returned = 0;
+
+    CountingScan(TransactionId tid, int tableid, String alias) {
+      super(tid, tableid, alias);
+    }
+
+    public boolean setBloomFilter(int field, BloomFilter bf) {
+      if (bf != null)
+        filtered = true;
+      return super.setBloomFilter(field, bf);
+    }
+
+    public Tuple next() throws TransactionAbortedException, DbException {
+      Tuple t = super.next();
+      returned++;
+      return t;
+    }
+  }
+
+  /**
+   * HashEquiJoin pushes its filter through a Filter into a SeqScan, which
+   * then drops most of the probe rows; the result must be the same as
+   * without pushdown.
+   */
+  @Test public void hashJoinPushdown() throws Exception {
+    HashMap<Integer, Integer> spec = new HashMap<Integer, Integer>();
+    ArrayList<ArrayList<Integer>> probeTuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile probe = SystemTestUtil.createRandomHeapFile(2, 2000, 100, spec, probeTuples);
+    Database.getCatalog().addTable(probe, "probe");
+
+    // build side holds only keys 1, 2 and 3
+    OpIterator build = TestUtil.createTupleList(1, new int[] { 1, 2, 3 });
+    TransactionId tid = new TransactionId();
+    CountingScan ss = new CountingScan(tid, probe.getId(), "probe");
+    Filter f = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0)), ss);
+    HashEquiJoin j = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), build, f);
+
+    int expected = 0;
+    for (ArrayList<Integer> t : probeTuples)
+      if (t.get(0) >= 1 && t.get(0) <= 3)
+        expected++;
+
+    j.open();
+    int count = 0;
+    while (j.hasNext()) {
+      Tuple t = j.next();
+      assertEquals(t.getField(0), t.getField(1));
+      count++;
+    }
+    j.close();
+    assertEquals(expected, count);
+    assertTrue("no filter pushed to the scan", ss.filtered);
+    // keys 1..3 cover about 3% of the probe rows; allow for false positives
+    assertTrue("scan returned " + ss.returned + " rows", ss.returned < 2000 / 4);
+    assertTrue(ss.returned >= expected);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BloomFilterTest.class);
+  }
+}
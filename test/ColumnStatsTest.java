@@ -0,0 +1,124 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.Predicate.Op;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ColumnStatsTest extends SimpleDbTestBase {
+
+  /**
+   * A value that makes up most of the column gets its own buckets, so
+   * equality on it and on the rare values is estimated well.
+   */
+  @Test public void skewedInts() {
+    ColumnStats cs = new ColumnStats(Type.INT_TYPE, 1);
+    for (int i = 0; i < 100000; i++)
+      cs.add(new IntField(i % 10 == 0 ? i : 7));
+    cs.finish(TableStats.NUM_HIST_BINS);
+
+    assertEquals(100000, cs.count());
+    assertEquals(new IntField(0), cs.min());
+    assertEquals(new IntField(99990), cs.max());
+    assertEquals(0.9, cs.estimateSelectivity(Op.EQUALS, new IntField(7)), 0.02);
+    assertEquals(0.0, cs.estimateSelectivity(Op.EQUALS, new IntField(5000)), 0.001);
+    assertEquals(0.95, cs.estimateSelectivity(Op.LESS_THAN, new IntField(50000)), 0.02);
+    assertEquals(0.0, cs.estimateSelectivity(Op.GREATER_THAN, new IntField(99990)), 0.001);
+  }
+
+  /**
+   * Strings that share a long prefix are still told apart.
+   */
+  @Test public void longStrings() {
+    ColumnStats cs = new ColumnStats(Type.STRING_TYPE, 1);
+    for (int i = 0; i < 10000; i++)
+      cs.add(new StringField(String.format("customer#%06d", i), Type.STRING_LEN));
+    cs.finish(TableStats.NUM_HIST_BINS);
+
+    StringField mid = new StringField("customer#005000", Type.STRING_LEN);
+    assertEquals(0.5, cs.estimateSelectivity(Op.LESS_THAN, mid), 0.02);
+    assertEquals(0.25, cs.estimateSelectivity(Op.LESS_THAN,
+        new StringField("customer#002500", Type.STRING_LEN)), 0.02);
+    assertEquals(1.0 / 10000, cs.estimateSelectivity(Op.EQUALS, mid), 0.001);
+  }
+
+  /**
+   * Statistics collected in parts and merged agree with statistics
+   * collected in one go.
+   */
+  @Test public void merge() {
+    ColumnStats whole = new ColumnStats(Type.INT_TYPE, 1);
+    ColumnStats[] parts = new ColumnStats[] { new ColumnStats(Type.INT_TYPE, 2),
+        new ColumnStats(Type.INT_TYPE, 3), new ColumnStats(Type.INT_TYPE, 4) };
+    for (int i = 0; i < 60000; i++) {
+      IntField f = new IntField((i * 7919) % 1000);
+      whole.add(f);
+      parts[i % 3 == 0 ? 0 : 1 + (i / 7) % 2].add(f);
+    }
+    parts[0].merge(parts[1]);
+    parts[0].merge(parts[2]);
+    whole.finish(TableStats.NUM_HIST_BINS);
+    parts[0].finish(TableStats.NUM_HIST_BINS);
+
+    assertEquals(whole.count(), parts[0].count());
+    assertEquals(whole.min(), parts[0].min());
+    assertEquals(whole.max(), parts[0].max());
+    for (int v = 0; v < 1000; v += 100)
+      assertEquals(whole.estimateSelectivity(Op.LESS_THAN, new IntField(v)),
+          parts[0].estimateSelectivity(Op.LESS_THAN, new IntField(v)), 0.02);
+  }
+
+  /**
+   * The distinct count is close for a column too large to sample whole,
+   * and exact for a small one.
+   */
+  @Test public void distinctCount() {
+    ColumnStats big = new ColumnStats(Type.INT_TYPE, 1);
+    for (int i = 0; i < 300000; i++)
+      big.add(new IntField(i % 100000));
+    big.finish(TableStats.NUM_HIST_BINS);
+    assertEquals(100000, big.distinctCount(), 5000);
+
+    ColumnStats small = new ColumnStats(Type.STRING_TYPE, 1);
+    for (int i = 0; i < 1000; i++)
+      small.add(new StringField("v" + (i % 37), Type.STRING_LEN));
+    small.finish(TableStats.NUM_HIST_BINS);
+    assertEquals(37, small.distinctCount());
+  }
+
+  private static ColumnStats skewed(long seed) {
+    ColumnStats cs = new ColumnStats(Type.INT_TYPE, seed);
+    for (int i = 0; i < 100000; i++)
+      cs.add(new IntField(i % 10 == 0 ? i : 7));
+    cs.finish(TableStats.NUM_HIST_BINS);
+    return cs;
+  }
+
+  /**
+   * A join of two columns skewed towards the same value is estimated from
+   * their most common values, not as |R||S|/max(ndv).
+   */
+  @Test public void skewedJoin() {
+    ColumnStats a = skewed(1), b = skewed(2);
+    assertEquals(new IntField(7), a.mostCommonValues()[0]);
+    assertEquals(0.9, a.mostCommonFrequencies()[0], 0.02);
+    double expected = 0.9 * 0.9 + 10000.0 / 100000 / 100000;
+    assertEquals(expected, JoinOptimizer.equiJoinSelectivity(a, b), 0.05);
+
+    ColumnStats unique = new ColumnStats(Type.INT_TYPE, 3);
+    for (int i = 0; i < 50000; i++)
+      unique.add(new IntField(i));
+    unique.finish(TableStats.NUM_HIST_BINS);
+    assertEquals(1.0 / 50000, JoinOptimizer.equiJoinSelectivity(unique, unique), 1.0 / 500000);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ColumnStatsTest.class);
+  }
+}
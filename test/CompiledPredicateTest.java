@@ -0,0 +1,76 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class CompiledPredicateTest extends SimpleDbTestBase {
+
+  private static final int[] INTS = new int[] { Integer.MIN_VALUE, -5, 0, 1, 7,
+      Integer.MAX_VALUE };
+  private static final String[] STRINGS = new String[] { "", "a", "ab", "abc", "b", "ba" };
+
+  private static Tuple tuple(Field f) {
+    Tuple t = new Tuple(new TupleDesc(new Type[] { Type.INT_TYPE, f.getType() }));
+    t.setField(0, new IntField(0));
+    t.setField(1, f);
+    return t;
+  }
+
+  private static Field[] fields(Type type) {
+    Field[] out = new Field[6];
+    for (int i = 0; i < out.length; i++)
+      out[i] = type == Type.INT_TYPE ? new IntField(INTS[i])
+          : new StringField(STRINGS[i], Type.STRING_LEN);
+    return out;
+  }
+
+  /**
+   * A compiled predicate agrees with Field.compare for every operator, on
+   * both types, including the extreme int values.
+   */
+  @Test public void sameAsCompare() {
+    for (Type type : new Type[] { Type.INT_TYPE, Type.STRING_TYPE }) {
+      Field[] values = fields(type);
+      for (Predicate.Op op : Predicate.Op.values()) {
+        for (Field operand : values) {
+          CompiledPredicate c = CompiledPredicate.compile(new Predicate(1, op, operand));
+          for (Field v : values) {
+            assertEquals(v + " " + op + " " + operand, v.compare(op, operand),
+                c.test(tuple(v)));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compiled join predicates agree with Field.compare as well.
+   */
+  @Test public void joinSameAsCompare() {
+    for (Type type : new Type[] { Type.INT_TYPE, Type.STRING_TYPE }) {
+      Field[] values = fields(type);
+      for (Predicate.Op op : Predicate.Op.values()) {
+        JoinPredicate jp = new JoinPredicate(1, op, 1);
+        CompiledPredicate.Join c = jp.compile(type);
+        for (Field a : values) {
+          for (Field b : values) {
+            assertEquals(a + " " + op + " " + b, a.compare(op, b),
+                c.test(tuple(a), tuple(b)));
+            assertEquals(a.compare(op, b), jp.filter(tuple(a), tuple(b)));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CompiledPredicateTest.class);
+  }
+}
@@ -0,0 +1,123 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ExchangeTest extends SimpleDbTestBase {
+
+  private HeapFile table;
+  private TransactionId tid;
+
+  @Before public void createTable() throws Exception {
+    table = SystemTestUtil.createRandomHeapFile(2, 20000, 500, null, null);
+    tid = new TransactionId();
+  }
+
+  private OpIterator fragment() throws Exception {
+    OpIterator scan = new SeqScan(tid, table.getId(), "ex");
+    Filter f = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(250)), scan);
+    ArrayList<Integer> fields = new ArrayList<Integer>();
+    fields.add(1);
+    return new Project(fields, new Type[] { Type.INT_TYPE }, f);
+  }
+
+  /**
+   * A filtered, projected scan returns the same tuples on four threads as on
+   * one, and again after a rewind.
+   */
+  @Test public void sameAsSerial() throws Exception {
+    ArrayList<String> serial = TestUtil.sortedResults(fragment());
+    assertTrue(serial.size() > 0);
+    Exchange ex = new Exchange(fragment(), 4);
+    assertTrue(Exchange.canParallelize(ex.getChildren()[0]));
+    assertEquals(serial, TestUtil.sortedResults(ex));
+
+    ex.open();
+    ex.next();
+    ex.rewind();
+    ArrayList<String> again = new ArrayList<String>();
+    while (ex.hasNext())
+      again.add(ex.next().toString());
+    ex.close();
+    Collections.sort(again);
+    assertEquals(serial, again);
+  }
+
+  /**
+   * Closing early stops the workers; a Limit above the exchange gets
+   * exactly its rows.
+   */
+  @Test public void earlyClose() throws Exception {
+    Exchange ex = new Exchange(new SeqScan(tid, table.getId(), "ex"), 4);
+    Limit l = new Limit(10, 5, ex);
+    l.open();
+    int n = 0;
+    while (l.hasNext()) {
+      l.next();
+      n++;
+    }
+    l.close();
+    assertEquals(10, n);
+  }
+
+  /**
+   * An exchange on the inner side of a nested loops join is rewound once
+   * per outer tuple; so can a MorselScan be.
+   */
+  @Test public void rewoundByJoin() throws Exception {
+    OpIterator outer = TestUtil.createTupleList(1, new int[] { 3, 100, 249, 400 });
+    JoinPredicate jp = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    ArrayList<String> serial = TestUtil.sortedResults(new Join(jp, outer, fragment()));
+    assertTrue(serial.size() > 0);
+    outer = TestUtil.createTupleList(1, new int[] { 3, 100, 249, 400 });
+    assertEquals(serial, TestUtil.sortedResults(new Join(jp, outer, new Exchange(fragment(), 4))));
+
+    ParallelScan ps = new ParallelScan(tid, table);
+    MorselScan ms = new MorselScan(ps, table.getTupleDesc());
+    ms.open();
+    int n = TestUtil.drain(ms).size();
+    ms.rewind();
+    assertEquals(n, TestUtil.drain(ms).size());
+    ms.close();
+  }
+
+  /**
+   * Other shapes, or one thread, just pass the child's tuples through.
+   */
+  @Test public void serialFallback() throws Exception {
+    OpIterator list = TestUtil.createTupleList(2, new int[] { 1, 2, 3, 4 });
+    assertFalse(Exchange.canParallelize(list));
+    Exchange ex = new Exchange(list, 4);
+    assertEquals(2, TestUtil.sortedResults(ex).size());
+    assertEquals(TestUtil.sortedResults(fragment()), TestUtil.sortedResults(new Exchange(fragment(), 1)));
+  }
+
+  /**
+   * Aggregate over an exchange still aggregates in parallel by itself.
+   */
+  @Test public void aggregateAbove() throws Exception {
+    Aggregate serial = new Aggregate(fragment(), 0, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    serial.setParallelism(1);
+    Aggregate a = new Aggregate(new Exchange(fragment(), 4), 0,
+        Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    assertEquals(TestUtil.sortedResults(serial), TestUtil.sortedResults(a));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ExchangeTest.class);
+  }
+}
@@ -0,0 +1,120 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ExternalSortTest extends SimpleDbTestBase {
+
+  private static void checkSorted(ArrayList<Tuple> tups, int[] fields, boolean[] ascs) {
+    TupleComparator cmp = new TupleComparator(fields, ascs);
+    for (int i = 1; i < tups.size(); i++)
+      assertTrue(cmp.compare(tups.get(i - 1), tups.get(i)) <= 0);
+  }
+
+  /**
+   * Input that fits in memory is never written to disk.
+   */
+  @Test public void inMemory() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(2);
+    ExternalSort sorter = new ExternalSort(td, new TupleComparator(0, true));
+    TupleIterator in = TestUtil.createTupleList(2, TestUtil.randomData(500, 2, 1000, 1));
+    while (in.hasNext())
+      sorter.add(in.next());
+    sorter.sort();
+    assertFalse(sorter.isSpilled());
+    ExternalSort.SortedIterator it = sorter.iterator();
+    Tuple prev = null, t;
+    int n = 0;
+    while ((t = it.next()) != null) {
+      if (prev != null)
+        assertTrue(((IntField) prev.getField(0)).getValue() <= ((IntField) t.getField(0)).getValue());
+      prev = t;
+      n++;
+    }
+    assertEquals(500, n);
+    sorter.close();
+  }
+
+  /**
+   * A tiny memory budget forces many runs, including a multi-pass merge.
+   */
+  @Test public void spilled() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(2);
+    long tupleBytes = ExternalSort.estimateTupleBytes(td);
+    // 20 tuples per run, 5000 tuples => 250 runs > MAX_FAN_IN
+    ExternalSort sorter = new ExternalSort(td, new TupleComparator(0, false), 20 * tupleBytes);
+    TupleIterator in = TestUtil.createTupleList(2, TestUtil.randomData(5000, 2, 100000, 2));
+    while (in.hasNext())
+      sorter.add(in.next());
+    sorter.sort();
+    assertTrue(sorter.isSpilled());
+    assertTrue(sorter.numRuns() <= ExternalSort.MAX_FAN_IN);
+
+    ExternalSort.SortedIterator it = sorter.iterator();
+    Tuple prev = null, t;
+    int n = 0;
+    while ((t = it.next()) != null) {
+      if (prev != null)
+        assertTrue(((IntField) prev.getField(0)).getValue() >= ((IntField) t.getField(0)).getValue());
+      prev = t;
+      n++;
+    }
+    assertEquals(5000, n);
+    assertNull(it.next());
+    sorter.close();
+  }
+
+  /**
+   * OrderBy on two keys with a small memory budget, then rewind.
+   */
+  @Test public void orderByMultiKeySpilled() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(3);
+    OpIterator child = TestUtil.createTupleList(3, TestUtil.randomData(3000, 3, 10, 3));
+    int[] fields = new int[] { 1, 2 };
+    boolean[] ascs = new boolean[] { true, false };
+    OrderBy ob = new OrderBy(fields, ascs, child, 100 * ExternalSort.estimateTupleBytes(td));
+    ob.open();
+    ArrayList<Tuple> first = TestUtil.drain(ob);
+    assertEquals(3000, first.size());
+    checkSorted(first, fields, ascs);
+
+    ob.rewind();
+    ArrayList<Tuple> second = TestUtil.drain(ob);
+    assertEquals(first.size(), second.size());
+    for (int i = 0; i < first.size(); i++)
+      assertTrue(TestUtil.compareTuples(first.get(i), second.get(i)));
+    ob.close();
+  }
+
+  /**
+   * Strings survive the compact spill format.
+   */
+  @Test public void spillStrings() throws Exception {
+    Object[] data = new Object[] { "pear", 1, "apple", 2, "fig", 3, "banana", 4, "", 5 };
+    OpIterator child = TestUtil.createTupleList(2, data);
+    OrderBy ob = new OrderBy(new int[] { 0 }, new boolean[] { true }, child, 1);
+    ob.open();
+    ArrayList<Tuple> out = TestUtil.drain(ob);
+    ob.close();
+    String[] expected = new String[] { "", "apple", "banana", "fig", "pear" };
+    assertEquals(expected.length, out.size());
+    for (int i = 0; i < expected.length; i++)
+      assertEquals(expected[i], ((StringField) out.get(i).getField(0)).getValue());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ExternalSortTest.class);
+  }
+}
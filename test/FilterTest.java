@@ -120,6 +120,56 @@ public class FilterTest extends SimpleDbTestBase {
     op.close();
   }
 
+  /**
+   * A fused conjunction returns the same tuples as one Filter per predicate.
+   */
+  @Test public void conjunction() throws Exception {
+    int[] data = new int[3000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (i * 31) % 200;
+    Predicate a = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(20));
+    Predicate b = new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, new IntField(150));
+    Predicate c = new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(99));
+    OpIterator stacked = new Filter(c, new Filter(b, new Filter(a,
+        TestUtil.createTupleList(2, data))));
+    Filter fused = new Filter(java.util.Arrays.asList(a, b, c),
+        TestUtil.createTupleList(2, data));
+    assertEquals(3, fused.getPredicates().size());
+    stacked.open();
+    fused.open();
+    int n = 0;
+    while (stacked.hasNext()) {
+      assertTrue(fused.hasNext());
+      assertTrue(TestUtil.compareTuples(stacked.next(), fused.next()));
+      n++;
+    }
+    assertTrue(n > 0);
+    assertTrue(TestUtil.checkExhausted(fused));
+  }
+
+  /**
+   * After enough input the most selective predicate is evaluated first.
+   */
+  @Test public void adaptiveOrder() throws Exception {
+    int[] data = new int[Filter.REORDER_INTERVAL * 4];
+    for (int i = 0; i < data.length; i++)
+      data[i] = i % 500;
+    Predicate always = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0));
+    Predicate rare = new Predicate(0, Predicate.Op.EQUALS, new IntField(7));
+    Filter f = new Filter(java.util.Arrays.asList(always, rare),
+        TestUtil.createTupleList(1, data));
+    f.open();
+    assertEquals(0, f.getEvaluationOrder()[0]);
+    int n = 0;
+    while (f.hasNext()) {
+      assertEquals(new IntField(7), f.next().getField(0));
+      n++;
+    }
+    assertEquals(data.length / 500 + 1, n);
+    assertEquals(1, f.getEvaluationOrder()[0]);
+    f.close();
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,106 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashAggregationTest extends SimpleDbTestBase {
+
+  /**
+   * A budget of a few hundred groups forces spilling and a second level of
+   * partitioning; every group must still come out exactly once.
+   */
+  @Test public void spilledIntGroups() throws Exception {
+    long budget = 200 * AggregateHashTable.bytesPerGroup(Type.INT_TYPE);
+    HashAggregation agg = new HashAggregation(Type.INT_TYPE, budget);
+    HashMap<Integer, long[]> ref = new HashMap<Integer, long[]>();
+    Random r = new Random(5);
+    for (int i = 0; i < 100000; i++) {
+      int k = r.nextInt(50000);
+      int v = r.nextInt(100);
+      agg.add(k, v);
+      long[] s = ref.get(k);
+      if (s == null)
+        ref.put(k, s = new long[2]);
+      s[0]++;
+      s[1] += v;
+    }
+    assertTrue(agg.isSpilled());
+    assertTrue(agg.numInMemoryGroups() <= 200);
+
+    for (int pass = 0; pass < 2; pass++) {
+      HashMap<Integer, long[]> left = new HashMap<Integer, long[]>(ref);
+      HashAggregation.Cursor c = agg.cursor();
+      while (c.next()) {
+        long[] s = left.remove(((IntField) c.key()).getValue());
+        assertEquals(s[0], c.result(Aggregator.Op.COUNT));
+        assertEquals(s[1], c.result(Aggregator.Op.SUM));
+      }
+      c.close();
+      assertTrue(left.isEmpty());
+    }
+    agg.close();
+  }
+
+  /**
+   * Without grouping there is one group and nothing is ever spilled.
+   */
+  @Test public void noGroupingNeverSpills() throws Exception {
+    HashAggregation agg = new HashAggregation(null, 1);
+    for (int i = 0; i < 1000; i++)
+      agg.add(null, i);
+    assertFalse(agg.isSpilled());
+    HashAggregation.Cursor c = agg.cursor();
+    assertTrue(c.next());
+    assertNull(c.key());
+    assertEquals(999, c.result(Aggregator.Op.MAX));
+    assertFalse(c.next());
+  }
+
+  /**
+   * Aggregate over string groups with a tiny budget returns the same counts
+   * as with the default budget.
+   */
+  @Test public void aggregateOperatorSpills() throws Exception {
+    Object[] data = new Object[2 * 3000];
+    for (int i = 0; i < 3000; i++) {
+      data[2 * i] = "k" + (i % 700);
+      data[2 * i + 1] = i;
+    }
+    Aggregate small = new Aggregate(TestUtil.createTupleList(2, data), 1, 0,
+        Aggregator.Op.COUNT, 1);
+    Aggregate big = new Aggregate(TestUtil.createTupleList(2, data), 1, 0,
+        Aggregator.Op.COUNT);
+    small.open();
+    big.open();
+    assertTrue(((IntegerAggregator) small.agg).isSpilled());
+    TestUtil.matchAllTuples(big, small);
+    small.rewind();
+    int n = 0;
+    while (small.hasNext()) {
+      Tuple t = small.next();
+      int k = Integer.parseInt(((StringField) t.getField(0)).getValue().substring(1));
+      assertEquals(new IntField(k < 3000 % 700 ? 5 : 4), t.getField(1));
+      n++;
+    }
+    assertEquals(700, n);
+    small.close();
+    big.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashAggregationTest.class);
+  }
+}
@@ -2,6 +2,10 @@ package simpledb;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.NoSuchElementException;
 
 import junit.framework.JUnit4TestAdapter;
@@ -178,6 +182,24 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * A deserialized aggregator starts empty and still accepts tuples
+   */
+  @Test public void serializedCopy() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM));
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    IntegerAggregator agg = (IntegerAggregator) in.readObject();
+
+    scan1.open();
+    agg.mergeTupleIntoGroup(scan1.next());
+    OpIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, new int[] { 1, 2 }), it);
+  }
+
   /**
    * JUnit suite target
    */
@@ -621,4 +621,153 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         Assert.assertTrue(result.get(result.size() - 1).t2Alias.equals("a")
                 || result.get(result.size() - 1).t1Alias.equals("a"));
     }
+
+    /**
+     * Create a chain of joins t0.c0 = t1.c0, t1.c1 = t2.c1, ... over tables
+     * of 100 random tuples, except t0 which has bigRows, and return an
+     * optimizer for it whose LogicalPlan is built without the Parser.
+     */
+    private JoinOptimizer chainOfJoins(int tables, int bigRows,
+            HashMap<String, TableStats> stats,
+            HashMap<String, Double> filterSelectivities,
+            Vector<LogicalJoinNode> nodes) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        for (int i = 0; i < tables; i++) {
+            String name = "chain" + i;
+            HeapFile hf = SystemTestUtil.createRandomHeapFile(2,
+                    i == 0 ? bigRows : 100, 100, null, null, "c");
+            Database.getCatalog().addTable(hf, name);
+            stats.put(name, new TableStats(hf.getId(), 101));
+            filterSelectivities.put(name, 1.0);
+            lp.addScan(hf.getId(), name);
+            if (i > 0)
+                nodes.add(new LogicalJoinNode("chain" + (i - 1), name, "c"
+                        + (i % 2), "c" + (i % 2), Predicate.Op.EQUALS));
+        }
+        return new JoinOptimizer(lp, nodes);
+    }
+
+    //每个连接（第一个除外）都要用到之前已经连接过的表
+    private static void assertNoCrossProducts(Vector<LogicalJoinNode> order) {
+        java.util.HashSet<String> joined = new java.util.HashSet<String>();
+        for (LogicalJoinNode j : order) {
+            Assert.assertTrue(joined.isEmpty() || joined.contains(j.t1Alias)
+                    || joined.contains(j.t2Alias));
+            joined.add(j.t1Alias);
+            joined.add(j.t2Alias);
+        }
+    }
+
+    /**
+     * Dynamic programming keeps the large table off the outer side and never
+     * plans a cross product.
+     */
+    @Test
+    public void dynamicProgrammingOrderJoinsTest() throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        JoinOptimizer jo = chainOfJoins(5, 20000, stats, filterSelectivities, nodes);
+
+        Vector<LogicalJoinNode> result = jo.orderJoins(stats, filterSelectivities, false);
+        Assert.assertEquals(nodes.size(), result.size());
+        assertNoCrossProducts(result);
+        Assert.assertFalse(result.get(0).t1Alias.equals("chain0"));
+    }
+
+    /**
+     * Plans with more tables than the dynamic programming limit are ordered
+     * greedily, which also keeps the large table off the outer side.
+     */
+    @Test
+    public void greedyOrderJoinsTest() throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        JoinOptimizer jo = chainOfJoins(20, 2000, stats, filterSelectivities, nodes);
+
+        Vector<LogicalJoinNode> result = jo.orderJoins(stats, filterSelectivities, false);
+        Assert.assertEquals(nodes.size(), result.size());
+        assertNoCrossProducts(result);
+        Assert.assertFalse(result.get(0).t1Alias.equals("chain0"));
+    }
+
+    /**
+     * A cyclic query of 12 tables has more join predicates than tables, and
+     * is still ordered by dynamic programming: its plan is cheaper than the
+     * greedy one.
+     */
+    @Test
+    public void dynamicProgrammingCyclicJoinsTest() throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+        LogicalPlan lp = new LogicalPlan();
+        for (int i = 0; i < 12; i++) {
+            //各表大小和列的不同值个数都不一样，但数据是确定的
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            for (int r = 0; r < 50 + 150 * (i % 4); r++) {
+                ArrayList<Integer> t = new ArrayList<Integer>();
+                t.add(r % (5 + 7 * i));
+                t.add(r % (40 - 3 * i));
+                tuples.add(t);
+            }
+            String name = "cycle" + i;
+            HeapFile hf = createDuplicateHeapFile(tuples, 2, "c");
+            Database.getCatalog().addTable(hf, name);
+            stats.put(name, new TableStats(hf.getId(), 101));
+            filterSelectivities.put(name, 1.0);
+            lp.addScan(hf.getId(), name);
+        }
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        for (int i = 0; i < 12; i++)
+            nodes.add(new LogicalJoinNode("cycle" + i, "cycle" + ((i + 1) % 12), "c" + (i % 2),
+                    "c" + (i % 2), Predicate.Op.EQUALS));
+        for (int i = 0; i + 3 < 12; i += 2)
+            nodes.add(new LogicalJoinNode("cycle" + i, "cycle" + (i + 3), "c0", "c1",
+                    Predicate.Op.EQUALS));
+        Assert.assertTrue(nodes.size() > 16);
+
+        PlanCache dp = new PlanCache();
+        Vector<LogicalJoinNode> result = new JoinOptimizer(lp, new Vector<LogicalJoinNode>(nodes))
+                .orderJoins(stats, filterSelectivities, dp, false);
+        Assert.assertEquals(nodes.size(), result.size());
+        assertNoCrossProducts(result);
+
+        PlanCache greedy = new PlanCache();
+        Vector<LogicalJoinNode> greedyResult;
+        JoinOptimizer.setDpTableLimit(0);
+        try {
+            greedyResult = new JoinOptimizer(lp, new Vector<LogicalJoinNode>(nodes))
+                    .orderJoins(stats, filterSelectivities, greedy, false);
+        } finally {
+            JoinOptimizer.setDpTableLimit(JoinOptimizer.DEFAULT_DP_TABLE_LIMIT);
+        }
+        Assert.assertEquals(nodes.size(), greedyResult.size());
+        Assert.assertTrue(dp.getCost(new java.util.HashSet<LogicalJoinNode>(result))
+                < greedy.getCost(new java.util.HashSet<LogicalJoinNode>(greedyResult)));
+    }
+
+    /**
+     * Each join gets the cheapest operator for its shape: hashing for
+     * equality, building on the smaller side, a block nested-loops join for
+     * inequalities, and an index join when the inner side is a small lookup
+     * into an indexed table.
+     */
+    @Test
+    public void chooseJoinAlgorithmTest() {
+        Assert.assertEquals(JoinOptimizer.Algorithm.HASH, JoinOptimizer.cheapestAlgorithm(
+                Predicate.Op.EQUALS, 1000, 1000000, 1000, 100000, Double.NaN));
+        Assert.assertTrue(JoinOptimizer.joinCost(JoinOptimizer.Algorithm.HASH,
+                Predicate.Op.EQUALS, 1000, 1000000, 1000, 100000, Double.NaN)
+                < JoinOptimizer.joinCost(JoinOptimizer.Algorithm.HASH,
+                        Predicate.Op.EQUALS, 1000000, 1000, 100000, 1000, Double.NaN));
+        Assert.assertEquals(JoinOptimizer.Algorithm.BLOCK_NESTED_LOOP,
+                JoinOptimizer.cheapestAlgorithm(Predicate.Op.LESS_THAN, 100000, 100000,
+                        10000, 10000, Double.NaN));
+        Assert.assertEquals(JoinOptimizer.Algorithm.INDEX_NESTED_LOOP,
+                JoinOptimizer.cheapestAlgorithm(Predicate.Op.EQUALS, 10, 1000000, 1, 100000, 5));
+        Assert.assertEquals(Double.POSITIVE_INFINITY, JoinOptimizer.joinCost(
+                JoinOptimizer.Algorithm.SORT_MERGE, Predicate.Op.GREATER_THAN, 10, 10, 1, 1,
+                Double.NaN), 0);
+    }
 }
@@ -1,8 +1,10 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
@@ -105,6 +107,96 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * BlockNestedLoopJoin gives the same results as Join, for any predicate.
+   */
+  @Test public void blockNestedLoopJoin() throws Exception {
+    OpIterator op = new BlockNestedLoopJoin(
+        new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0), scan1, scan2);
+    op.open();
+    gtJoin.open();
+    TestUtil.matchAllTuples(gtJoin, op);
+    op.close();
+
+    op = new BlockNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+    op.rewind();
+    eqJoin.rewind();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * SortMergeJoin pairs up runs of equal keys on both sides, and refuses
+   * predicates other than equality.
+   */
+  @Test public void sortMergeJoin() throws Exception {
+    OpIterator op = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+
+    OpIterator left = TestUtil.createTupleList(1, new int[] { 3, 1, 3, 2, 5 });
+    OpIterator right = TestUtil.createTupleList(1, new int[] { 3, 4, 3, 1, 3 });
+    OpIterator expected = TestUtil.createTupleList(2,
+        new int[] { 1, 1, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3 });
+    op = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), left, right);
+    op.open();
+    expected.open();
+    TestUtil.matchAllTuples(expected, op);
+
+    try {
+      new SortMergeJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0), scan1, scan2);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static int count(OpIterator it) throws Exception {
+    it.rewind();
+    int n = 0;
+    while (it.hasNext()) {
+      it.next();
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * IndexNestedLoopJoin looks each outer tuple up in a B+ tree and agrees
+   * with Join, also with a filter over the inner scan.
+   */
+  @Test public void indexNestedLoopJoin() throws Exception {
+    BTreeFile f = BTreeUtility.createRandomBTreeFile(2, 2000, 50, null, null, 0);
+    TransactionId tid = new TransactionId();
+    Predicate.Op[] ops = new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+        Predicate.Op.GREATER_THAN_OR_EQ };
+    for (Predicate.Op o : ops) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      OpIterator inner = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN,
+          new IntField(25)), new SeqScan(tid, f.getId()));
+      assertTrue(IndexNestedLoopJoin.canUse(pred, inner));
+      OpIterator op = new IndexNestedLoopJoin(pred,
+          TestUtil.createTupleList(1, new int[] { 5, 17, 30, 49 }), inner);
+      OpIterator expected = new Join(pred,
+          TestUtil.createTupleList(1, new int[] { 5, 17, 30, 49 }),
+          new Filter(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(25)),
+              new SeqScan(tid, f.getId())));
+      op.open();
+      expected.open();
+      TestUtil.matchAllTuples(expected, op);
+      assertEquals(count(expected), count(op));
+      op.close();
+      expected.close();
+    }
+    assertFalse(IndexNestedLoopJoin.canUse(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+        new SeqScan(tid, f.getId())));
+    assertFalse(IndexNestedLoopJoin.canUse(new JoinPredicate(0, Predicate.Op.EQUALS, 0), scan2));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,157 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LimitTest extends SimpleDbTestBase {
+
+  /**
+   * LIMIT and OFFSET over a tuple list, including rewind.
+   */
+  @Test public void limitOffset() throws Exception {
+    OpIterator child = TestUtil.createTupleList(1, new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+    Limit l = new Limit(3, 4, child);
+    l.open();
+    ArrayList<Tuple> out = TestUtil.drain(l);
+    assertEquals(3, out.size());
+    for (int i = 0; i < 3; i++)
+      assertEquals(new IntField(4 + i), out.get(i).getField(0));
+
+    l.rewind();
+    assertEquals(3, TestUtil.drain(l).size());
+    l.close();
+
+    // offset past the end, and a zero limit
+    l = new Limit(5, 20, TestUtil.createTupleList(1, new int[] { 1, 2 }));
+    l.open();
+    assertFalse(l.hasNext());
+    l.close();
+    l = new Limit(0, 0, TestUtil.createTupleList(1, new int[] { 1, 2 }));
+    l.open();
+    assertFalse(l.hasNext());
+    l.close();
+  }
+
+  /**
+   * A top-N OrderBy returns the same tuples as a full sort cut to N,
+   * including the order of ties.
+   */
+  @Test public void topN() throws Exception {
+    Random r = new Random(7);
+    int[] data = new int[2 * 2000];
+    for (int i = 0; i < 2000; i++) {
+      data[2 * i] = r.nextInt(50);
+      data[2 * i + 1] = i;
+    }
+    int[] fields = new int[] { 0 };
+    boolean[] ascs = new boolean[] { false };
+
+    OrderBy full = new OrderBy(fields, ascs, TestUtil.createTupleList(2, data));
+    full.open();
+    ArrayList<Tuple> expected = TestUtil.drain(full);
+    full.close();
+
+    OrderBy top = new OrderBy(fields, ascs, 25, TestUtil.createTupleList(2, data));
+    top.open();
+    ArrayList<Tuple> actual = TestUtil.drain(top);
+    assertEquals(25, actual.size());
+    for (int i = 0; i < 25; i++)
+      assertTrue(TestUtil.compareTuples(expected.get(i), actual.get(i)));
+    top.rewind();
+    assertEquals(25, TestUtil.drain(top).size());
+    top.close();
+
+    top = new OrderBy(fields, ascs, 5000, TestUtil.createTupleList(2, data));
+    top.open();
+    assertEquals(2000, TestUtil.drain(top).size());
+    top.close();
+  }
+
+  /**
+   * Once a plain LIMIT is satisfied the scan's read locks are released.
+   */
+  @Test public void releasesScanLocks() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3000, null, null);
+    assertTrue(f.numPages() > 2);
+    TransactionId tid = new TransactionId();
+    SeqScan ss = new SeqScan(tid, f.getId(), "");
+    Limit l = new Limit(10, 0, ss);
+    l.open();
+    assertEquals(10, TestUtil.drain(l).size());
+    l.close();
+    for (int i = 0; i < f.numPages(); i++)
+      assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(f.getId(), i)));
+
+    // locks the transaction already held are kept
+    HeapPageId first = new HeapPageId(f.getId(), 0);
+    Database.getBufferPool().getPage(tid, first, Permissions.READ_WRITE);
+    l = new Limit(1, 0, new SeqScan(tid, f.getId(), ""));
+    l.open();
+    assertEquals(1, TestUtil.drain(l).size());
+    l.close();
+    assertTrue(Database.getBufferPool().holdsLock(tid, first));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The same holds when the scan runs on the worker threads of an Exchange,
+   * as the planner arranges for large tables.
+   */
+  @Test public void releasesExchangeScanLocks() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20000, null, null);
+    assertTrue(f.numPages() > 4 * ParallelScan.DEFAULT_MORSEL_PAGES);
+    TransactionId tid = new TransactionId();
+    Exchange ex = new Exchange(new SeqScan(tid, f.getId(), ""), 4);
+    Limit l = new Limit(10, 0, ex);
+    l.open();
+    assertEquals(10, TestUtil.drain(l).size());
+    for (int i = 0; i < f.numPages(); i++)
+      assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(f.getId(), i)));
+    l.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * And when the scan sits under a vectorized pipeline.
+   */
+  @Test public void releasesVectorScanLocks() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3000, null, null);
+    assertTrue(f.numPages() > 2);
+    TransactionId tid = new TransactionId();
+    Limit l = new Limit(10, 0, new VectorToTuple(new VectorScan(tid, f.getId())));
+    l.open();
+    assertEquals(10, TestUtil.drain(l).size());
+    l.close();
+    for (int i = 0; i < f.numPages(); i++)
+      assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(f.getId(), i)));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The parser removes the LIMIT clause Zql cannot handle.
+   */
+  @Test public void stripLimitClause() throws Exception {
+    Parser p = new Parser();
+    assertEquals("select * from t;", p.stripLimit("select * from t LIMIT 5 OFFSET 2;"));
+    assertEquals("select a from t order by a", p.stripLimit("select a from t order by a limit 7"));
+    assertEquals("select * from t;", p.stripLimit("select * from t limit 3, 10;"));
+    assertEquals("select * from limits;", p.stripLimit("select * from limits;"));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LimitTest.class);
+  }
+}
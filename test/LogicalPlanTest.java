@@ -0,0 +1,125 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LogicalPlanTest extends SimpleDbTestBase {
+
+  private static final int ROWS = 20000;
+
+  private int tableId;
+  private String tableName;
+  private HashMap<String, TableStats> stats;
+
+  /**
+   * A B+ tree table t(c0, c1) keyed on c0, which holds 0 .. ROWS-1 once each.
+   */
+  @Before public void createTable() throws Exception {
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    for (int i = 0; i < ROWS; i++)
+      tuples.add(new ArrayList<Integer>(Arrays.asList((i * 7919) % ROWS, i % 10)));
+    File hFile = File.createTempFile("table", ".dat");
+    hFile.deleteOnExit();
+    File bFile = File.createTempFile("table_index", ".dat");
+    bFile.deleteOnExit();
+    Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE };
+    BTreeFileEncoder.convert(tuples, hFile, bFile, BufferPool.getPageSize(), 2, types, ',', 0);
+    BTreeFile f = BTreeUtility.openBTreeFile(2, "c", bFile, 0);
+    tableId = f.getId();
+    tableName = Database.getCatalog().getTableName(tableId);
+    stats = new HashMap<String, TableStats>();
+    stats.put(tableName, new TableStats(tableId, 1000));
+  }
+
+  private LogicalPlan plan() throws Exception {
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(tableId, "t");
+    lp.addProjectField("*", null);
+    return lp;
+  }
+
+  //Project下面去掉Filter后的算子
+  private static OpIterator leaf(OpIterator op) {
+    while (op instanceof Operator && ((Operator) op).getChildren().length > 0
+        && ((Operator) op).getChildren()[0] != null)
+      op = ((Operator) op).getChildren()[0];
+    return op;
+  }
+
+  private static ArrayList<Integer> keys(OpIterator op) throws Exception {
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    op.open();
+    while (op.hasNext())
+      keys.add(((IntField) op.next().getField(0)).getValue());
+    op.close();
+    return keys;
+  }
+
+  /**
+   * A selective filter on the key is answered through the index, a filter
+   * that selects most of the table by a full scan.
+   */
+  @Test public void indexScanForSelectiveFilter() throws Exception {
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = plan();
+    lp.addFilter("t.c0", Predicate.Op.LESS_THAN, "100");
+    lp.addFilter("t.c1", Predicate.Op.EQUALS, "3");
+    OpIterator op = lp.physicalPlan(tid, stats, false);
+    assertTrue(leaf(op) instanceof BTreeScan);
+    ArrayList<Integer> keys = keys(op);
+    assertEquals(10, keys.size());
+    for (int k : keys)
+      assertTrue(k < 100);
+
+    lp = plan();
+    lp.addFilter("t.c0", Predicate.Op.GREATER_THAN, "100");
+    op = lp.physicalPlan(tid, stats, false);
+    assertTrue(leaf(op) instanceof SeqScan);
+    assertEquals(ROWS - 101, keys(op).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * ORDER BY the key reads the index in the requested direction instead of
+   * sorting.
+   */
+  @Test public void indexOrder() throws Exception {
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = plan();
+    lp.addFilter("t.c0", Predicate.Op.GREATER_THAN_OR_EQ, "19000");
+    lp.addOrderBy("t.c0", false);
+    lp.setLimit(5, 0);
+    OpIterator op = lp.physicalPlan(tid, stats, false);
+    assertTrue(leaf(op) instanceof BTreeReverseScan);
+    assertEquals(Arrays.asList(19999, 19998, 19997, 19996, 19995), keys(op));
+
+    lp = plan();
+    lp.addOrderBy("t.c0", true);
+    op = lp.physicalPlan(tid, stats, false);
+    assertTrue(leaf(op) instanceof BTreeScan);
+    ArrayList<Integer> keys = keys(op);
+    assertEquals(ROWS, keys.size());
+    for (int i = 0; i < ROWS; i++)
+      assertEquals(i, (int) keys.get(i));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LogicalPlanTest.class);
+  }
+}
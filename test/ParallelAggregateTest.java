@@ -0,0 +1,110 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelAggregateTest extends SimpleDbTestBase {
+
+  private HeapFile table;
+
+  @Before public void createTable() throws Exception {
+    table = SystemTestUtil.createRandomHeapFile(2, 20000, 500, null, null);
+  }
+
+  private ArrayList<String> run(int parallelism, int gfield, Aggregator.Op op,
+      boolean filtered) throws Exception {
+    TransactionId tid = new TransactionId();
+    OpIterator child = new SeqScan(tid, table.getId(), "par");
+    if (filtered)
+      child = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(250)), child);
+    Aggregate a = new Aggregate(child, 1, gfield, op);
+    a.setParallelism(parallelism);
+    ArrayList<String> out = TestUtil.sortedResults(a);
+    Database.getBufferPool().transactionComplete(tid);
+    return out;
+  }
+
+  /**
+   * Every operator, grouped and ungrouped, with and without a filter, gives
+   * the same result on four threads as on one.
+   */
+  @Test public void sameAsSerial() throws Exception {
+    assertTrue(new ParallelScan(null, table).numMorsels() > 4);
+    Aggregator.Op[] ops = new Aggregator.Op[] { Aggregator.Op.COUNT,
+        Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG };
+    for (Aggregator.Op op : ops) {
+      for (int gfield : new int[] { Aggregator.NO_GROUPING, 0 }) {
+        for (boolean filtered : new boolean[] { false, true }) {
+          ArrayList<String> serial = run(1, gfield, op, filtered);
+          ArrayList<String> parallel = run(4, gfield, op, filtered);
+          assertEquals(op + " " + gfield + " " + filtered, serial, parallel);
+        }
+      }
+    }
+  }
+
+  /**
+   * Aggregates run serially unless asked for more threads.
+   */
+  @Test public void serialByDefault() throws Exception {
+    Aggregate a = new Aggregate(new SeqScan(new TransactionId(), table.getId()), 1,
+        Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    assertEquals(1, a.getParallelism());
+  }
+
+  /**
+   * Morsels cover every page exactly once.
+   */
+  @Test public void morselsCoverFile() throws Exception {
+    ParallelScan scan = new ParallelScan(new TransactionId(), table, 3);
+    int tuples = 0;
+    int morsels = 0;
+    DbFileIterator m;
+    while ((m = scan.nextMorsel()) != null) {
+      m.open();
+      while (m.hasNext()) {
+        m.next();
+        tuples++;
+      }
+      m.close();
+      morsels++;
+    }
+    assertEquals(scan.numMorsels(), morsels);
+    assertEquals(20000, tuples);
+  }
+
+  /**
+   * Partial aggregators merge into the same result as one aggregator.
+   */
+  @Test public void mergePartials() throws Exception {
+    int[] data = new int[] { 1, 2, 1, 4, 2, 6, 3, 2, 3, 4, 1, 6 };
+    IntegerAggregator whole = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    IntegerAggregator a = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    IntegerAggregator b = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    OpIterator in = TestUtil.createTupleList(2, data);
+    in.open();
+    for (int i = 0; in.hasNext(); i++) {
+      Tuple t = in.next();
+      whole.mergeTupleIntoGroup(t);
+      (i % 2 == 0 ? a : b).mergeTupleIntoGroup(t);
+    }
+    a.merge(b);
+    assertEquals(TestUtil.sortedResults(whole.iterator()), TestUtil.sortedResults(a.iterator()));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelAggregateTest.class);
+  }
+}
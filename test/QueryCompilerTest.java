@@ -0,0 +1,142 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class QueryCompilerTest extends SimpleDbTestBase {
+
+  private HeapFile table;
+
+  @Before public void createTable() throws Exception {
+    table = SystemTestUtil.createRandomHeapFile(3, 10000, 300, null, null);
+  }
+
+  // SELECT f2, agg(f0) FROM t WHERE f1 > 100 AND f0 <= 250 GROUP BY f2,
+  // with a projection (f2, f0) between the filter and the aggregate
+  private OpIterator pipeline(TransactionId tid) {
+    return pipeline(tid, 100, 250);
+  }
+
+  private OpIterator pipeline(TransactionId tid, int lo, int hi) {
+    Filter f = new Filter(Arrays.asList(
+        new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(lo)),
+        new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(hi))),
+        new SeqScan(tid, table.getId()));
+    ArrayList<Integer> fields = new ArrayList<Integer>();
+    fields.add(2);
+    fields.add(0);
+    return new Project(fields, new Type[] { Type.INT_TYPE, Type.INT_TYPE }, f);
+  }
+
+  private ArrayList<String> run(boolean compiled, int parallelism, int gfield,
+      Aggregator.Op op) throws Exception {
+    return run(compiled, parallelism, gfield, op, 100, 250);
+  }
+
+  private ArrayList<String> run(boolean compiled, int parallelism, int gfield,
+      Aggregator.Op op, int lo, int hi) throws Exception {
+    TransactionId tid = new TransactionId();
+    Aggregate a = new Aggregate(pipeline(tid, lo, hi), 1, gfield, op);
+    a.setCompiled(compiled);
+    a.setParallelism(parallelism);
+    ArrayList<String> out = TestUtil.sortedResults(a);
+    Database.getBufferPool().transactionComplete(tid);
+    return out;
+  }
+
+  /**
+   * The compiled pipeline gives the same groups as the operator tree, for
+   * every aggregate, serially and on several threads. Without a compiler
+   * the operator tree runs in both cases.
+   */
+  @Test public void sameAsInterpreted() throws Exception {
+    if (QueryCompiler.isAvailable())
+      assertNotNull(QueryCompiler.compile(pipeline(new TransactionId()), 1, 0));
+    Aggregator.Op[] ops = new Aggregator.Op[] { Aggregator.Op.COUNT,
+        Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG };
+    for (Aggregator.Op op : ops) {
+      for (int gfield : new int[] { Aggregator.NO_GROUPING, 0 }) {
+        ArrayList<String> expected = run(false, 1, gfield, op);
+        assertEquals(op + " " + gfield, expected, run(true, 1, gfield, op));
+        assertEquals(op + " " + gfield, expected, run(true, 4, gfield, op));
+      }
+    }
+  }
+
+  /**
+   * Committed inserts and deletes are seen by the compiled pipeline, which
+   * reads the pages' current bytes rather than their before-images.
+   */
+  @Test public void committedWrites() throws Exception {
+    TransactionId tid = new TransactionId();
+    Tuple t = new Tuple(table.getTupleDesc());
+    t.setField(0, new IntField(5));
+    t.setField(1, new IntField(200));
+    t.setField(2, new IntField(7));
+    Database.getBufferPool().insertTuple(tid, table.getId(), t);
+    Database.getBufferPool().transactionComplete(tid);
+
+    tid = new TransactionId();
+    DbFileIterator it = table.iterator(tid);
+    it.open();
+    Tuple victim = it.next();
+    it.close();
+    Database.getBufferPool().deleteTuple(tid, victim);
+    Database.getBufferPool().transactionComplete(tid);
+
+    ArrayList<String> expected = run(false, 1, Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+    assertEquals(expected, run(true, 1, Aggregator.NO_GROUPING, Aggregator.Op.COUNT));
+    expected = run(false, 1, 0, Aggregator.Op.SUM);
+    assertEquals(expected, run(true, 1, 0, Aggregator.Op.SUM));
+  }
+
+  /**
+   * A small table is not worth a compile unless its pipeline's class is
+   * already cached, and the same pipeline with other constants reuses that
+   * class.
+   */
+  @Test public void constantsReuseClass() throws Exception {
+    if (!QueryCompiler.isAvailable())
+      return;
+    TransactionId tid = new TransactionId();
+    // 一万行省下的时间远不够编译一次
+    OpIterator other = new Filter(new Predicate(2, Predicate.Op.NOT_EQUALS, new IntField(1)),
+        new SeqScan(tid, table.getId()));
+    assertFalse(QueryCompiler.worthCompiling(other, 0, Aggregator.NO_GROUPING, null));
+
+    assertNotNull(QueryCompiler.compile(pipeline(tid), 1, 0));
+    assertTrue(QueryCompiler.worthCompiling(pipeline(tid, 7, 42), 1, 0, null));
+    assertEquals(run(false, 1, 0, Aggregator.Op.SUM, 7, 42),
+        run(true, 1, 0, Aggregator.Op.SUM, 7, 42));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Inputs that are not a pipeline over a HeapFile are not compiled.
+   */
+  @Test public void unsupported() throws Exception {
+    assertNull(QueryCompiler.compile(TestUtil.createTupleList(2, new int[] { 1, 2 }), 1, 0));
+    OrderBy sorted = new OrderBy(0, true, new SeqScan(new TransactionId(), table.getId()));
+    assertNull(QueryCompiler.compile(sorted, 1, 0));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(QueryCompilerTest.class);
+  }
+}
@@ -0,0 +1,310 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SecondaryIndexTest extends SimpleDbTestBase {
+
+  private static final int ROWS = 5000;
+
+  private HeapFile table;
+  private String tableName;
+  private SecondaryIndex index;
+
+  /**
+   * A HeapFile table t(c0, c1) of random values, indexed on c1.
+   */
+  @Before public void createTable() throws Exception {
+    table = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null, "c");
+    tableName = Database.getCatalog().getTableName(table.getId());
+    File f = File.createTempFile("index", ".dat");
+    f.deleteOnExit();
+    f.delete();
+    index = SecondaryIndex.create("t_c1", table.getId(), 1, f);
+  }
+
+  //用索引查找c1 op v得到的c0，排好序
+  private ArrayList<Integer> lookup(TransactionId tid, Predicate.Op op, int v) throws Exception {
+    ArrayList<Integer> found = new ArrayList<Integer>();
+    DbFileIterator it = index.lookup(tid, new IndexPredicate(op, new IntField(v)));
+    it.open();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      assertTrue(t.getField(1).compare(op, new IntField(v)));
+      found.add(((IntField) t.getField(0)).getValue());
+    }
+    it.close();
+    Collections.sort(found);
+    return found;
+  }
+
+  //顺序扫描得到的同样结果
+  private ArrayList<Integer> scan(TransactionId tid, Predicate.Op op, int v) throws Exception {
+    ArrayList<Integer> found = new ArrayList<Integer>();
+    DbFileIterator it = table.iterator(tid);
+    it.open();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      if (t.getField(1).compare(op, new IntField(v)))
+        found.add(((IntField) t.getField(0)).getValue());
+    }
+    it.close();
+    Collections.sort(found);
+    return found;
+  }
+
+  /**
+   * Lookups through the index find the same tuples as a scan.
+   */
+  @Test public void lookup() throws Exception {
+    assertEquals(index, Database.getCatalog().getIndex(table.getId(), 1));
+    assertNull(Database.getCatalog().getIndex(table.getId(), 0));
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = table.iterator(tid);
+    it.open();
+    int v = ((IntField) it.next().getField(1)).getValue();
+    it.close();
+    assertTrue(lookup(tid, Predicate.Op.EQUALS, v).size() >= 1);
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS,
+        Predicate.Op.LESS_THAN, Predicate.Op.GREATER_THAN_OR_EQ })
+      assertEquals(scan(tid, op, v), lookup(tid, op, v));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Tuples inserted and deleted through the buffer pool are added to and
+   * removed from the index.
+   */
+  @Test public void maintenance() throws Exception {
+    TransactionId tid = new TransactionId();
+    Tuple t = new Tuple(table.getTupleDesc());
+    t.setField(0, new IntField(-1));
+    t.setField(1, new IntField(-5));
+    Database.getBufferPool().insertTuple(tid, table.getId(), t);
+    Database.getBufferPool().transactionComplete(tid);
+
+    tid = new TransactionId();
+    ArrayList<Integer> found = lookup(tid, Predicate.Op.EQUALS, -5);
+    assertEquals(1, found.size());
+    assertEquals(-1, (int) found.get(0));
+    DbFileIterator it = index.lookup(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(-5)));
+    it.open();
+    Tuple stored = it.next();
+    it.close();
+    Database.getBufferPool().deleteTuple(tid, stored);
+    Database.getBufferPool().transactionComplete(tid);
+
+    tid = new TransactionId();
+    assertEquals(0, lookup(tid, Predicate.Op.EQUALS, -5).size());
+    assertEquals(scan(tid, Predicate.Op.LESS_THAN, 100), lookup(tid, Predicate.Op.LESS_THAN, 100));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Rows inserted and deleted by other transactions while an index is built
+   * end up in it exactly when they were committed.
+   */
+  @Test public void concurrentBuild() throws Exception {
+    final HeapFile big = SystemTestUtil.createRandomHeapFile(2, 100000, null, null, "c");
+    final boolean[] stop = new boolean[1];
+    final ArrayList<Integer> committed = new ArrayList<Integer>();
+    final Exception[] failure = new Exception[1];
+    Thread writer = new Thread() {
+      public void run() {
+        try {
+          //每个事务插入一行(k, -k)，偶数提交、奇数回滚；提交过的行再隔一个删掉
+          for (int k = 1; !stop[0] || k < 20; k++) {
+            TransactionId tid = new TransactionId();
+            try {
+              Tuple t = new Tuple(big.getTupleDesc());
+              t.setField(0, new IntField(k));
+              t.setField(1, new IntField(-k));
+              Database.getBufferPool().insertTuple(tid, big.getId(), t);
+              if (k % 4 == 2) {
+                DbFileIterator it = big.iterator(tid);
+                it.open();
+                while (it.hasNext()) {
+                  Tuple old = it.next();
+                  if (((IntField) old.getField(1)).getValue() == -(k - 2)) {
+                    Database.getBufferPool().deleteTuple(tid, old);
+                    break;
+                  }
+                }
+                it.close();
+              }
+              Database.getBufferPool().transactionComplete(tid, k % 2 == 0);
+              if (k % 2 == 0) {
+                synchronized (committed) {
+                  committed.add(k);
+                  if (k % 4 == 2)
+                    committed.remove(Integer.valueOf(k - 2));
+                }
+              }
+            } catch (TransactionAbortedException e) {
+              Database.getBufferPool().transactionComplete(tid, false);
+            }
+          }
+        } catch (Exception e) {
+          failure[0] = e;
+        }
+      }
+    };
+    writer.start();
+    File f = File.createTempFile("index", ".dat");
+    f.deleteOnExit();
+    f.delete();
+    SecondaryIndex built = SecondaryIndex.create("big_c1", big.getId(), 1, f);
+    stop[0] = true;
+    writer.join();
+    if (failure[0] != null)
+      throw failure[0];
+
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = built.lookup(tid, new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(0)));
+    ArrayList<Integer> found = new ArrayList<Integer>();
+    it.open();
+    while (it.hasNext())
+      found.add(((IntField) it.next().getField(0)).getValue());
+    it.close();
+    Collections.sort(found);
+    Collections.sort(committed);
+    assertEquals(committed, found);
+    int n = 0;
+    it = built.getFile().iterator(tid);
+    it.open();
+    while (it.hasNext()) {
+      it.next();
+      n++;
+    }
+    it.close();
+    int rows = 0;
+    it = big.iterator(tid);
+    it.open();
+    while (it.hasNext()) {
+      it.next();
+      rows++;
+    }
+    it.close();
+    assertEquals(rows, n);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The planner reads the table through the index for a selective filter on
+   * the indexed column, and scans it for an unselective one.
+   */
+  @Test public void planner() throws Exception {
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put(tableName, new TableStats(table.getId(), 1000));
+    TransactionId tid = new TransactionId();
+
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(table.getId(), "t");
+    lp.addProjectField("*", null);
+    lp.addFilter("t.c1", Predicate.Op.EQUALS, "1234");
+    lp.addFilter("t.c0", Predicate.Op.GREATER_THAN, "10");
+    OpIterator op = lp.physicalPlan(tid, stats, false);
+    OpIterator leaf = op;
+    while (leaf instanceof Operator)
+      leaf = ((Operator) leaf).getChildren()[0];
+    assertTrue(leaf instanceof SecondaryIndexScan);
+    int n = 0;
+    op.open();
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      assertEquals(1234, ((IntField) t.getField(1)).getValue());
+      n++;
+    }
+    op.close();
+    assertEquals(scan(tid, Predicate.Op.EQUALS, 1234).size() - countAtMost(tid, 10, 1234), n);
+
+    lp = new LogicalPlan();
+    lp.addScan(table.getId(), "t");
+    lp.addProjectField("*", null);
+    lp.addFilter("t.c1", Predicate.Op.GREATER_THAN, "100");
+    op = lp.physicalPlan(tid, stats, false);
+    leaf = op;
+    while (leaf instanceof Operator)
+      leaf = ((Operator) leaf).getChildren()[0];
+    assertTrue(leaf instanceof SeqScan);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  //c0 <= max且c1 = v的元组个数
+  /**
+   * An index built on a table of a catalog read from a schema file is
+   * recorded there and reattached when the schema is loaded again, and
+   * forgotten once it is removed.
+   */
+  @Test public void reloadedWithSchema() throws Exception {
+    File dir = File.createTempFile("schema", "");
+    dir.delete();
+    assertTrue(dir.mkdir());
+    dir.deleteOnExit();
+    File data = new File(dir, "people.dat");
+    data.deleteOnExit();
+    java.nio.file.Files.copy(table.getFile().toPath(), data.toPath());
+    File schema = new File(dir, "catalog.txt");
+    schema.deleteOnExit();
+    java.io.PrintWriter out = new java.io.PrintWriter(schema);
+    out.println("people (id int, age int)");
+    out.close();
+    Database.getCatalog().loadSchema(schema.getPath());
+    int people = Database.getCatalog().getTableId("people");
+    File f = new File(dir, "people_age.dat");
+    f.deleteOnExit();
+    SecondaryIndex.create("people_age", people, 1, f);
+
+    // 重启：新的目录和缓冲池，从目录文件重新读
+    Database.reset();
+    Database.getCatalog().loadSchema(schema.getPath());
+    people = Database.getCatalog().getTableId("people");
+    SecondaryIndex reloaded = Database.getCatalog().getIndex(people, 1);
+    assertTrue(reloaded != null);
+    assertEquals("people_age", reloaded.getName());
+    table = (HeapFile) Database.getCatalog().getDatabaseFile(people);
+    index = reloaded;
+    TransactionId tid = new TransactionId();
+    assertEquals(scan(tid, Predicate.Op.LESS_THAN, 100), lookup(tid, Predicate.Op.LESS_THAN, 100));
+    Database.getBufferPool().transactionComplete(tid);
+
+    Database.getCatalog().removeIndex(reloaded);
+    Database.reset();
+    Database.getCatalog().loadSchema(schema.getPath());
+    assertNull(Database.getCatalog().getIndex(Database.getCatalog().getTableId("people"), 1));
+  }
+
+  private int countAtMost(TransactionId tid, int max, int v) throws Exception {
+    int n = 0;
+    DbFileIterator it = table.iterator(tid);
+    it.open();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      if (((IntField) t.getField(0)).getValue() <= max && ((IntField) t.getField(1)).getValue() == v)
+        n++;
+    }
+    it.close();
+    return n;
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SecondaryIndexTest.class);
+  }
+}
@@ -0,0 +1,89 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class StreamingAggregateTest extends SimpleDbTestBase {
+
+  private static int[] randomData(int rows) {
+    Random r = new Random(3);
+    int[] data = new int[rows * 2];
+    for (int i = 0; i < data.length; i++)
+      data[i] = r.nextInt(i % 2 == 0 ? 40 : 1000) - 20;
+    return data;
+  }
+
+  /**
+   * Over input sorted on the group key, streaming and hash aggregation agree
+   * for every operator.
+   */
+  @Test public void sameAsHash() throws Exception {
+    int[] data = randomData(3000);
+    Aggregator.Op[] ops = new Aggregator.Op[] { Aggregator.Op.COUNT,
+        Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG };
+    for (Aggregator.Op op : ops) {
+      OpIterator sorted = new OrderBy(0, true, TestUtil.createTupleList(2, data));
+      Aggregate streaming = new Aggregate(sorted, 1, 0, op);
+      streaming.setStreaming(true);
+      Aggregate hash = new Aggregate(TestUtil.createTupleList(2, data), 1, 0, op);
+      assertEquals(op.toString(), TestUtil.sortedResults(hash), TestUtil.sortedResults(streaming));
+    }
+  }
+
+  /**
+   * The first group is returned as soon as the key changes, without reading
+   * the rest of the input; rewind starts over.
+   */
+  @Test public void emitsEarly() throws Exception {
+    TupleIterator child = TestUtil.createTupleList(2,
+        new int[] { 1, 10, 1, 20, 2, 5, 3, 1, 3, 2, 3, 3 });
+    Aggregate a = new Aggregate(child, 1, 0, Aggregator.Op.SUM);
+    a.setStreaming(true);
+    a.open();
+    Tuple t = a.next();
+    assertEquals(new IntField(1), t.getField(0));
+    assertEquals(new IntField(30), t.getField(1));
+    // only the first row of group 2 has been read
+    int left = 0;
+    while (child.hasNext()) {
+      child.next();
+      left++;
+    }
+    assertEquals(3, left);
+
+    a.rewind();
+    assertEquals(new IntField(30), a.next().getField(1));
+    assertEquals(new IntField(5), a.next().getField(1));
+    assertEquals(new IntField(6), a.next().getField(1));
+    assertFalse(a.hasNext());
+    a.close();
+  }
+
+  /**
+   * Ordering is recognised through Filter and Limit but not plain scans.
+   */
+  @Test public void detectsOrdering() throws Exception {
+    OpIterator list = TestUtil.createTupleList(2, new int[] { 1, 2 });
+    OrderBy ob = new OrderBy(1, false, list);
+    assertTrue(Aggregate.isOrderedOn(ob, 1));
+    assertFalse(Aggregate.isOrderedOn(ob, 0));
+    Filter f = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(0)), ob);
+    assertTrue(Aggregate.isOrderedOn(new Limit(5, 0, f), 1));
+    assertFalse(Aggregate.isOrderedOn(list, 0));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StreamingAggregateTest.class);
+  }
+}
@@ -1,5 +1,9 @@
 package simpledb;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.*;
 
 import org.junit.Before;
@@ -105,6 +109,24 @@ public class StringAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * A deserialized aggregator starts empty and still accepts tuples
+   */
+  @Test public void serializedCopy() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(new StringAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.COUNT));
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    StringAggregator agg = (StringAggregator) in.readObject();
+
+    scan1.open();
+    agg.mergeTupleIntoGroup(scan1.next());
+    OpIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, new int[] { 1, 1 }), it);
+  }
+
   /**
    * JUnit suite target
    */
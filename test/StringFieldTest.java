@@ -0,0 +1,94 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class StringFieldTest extends SimpleDbTestBase {
+
+  private static final String[] STRINGS = new String[] { "", "a", "ab", "abc", "b",
+      "ba", "caf\u00e9", "\u00ff" };
+
+  private static byte[] serialize(Field f) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    f.serialize(new DataOutputStream(out));
+    return out.toByteArray();
+  }
+
+  // a field that refers to the serialized bytes, as one read from a page
+  private static StringField raw(String s) throws Exception {
+    byte[] page = serialize(new StringField(s, Type.STRING_LEN));
+    return (StringField) Type.STRING_TYPE.parse(page, 0);
+  }
+
+  /**
+   * Fields read from bytes compare, hash and LIKE-match exactly like fields
+   * made from Strings, against either kind of field.
+   */
+  @Test public void rawSameAsString() throws Exception {
+    for (String a : STRINGS) {
+      StringField sa = new StringField(a, Type.STRING_LEN);
+      assertEquals(a, raw(a).getValue());
+      assertEquals(sa.hashCode(), raw(a).hashCode());
+      for (String b : STRINGS) {
+        StringField sb = new StringField(b, Type.STRING_LEN);
+        for (Predicate.Op op : Predicate.Op.values()) {
+          boolean expected = sa.compare(op, sb);
+          assertEquals(a + " " + op + " " + b, expected, raw(a).compare(op, raw(b)));
+          assertEquals(a + " " + op + " " + b, expected, raw(a).compare(op, sb));
+          assertEquals(a + " " + op + " " + b, expected, sa.compare(op, raw(b)));
+        }
+        assertEquals(a.equals(b), raw(a).equals(sb));
+      }
+    }
+  }
+
+  /**
+   * A field read from bytes writes back the same bytes, decoded or not.
+   */
+  @Test public void serializeRoundTrip() throws Exception {
+    for (String s : STRINGS) {
+      byte[] expected = serialize(new StringField(s, Type.STRING_LEN));
+      StringField f = raw(s);
+      assertTrue(s, Arrays.equals(expected, serialize(f)));
+      f.getValue();
+      assertTrue(s, Arrays.equals(expected, serialize(f)));
+    }
+  }
+
+  /**
+   * Keys kept in hash tables are detached from the page they were read
+   * from; other fields are returned as they are.
+   */
+  @Test public void detachedKeys() throws Exception {
+    StringField f = raw("abc");
+    assertTrue(f.isPageBacked());
+    Field d = StringField.detach(f);
+    assertFalse(((StringField) d).isPageBacked());
+    assertEquals(f, d);
+    assertTrue(d == StringField.detach(d));
+    IntField i = new IntField(3);
+    assertTrue(i == StringField.detach(i));
+
+    AggregateHashTable table = new AggregateHashTable(Type.STRING_TYPE);
+    int g = table.findOrInsert(f);
+    assertFalse(((StringField) table.key(g)).isPageBacked());
+    assertEquals(g, table.findOrInsert(raw("abc")));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StringFieldTest.class);
+  }
+}
@@ -151,4 +151,175 @@ public class TableStatsTest extends SimpleDbTestBase {
 			Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.LESS_THAN_OR_EQ, belowMin), 0.001);
 		}
 	}
+
+	/**
+	 * Tuples inserted and deleted through the BufferPool show up in the
+	 * registered statistics without rescanning the table.
+	 */
+	@Test public void incrementalUpdateTest() throws Exception {
+		TableStats s = new TableStats(this.tableId, IO_COST);
+		TableStats.setTableStats(this.tableName, s);
+		final Field outside = new IntField(5000);
+		Assert.assertEquals(0.0, s.estimateSelectivity(0, Predicate.Op.EQUALS, outside), 0.001);
+
+		TransactionId tid = new TransactionId();
+		ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+		for (int i = 0; i < 200; i++) {
+			int[] data = new int[10];
+			data[0] = 5000;
+			Tuple t = Utility.getHeapTuple(data);
+			Database.getBufferPool().insertTuple(tid, this.tableId, t);
+			inserted.add(t);
+		}
+		Assert.assertEquals(10400, s.totalTuples());
+		Assert.assertTrue(s.estimateSelectivity(0, Predicate.Op.EQUALS, outside) > 0.0);
+		Assert.assertEquals(1.0, s.estimateSelectivity(0, Predicate.Op.LESS_THAN_OR_EQ, outside), 0.001);
+		Assert.assertEquals(0.0, s.estimateSelectivity(0, Predicate.Op.GREATER_THAN, outside), 0.001);
+
+		for (int i = 0; i < 100; i++)
+			Database.getBufferPool().deleteTuple(tid, inserted.get(i));
+		Assert.assertEquals(10300, s.totalTuples());
+		Assert.assertEquals(300, s.modifications());
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * Lazily loaded statistics are computed once and saved next to the
+	 * table; later ones are read back from there, with the modifications
+	 * counted so far.
+	 */
+	@Test public void sidecarTest() {
+		java.io.File sidecar = new java.io.File(f.getFile().getPath() + TableStats.STATS_SUFFIX);
+		sidecar.deleteOnExit();
+		Assert.assertFalse(sidecar.exists());
+
+		TableStats first = TableStats.lazy(this.tableId, IO_COST);
+		Assert.assertFalse(sidecar.exists());
+		Assert.assertEquals(10200, first.totalTuples());
+		Assert.assertTrue(sidecar.exists());
+		for (int i = 0; i < 5; i++)
+			first.tupleInserted(Utility.getHeapTuple(new int[10]));
+		first.save();
+
+		TableStats second = TableStats.lazy(this.tableId, IO_COST);
+		Assert.assertEquals(10205, second.totalTuples());
+		Assert.assertEquals(5, second.modifications());
+		Assert.assertEquals(first.estimateScanCost(), second.estimateScanCost(), 0.001);
+		for (int col = 0; col < 10; col++)
+			Assert.assertEquals(first.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(16)),
+					second.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(16)), 0.0001);
+	}
+
+	/**
+	 * A sidecar file is not used once the table's file has changed since
+	 * it was written, even if the page count is the same.
+	 */
+	@Test public void staleSidecarTest() {
+		java.io.File sidecar = new java.io.File(f.getFile().getPath() + TableStats.STATS_SUFFIX);
+		sidecar.deleteOnExit();
+		TableStats first = TableStats.lazy(this.tableId, IO_COST);
+		Assert.assertEquals(10200, first.totalTuples());
+		first.tupleInserted(Utility.getHeapTuple(new int[10]));
+		first.save();
+
+		// 比如离线重写了数据文件，页数不变
+		Assert.assertTrue(f.getFile().setLastModified(f.getFile().lastModified() - 10000));
+		TableStats second = TableStats.lazy(this.tableId, IO_COST);
+		Assert.assertEquals(10200, second.totalTuples());
+		Assert.assertEquals(0, second.modifications());
+	}
+
+	/**
+	 * Statistics first asked for inside a transaction that has written the
+	 * table are computed without waiting for that transaction's locks, and
+	 * see its changes; nor does computing them take locks of their own.
+	 */
+	@Test public void statsDuringWriteTest() throws Exception {
+		TransactionId tid = new TransactionId();
+		Database.getBufferPool().insertTuple(tid, this.tableId, Utility.getHeapTuple(new int[10]));
+		HeapPageId last = new HeapPageId(this.tableId, f.numPages() - 1);
+		Assert.assertTrue(Database.getBufferPool().holdsLock(tid, last));
+
+		TableStats s = TableStats.lazy(this.tableId, IO_COST);
+		Assert.assertEquals(10201, s.estimateTableCardinality(1.0));
+		Assert.assertFalse(s.isSampled());
+
+		// another transaction can still write the page
+		Database.getBufferPool().transactionComplete(tid);
+		TransactionId other = new TransactionId();
+		Database.getBufferPool().getPage(other, last, Permissions.READ_WRITE);
+		Database.getBufferPool().transactionComplete(other);
+	}
+
+	/**
+	 * If the statistics cannot be computed, here because another transaction
+	 * holds a B+ tree's root pointer, planning goes on with defaults.
+	 */
+	@Test public void defaultsTest() throws Exception {
+		BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 1000, null, null, 0);
+		TransactionId tid = new TransactionId();
+		Database.getBufferPool().getPage(tid, BTreeRootPtrPage.getId(bf.getId()), Permissions.READ_WRITE);
+
+		TableStats s = TableStats.lazy(bf.getId(), IO_COST);
+		Assert.assertTrue(s.estimateTableCardinality(1.0) > 0);
+		Assert.assertEquals(TableStats.DEFAULT_EQ_SELECTIVITY,
+				s.estimateSelectivity(1, Predicate.Op.EQUALS, new IntField(3)), 0.0);
+		Assert.assertEquals(TableStats.RANGE_SELECTIVITY,
+				s.estimateSelectivity(1, Predicate.Op.LESS_THAN, new IntField(3)), 0.0);
+		Assert.assertNull(s.getColumnStats(1));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * Statistics computed from a tenth of the pages agree with the full
+	 * ones, and their confidence bounds cover the full estimate.
+	 */
+	@Test public void sampledStatsTest() throws Exception {
+		HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 100000, 1000000, null, null);
+		String name = SystemTestUtil.getUUID();
+		Database.getCatalog().addTable(hf, name);
+		int id = Database.getCatalog().getTableId(name);
+
+		TableStats full = new TableStats(id, IO_COST);
+		TableStats s = new TableStats(id, IO_COST, TableStats.SampleSize.percent(10));
+		Assert.assertFalse(full.isSampled());
+		Assert.assertTrue(s.isSampled());
+		Assert.assertEquals(full.estimateScanCost(), s.estimateScanCost(), 0.001);
+		Assert.assertEquals(100000, s.totalTuples(), 2000);
+
+		final Field mid = new IntField(500000);
+		double p = full.estimateSelectivity(0, Predicate.Op.LESS_THAN, mid);
+		Assert.assertEquals(p, s.estimateSelectivity(0, Predicate.Op.LESS_THAN, mid), 0.03);
+		double[] bounds = s.estimateSelectivityBounds(0, Predicate.Op.LESS_THAN, mid);
+		Assert.assertTrue(bounds[0] < bounds[1]);
+		Assert.assertTrue(bounds[0] - 0.01 <= p && p <= bounds[1] + 0.01);
+		double[] exact = full.estimateSelectivityBounds(0, Predicate.Op.LESS_THAN, mid);
+		Assert.assertEquals(exact[0], exact[1], 0.0);
+
+		long ndv = full.getColumnStats(1).distinctCount();
+		Assert.assertEquals(ndv, s.getColumnStats(1).distinctCount(), ndv * 0.15);
+
+		TableStats byRows = new TableStats(id, IO_COST, TableStats.SampleSize.rows(20000));
+		Assert.assertTrue(byRows.isSampled());
+		Assert.assertEquals(100000, byRows.totalTuples(), 2000);
+	}
+
+	/**
+	 * A sample counts the partly full last page as it is rather than
+	 * taking it for an average page, so a table of full pages and a nearly
+	 * empty last one is estimated exactly.
+	 */
+	@Test public void sampledLastPageTest() throws Exception {
+		int perPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+		int rows = 40 * perPage + 3;
+		HeapFile hf = SystemTestUtil.createRandomHeapFile(2, rows, 1000, null, null);
+		String name = SystemTestUtil.getUUID();
+		Database.getCatalog().addTable(hf, name);
+		int id = Database.getCatalog().getTableId(name);
+		Assert.assertEquals(41, hf.numPages());
+
+		TableStats s = new TableStats(id, IO_COST, TableStats.SampleSize.percent(10));
+		Assert.assertTrue(s.isSampled());
+		Assert.assertEquals(rows, s.totalTuples());
+	}
 }
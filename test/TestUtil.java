@@ -166,6 +166,45 @@ public class TestUtil {
         }
     }
 
+    /**
+     * @return the tuples left in it, which must already be open
+     */
+    public static ArrayList<Tuple> drain(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> out = new ArrayList<Tuple>();
+        while (it.hasNext())
+            out.add(it.next());
+        return out;
+    }
+
+    /**
+     * Open it, read it to the end and close it.
+     * @return the string forms of its tuples, sorted, so that the results
+     *   of operators that do not preserve order can be compared with equals
+     */
+    public static ArrayList<String> sortedResults(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<String> out = new ArrayList<String>();
+        it.open();
+        while (it.hasNext())
+            out.add(it.next().toString());
+        it.close();
+        Collections.sort(out);
+        return out;
+    }
+
+    /**
+     * @return rows * width random ints in [0, max), laid out for
+     *   createTupleList
+     */
+    public static int[] randomData(int rows, int width, int max, long seed) {
+        Random r = new Random(seed);
+        int[] data = new int[rows * width];
+        for (int i = 0; i < data.length; i++)
+            data[i] = r.nextInt(max);
+        return data;
+    }
+
     /**
      * @return a byte array containing the contents of the file 'path'
      */
@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
@@ -57,6 +58,63 @@ public class TupleTest extends SimpleDbTestBase {
 	}
     }
 
+    /**
+     * A joined tuple reads through to both sides, copies on write without
+     * touching them, and materializes to an equal flat tuple.
+     */
+    @Test public void joinedTuple() {
+        TupleDesc td1 = Utility.getTupleDesc(2);
+        TupleDesc td2 = Utility.getTupleDesc(3);
+        Tuple left = Utility.getHeapTuple(new int[] { 1, 2 });
+        Tuple right = Utility.getHeapTuple(new int[] { 3, 4, 5 });
+        TupleDesc merged = TupleDesc.merge(td1, td2);
+
+        Tuple joined = left.create_link(right, merged);
+        assertSame(merged, joined.getTupleDesc());
+        for (int i = 0; i < 5; i++)
+            assertEquals(new IntField(i + 1), joined.getField(i));
+        assertEquals("1\t2\t3\t4\t5", joined.toString());
+
+        Tuple flat = joined.materialize();
+        assertEquals(flat, joined);
+
+        joined.setField(3, new IntField(40));
+        assertEquals(new IntField(40), joined.getField(3));
+        assertEquals(new IntField(4), right.getField(1));
+        assertEquals(new IntField(4), flat.getField(3));
+    }
+
+    /**
+     * A compact tuple gives back the fields and RecordId it was packed from,
+     * for a mix of INT and STRING columns, and copies on write.
+     */
+    @Test public void compactTuple() {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE,
+            Type.STRING_TYPE, Type.INT_TYPE });
+        Tuple t = new Tuple(td);
+        t.setField(0, new StringField("", Type.STRING_LEN));
+        t.setField(1, new IntField(Integer.MIN_VALUE));
+        t.setField(2, new StringField("caf\u00e9", Type.STRING_LEN));
+        t.setField(3, new IntField(-7));
+        t.setRecordId(new RecordId(new HeapPageId(1, 2), 3));
+
+        CompactTuple.Layout layout = new CompactTuple.Layout(td);
+        CompactTuple c = (CompactTuple) layout.pack(t);
+        assertEquals(t, c);
+        assertEquals(t.getRecordId(), c.getRecordId());
+        assertEquals(Integer.MIN_VALUE, c.getInt(1));
+        assertEquals(-7, c.getInt(3));
+        assertEquals(4 + 4 + 2 + 2 + 4, c.packedSize());
+
+        c.setField(2, new StringField("x", Type.STRING_LEN));
+        assertEquals(new StringField("x", Type.STRING_LEN), c.getField(2));
+        assertEquals(-7, c.getInt(3));
+
+        // a tuple with a missing field is kept as it is
+        Tuple partial = new Tuple(td);
+        assertSame(partial, layout.pack(partial));
+    }
+
     /**
      * JUnit suite target
      */
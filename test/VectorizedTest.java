@@ -0,0 +1,111 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class VectorizedTest extends SimpleDbTestBase {
+
+  private static ArrayList<String> results(VectorIterator it) throws Exception {
+    return TestUtil.sortedResults(new VectorToTuple(it));
+  }
+
+  /**
+   * Scan, filter and project give the same rows batch-at-a-time as
+   * tuple-at-a-time, for every comparison operator.
+   */
+  @Test public void scanFilterProject() throws Exception {
+    HeapFile table = SystemTestUtil.createRandomHeapFile(3, 5000, 100, null, null);
+    TransactionId tid = new TransactionId();
+    Predicate.Op[] ops = new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.NOT_EQUALS,
+        Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+        Predicate.Op.GREATER_THAN_OR_EQ };
+    ArrayList<Integer> fields = new ArrayList<Integer>();
+    fields.add(2);
+    fields.add(0);
+    for (Predicate.Op op : ops) {
+      Predicate p = new Predicate(1, op, new IntField(50));
+      Predicate q = new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(20));
+      OpIterator tuples = new Project(fields, new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+          new Filter(q, new Filter(p, new SeqScan(tid, table.getId()))));
+      VectorIterator vectors = new VectorProject(new int[] { 2, 0 },
+          new VectorFilter(q, new VectorFilter(p, new VectorScan(tid, table.getId(), 100))));
+      assertEquals(op.toString(), TestUtil.sortedResults(tuples), results(vectors));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * VectorAggregate matches Aggregate, grouped and ungrouped.
+   */
+  @Test public void aggregate() throws Exception {
+    int[] data = new int[6000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (i * 7919) % 97 - 30;
+    Aggregator.Op[] ops = new Aggregator.Op[] { Aggregator.Op.COUNT,
+        Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG };
+    for (Aggregator.Op op : ops) {
+      for (int gfield : new int[] { Aggregator.NO_GROUPING, 0 }) {
+        Aggregate a = new Aggregate(TestUtil.createTupleList(2, data), 1, gfield, op);
+        VectorAggregate v = new VectorAggregate(
+            new TupleToVector(TestUtil.createTupleList(2, data)), 1, gfield, op);
+        assertEquals(op + " " + gfield, TestUtil.sortedResults(a), results(v));
+      }
+    }
+  }
+
+  /**
+   * VectorHashJoin matches HashEquiJoin, including when the build side
+   * takes several chunks and the probe side is filtered.
+   */
+  @Test public void hashJoin() throws Exception {
+    HeapFile big = SystemTestUtil.createRandomHeapFile(2,
+        VectorHashJoin.BUILD_ROWS + 5000, 2000, null, null);
+    HeapFile small = SystemTestUtil.createRandomHeapFile(2, 300, 2000, null, null);
+    TransactionId tid = new TransactionId();
+    JoinPredicate jp = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(1500));
+    OpIterator tuples = new HashEquiJoin(jp, new SeqScan(tid, big.getId()),
+        new Filter(p, new SeqScan(tid, small.getId())));
+    VectorIterator vectors = new VectorHashJoin(jp, new VectorScan(tid, big.getId()),
+        new VectorFilter(p, new VectorScan(tid, small.getId())));
+    ArrayList<String> expected = TestUtil.sortedResults(tuples);
+    assertTrue(expected.size() > VectorBatch.DEFAULT_CAPACITY);
+    assertEquals(expected, results(vectors));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Tuple and vector operators mix in one plan through the adapters.
+   */
+  @Test public void mixedPlan() throws Exception {
+    OpIterator list = TestUtil.createTupleList(2,
+        new int[] { 1, 10, 2, 20, 1, 30, 3, 40, 2, 50 });
+    Filter f = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(10)), list);
+    VectorAggregate v = new VectorAggregate(new TupleToVector(f, 2), 1, 0, Aggregator.Op.SUM);
+    OrderBy ob = new OrderBy(0, true, new VectorToTuple(v));
+    ob.open();
+    int[] expected = new int[] { 1, 30, 2, 70, 3, 40 };
+    for (int i = 0; i < expected.length; i += 2) {
+      Tuple t = ob.next();
+      assertEquals(new IntField(expected[i]), t.getField(0));
+      assertEquals(new IntField(expected[i + 1]), t.getField(1));
+    }
+    assertTrue(!ob.hasNext());
+    ob.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(VectorizedTest.class);
+  }
+}